@@ -0,0 +1,140 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.ACKSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.EAKSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Segment;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how a connection handles the acknowledgments of its peer, at
+ * different depths of the queue of unacknowledged segments. The connection
+ * runs on a {@link NetworkSimulator} whose link to the server drops every data
+ * segment, so that the segments stay in the queue until the benchmark hands
+ * the client an acknowledgment for them, as if it came from the server. The
+ * simulator is not run during the measurement, so no timer expires.
+ *
+ * <p>The first benchmark acknowledges the oldest quarter of the queue with an
+ * ACK segment. The second one acknowledges every other segment of the next
+ * quarter with an EAK segment, which makes the client retransmit the segments
+ * left in between, and then acknowledges these with an ACK segment. Both write
+ * new segments afterwards to fill the queue to its depth again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AckProcessingBenchmark {
+  private static final int SEGMENT_SIZE = 64;
+
+  @Param({"16", "256", "4096"})
+  public int depth;
+
+  private ReliableSocket client;
+  private ReliableDatagramChannel channel;
+  private ByteBuffer data;
+  private int maxSequenceNumber;
+  private int[] acks;
+
+  /**
+   * Connects a client to a server and fills the queue of the client.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    ReliableSocketProfile profile = new ReliableSocketProfile(Segment.RUDP_VERSION_2,
+        ReliableSocketProfile.MAX_WINDOW_SIZE, ReliableSocketProfile.MAX_WINDOW_SIZE,
+        SEGMENT_SIZE, ReliableSocketProfile.MAX_WINDOW_SIZE, 0,
+        ReliableSocketProfile.MAX_CUMULATIVE_ACKS, ReliableSocketProfile.MAX_OUT_OF_SEQUENCE,
+        ReliableSocketProfile.MAX_AUTO_RESET, ReliableSocketProfile.NULL_SEGMENT_TIMEOUT,
+        ReliableSocketProfile.RETRANSMISSION_TIMEOUT,
+        ReliableSocketProfile.CUMULATIVE_ACK_TIMEOUT);
+    profile.setCongestionControl(ReliableSocketProfile.CONGESTION_CONTROL_NONE);
+    profile.setPacingRate(Long.MAX_VALUE / 2, 0);
+
+    NetworkImpairment forward = new NetworkImpairment();
+    NetworkSimulator sim = new NetworkSimulator();
+    client = sim.openConnection(profile, profile, forward, new NetworkImpairment())[0];
+    sim.run(1000);
+    if (!client.isConnected()) {
+      throw new IllegalStateException("not connected");
+    }
+
+    forward.setLoss(1.0);
+    channel = client.getReliableChannel().configureBlocking(false);
+    data = ByteBuffer.allocate(SEGMENT_SIZE);
+    maxSequenceNumber = Segment.MAX_WIDE_SEQUENCE_NUMBER;
+    acks = new int[Math.min(Math.max(depth / 8, 1), EAKSegment.maxACKs(true))];
+    refill();
+  }
+
+  /**
+   * Acknowledges the oldest quarter of the queue.
+   */
+  @Benchmark
+  public int cumulativeAck() throws IOException {
+    int first = client.firstUnackedSequenceNumber();
+    ack(first, Math.max(depth / 4, 1));
+    refill();
+    return client.sendQueueDepth();
+  }
+
+  /**
+   * Acknowledges segments out of sequence, then the ones retransmitted in between.
+   */
+  @Benchmark
+  public int extendedAck() throws IOException {
+    int first = client.firstUnackedSequenceNumber();
+    for (int i = 0; i < acks.length; i++) {
+      acks[i] = add(first, 2 * i + 1);
+    }
+
+    EAKSegment eak = new EAKSegment(0, add(first, -1), acks.clone());
+    eak.setWide(true);
+    client.handleReceivedSegment(eak);
+    ack(first, 2 * acks.length);
+    refill();
+    return client.sendQueueDepth();
+  }
+
+  /**
+   * Hands the client an ACK segment for the given number of segments.
+   */
+  private void ack(int first, int count) {
+    ACKSegment ack = new ACKSegment(0, add(first, count - 1));
+    ack.setWide(true);
+    client.handleReceivedSegment(ack);
+  }
+
+  /**
+   * Adds to a sequence number, in the sequence space of version 2.
+   */
+  private int add(int seqn, int n) {
+    return (int) (((long) seqn + n + maxSequenceNumber) % maxSequenceNumber);
+  }
+
+  /**
+   * Writes a segment at a time until the queue is as deep as it should be.
+   */
+  private void refill() throws IOException {
+    while (client.sendQueueDepth() < depth) {
+      data.clear();
+      if (channel.write(data) == 0) {
+        throw new IllegalStateException("send window full");
+      }
+    }
+  }
+}
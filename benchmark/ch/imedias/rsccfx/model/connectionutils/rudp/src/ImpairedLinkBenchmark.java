@@ -0,0 +1,151 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of a single rudp connection over links impaired
+ * like the ones of remote support sessions, simulated on the loopback interface
+ * by {@link ImpairedDatagramSocket}s at both ends. The impairments are seeded,
+ * so that every run sees the same losses.
+ *
+ * <p>The client sends blocks of 256 kB, the server reads each block completely
+ * and answers it with a single byte.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ImpairedLinkBenchmark {
+  private static final int BLOCK_SIZE = 256 * 1024;
+  private static final long SEED = 1;
+
+  @Param({"lan", "wifi", "dsl", "mobile"})
+  public String link;
+
+  @Param({"false", "true"})
+  public boolean forwardErrorCorrection;
+
+  private ReliableServerSocket serverSocket;
+  private ReliableSocket client;
+  private ReliableSocket server;
+  private Thread responder;
+  private OutputStream out;
+  private InputStream in;
+  private byte[] block;
+
+  /**
+   * Connects a client to a server over the impaired link.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    NetworkImpairment impairment = impairmentOf(link);
+    ReliableSocketProfile profile = new ReliableSocketProfile();
+    profile.setForwardErrorCorrection(forwardErrorCorrection);
+
+    serverSocket = new ReliableServerSocket(new ImpairedDatagramSocket(0, impairment), 0,
+        profile);
+    client = new ReliableSocket(new ImpairedDatagramSocket(impairment), profile);
+    client.connect(new InetSocketAddress("127.0.0.1", serverSocket.getLocalPort()));
+    server = (ReliableSocket) serverSocket.accept();
+
+    responder = new Thread(() -> respond(server), "responder");
+    responder.setDaemon(true);
+    responder.start();
+
+    out = client.getOutputStream();
+    in = client.getInputStream();
+    block = new byte[4 + BLOCK_SIZE];
+    block[0] = (byte) (BLOCK_SIZE >>> 24);
+    block[1] = (byte) (BLOCK_SIZE >>> 16);
+    block[2] = (byte) (BLOCK_SIZE >>> 8);
+    block[3] = (byte) BLOCK_SIZE;
+  }
+
+  /**
+   * Closes the connection.
+   */
+  @TearDown
+  public void tearDown() throws IOException, InterruptedException {
+    client.close();
+    server.close();
+    serverSocket.close();
+    responder.join(1000);
+  }
+
+  /**
+   * Transfers a block, operations per second are quarters of a megabyte per second.
+   */
+  @Benchmark
+  public int throughput() throws IOException {
+    out.write(block);
+    out.flush();
+    return in.read();
+  }
+
+  private static NetworkImpairment impairmentOf(String link) {
+    NetworkImpairment impairment = new NetworkImpairment();
+    impairment.setSeed(SEED);
+    switch (link) {
+      case "lan":
+        impairment.setLoss(0.001);
+        impairment.setDelay(1, 0);
+        break;
+      case "wifi":
+        impairment.setLoss(0.01);
+        impairment.setBurstLoss(0.002, 0.3);
+        impairment.setDelay(5, 3);
+        impairment.setReordering(0.01);
+        break;
+      case "dsl":
+        impairment.setLoss(0.005);
+        impairment.setDelay(20, 2);
+        impairment.setBandwidth(2 * 1024 * 1024, NetworkImpairment.QUEUE_SIZE);
+        break;
+      case "mobile":
+        impairment.setLoss(0.02);
+        impairment.setBurstLoss(0.005, 0.2);
+        impairment.setDelay(40, 15);
+        impairment.setReordering(0.02);
+        impairment.setDuplication(0.005);
+        impairment.setBandwidth(1024 * 1024, 2 * NetworkImpairment.QUEUE_SIZE);
+        break;
+      default:
+        throw new IllegalArgumentException("link");
+    }
+    return impairment;
+  }
+
+  private static void respond(ReliableSocket sock) {
+    try {
+      DataInputStream in = new DataInputStream(sock.getInputStream());
+      OutputStream out = sock.getOutputStream();
+      byte[] buffer = new byte[BLOCK_SIZE];
+      while (true) {
+        in.readFully(buffer, 0, in.readInt());
+        out.write(1);
+        out.flush();
+      }
+    } catch (IOException xcp) {
+      // closed at the end of the trial
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput and the request latency of a single rudp connection
+ * over the loopback interface, for several segment sizes and windows.
+ *
+ * <p>The client sends requests made of a length and that many bytes, the
+ * server reads each request completely and answers it with a single byte.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+  private static final int BLOCK_SIZE = 1024 * 1024;
+  private static final int REQUEST_SIZE = 64;
+
+  @Param({"512", "1400", "8192"})
+  public int segmentSize;
+
+  @Param({"32", "256", "1024"})
+  public int window;
+
+  private ReliableServerSocket serverSocket;
+  private ReliableSocket client;
+  private ReliableSocket server;
+  private Thread responder;
+  private OutputStream out;
+  private InputStream in;
+  private byte[] block;
+  private byte[] request;
+
+  /**
+   * Connects a client to a server that answers its requests.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    ReliableSocketProfile profile = new ReliableSocketProfile(window, window, segmentSize, window,
+        0, ReliableSocketProfile.MAX_CUMULATIVE_ACKS, ReliableSocketProfile.MAX_OUT_OF_SEQUENCE,
+        ReliableSocketProfile.MAX_AUTO_RESET, ReliableSocketProfile.NULL_SEGMENT_TIMEOUT,
+        ReliableSocketProfile.RETRANSMISSION_TIMEOUT, ReliableSocketProfile.CUMULATIVE_ACK_TIMEOUT);
+
+    serverSocket = new ReliableServerSocket(0);
+    client = new ReliableSocket(profile);
+    client.connect(new InetSocketAddress("127.0.0.1", serverSocket.getLocalPort()));
+    server = (ReliableSocket) serverSocket.accept();
+
+    responder = new Thread(() -> respond(server), "responder");
+    responder.setDaemon(true);
+    responder.start();
+
+    out = client.getOutputStream();
+    in = client.getInputStream();
+    block = requestOf(BLOCK_SIZE);
+    request = requestOf(REQUEST_SIZE);
+  }
+
+  /**
+   * Closes the connection.
+   */
+  @TearDown
+  public void tearDown() throws IOException, InterruptedException {
+    client.close();
+    server.close();
+    serverSocket.close();
+    responder.join(1000);
+  }
+
+  /**
+   * Transfers a block of a megabyte, operations per second are megabytes per second.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public int throughput() throws IOException {
+    return exchange(block);
+  }
+
+  /**
+   * Sends a small request and waits for its answer.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int latency() throws IOException {
+    return exchange(request);
+  }
+
+  private int exchange(byte[] bytes) throws IOException {
+    out.write(bytes);
+    out.flush();
+    return in.read();
+  }
+
+  private static byte[] requestOf(int size) {
+    byte[] bytes = new byte[4 + size];
+    bytes[0] = (byte) (size >>> 24);
+    bytes[1] = (byte) (size >>> 16);
+    bytes[2] = (byte) (size >>> 8);
+    bytes[3] = (byte) size;
+    return bytes;
+  }
+
+  private static void respond(ReliableSocket sock) {
+    try {
+      DataInputStream in = new DataInputStream(sock.getInputStream());
+      OutputStream out = sock.getOutputStream();
+      byte[] buffer = new byte[BLOCK_SIZE];
+      while (true) {
+        in.readFully(buffer, 0, in.readInt());
+        out.write(1);
+        out.flush();
+      }
+    } catch (IOException xcp) {
+      // closed at the end of the trial
+    }
+  }
+}
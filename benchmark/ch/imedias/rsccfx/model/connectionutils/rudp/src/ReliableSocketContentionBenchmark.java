@@ -0,0 +1,197 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures monitor contention inside ReliableSocket under bidirectional traffic
+ * shaped like a VNC session: the server streams large framebuffer updates while
+ * the client keeps sending small input events, and both sides read concurrently.
+ *
+ * <p>Operations per second are framebuffer updates received per second. The
+ * secondary results count how many times the threads of the JVM blocked
+ * entering a monitor during an iteration, and for how long.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReliableSocketContentionBenchmark {
+  private static final int UPDATE_SIZE = 64 * 1024;
+  private static final int EVENT_SIZE = 16;
+
+  private ReliableServerSocket serverSocket;
+  private ReliableSocket client;
+  private ReliableSocket server;
+  private Thread[] workers;
+  private DataInputStream in;
+  private byte[] update;
+  private volatile boolean running;
+
+  /**
+   * Counts the monitor contention of an iteration.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Contention {
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private long startCount;
+    private long startTime;
+
+    public long blocked;
+    public long blockedMillis;
+
+    /**
+     * Takes the contention so far.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+      if (threads.isThreadContentionMonitoringSupported()) {
+        threads.setThreadContentionMonitoringEnabled(true);
+      }
+      startCount = blockedCount();
+      startTime = blockedTime();
+      blocked = 0;
+      blockedMillis = 0;
+    }
+
+    /**
+     * Counts the contention of the iteration.
+     */
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+      blocked = blockedCount() - startCount;
+      blockedMillis = blockedTime() - startTime;
+    }
+
+    private long blockedCount() {
+      long count = 0;
+      for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+        if (info != null) {
+          count += info.getBlockedCount();
+        }
+      }
+      return count;
+    }
+
+    private long blockedTime() {
+      long time = 0;
+      for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+        if (info != null) {
+          time += Math.max(info.getBlockedTime(), 0);
+        }
+      }
+      return time;
+    }
+  }
+
+  /**
+   * Connects a client to a server that streams updates to it, and starts
+   * sending events from the client.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    serverSocket = new ReliableServerSocket(0);
+    client = new ReliableSocket();
+    client.connect(new InetSocketAddress("127.0.0.1", serverSocket.getLocalPort()));
+    server = (ReliableSocket) serverSocket.accept();
+    running = true;
+
+    workers = new Thread[] {
+        new Thread(() -> stream(server), "server-writer"),
+        new Thread(() -> drain(server), "server-reader"),
+        new Thread(() -> sendEvents(client), "client-writer")
+    };
+    for (Thread worker : workers) {
+      worker.setDaemon(true);
+      worker.start();
+    }
+
+    in = new DataInputStream(client.getInputStream());
+    update = new byte[UPDATE_SIZE];
+  }
+
+  /**
+   * Closes the connection.
+   */
+  @TearDown
+  public void tearDown() throws IOException, InterruptedException {
+    running = false;
+    client.close();
+    server.close();
+    serverSocket.close();
+    for (Thread worker : workers) {
+      worker.join(1000);
+    }
+  }
+
+  /**
+   * Receives a framebuffer update.
+   */
+  @Benchmark
+  public byte[] receiveUpdate(Contention contention) throws IOException {
+    in.readFully(update);
+    return update;
+  }
+
+  private void stream(ReliableSocket sock) {
+    byte[] bytes = new byte[UPDATE_SIZE];
+    try {
+      OutputStream out = sock.getOutputStream();
+      while (running) {
+        out.write(bytes);
+        out.flush();
+      }
+    } catch (IOException xcp) {
+      // closed at the end of the trial
+    }
+  }
+
+  private void sendEvents(ReliableSocket sock) {
+    byte[] event = new byte[EVENT_SIZE];
+    try {
+      OutputStream out = sock.getOutputStream();
+      while (running) {
+        out.write(event);
+        out.flush();
+        Thread.sleep(1);
+      }
+    } catch (IOException | InterruptedException xcp) {
+      // closed at the end of the trial
+    }
+  }
+
+  private static void drain(ReliableSocket sock) {
+    byte[] buffer = new byte[EVENT_SIZE * 64];
+    try {
+      InputStream in = sock.getInputStream();
+      while (in.read(buffer) > 0) {
+        continue;
+      }
+    } catch (IOException xcp) {
+      // closed at the end of the trial
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.ACKSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.BufferPool;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.DATSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.EAKSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.FECSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.FINSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.NULSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.RSTSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.SYNSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Segment;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures encoding and decoding every segment type, through the byte array
+ * path used with a plain datagram socket and through the pooled buffer path
+ * used with a datagram channel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentCodecBenchmark {
+  private static final int SEQUENCE_NUMBER = 100;
+  private static final int EAK_ACKS = 8;
+
+  @Param({"SYN", "ACK", "EAK", "NUL", "RST", "FIN", "DAT", "FEC"})
+  public String type;
+
+  @Param({"1", "2"})
+  public int version;
+
+  @Param({"1400"})
+  public int dataLength;
+
+  private BufferPool pool;
+  private Segment segment;
+  private byte[] encoded;
+
+  /**
+   * Creates the segment of the benchmarked type and its wire form.
+   */
+  @Setup
+  public void setUp() {
+    pool = new BufferPool(DATSegment.bufferSize(dataLength), 4);
+    segment = createSegment();
+    segment.setWide(version >= Segment.RUDP_VERSION_2);
+    encoded = segment.getBytes();
+  }
+
+  /**
+   * Encodes the segment into a new byte array.
+   */
+  @Benchmark
+  public byte[] encodeBytes() {
+    return segment.getBytes();
+  }
+
+  /**
+   * Encodes the segment into its buffer, in place for a pooled data segment.
+   */
+  @Benchmark
+  public ByteBuffer encodeBuffer() {
+    return segment.getByteBuffer();
+  }
+
+  /**
+   * Decodes the segment from a byte array.
+   */
+  @Benchmark
+  public Segment decodeBytes() {
+    return Segment.parse(encoded, 0, encoded.length);
+  }
+
+  /**
+   * Decodes the segment from a pooled buffer and releases it, the way
+   * the receiver of a datagram channel hands it to the socket.
+   */
+  @Benchmark
+  public Segment decodeBuffer() {
+    ByteBuffer buffer = pool.acquire();
+    buffer.put(encoded);
+    buffer.flip();
+    Segment s = Segment.parse(buffer, pool);
+    s.release();
+    return s;
+  }
+
+  private Segment createSegment() {
+    byte[] data = new byte[dataLength];
+    new Random(1).nextBytes(data);
+
+    switch (type) {
+      case "SYN":
+        return new SYNSegment(version, SEQUENCE_NUMBER, 32, 1472, 600, 100, 2000, 0, 3, 3, 3);
+      case "ACK":
+        return new ACKSegment(SEQUENCE_NUMBER, SEQUENCE_NUMBER - 1);
+      case "EAK":
+        int[] acks = new int[EAK_ACKS];
+        for (int i = 0; i < acks.length; i++) {
+          acks[i] = SEQUENCE_NUMBER + 2 * i + 1;
+        }
+        return new EAKSegment(SEQUENCE_NUMBER, SEQUENCE_NUMBER - 1, acks);
+      case "NUL":
+        return new NULSegment(SEQUENCE_NUMBER);
+      case "RST":
+        return new RSTSegment(SEQUENCE_NUMBER);
+      case "FIN":
+        return new FINSegment(SEQUENCE_NUMBER);
+      case "DAT":
+        return new DATSegment(SEQUENCE_NUMBER, SEQUENCE_NUMBER - 1, data, 0, data.length, pool);
+      case "FEC":
+        return new FECSegment(SEQUENCE_NUMBER, 8, data.length, data, data.length);
+      default:
+        throw new IllegalArgumentException("type");
+    }
+  }
+}
@@ -49,6 +49,7 @@ public class Rscc {
   public static final int DEFAULT_STUN_SERVER_PORT = 3478;
   public static final String DEFAULT_STUN_SERVERS = "numb.viagenie.ca;"
       + "stun.ekiga.net;stun.gmx.net;stun.1und1.de";
+  public static final String DEFAULT_RUDP_OPTIONS = "";
 
   //PreferencesNames
   public static final String PREFERENCES_KEY_SERVER_IP = "keyServerIp";
@@ -64,6 +65,7 @@ public class Rscc {
   public static final String PREFERENCES_VNC_COMPRESSION = "vncCompression";
   public static final String PREFERENCES_VNC_QUALITY = "vncQuality";
   public static final String PREFERENCES_STUN_SERVERS = "STUNServers";
+  public static final String PREFERENCES_RUDP_OPTIONS = "rudpOptions";
   public static final String DELIMITER = ";";
 
   private static String[] STUN_SERVERS;
@@ -117,6 +119,7 @@ public class Rscc {
   private final IntegerProperty proxyPort = new SimpleIntegerProperty();
   private final IntegerProperty stunServerPort = new SimpleIntegerProperty();
   private final BooleanProperty forcingServerMode = new SimpleBooleanProperty(false);
+  private final StringProperty rudpOptions = new SimpleStringProperty();
 
   //States
   private final BooleanProperty vncSessionRunning = new SimpleBooleanProperty(false);
@@ -184,6 +187,7 @@ public class Rscc {
     String stunServers = preferences.get(PREFERENCES_STUN_SERVERS,
         DEFAULT_STUN_SERVERS);
     setStunServers(stunServers.split(DELIMITER));
+    setRudpOptions(preferences.get(PREFERENCES_RUDP_OPTIONS, DEFAULT_RUDP_OPTIONS));
 
     LOGGER.info("Loaded UserPrefs");
   }
@@ -205,6 +209,7 @@ public class Rscc {
     preferences.putDouble(PREFERENCES_VNC_QUALITY, getVncQuality());
 
     preferences.put(PREFERENCES_STUN_SERVERS, String.join(DELIMITER, STUN_SERVERS));
+    preferences.put(PREFERENCES_RUDP_OPTIONS, getRudpOptions());
 
     LOGGER.info("Saved UserPrefs");
   }
@@ -747,6 +752,18 @@ public class Rscc {
     STUN_SERVERS = servers;
   }
 
+  public String getRudpOptions() {
+    return rudpOptions.get();
+  }
+
+  public void setRudpOptions(String rudpOptions) {
+    this.rudpOptions.set(rudpOptions);
+  }
+
+  public StringProperty rudpOptionsProperty() {
+    return rudpOptions;
+  }
+
   public boolean isLocalIceSuccessful() {
     return isLocalIceSuccessful;
   }
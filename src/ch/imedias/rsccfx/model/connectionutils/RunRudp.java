@@ -13,6 +13,8 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -21,6 +23,14 @@ import java.util.logging.Logger;
 public class RunRudp extends Thread {
   private static final Logger LOGGER = Logger.getLogger(Rscccfp.class.getName());
 
+  // Experimental rudp options, which are enabled by listing them in the rudpOptions preference.
+  public static final String OPTION_FORWARD_ERROR_CORRECTION = "forwardErrorCorrection";
+  public static final String OPTION_ADVERTISED_WINDOW = "advertisedWindow";
+  public static final String OPTION_REUSE_ADDRESS = "reuseAddress";
+  public static final String OPTION_PATH_PROFILING = "pathProfiling";
+  public static final String OPTION_ADAPTIVE_ACKS = "adaptiveAcks";
+  public static final String OPTION_CONNECTION_MIGRATION = "connectionMigration";
+
 
   private boolean exit = false;
   private Rscc model;
@@ -58,6 +68,23 @@ public class RunRudp extends Thread {
    */
   public void run() {
     try {
+      // The rudp client proposes the maximum segment size, the server accepts it.
+      profile = new ReliableSocketProfile(ReliableSocketProfile.PATH_BANDWIDTH,
+          ReliableSocketProfile.PATH_RTT, model.getUdpPackageSize());
+      // The experimental options are off unless enabled, and both peers have to enable them.
+      List<String> options = Arrays.asList(model.getRudpOptions().split(Rscc.DELIMITER));
+      // Parity is only sent while segments get lost, as on flaky Wi-Fi.
+      profile.setForwardErrorCorrection(options.contains(OPTION_FORWARD_ERROR_CORRECTION));
+      // A viewer that falls behind holds the sender back instead of having frames dropped.
+      profile.setAdvertisedWindow(options.contains(OPTION_ADVERTISED_WINDOW));
+      // A new session after a key refresh binds the ICE port again while the old one closes.
+      profile.setReuseAddress(options.contains(OPTION_REUSE_ADDRESS));
+      // Measures the path while connecting and tunes the next session to the same host to it.
+      profile.setPathProfiling(options.contains(OPTION_PATH_PROFILING));
+      // Acknowledges input events at once, and fewer framebuffer segments on slow uplinks.
+      profile.setAdaptiveAcks(options.contains(OPTION_ADAPTIVE_ACKS));
+      // Keeps the session when a laptop roams between networks or a NAT maps it to a new port.
+      profile.setConnectionMigration(options.contains(OPTION_CONNECTION_MIGRATION));
 
       String remoteAddressAsString = model.getRemoteClientIpAddress().getHostAddress();
 
@@ -75,10 +102,11 @@ public class RunRudp extends Thread {
         //   model.getRemoteClientPort());
 
         rudpSocket = new ReliableSocket(model.getRemoteClientIpAddress().getHostAddress(),
-            model.getRemoteClientPort(), null, model.getIcePort());
+            model.getRemoteClientPort(), null, model.getIcePort(), profile);
 
         rudpInputStream = rudpSocket.getInputStream();
         rudpOutputStream = rudpSocket.getOutputStream();
+        LOGGER.info("rudp path profile: " + rudpSocket.getPathProfile());
 
         LOGGER.info("Sucessfully connected rudp to " + model.getRemoteClientIpAddress()
             .getHostAddress() + ":" + model.getRemoteClientPort());
@@ -109,7 +137,7 @@ public class RunRudp extends Thread {
 
         //RUDP Server
         LOGGER.info("Create new rudp-server on " + model.getIcePort());
-        rudpServerSocket = new ReliableServerSocket(model.getIcePort());
+        rudpServerSocket = new ReliableServerSocket(model.getIcePort(), 0, null, profile);
         rudpSocket2 = rudpServerSocket.accept();
 
         rudpInputStream = rudpSocket2.getInputStream();
@@ -142,7 +170,7 @@ public class RunRudp extends Thread {
 
         //RUDP Server
         LOGGER.info("Create new rudp-server on " + model.getIcePort());
-        rudpServerSocket = new ReliableServerSocket(model.getIcePort());
+        rudpServerSocket = new ReliableServerSocket(model.getIcePort(), 0, null, profile);
         rudpSocket2 = rudpServerSocket.accept();
         LOGGER.info("Accepted incoming rudp connection from" + rudpSocket2.getInetAddress()
             .getHostAddress());
@@ -185,10 +213,11 @@ public class RunRudp extends Thread {
         // rudpSocket = new ReliableSocket(model.getRemoteClientIpAddress().getHostAddress(),
         //   model.getRemoteClientPort());
         rudpSocket = new ReliableSocket(model.getRemoteClientIpAddress().getHostAddress(),
-            model.getRemoteClientPort(), null, model.getIcePort());
+            model.getRemoteClientPort(), null, model.getIcePort(), profile);
 
         rudpInputStream = rudpSocket.getInputStream();
         rudpOutputStream = rudpSocket.getOutputStream();
+        LOGGER.info("rudp path profile: " + rudpSocket.getPathProfile());
 
         LOGGER.info("Sucessfully connected rudp to " + model.getRemoteClientIpAddress()
             .getHostAddress() + ":" + model.getRemoteClientPort());
@@ -0,0 +1,73 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+/**
+ * The interface implemented by congestion control algorithms.
+ * A congestion controller is driven by the acknowledgment and
+ * loss events of one connection and limits the number of
+ * segments that connection may have in flight.
+ *
+ * @see ReliableSocketProfile#congestionControl()
+ */
+public interface CongestionController {
+  /**
+   * Invoked when previously unacknowledged segments are acknowledged.
+   *
+   * @param acked    the number of newly acknowledged segments.
+   * @param inFlight the number of segments in flight before the acknowledgment;
+   *                 a window much larger than this is not fully used.
+   * @param rtt      a round-trip time sample (ms), or -1 if no valid
+   *                 sample could be taken (Karn's rule).
+   * @param now      the current time (ms).
+   */
+  public void segmentsAcked(int acked, int inFlight, long rtt, long now);
+
+  /**
+   * Invoked when an extended acknowledgment reports that segments
+   * were lost and they are retransmitted.
+   *
+   * @param now the current time (ms).
+   */
+  public void segmentsLost(long now);
+
+  /**
+   * Invoked when the retransmission timer expires.
+   *
+   * @param now the current time (ms).
+   */
+  public void retransmissionTimeout(long now);
+
+  /**
+   * Returns the congestion window (segments).
+   */
+  public int getCongestionWindow();
+}
@@ -0,0 +1,231 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A UDP socket that impairs the datagrams it sends as specified by a
+ * {@link NetworkImpairment}, to test and benchmark rudp over a lossy
+ * link on the loopback interface:
+ * <pre>
+ *   NetworkImpairment link = new NetworkImpairment();
+ *   link.setLoss(0.01);
+ *   link.setDelay(20, 5);
+ *
+ *   ReliableServerSocket server =
+ *       new ReliableServerSocket(new ImpairedDatagramSocket(port, link), 0);
+ *   ReliableSocket client =
+ *       new ReliableSocket(new ImpairedDatagramSocket(link), profile);
+ * </pre>
+ * Only the datagrams sent are impaired, received datagrams are passed
+ * through, so both ends of a connection need an impaired socket to
+ * impair both directions. Delayed datagrams are sent by a timer thread
+ * of the socket.
+ * <p>
+ * The socket has no {@link java.nio.channels.DatagramChannel}, so rudp
+ * sockets attached to it use the datagram packet path.
+ *
+ * @see NetworkImpairment
+ */
+public class ImpairedDatagramSocket extends DatagramSocket {
+  private final ImpairedLink _link;
+  private final ScheduledThreadPoolExecutor _timer;
+
+  /**
+   * Creates an impaired UDP socket bound to any free port.
+   *
+   * @param impairment the impairments of the datagrams sent.
+   * @throws SocketException if the socket could not be opened.
+   */
+  public ImpairedDatagramSocket(NetworkImpairment impairment)
+      throws SocketException {
+    this(new InetSocketAddress(0), impairment);
+  }
+
+  /**
+   * Creates an impaired UDP socket bound to the specified port.
+   *
+   * @param port       the port number, or <code>0</code> to use any free port.
+   * @param impairment the impairments of the datagrams sent.
+   * @throws SocketException if the socket could not be opened.
+   */
+  public ImpairedDatagramSocket(int port, NetworkImpairment impairment)
+      throws SocketException {
+    this(new InetSocketAddress(port), impairment);
+  }
+
+  /**
+   * Creates an impaired UDP socket bound to the specified address.
+   *
+   * @param bindaddr   the local address, or <code>null</code> for an unbound socket.
+   * @param impairment the impairments of the datagrams sent.
+   * @throws SocketException if the socket could not be opened.
+   */
+  public ImpairedDatagramSocket(SocketAddress bindaddr, NetworkImpairment impairment)
+      throws SocketException {
+    super(bindaddr);
+
+    _link = new ImpairedLink(impairment);
+    _timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "ImpairedDatagramSocket");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Sends a datagram through the impaired link. The datagram is
+   * copied, so the packet may be reused as soon as this returns.
+   *
+   * @param p the datagram packet.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void send(DatagramPacket p)
+      throws IOException {
+    if (isClosed()) {
+      throw new SocketException("Socket is closed");
+    }
+
+    DatagramPacket packet;
+    synchronized (p) {
+      byte[] data = Arrays.copyOfRange(p.getData(), p.getOffset(), p.getOffset() + p.getLength());
+      packet = new DatagramPacket(data, data.length, p.getSocketAddress());
+    }
+
+    long wait;
+    int copies;
+    synchronized (_link) {
+      long now = System.nanoTime();
+      long arrival = _link.send(packet.getLength(), now);
+      if (arrival < 0) {
+        return;
+      }
+
+      copies = _link.duplicated() ? 2 : 1;
+      wait = arrival - now;
+    }
+
+    if (wait <= 0) {
+      sendImpl(packet, copies);
+    } else {
+      _timer.schedule(new DeliveryTask(packet, copies), wait, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  public void close() {
+    super.close();
+    _timer.shutdownNow();
+  }
+
+  /**
+   * Returns the impairments of the datagrams sent.
+   */
+  public NetworkImpairment getImpairment() {
+    return _link.getImpairment();
+  }
+
+  /**
+   * Returns the number of datagrams that have been sent through the
+   * link, not counting the ones that were lost or dropped.
+   */
+  public long getSentCount() {
+    return _link.getSentCount();
+  }
+
+  /**
+   * Returns the number of datagrams that have been lost,
+   * independently or in bursts.
+   */
+  public long getLostCount() {
+    return _link.getLostCount();
+  }
+
+  /**
+   * Returns the number of datagrams that have been dropped
+   * because the queue of the bottleneck was full.
+   */
+  public long getDroppedCount() {
+    return _link.getDroppedCount();
+  }
+
+  /**
+   * Returns the number of datagrams that have been reordered.
+   */
+  public long getReorderedCount() {
+    return _link.getReorderedCount();
+  }
+
+  /**
+   * Returns the number of datagrams that have been duplicated.
+   */
+  public long getDuplicatedCount() {
+    return _link.getDuplicatedCount();
+  }
+
+  private void sendImpl(DatagramPacket packet, int copies)
+      throws IOException {
+    for (int i = 0; i < copies; i++) {
+      super.send(packet);
+    }
+  }
+
+  private class DeliveryTask implements Runnable {
+    private DatagramPacket _packet;
+    private int _copies;
+
+    public DeliveryTask(DatagramPacket packet, int copies) {
+      _packet = packet;
+      _copies = copies;
+    }
+
+    public void run() {
+      try {
+        sendImpl(_packet, _copies);
+      } catch (IOException xcp) {
+        if (!isClosed()) {
+          xcp.printStackTrace();
+        }
+      }
+    }
+  }
+}
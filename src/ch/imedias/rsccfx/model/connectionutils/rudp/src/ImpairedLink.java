@@ -0,0 +1,170 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import java.util.Random;
+
+/**
+ * The model of a link impaired as specified by a {@link NetworkImpairment}.
+ * It decides the fate of the datagrams sent over the link, in the order
+ * they are sent, and tells when they arrive at the other end.
+ *
+ * @see ImpairedDatagramSocket
+ * @see NetworkSimulator
+ */
+class ImpairedLink {
+  private final NetworkImpairment _impairment;
+  private final Random _random;
+  /*
+   * State of the link, guarded by the link. The bottleneck is busy
+   * until the departure time, and datagrams that are not reordered
+   * arrive no earlier than the last one did, so they stay in order.
+   */
+  private boolean _burst; /* The link is in the bad state of the burst loss model */
+  private long _departure; /* ns */
+  private long _lastArrival; /* ns */
+  private long _sentCount;
+  private long _lostCount;
+  private long _droppedCount;
+  private long _reorderedCount;
+  private long _duplicatedCount;
+
+  ImpairedLink(NetworkImpairment impairment) {
+    if (impairment == null) {
+      throw new NullPointerException("impairment");
+    }
+
+    _impairment = impairment;
+    _random = new Random(impairment.seed());
+  }
+
+  /**
+   * Sends a datagram over the link.
+   *
+   * @param length the length of the datagram.
+   * @param now    the current time (ns).
+   * @return the time at which the datagram arrives (ns), or
+   * <code>-1</code> if it is lost or dropped.
+   */
+  synchronized long send(int length, long now) {
+    if (lost()) {
+      _lostCount++;
+      return -1;
+    }
+
+    long departure = now;
+    long bandwidth = _impairment.bandwidth();
+    if (bandwidth > 0) {
+      long backlog = Math.max(_departure - now, 0) * bandwidth / 1000000000L;
+      if (backlog + length > _impairment.queueSize()) {
+        _droppedCount++;
+        return -1;
+      }
+
+      _departure = Math.max(_departure, now) + length * 1000000000L / bandwidth;
+      departure = _departure;
+    }
+
+    long arrival = departure;
+    if (_impairment.reordering() > 0 && _random.nextDouble() < _impairment.reordering()) {
+      _reorderedCount++;
+    } else {
+      arrival = Math.max(departure + delay(), _lastArrival);
+      _lastArrival = arrival;
+    }
+
+    _sentCount++;
+    return arrival;
+  }
+
+  /**
+   * Decides whether the datagram that has just been sent is duplicated.
+   */
+  synchronized boolean duplicated() {
+    if (_impairment.duplication() > 0 && _random.nextDouble() < _impairment.duplication()) {
+      _duplicatedCount++;
+      return true;
+    }
+
+    return false;
+  }
+
+  NetworkImpairment getImpairment() {
+    return _impairment;
+  }
+
+  synchronized long getSentCount() {
+    return _sentCount;
+  }
+
+  synchronized long getLostCount() {
+    return _lostCount;
+  }
+
+  synchronized long getDroppedCount() {
+    return _droppedCount;
+  }
+
+  synchronized long getReorderedCount() {
+    return _reorderedCount;
+  }
+
+  synchronized long getDuplicatedCount() {
+    return _duplicatedCount;
+  }
+
+  /**
+   * Decides whether the next datagram is lost, after moving the burst
+   * loss model to its next state.
+   */
+  private boolean lost() {
+    if (_burst) {
+      _burst = _random.nextDouble() >= _impairment.burstEnd();
+    } else if (_impairment.burstStart() > 0) {
+      _burst = _random.nextDouble() < _impairment.burstStart();
+    }
+
+    return _burst || (_impairment.loss() > 0 && _random.nextDouble() < _impairment.loss());
+  }
+
+  /**
+   * Draws the delay of the next datagram (ns).
+   */
+  private long delay() {
+    long delay = _impairment.delay() * 1000000L;
+    int jitter = _impairment.jitter();
+    if (jitter > 0) {
+      delay += (long) ((2 * _random.nextDouble() - 1) * jitter * 1000000L);
+    }
+
+    return delay;
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+/**
+ * This class specifies the impairments an {@link ImpairedDatagramSocket}
+ * applies to the datagrams it sends, to reproduce a lossy link on the
+ * loopback interface. A new instance impairs nothing.
+ * <p>
+ * The impairments are applied in the order of a real link: datagrams are
+ * lost, queued at the bottleneck if the bandwidth is capped, delayed,
+ * and then possibly duplicated. Datagrams stay in order unless they are
+ * reordered, even with a delay jitter.
+ * <p>
+ * The same impairments apply to the links of a {@link NetworkSimulator},
+ * in virtual time.
+ *
+ * @see ImpairedDatagramSocket
+ * @see NetworkSimulator
+ */
+public class NetworkImpairment {
+  public final static int QUEUE_SIZE = 64 * 1024; /* bytes */
+  private double _loss;
+  private double _burstStart;
+  private double _burstEnd = 1.0;
+  private int _delay;
+  private int _jitter;
+  private double _reordering;
+  private double _duplication;
+  private long _bandwidth;
+  private int _queueSize = QUEUE_SIZE;
+  private long _seed = System.nanoTime();
+
+  /**
+   * Returns the probability that a datagram is lost.
+   */
+  public double loss() {
+    return _loss;
+  }
+
+  /**
+   * Loses datagrams independently of each other.
+   *
+   * @param loss the probability that a datagram is lost.
+   */
+  public void setLoss(double loss) {
+    checkProbability("loss", loss);
+    _loss = loss;
+  }
+
+  /**
+   * Returns the probability that a burst of losses starts after a datagram.
+   */
+  public double burstStart() {
+    return _burstStart;
+  }
+
+  /**
+   * Returns the probability that a burst of losses ends after a datagram.
+   */
+  public double burstEnd() {
+    return _burstEnd;
+  }
+
+  /**
+   * Loses datagrams in bursts, following the model of Gilbert: the link
+   * switches between a good state and a bad state, in which every datagram
+   * is lost. Bursts are <code>1 / end</code> datagrams long on average.
+   *
+   * @param start the probability to switch to the bad state after a datagram.
+   * @param end   the probability to switch back to the good state after a
+   *              datagram lost in a burst, greater than 0.
+   */
+  public void setBurstLoss(double start, double end) {
+    checkProbability("start", start);
+    checkProbability("end", end);
+    if (end == 0) {
+      throw new IllegalArgumentException("end");
+    }
+
+    _burstStart = start;
+    _burstEnd = end;
+  }
+
+  /**
+   * Returns the one-way delay of the datagrams (ms).
+   */
+  public int delay() {
+    return _delay;
+  }
+
+  /**
+   * Returns the maximum deviation of the delay (ms).
+   */
+  public int jitter() {
+    return _jitter;
+  }
+
+  /**
+   * Delays the datagrams.
+   *
+   * @param delay  the one-way delay (ms).
+   * @param jitter the maximum deviation of the delay (ms), up to the delay.
+   *               The delays are spread uniformly around the mean.
+   */
+  public void setDelay(int delay, int jitter) {
+    if (delay < 0) {
+      throw new IllegalArgumentException("delay");
+    }
+    if (jitter < 0 || jitter > delay) {
+      throw new IllegalArgumentException("jitter");
+    }
+
+    _delay = delay;
+    _jitter = jitter;
+  }
+
+  /**
+   * Returns the probability that a datagram is reordered.
+   */
+  public double reordering() {
+    return _reordering;
+  }
+
+  /**
+   * Reorders datagrams. A reordered datagram is not delayed and
+   * overtakes the datagrams that are still delayed, so reordering
+   * requires a delay.
+   *
+   * @param reordering the probability that a datagram is reordered.
+   */
+  public void setReordering(double reordering) {
+    checkProbability("reordering", reordering);
+    _reordering = reordering;
+  }
+
+  /**
+   * Returns the probability that a datagram is duplicated.
+   */
+  public double duplication() {
+    return _duplication;
+  }
+
+  /**
+   * Duplicates datagrams. Both copies arrive at the same time.
+   *
+   * @param duplication the probability that a datagram is duplicated.
+   */
+  public void setDuplication(double duplication) {
+    checkProbability("duplication", duplication);
+    _duplication = duplication;
+  }
+
+  /**
+   * Returns the bandwidth of the link (bytes/s), or 0 if it is not capped.
+   */
+  public long bandwidth() {
+    return _bandwidth;
+  }
+
+  /**
+   * Returns the size of the queue in front of the bottleneck (bytes).
+   */
+  public int queueSize() {
+    return _queueSize;
+  }
+
+  /**
+   * Caps the bandwidth of the link. Datagrams are sent one after the
+   * other at the given rate, those that do not fit in the queue of the
+   * bottleneck any more are dropped.
+   *
+   * @param bandwidth the bandwidth (bytes/s), or 0 for no cap.
+   * @param queueSize the size of the queue (bytes).
+   */
+  public void setBandwidth(long bandwidth, int queueSize) {
+    if (bandwidth < 0) {
+      throw new IllegalArgumentException("bandwidth");
+    }
+    if (queueSize <= 0) {
+      throw new IllegalArgumentException("queueSize");
+    }
+
+    _bandwidth = bandwidth;
+    _queueSize = queueSize;
+  }
+
+  /**
+   * Returns the seed of the random impairments.
+   */
+  public long seed() {
+    return _seed;
+  }
+
+  /**
+   * Sets the seed of the random impairments, so that a run can be
+   * repeated. Sockets sharing an impairment draw from the same seed.
+   *
+   * @param seed the seed.
+   */
+  public void setSeed(long seed) {
+    _seed = seed;
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("[");
+    sb.append(_loss).append(", ");
+    sb.append(_burstStart).append(", ");
+    sb.append(_burstEnd).append(", ");
+    sb.append(_delay).append(", ");
+    sb.append(_jitter).append(", ");
+    sb.append(_reordering).append(", ");
+    sb.append(_duplication).append(", ");
+    sb.append(_bandwidth).append(", ");
+    sb.append(_queueSize).append(", ");
+    sb.append(_seed);
+    sb.append("]");
+    return sb.toString();
+  }
+
+  private void checkProbability(String param, double value) {
+    if (!(value >= 0 && value <= 1)) {
+      throw new IllegalArgumentException(param);
+    }
+  }
+}
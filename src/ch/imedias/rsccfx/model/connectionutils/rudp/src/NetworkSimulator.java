@@ -0,0 +1,527 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.BufferPool;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Clock;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Segment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.TimerWheel;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.DatagramSocketImpl;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketOptions;
+import java.nio.ByteBuffer;
+import java.util.PriorityQueue;
+
+/**
+ * A discrete-event simulator that runs rudp connections over impaired
+ * links in virtual time, on the calling thread. The sockets of the
+ * simulator have no receiver thread and their timers are driven by a
+ * {@link TimerWheel} on the virtual clock, so a retransmission timeout
+ * or a keep-alive period elapses as soon as nothing else is due, and
+ * a run with a given seed always gives the same result:
+ * <pre>
+ *   NetworkSimulator sim = new NetworkSimulator();
+ *   NetworkImpairment link = new NetworkImpairment();
+ *   link.setLoss(0.05);
+ *   link.setDelay(50, 10);
+ *
+ *   ReliableSocket[] conn = sim.openConnection(new ReliableSocketProfile(),
+ *       new ReliableSocketProfile(), link, link);
+ *   sim.run(10000);
+ * </pre>
+ * Applications drive the sockets through non-blocking channels, from
+ * tasks and channel listeners run by the simulator, see
+ * {@link #schedule(Runnable, long)} and
+ * {@link #addListener(ReliableDatagramChannel, ReliableChannelListener)}.
+ * Nothing may block the simulator thread, so the streams of the sockets
+ * cannot be used.
+ * <p>
+ * This class is not thread-safe, the simulator and its sockets must
+ * only be used by the thread that runs it.
+ *
+ * @see NetworkImpairment
+ */
+public class NetworkSimulator {
+  public final static long START_TIME = 1000; /* ms, no timestamp is zero */
+  private final static int PORT = 7000;
+
+  private final Clock _clock = new VirtualClock();
+  private final TimerWheel _wheel;
+  private final PriorityQueue _events = new PriorityQueue();
+  private long _time = START_TIME * 1000000L; /* ns */
+  private long _eventCount; /* Events due at the same time run in the order they were scheduled */
+  private int _addressCount;
+  private boolean _running;
+  private boolean _stopped;
+
+  /**
+   * Creates a simulator without connections.
+   */
+  public NetworkSimulator() {
+    _wheel = new TimerWheel(_clock);
+  }
+
+  /**
+   * Returns the virtual clock of the simulator.
+   */
+  public Clock getClock() {
+    return _clock;
+  }
+
+  /**
+   * Returns the virtual time (ms).
+   */
+  public long currentTimeMillis() {
+    return _clock.currentTimeMillis();
+  }
+
+  /**
+   * Opens a connection between two new sockets. The client sends its
+   * request to connect right away, and the connection is established
+   * while the simulator runs, see
+   * {@link ReliableSocket#addStateListener(ReliableSocketStateListener)}.
+   *
+   * @param clientProfile the profile of the client socket.
+   * @param serverProfile the profile of the server socket.
+   * @param forward       the impairments from the client to the server.
+   * @param reverse       the impairments from the server to the client.
+   * @return the client and the server sockets.
+   * @throws IOException if an I/O error occurs.
+   */
+  public ReliableSocket[] openConnection(ReliableSocketProfile clientProfile,
+                                         ReliableSocketProfile serverProfile,
+                                         NetworkImpairment forward,
+                                         NetworkImpairment reverse)
+      throws IOException {
+    SimulatedSocket client = new SimulatedSocket(clientProfile, nextAddress());
+    SimulatedSocket server = new SimulatedSocket(serverProfile, nextAddress());
+    client._link = new ImpairedLink(forward);
+    client._peer = server;
+    server._link = new ImpairedLink(reverse);
+    server._peer = client;
+
+    server._endpoint = client.getLocalSocketAddress();
+    client.sendConnectionRequest(server.getLocalSocketAddress());
+
+    return new ReliableSocket[] {client, server};
+  }
+
+  /**
+   * Runs a task on the simulator thread after a delay.
+   *
+   * @param task  the task.
+   * @param delay the delay (ms).
+   */
+  public void schedule(Runnable task, long delay) {
+    if (task == null) {
+      throw new NullPointerException("task");
+    }
+
+    if (delay < 0) {
+      throw new IllegalArgumentException("delay");
+    }
+
+    enqueue(task, _time + delay * 1000000L);
+  }
+
+  /**
+   * Adds a readiness listener to the channel of a socket of this
+   * simulator. The events are not invoked while the socket handles
+   * a segment, but as tasks of the simulator right after it, so the
+   * listener may read and write.
+   *
+   * @param channel  the channel.
+   * @param listener the listener.
+   */
+  public void addListener(ReliableDatagramChannel channel, ReliableChannelListener listener) {
+    if (listener == null) {
+      throw new NullPointerException("listener");
+    }
+
+    channel.addListener(new DeferredListener(listener));
+  }
+
+  /**
+   * Runs the simulation for the given virtual time, or until
+   * {@link #stop()} is called by one of its tasks.
+   *
+   * @param duration the virtual time (ms).
+   */
+  public void run(long duration) {
+    if (duration < 0) {
+      throw new IllegalArgumentException("duration");
+    }
+
+    if (_running) {
+      throw new IllegalStateException("already running");
+    }
+
+    _running = true;
+    _stopped = false;
+    long end = _time + duration * 1000000L;
+
+    try {
+      while (!_stopped) {
+        long next = end;
+        Event event = (Event) _events.peek();
+        if (event != null) {
+          next = Math.min(next, event._time);
+        }
+
+        long expiration = _wheel.nextExpirationTime();
+        if (expiration >= 0) {
+          next = Math.min(next, expiration * 1000000L);
+        }
+
+        _time = Math.max(_time, next);
+        _wheel.expireTimers();
+
+        while (!_stopped && (event = (Event) _events.peek()) != null &&
+            event._time <= _time) {
+          _events.poll();
+          event._task.run();
+        }
+
+        if (_time >= end) {
+          break;
+        }
+      }
+    } finally {
+      _running = false;
+    }
+  }
+
+  /**
+   * Stops the simulation once the current task is done.
+   */
+  public void stop() {
+    _stopped = true;
+  }
+
+  /**
+   * Returns the number of events that are waiting to run,
+   * not counting the timers of the sockets.
+   */
+  public int getPendingEventCount() {
+    return _events.size();
+  }
+
+  private void enqueue(Runnable task, long time) {
+    _events.add(new Event(task, time, _eventCount++));
+  }
+
+  /**
+   * Sends a segment over the link of a socket, to its peer.
+   *
+   * @param sock the sending socket.
+   * @param s    the segment.
+   */
+  private void transmit(SimulatedSocket sock, Segment s) {
+    byte[] data;
+    synchronized (s) {
+      ByteBuffer buffer = s.getByteBuffer();
+      if (buffer == null) {
+        return;
+      }
+      data = new byte[buffer.remaining()];
+      buffer.duplicate().get(data);
+    }
+
+    long arrival = sock._link.send(data.length, _time);
+    if (arrival < 0) {
+      return;
+    }
+
+    Delivery delivery = new Delivery(sock._peer, data);
+    enqueue(delivery, arrival);
+    if (sock._link.duplicated()) {
+      enqueue(delivery, arrival);
+    }
+  }
+
+  private InetSocketAddress nextAddress()
+      throws IOException {
+    int n = ++_addressCount;
+    InetAddress addr = InetAddress.getByAddress(
+        new byte[] {10, (byte) (n >> 16), (byte) (n >> 8), (byte) n});
+    return new InetSocketAddress(addr, PORT);
+  }
+
+  private class VirtualClock implements Clock {
+    public long currentTimeMillis() {
+      return _time / 1000000L;
+    }
+
+    public long nanoTime() {
+      return _time;
+    }
+  }
+
+  private static class Event implements Comparable {
+    private Runnable _task;
+    private long _time; /* ns */
+    private long _seq;
+
+    public Event(Runnable task, long time, long seq) {
+      _task = task;
+      _time = time;
+      _seq = seq;
+    }
+
+    public int compareTo(Object o) {
+      Event e = (Event) o;
+      if (_time != e._time) {
+        return (_time < e._time) ? -1 : 1;
+      }
+      return (_seq < e._seq) ? -1 : (_seq > e._seq) ? 1 : 0;
+    }
+  }
+
+  /**
+   * Hands a datagram over to the socket at the end of a link. It is
+   * received in a buffer of the socket's pool, as from a datagram
+   * channel, so the segment must be released like a received one.
+   */
+  private class Delivery implements Runnable {
+    private SimulatedSocket _sock;
+    private byte[] _data;
+
+    public Delivery(SimulatedSocket sock, byte[] data) {
+      _sock = sock;
+      _data = data;
+    }
+
+    public void run() {
+      if (_sock._socketClosed) {
+        return;
+      }
+
+      BufferPool pool = _sock.recvBufferPool();
+      ByteBuffer buffer = pool.acquire();
+      if (_data.length >= buffer.capacity()) {
+        pool.release(buffer); /* Larger than the maximum segment size */
+        return;
+      }
+
+      buffer.put(_data);
+      buffer.flip();
+      Segment segment;
+      try {
+        segment = Segment.parse(buffer, pool);
+      } catch (IllegalArgumentException xcp) {
+        return; /* Drop malformed datagram */
+      }
+
+      _sock.handleReceivedSegment(segment);
+    }
+  }
+
+  /**
+   * A socket without a receiver thread, whose segments are
+   * sent over an impaired link to its peer.
+   */
+  private class SimulatedSocket extends ReliableSocket {
+    private SimulatedSocket _peer;
+    private ImpairedLink _link;
+    private boolean _socketClosed;
+
+    public SimulatedSocket(ReliableSocketProfile profile, InetSocketAddress address)
+        throws SocketException {
+      super(new VirtualDatagramSocket(address), profile, _wheel);
+    }
+
+    protected void startReceiver() {
+      /* Segments are handed over by the simulator */
+    }
+
+    protected void sendSegmentImpl(Segment s) {
+      if (!_socketClosed) {
+        transmit(this, s);
+      }
+    }
+
+    protected Segment receiveSegmentImpl() {
+      return null;
+    }
+
+    protected void closeSocket() {
+      _socketClosed = true;
+      super.closeSocket();
+    }
+  }
+
+  /**
+   * Delays the events of a channel until the socket is done
+   * with the segment that caused them.
+   */
+  private class DeferredListener implements ReliableChannelListener {
+    private ReliableChannelListener _listener;
+    private boolean _readable; /* A readable event is scheduled */
+    private boolean _writable; /* A writable event is scheduled */
+
+    public DeferredListener(ReliableChannelListener listener) {
+      _listener = listener;
+    }
+
+    public void channelReadable(final ReliableDatagramChannel channel) {
+      if (_readable) {
+        return;
+      }
+
+      _readable = true;
+      schedule(new Runnable() {
+        public void run() {
+          _readable = false;
+          _listener.channelReadable(channel);
+        }
+      }, 0);
+    }
+
+    public void channelWritable(final ReliableDatagramChannel channel) {
+      if (_writable) {
+        return;
+      }
+
+      _writable = true;
+      schedule(new Runnable() {
+        public void run() {
+          _writable = false;
+          _listener.channelWritable(channel);
+        }
+      }, 0);
+    }
+  }
+
+  /**
+   * A UDP socket that is bound to a virtual address
+   * but never sends or receives anything.
+   */
+  private static class VirtualDatagramSocket extends DatagramSocket {
+    public VirtualDatagramSocket(InetSocketAddress address)
+        throws SocketException {
+      super(new VirtualDatagramSocketImpl());
+      bind(address);
+    }
+  }
+
+  private static class VirtualDatagramSocketImpl extends DatagramSocketImpl {
+    private InetAddress _address;
+    private Object _recvBufferSize = Integer.valueOf(NetworkImpairment.QUEUE_SIZE);
+    private Object _sendBufferSize = Integer.valueOf(NetworkImpairment.QUEUE_SIZE);
+
+    protected void create() {
+    }
+
+    protected void bind(int lport, InetAddress laddr) {
+      localPort = lport;
+      _address = laddr;
+    }
+
+    protected void send(DatagramPacket p)
+        throws IOException {
+      throw new IOException("virtual socket");
+    }
+
+    protected int peek(InetAddress i)
+        throws IOException {
+      throw new IOException("virtual socket");
+    }
+
+    protected int peekData(DatagramPacket p)
+        throws IOException {
+      throw new IOException("virtual socket");
+    }
+
+    protected void receive(DatagramPacket p)
+        throws IOException {
+      throw new IOException("virtual socket");
+    }
+
+    @Deprecated
+    protected void setTTL(byte ttl) {
+    }
+
+    @Deprecated
+    protected byte getTTL() {
+      return 0;
+    }
+
+    protected void setTimeToLive(int ttl) {
+    }
+
+    protected int getTimeToLive() {
+      return 0;
+    }
+
+    protected void join(InetAddress inetaddr) {
+    }
+
+    protected void leave(InetAddress inetaddr) {
+    }
+
+    protected void joinGroup(SocketAddress mcastaddr, NetworkInterface netIf) {
+    }
+
+    protected void leaveGroup(SocketAddress mcastaddr, NetworkInterface netIf) {
+    }
+
+    protected void close() {
+    }
+
+    public void setOption(int optID, Object value) {
+      if (optID == SocketOptions.SO_RCVBUF) {
+        _recvBufferSize = value;
+      } else if (optID == SocketOptions.SO_SNDBUF) {
+        _sendBufferSize = value;
+      }
+    }
+
+    public Object getOption(int optID) {
+      switch (optID) {
+        case SocketOptions.SO_BINDADDR:
+          return _address;
+        case SocketOptions.SO_RCVBUF:
+          return _recvBufferSize;
+        case SocketOptions.SO_SNDBUF:
+          return _sendBufferSize;
+        default:
+          return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.PathMtuDiscovery;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Segment;
+
+/**
+ * This class describes a class of network paths, such as a LAN or a
+ * satellite link, with the rudp parameters that suit it.
+ * <p>
+ * A socket with path profiling sends a short train of probes once it
+ * is connected, and picks the class from the round-trip times and the
+ * loss of the probes. The window, segment and timer parameters of a
+ * connection are negotiated in the SYN segment, so the class is used
+ * for the next connections to the same host, whose SYN segment proposes
+ * the parameters of the class. The congestion control algorithm, which
+ * is not negotiated, is also switched on the connection that measured
+ * the path.
+ *
+ * @see ReliableSocketProfile#setPathProfiling(boolean)
+ * @see ReliableSocket#getPathProfile()
+ */
+public class PathProfile {
+  public final static int LAN_RTT = 10;          /* ms, largest round-trip time on a LAN */
+  public final static int SATELLITE_RTT = 400;   /* ms, smallest round-trip time to a geostationary satellite */
+  public final static int MOBILE_JITTER = 40;    /* ms, round-trip time spread of a radio link */
+  public final static double MOBILE_LOSS = 0.1;  /* Loss rate of a radio link */
+
+  /**
+   * A local network: short timers, and windows for a gigabit link.
+   */
+  public final static PathProfile LAN = new PathProfile("LAN",
+      125000000, 2, ReliableSocketProfile.NULL_SEGMENT_TIMEOUT, 100, 100,
+      ReliableSocketProfile.CONGESTION_CONTROL_CUBIC, false);
+
+  /**
+   * A wired broadband path: the defaults, with timers for
+   * round-trip times of some tens of milliseconds.
+   */
+  public final static PathProfile BROADBAND = new PathProfile("BROADBAND",
+      ReliableSocketProfile.PATH_BANDWIDTH, ReliableSocketProfile.PATH_RTT,
+      ReliableSocketProfile.NULL_SEGMENT_TIMEOUT, 300, 200,
+      ReliableSocketProfile.CONGESTION_CONTROL_CUBIC, false);
+
+  /**
+   * A mobile or wireless path with loss and jitter: forward error
+   * correction, and a congestion control that does not take every
+   * loss for congestion.
+   */
+  public final static PathProfile MOBILE = new PathProfile("MOBILE",
+      2500000, 100, ReliableSocketProfile.NULL_SEGMENT_TIMEOUT, 1000, 300,
+      ReliableSocketProfile.CONGESTION_CONTROL_BBR, true);
+
+  /**
+   * A satellite path: long timers, and windows for a
+   * bandwidth-delay product of several megabytes.
+   */
+  public final static PathProfile SATELLITE = new PathProfile("SATELLITE",
+      6250000, 600, 2 * ReliableSocketProfile.NULL_SEGMENT_TIMEOUT, 2000, 300,
+      ReliableSocketProfile.CONGESTION_CONTROL_BBR, false);
+
+  private final String _name;
+  private final long _bandwidth;
+  private final int _rtt;
+  private final int _nullSegmentTimeout;
+  private final int _retransmissionTimeout;
+  private final int _cumulativeAckTimeout;
+  private final int _congestionControl;
+  private final boolean _forwardErrorCorrection;
+
+  private PathProfile(String name,
+                      long bandwidth,
+                      int rtt,
+                      int nullSegmentTimeout,
+                      int retransmissionTimeout,
+                      int cumulativeAckTimeout,
+                      int congestionControl,
+                      boolean forwardErrorCorrection) {
+    _name = name;
+    _bandwidth = bandwidth;
+    _rtt = rtt;
+    _nullSegmentTimeout = nullSegmentTimeout;
+    _retransmissionTimeout = retransmissionTimeout;
+    _cumulativeAckTimeout = cumulativeAckTimeout;
+    _congestionControl = congestionControl;
+    _forwardErrorCorrection = forwardErrorCorrection;
+  }
+
+  /**
+   * Picks the class of a path from the round-trip times and the loss
+   * measured by a probe train. Long round-trip times make a satellite
+   * path, whatever the loss; loss or jitter make a mobile path.
+   *
+   * @param minRtt   the smallest round-trip time (ms), or -1 if unknown.
+   * @param maxRtt   the largest round-trip time (ms), or -1 if unknown.
+   * @param lossRate the rate of lost probes.
+   * @return the class of the path.
+   */
+  public static PathProfile classify(long minRtt, long maxRtt, double lossRate) {
+    if (minRtt >= SATELLITE_RTT) {
+      return SATELLITE;
+    }
+
+    if (minRtt < 0 || lossRate >= MOBILE_LOSS || maxRtt - minRtt >= MOBILE_JITTER) {
+      return MOBILE;
+    }
+
+    if (minRtt < LAN_RTT) {
+      return LAN;
+    }
+
+    return BROADBAND;
+  }
+
+  /**
+   * Returns the name of the class.
+   */
+  public String name() {
+    return _name;
+  }
+
+  /**
+   * Returns the bandwidth (bytes/s) the windows are sized for.
+   */
+  public long bandwidth() {
+    return _bandwidth;
+  }
+
+  /**
+   * Returns the round-trip time (ms) the windows are sized for.
+   */
+  public int roundTripTime() {
+    return _rtt;
+  }
+
+  /**
+   * Returns the congestion control algorithm.
+   */
+  public int congestionControl() {
+    return _congestionControl;
+  }
+
+  /**
+   * Returns true if forward error correction is proposed on the path.
+   */
+  public boolean forwardErrorCorrection() {
+    return _forwardErrorCorrection;
+  }
+
+  /**
+   * Creates a profile with the parameters of this class. The protocol
+   * version, the maximum segment size, the retransmission and acknowledgment
+   * limits and the options are taken from the given profile; forward error
+   * correction is proposed if either profile proposes it.
+   *
+   * @param profile the profile to start from.
+   * @return the profile for a path of this class.
+   */
+  public ReliableSocketProfile createProfile(ReliableSocketProfile profile) {
+    int maxWindowSize = (profile.version() >= Segment.RUDP_VERSION_2) ?
+        ReliableSocketProfile.MAX_WINDOW_SIZE : 255;
+    int window = Math.min(ReliableSocketProfile.windowSize(_bandwidth, _rtt,
+        Math.min(profile.maxSegmentSize(), PathMtuDiscovery.ETHERNET_SEGMENT_SIZE)),
+        maxWindowSize);
+
+    ReliableSocketProfile p = new ReliableSocketProfile(
+        profile.version(),
+        window,
+        window,
+        profile.maxSegmentSize(),
+        window,
+        profile.maxRetrans(),
+        profile.maxCumulativeAcks(),
+        profile.maxOutOfSequence(),
+        profile.maxAutoReset(),
+        _nullSegmentTimeout,
+        _retransmissionTimeout,
+        _cumulativeAckTimeout);
+
+    p.setLocalOptions(profile);
+    p.setCongestionControl(_congestionControl);
+    p.setForwardErrorCorrection(profile.forwardErrorCorrection() || _forwardErrorCorrection);
+    p.setMultiplexedStreams(profile.multiplexedStreams());
+    p.setAdvertisedWindow(profile.advertisedWindow());
+    p.setConnectionMigration(profile.connectionMigration());
+    return p;
+  }
+
+  public String toString() {
+    return _name;
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import java.io.Closeable;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectionKey;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A multiplexor of non-blocking {@link ReliableDatagramChannel}s,
+ * which lets a single thread drive many rudp connections, much
+ * like a {@link java.nio.channels.Selector}.
+ * <p>
+ * Readiness is level-triggered: a selection checks every registered
+ * channel and selects those that are ready for one of their interest
+ * operations. The selecting thread parks until a channel signals that
+ * it may have become ready, or until the pacer of a channel that
+ * waits to write lets the next segment through.
+ * <p>
+ * A closed or failed channel is selected as ready, so that the
+ * read or write that follows reports the error.
+ *
+ * @see ReliableDatagramChannel
+ */
+public class ReliableChannelSelector implements ReliableChannelListener, Closeable {
+  public static final int OP_READ = SelectionKey.OP_READ;
+  public static final int OP_WRITE = SelectionKey.OP_WRITE;
+
+  private ConcurrentHashMap _keys = new ConcurrentHashMap(); /* Channel to key */
+  private Set _selectedKeys = new HashSet();
+  private volatile Thread _selector; /* Thread parked in a selection */
+  private volatile boolean _wakeup = false;
+  private volatile boolean _closed = false;
+
+  /**
+   * Registers a channel with this selector. If the channel is
+   * already registered, its interest set and attachment are changed.
+   *
+   * @param channel    the channel, in non-blocking mode.
+   * @param ops        the interest set, a combination of
+   *                   {@link #OP_READ} and {@link #OP_WRITE}.
+   * @param attachment the object to attach to the key, may be null.
+   * @return the key of the channel.
+   */
+  public Key register(ReliableDatagramChannel channel, int ops, Object attachment) {
+    if (_closed) {
+      throw new ClosedSelectorException();
+    }
+
+    if (channel.isBlocking()) {
+      throw new IllegalBlockingModeException();
+    }
+
+    Key key = new Key(channel, ops, attachment);
+    Key prev = (Key) _keys.putIfAbsent(channel, key);
+    if (prev != null && prev.isValid()) {
+      prev.interestOps(ops);
+      prev.attach(attachment);
+      return prev;
+    }
+
+    if (prev != null) {
+      _keys.put(channel, key);
+    }
+
+    channel.addListener(this);
+    wakeup();
+    return key;
+  }
+
+  /**
+   * Returns the keys of the registered channels.
+   */
+  public Set keys() {
+    return Collections.unmodifiableSet(new HashSet(_keys.values()));
+  }
+
+  /**
+   * Returns the selected keys. Keys are removed from this set by
+   * the caller once their channels have been handled; it must only
+   * be used by the selecting thread.
+   */
+  public Set selectedKeys() {
+    return _selectedKeys;
+  }
+
+  /**
+   * Selects the ready channels without blocking.
+   *
+   * @return the number of keys whose ready set was updated.
+   */
+  public int selectNow() {
+    return select(-1);
+  }
+
+  /**
+   * Selects the ready channels, blocking until at least one channel
+   * is selected, {@link #wakeup()} is invoked or the thread is
+   * interrupted.
+   *
+   * @return the number of keys whose ready set was updated.
+   */
+  public int select() {
+    return select(0);
+  }
+
+  /**
+   * Selects the ready channels, blocking until at least one channel
+   * is selected, {@link #wakeup()} is invoked, the thread is
+   * interrupted or the timeout expires.
+   *
+   * @param timeout the timeout (ms), 0 to block indefinitely
+   *                or a negative value not to block at all.
+   * @return the number of keys whose ready set was updated.
+   */
+  public int select(long timeout) {
+    long deadline = System.nanoTime() + timeout * 1000000L;
+
+    while (true) {
+      if (_closed) {
+        throw new ClosedSelectorException();
+      }
+
+      /*
+       * The selecting thread is published before checking the channels,
+       * so it cannot miss a signal that comes after the check.
+       */
+      _selector = Thread.currentThread();
+      try {
+        long wait = Long.MAX_VALUE; /* ns */
+        int n = 0;
+
+        Iterator it = _keys.values().iterator();
+        while (it.hasNext()) {
+          Key key = (Key) it.next();
+          ReliableDatagramChannel channel = key.channel();
+          if (!key.isValid()) {
+            _keys.remove(channel, key);
+            _selectedKeys.remove(key);
+            channel.removeListener(this);
+            continue;
+          }
+
+          int interestOps = key.interestOps();
+          int readyOps = 0;
+          if ((interestOps & OP_READ) != 0 && channel.isReadable()) {
+            readyOps |= OP_READ;
+          }
+
+          if ((interestOps & OP_WRITE) != 0) {
+            if (channel.isWritable()) {
+              readyOps |= OP_WRITE;
+            } else {
+              long delay = channel.writeDelay();
+              if (delay > 0) {
+                wait = Math.min(wait, delay);
+              }
+            }
+          }
+
+          if (readyOps == 0) {
+            continue;
+          }
+
+          if (_selectedKeys.add(key)) {
+            key._readyOps = readyOps;
+            n++;
+          } else if ((key._readyOps | readyOps) != key._readyOps) {
+            key._readyOps |= readyOps;
+            n++;
+          }
+        }
+
+        if (n > 0 || _wakeup || timeout < 0 || Thread.currentThread().isInterrupted()) {
+          _wakeup = false;
+          return n;
+        }
+
+        if (timeout > 0) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            return 0;
+          }
+          wait = Math.min(wait, remaining);
+        }
+
+        if (wait == Long.MAX_VALUE) {
+          LockSupport.park(this);
+        } else {
+          LockSupport.parkNanos(this, wait);
+        }
+      } finally {
+        _selector = null;
+      }
+    }
+  }
+
+  /**
+   * Causes the selection in progress, or else the next one,
+   * to return right away.
+   */
+  public void wakeup() {
+    _wakeup = true;
+    LockSupport.unpark(_selector);
+  }
+
+  public boolean isOpen() {
+    return !_closed;
+  }
+
+  /**
+   * Closes this selector and cancels its keys. The channels
+   * themselves are not closed.
+   */
+  public void close() {
+    if (_closed) {
+      return;
+    }
+
+    _closed = true;
+
+    Iterator it = _keys.values().iterator();
+    while (it.hasNext()) {
+      Key key = (Key) it.next();
+      key.cancel();
+      key.channel().removeListener(this);
+    }
+    _keys.clear();
+
+    wakeup();
+  }
+
+  public void channelReadable(ReliableDatagramChannel channel) {
+    LockSupport.unpark(_selector);
+  }
+
+  public void channelWritable(ReliableDatagramChannel channel) {
+    LockSupport.unpark(_selector);
+  }
+
+  /**
+   * The registration of a channel with a selector.
+   */
+  public class Key {
+    private final ReliableDatagramChannel _channel;
+    private volatile int _interestOps;
+    private volatile Object _attachment;
+    private volatile boolean _valid = true;
+    private int _readyOps; /* Used by the selecting thread only */
+
+    private Key(ReliableDatagramChannel channel, int ops, Object attachment) {
+      _channel = channel;
+      _attachment = attachment;
+      interestOps(ops);
+    }
+
+    public ReliableDatagramChannel channel() {
+      return _channel;
+    }
+
+    public ReliableChannelSelector selector() {
+      return ReliableChannelSelector.this;
+    }
+
+    public int interestOps() {
+      return _interestOps;
+    }
+
+    /**
+     * Sets the interest set of this key, which takes
+     * effect with the selection in progress, if any.
+     *
+     * @param ops a combination of {@link #OP_READ} and {@link #OP_WRITE}.
+     * @return this key.
+     */
+    public Key interestOps(int ops) {
+      if ((ops & ~(OP_READ | OP_WRITE)) != 0) {
+        throw new IllegalArgumentException("ops");
+      }
+
+      _interestOps = ops;
+      LockSupport.unpark(_selector);
+      return this;
+    }
+
+    public int readyOps() {
+      return _readyOps;
+    }
+
+    public boolean isReadable() {
+      return (_readyOps & OP_READ) != 0;
+    }
+
+    public boolean isWritable() {
+      return (_readyOps & OP_WRITE) != 0;
+    }
+
+    public Object attachment() {
+      return _attachment;
+    }
+
+    public Object attach(Object attachment) {
+      Object prev = _attachment;
+      _attachment = attachment;
+      return prev;
+    }
+
+    public boolean isValid() {
+      return _valid && !_closed;
+    }
+
+    /**
+     * Cancels the registration of the channel, the key is
+     * removed from the selector by the next selection.
+     */
+    public void cancel() {
+      _valid = false;
+    }
+
+    public String toString() {
+      return "Key[" + _channel + ",interest=" + _interestOps + ",ready=" + _readyOps + "]";
+    }
+  }
+}
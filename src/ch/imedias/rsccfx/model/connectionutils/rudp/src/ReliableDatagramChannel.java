@@ -0,0 +1,230 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A channel for a rudp connection, which can be used in blocking
+ * or in non-blocking mode.
+ * <p>
+ * A rudp socket is driven by its own receiver thread, so there is
+ * no {@link java.nio.channels.SelectableChannel} to register with a
+ * {@link java.nio.channels.Selector}. Instead, the channel tells
+ * registered listeners when it may have become readable or writable,
+ * and a {@link ReliableChannelSelector} builds an event loop for many
+ * channels on top of that.
+ * <p>
+ * In non-blocking mode, a read returns <code>0</code> if no data has
+ * been received in sequence, and a write only queues the segments that
+ * the send window and the pacer let through right away.
+ *
+ * @see ReliableSocket#getReliableChannel()
+ */
+public class ReliableDatagramChannel implements ByteChannel, GatheringByteChannel {
+  private final ReliableSocket _sock;
+  private volatile boolean _blocking = true;
+  private CopyOnWriteArrayList _listeners = new CopyOnWriteArrayList();
+
+  ReliableDatagramChannel(ReliableSocket sock) {
+    _sock = sock;
+  }
+
+  /**
+   * Returns the socket of this channel.
+   */
+  public ReliableSocket socket() {
+    return _sock;
+  }
+
+  /**
+   * Adjusts the blocking mode of this channel.
+   *
+   * @param block if true the channel is placed in blocking mode.
+   * @return this channel.
+   */
+  public ReliableDatagramChannel configureBlocking(boolean block) {
+    _blocking = block;
+    return this;
+  }
+
+  public boolean isBlocking() {
+    return _blocking;
+  }
+
+  public boolean isOpen() {
+    return !_sock.isClosed();
+  }
+
+  public void close()
+      throws IOException {
+    _sock.close();
+  }
+
+  /**
+   * Reads a sequence of bytes from this channel into the given buffer.
+   *
+   * @param dst the buffer into which the data is read.
+   * @return the number of bytes read, possibly zero in non-blocking
+   * mode, or <code>-1</code> at the end of the stream.
+   * @throws IOException if an I/O error occurs.
+   */
+  public int read(ByteBuffer dst)
+      throws IOException {
+    if (!isOpen()) {
+      throw new ClosedChannelException();
+    }
+
+    try {
+      return _sock.read(dst, _blocking);
+    } catch (EOFException xcp) {
+      return -1; /* Input is shutdown */
+    }
+  }
+
+  public int write(ByteBuffer src)
+      throws IOException {
+    return (int) write(new ByteBuffer[] {src}, 0, 1);
+  }
+
+  public long write(ByteBuffer[] srcs)
+      throws IOException {
+    return write(srcs, 0, srcs.length);
+  }
+
+  /**
+   * Writes a sequence of bytes to this channel from a subsequence
+   * of the given buffers. Data segments are filled across buffer
+   * boundaries, so a header and a body in separate buffers do not
+   * take separate segments.
+   *
+   * @param srcs   the buffers from which bytes are retrieved.
+   * @param offset the offset of the first buffer.
+   * @param length the number of buffers.
+   * @return the number of bytes written, possibly zero
+   * in non-blocking mode.
+   * @throws IOException if an I/O error occurs.
+   */
+  public long write(ByteBuffer[] srcs, int offset, int length)
+      throws IOException {
+    if (offset < 0 || length < 0 || offset > srcs.length - length) {
+      throw new IndexOutOfBoundsException();
+    }
+
+    if (!isOpen()) {
+      throw new ClosedChannelException();
+    }
+
+    return _sock.write(srcs, offset, length, _blocking);
+  }
+
+  /**
+   * Returns true if data can be read without blocking, or if
+   * a read would detect the end of the stream or an error.
+   */
+  public boolean isReadable() {
+    return _sock.isReadable();
+  }
+
+  /**
+   * Returns true if a full data segment can be written without
+   * blocking, or if a write would fail right away.
+   */
+  public boolean isWritable() {
+    return _sock.isWritable();
+  }
+
+  /**
+   * Returns the time until the pacer lets a full data segment
+   * through (ns), or <code>0</code> if it can be sent now or
+   * the channel is not writable for another reason.
+   */
+  public long writeDelay() {
+    return _sock.writeDelay();
+  }
+
+  /**
+   * Adds the specified readiness listener to this channel. If the
+   * listener has already been added, this method does nothing.
+   *
+   * @param listener the listener to add.
+   */
+  public void addListener(ReliableChannelListener listener) {
+    if (listener == null) {
+      throw new NullPointerException("listener");
+    }
+
+    _listeners.addIfAbsent(listener);
+  }
+
+  /**
+   * Removes the specified readiness listener from this channel.
+   *
+   * @param listener the listener to remove.
+   */
+  public void removeListener(ReliableChannelListener listener) {
+    if (listener == null) {
+      throw new NullPointerException("listener");
+    }
+
+    _listeners.remove(listener);
+  }
+
+  /**
+   * Notifies the listeners that the channel may have become ready.
+   *
+   * @param ops the operations that may be ready.
+   */
+  void signal(int ops) {
+    Iterator it = _listeners.iterator();
+    while (it.hasNext()) {
+      ReliableChannelListener l = (ReliableChannelListener) it.next();
+      if ((ops & SelectionKey.OP_READ) != 0) {
+        l.channelReadable(this);
+      }
+      if ((ops & SelectionKey.OP_WRITE) != 0) {
+        l.channelWritable(this);
+      }
+    }
+  }
+
+  public String toString() {
+    return "ReliableDatagramChannel[" + _sock + (_blocking ? "" : ",non-blocking") + "]";
+  }
+}
@@ -30,8 +30,11 @@
 
 package ch.imedias.rsccfx.model.connectionutils.rudp.src;
 
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.BufferPool;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Clock;
 import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.SYNSegment;
 import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Segment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.TimerWheel;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
@@ -42,31 +45,75 @@ import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * This class implements server sockets that use
  * the Simple Reliable UDP (rudp) protocol.
+ * <p>
+ * All connections accepted by a server socket share its UDP port.
+ * When the underlying UDP socket has a {@link DatagramChannel}, which
+ * is the case for server sockets created with a port number, a single
+ * selector thread receives the datagrams and hands each segment
+ * directly to the lock-free inbound queue of its connection.
  *
  * @author Adrian Granados
  * @see ServerSocket
  */
 public class ReliableServerSocket extends ServerSocket {
   private static final int DEFAULT_BACKLOG_SIZE = 50;
+  private static final int RECV_BUFFER_POOL_SIZE = 128;
+  private static final long RELEASE_TIMEOUT = 1000; /* ms, for the port to be released */
   private DatagramSocket _serverSock;
+  private TimerWheel _timerWheel; /* Drives the timers of the accepted sockets */
+  private Clock _clock;           /* The clock of the timer wheel */
   private int _timeout;
   private int _backlogSize;
-  private boolean _closed;
+  private volatile boolean _closed;
   /*
    * The listen backlog queue.
    */
   private ArrayList _backlog;
   /*
-   * A table of active opened client sockets.
+   * A table of active opened client sockets, by endpoint address.
    */
-  private HashMap _clientSockTable;
+  private ConcurrentHashMap _clientSockTable;
+  /*
+   * The client sockets with connection migration, by connection ID.
+   * Their segments are dispatched by ID, whatever their address.
+   */
+  private ConcurrentHashMap _connectionIds;
   private ReliableSocketStateListener _stateListener;
+  /*
+   * The buffers datagrams are received in by the selector thread. They
+   * are handed over with the data segments parsed from them, and sized
+   * for the largest maximum segment size announced by a client.
+   */
+  private BufferPool _recvBufferPool;
+  private ReliableServerSocketStatistics _statistics;
+  /*
+   * Whether the port is given up to a new socket while the connections
+   * of the closed server socket are closing, and taken over from a
+   * closed socket when binding.
+   */
+  private boolean _reuseAddress;
+  /*
+   * The profile accepted sockets start with, whose local options they
+   * keep once the parameters requested by the client have been taken.
+   */
+  private ReliableSocketProfile _profile = new ReliableSocketProfile();
+  private Runnable _releaseTask;
+  private Thread _receiverThread;
 
   /**
    * Creates an unbound rudp server socket.
@@ -132,12 +179,60 @@ public class ReliableServerSocket extends ServerSocket {
    */
   public ReliableServerSocket(int port, int backlog, InetAddress bindAddr)
       throws IOException {
-    this(new DatagramSocket(new InetSocketAddress(bindAddr, port)), backlog);
+    this(port, backlog, bindAddr, false);
+  }
+
+  /**
+   * Creates a rudp server socket and binds it to the specified local port and
+   * IP address, with the specified backlog. With <i>reuseAddress</i>, the
+   * server socket takes the port over from a closed socket that still
+   * lingers on it, and gives it up to a new socket once it is closed and
+   * all its connections are closing.
+   *
+   * @param port         the port number, or <code>0</code> to use any free port.
+   * @param backlog      the listen backlog.
+   * @param bindAddr     the local InetAddress the server will bind to.
+   * @param reuseAddress true to reuse the local port.
+   * @throws IOException if an I/O error occurs when opening
+   *                     the underlying UDP socket.
+   * @see ReliableSocketProfile#setReuseAddress(boolean)
+   */
+  public ReliableServerSocket(int port, int backlog, InetAddress bindAddr,
+                              boolean reuseAddress)
+      throws IOException {
+    this(openChannel(new InetSocketAddress(bindAddr, port), reuseAddress).socket(), backlog);
+    _reuseAddress = reuseAddress;
+  }
+
+  /**
+   * Creates a rudp server socket and binds it to the specified local port and
+   * IP address, with the specified backlog. The accepted sockets take the
+   * parameters requested by their clients, and the options offered by their
+   * clients that the given profile enables as well. They keep the options of
+   * the profile that are not negotiated, such as the congestion control, the
+   * pacing rates and adaptive acknowledgments. The server socket reuses the
+   * local port if the profile does.
+   *
+   * @param port     the port number, or <code>0</code> to use any free port.
+   * @param backlog  the listen backlog.
+   * @param bindAddr the local InetAddress the server will bind to.
+   * @param profile  the profile of the accepted sockets.
+   * @throws IOException if an I/O error occurs when opening
+   *                     the underlying UDP socket.
+   * @see ReliableSocketProfile#setReuseAddress(boolean)
+   */
+  public ReliableServerSocket(int port, int backlog, InetAddress bindAddr,
+                              ReliableSocketProfile profile)
+      throws IOException {
+    this(port, backlog, bindAddr, profile.reuseAddress());
+    _profile = profile;
   }
 
   /**
    * Creates a rudp server socket attached to the specified UDP socket, with
-   * the specified backlog.
+   * the specified backlog. If the UDP socket has been created by a
+   * {@link DatagramChannel}, the channel is switched to non-blocking mode
+   * and served by a selector, otherwise it is read by a blocking thread.
    *
    * @param sock    the underlying UDP socket.
    * @param backlog the listen backlog.
@@ -145,19 +240,88 @@ public class ReliableServerSocket extends ServerSocket {
    */
   public ReliableServerSocket(DatagramSocket sock, int backlog)
       throws IOException {
+    this(sock, backlog, TimerWheel.getDefault());
+  }
+
+  /**
+   * Creates a rudp server socket attached to the specified UDP socket, with
+   * the specified backlog. The accepted sockets take the options offered by
+   * their clients that the given profile enables as well, and keep its
+   * options that are not negotiated.
+   *
+   * @param sock    the underlying UDP socket.
+   * @param backlog the listen backlog.
+   * @param profile the profile of the accepted sockets.
+   * @throws IOException if an I/O error occurs.
+   */
+  public ReliableServerSocket(DatagramSocket sock, int backlog,
+                              ReliableSocketProfile profile)
+      throws IOException {
+    this(sock, backlog);
+    _profile = profile;
+  }
+
+  /**
+   * Creates a rudp server socket attached to the specified UDP socket, with
+   * the specified backlog. The timers of the accepted sockets are driven by
+   * the given wheel, and the time of its clock is used for the timeouts.
+   *
+   * @param sock    the underlying UDP socket.
+   * @param backlog the listen backlog.
+   * @param wheel   the timer wheel.
+   * @throws IOException if an I/O error occurs.
+   */
+  protected ReliableServerSocket(DatagramSocket sock, int backlog, TimerWheel wheel)
+      throws IOException {
     if (sock == null) {
       throw new NullPointerException("sock");
     }
 
+    if (wheel == null) {
+      throw new NullPointerException("wheel");
+    }
+
     _serverSock = sock;
+    _timerWheel = wheel;
+    _clock = wheel.getClock();
     _backlogSize = (backlog <= 0) ? DEFAULT_BACKLOG_SIZE : backlog;
     _backlog = new ArrayList(_backlogSize);
-    _clientSockTable = new HashMap();
+    _clientSockTable = new ConcurrentHashMap();
+    _connectionIds = new ConcurrentHashMap();
     _stateListener = new StateListener();
     _timeout = 0;
     _closed = false;
+    _statistics = new ReliableServerSocketStatistics(this);
+
+    if (sock.getChannel() != null) {
+      _receiverThread = new SelectorThread(sock.getChannel());
+    } else {
+      _receiverThread = new ReceiverThread();
+    }
+    _receiverThread.start();
+
+    _statistics.register();
+  }
+
+  /**
+   * Opens a datagram channel bound to the specified address.
+   *
+   * @param bindAddr the local socket address.
+   * @param reuse    true to take the port over from a closed socket.
+   * @return the channel.
+   * @throws IOException if the channel cannot be opened or bound.
+   */
+  private static DatagramChannel openChannel(InetSocketAddress bindAddr, boolean reuse)
+      throws IOException {
+    DatagramChannel channel = DatagramChannel.open();
+    try {
+      ReliableSocket.bindSocket(channel.socket(), bindAddr, reuse);
+    } catch (IOException xcp) {
+      channel.close();
+      throw xcp;
+    }
 
-    new ReceiverThread().start();
+    return channel;
   }
 
   public Socket accept()
@@ -167,16 +331,17 @@ public class ReliableServerSocket extends ServerSocket {
     }
 
     synchronized (_backlog) {
+      long deadline = _clock.currentTimeMillis() + _timeout;
       while (_backlog.isEmpty()) {
         try {
           if (_timeout == 0) {
             _backlog.wait();
           } else {
-            long startTime = System.currentTimeMillis();
-            _backlog.wait(_timeout);
-            if (System.currentTimeMillis() - startTime >= _timeout) {
+            long timeout = deadline - _clock.currentTimeMillis();
+            if (timeout <= 0) {
               throw new SocketTimeoutException();
             }
+            _backlog.wait(timeout);
           }
 
         } catch (InterruptedException xcp) {
@@ -203,7 +368,7 @@ public class ReliableServerSocket extends ServerSocket {
       throw new SocketException("Socket is closed");
     }
 
-    _serverSock.bind(endpoint);
+    ReliableSocket.bindSocket(_serverSock, endpoint, _reuseAddress);
   }
 
   public synchronized void close() {
@@ -212,13 +377,17 @@ public class ReliableServerSocket extends ServerSocket {
     }
 
     _closed = true;
+    _statistics.unregister();
     synchronized (_backlog) {
       _backlog.clear();
       _backlog.notify();
     }
 
     if (_clientSockTable.isEmpty()) {
-      _serverSock.close();
+      closeServerSocket();
+    } else if (_reuseAddress) {
+      _releaseTask = new ReleaseTask();
+      ReliableSocket.addLingeringSocket(getLocalPort(), _releaseTask);
     }
   }
 
@@ -254,6 +423,30 @@ public class ReliableServerSocket extends ServerSocket {
     _timeout = timeout;
   }
 
+  /**
+   * Returns the statistics of this server socket.
+   */
+  public ReliableServerSocketStatistics getStatistics() {
+    return _statistics;
+  }
+
+  /**
+   * Returns the open client sockets of this server socket,
+   * including the ones that have not been accepted yet.
+   */
+  Collection clientSockets() {
+    return _clientSockTable.values();
+  }
+
+  /**
+   * Returns the number of client sockets waiting to be accepted.
+   */
+  int backlogSize() {
+    synchronized (_backlog) {
+      return _backlog.size();
+    }
+  }
+
   /**
    * Registers a new client socket with the specified endpoint address.
    *
@@ -261,21 +454,19 @@ public class ReliableServerSocket extends ServerSocket {
    * @return the registered socket.
    */
   private ReliableClientSocket addClientSocket(SocketAddress endpoint) {
-    synchronized (_clientSockTable) {
-      ReliableClientSocket sock = (ReliableClientSocket) _clientSockTable.get(endpoint);
+    ReliableClientSocket sock = (ReliableClientSocket) _clientSockTable.get(endpoint);
 
-      if (sock == null) {
-        try {
-          sock = new ReliableClientSocket(_serverSock, endpoint);
-          sock.addStateListener(_stateListener);
-          _clientSockTable.put(endpoint, sock);
-        } catch (IOException xcp) {
-          xcp.printStackTrace();
-        }
+    if (sock == null) {
+      try {
+        sock = new ReliableClientSocket(_serverSock, _profile, endpoint);
+        sock.addStateListener(_stateListener);
+        _clientSockTable.put(endpoint, sock);
+      } catch (IOException xcp) {
+        xcp.printStackTrace();
       }
-
-      return sock;
     }
+
+    return sock;
   }
 
   /**
@@ -285,16 +476,105 @@ public class ReliableServerSocket extends ServerSocket {
    * @return the deregistered socket.
    */
   private ReliableClientSocket removeClientSocket(SocketAddress endpoint) {
-    synchronized (_clientSockTable) {
-      ReliableClientSocket sock = (ReliableClientSocket) _clientSockTable.remove(endpoint);
+    ReliableClientSocket sock = (ReliableClientSocket) _clientSockTable.remove(endpoint);
+    if (sock != null) {
+      _statistics.connectionClosed(sock.getStatistics());
+      if (sock._registeredId != 0) {
+        _connectionIds.remove(Integer.valueOf(sock._registeredId), sock);
+      }
+    }
 
-      if (_clientSockTable.isEmpty()) {
-        if (isClosed()) {
-          _serverSock.close();
+    if (_clientSockTable.isEmpty()) {
+      synchronized (this) {
+        if (isClosed() && !_serverSock.isClosed()) {
+          int port = _serverSock.getLocalPort();
+          closeServerSocket();
+          if (_releaseTask != null) {
+            ReliableSocket.removeLingeringSocket(port, _releaseTask);
+          }
+        }
+      }
+    }
+
+    return sock;
+  }
+
+  /**
+   * Closes the underlying UDP socket. The selector thread is woken up,
+   * as the channel is only released once it has been deregistered from
+   * the selector, and the port is free when the thread has ended.
+   */
+  private void closeServerSocket() {
+    _serverSock.close();
+    if (_receiverThread instanceof SelectorThread) {
+      ((SelectorThread) _receiverThread).wakeup();
+      if (Thread.currentThread() != _receiverThread) {
+        try {
+          _receiverThread.join(RELEASE_TIMEOUT);
+        } catch (InterruptedException xcp) {
+          xcp.printStackTrace();
         }
       }
+    }
+  }
 
-      return sock;
+  /**
+   * Dispatches a received segment to the connection of its endpoint,
+   * or to the connection of its connection ID if it carries one.
+   * A SYN segment from an unknown endpoint opens a new connection,
+   * other segments from unknown endpoints are dropped.
+   *
+   * @param endpoint the source address of the segment.
+   * @param s        the segment.
+   */
+  private void dispatch(SocketAddress endpoint, Segment s) {
+    ReliableClientSocket sock;
+    if (s.hasConnectionId()) {
+      sock = (ReliableClientSocket) _connectionIds.get(Integer.valueOf(s.getConnectionId()));
+      if (sock != null && !endpoint.equals(sock._endpoint)) {
+        sock.segmentReceived(s, endpoint);
+        return;
+      }
+    } else {
+      sock = (ReliableClientSocket) _clientSockTable.get(endpoint);
+      if (sock == null && s instanceof SYNSegment && !isClosed()) {
+        sock = addClientSocket(endpoint);
+      }
+    }
+
+    if (sock != null) {
+      sock.segmentReceived(s);
+    } else {
+      s.release();
+    }
+  }
+
+  /**
+   * Releases the connections of a closed server socket, and with them
+   * its port, for a new socket that binds to the port. Connections that
+   * the application has not closed yet keep the port.
+   */
+  private class ReleaseTask implements Runnable {
+    public void run() {
+      Iterator it = _clientSockTable.values().iterator();
+      while (it.hasNext()) {
+        if (!((ReliableSocket) it.next()).isClosed()) {
+          ReliableSocket.addLingeringSocket(getLocalPort(), this);
+          return;
+        }
+      }
+
+      it = _clientSockTable.values().iterator();
+      while (it.hasNext()) {
+        ((ReliableSocket) it.next()).releaseSocket();
+      }
+
+            /* Connections released meanwhile by their close timer close the port on their thread */
+      try {
+        _receiverThread.join(RELEASE_TIMEOUT);
+      } catch (InterruptedException xcp) {
+        xcp.printStackTrace();
+      }
     }
   }
 
@@ -309,81 +589,193 @@ public class ReliableServerSocket extends ServerSocket {
 
       while (true) {
         DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-        ReliableClientSocket sock = null;
 
         try {
           _serverSock.receive(packet);
-          SocketAddress endpoint = packet.getSocketAddress();
-          Segment s = Segment.parse(packet.getData(), 0, packet.getLength());
+          dispatch(packet.getSocketAddress(),
+              Segment.parse(packet.getData(), 0, packet.getLength()));
+        } catch (IllegalArgumentException xcp) {
+          /* Drop malformed datagram */
+        } catch (IOException xcp) {
+          if (isClosed()) {
+            break;
+          }
+          xcp.printStackTrace();
+        }
+      }
+    }
+  }
 
-          synchronized (_clientSockTable) {
+  private class SelectorThread extends Thread {
+    private DatagramChannel _channel;
+    private volatile Selector _selector;
+
+    public SelectorThread(DatagramChannel channel) {
+      super("ReliableServerSocket");
+      setDaemon(true);
+      _channel = channel;
+    }
+
+    public void wakeup() {
+      Selector selector = _selector;
+      if (selector != null) {
+        selector.wakeup();
+      }
+    }
+
+    public void run() {
+      _recvBufferPool = new BufferPool(new ReliableSocketProfile().maxSegmentSize() + 1,
+          RECV_BUFFER_POOL_SIZE);
+      BufferPool pool = null;
+      ByteBuffer buffer = null;
+      Selector selector = null;
+
+      try {
+        selector = Selector.open();
+        _selector = selector;
+        _channel.configureBlocking(false);
+        _channel.register(selector, SelectionKey.OP_READ);
+
+        while (_channel.isOpen()) {
+          selector.select();
+
+          Iterator it = selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            it.next();
+            it.remove();
+
+                        /* Drain all pending datagrams */
+            while (true) {
+              if (buffer == null) {
+                pool = _recvBufferPool;
+                buffer = pool.acquire();
+              }
+
+              SocketAddress endpoint = _channel.receive(buffer);
+              if (endpoint == null) {
+                break;
+              }
+
+              buffer.flip();
+              if (buffer.limit() == buffer.capacity()) {
+                buffer.clear(); /* Larger than the maximum segment size */
+                continue;
+              }
+
+              Segment s;
+              try {
+                s = Segment.parse(buffer, pool);
+              } catch (IllegalArgumentException xcp) {
+                continue; /* Drop malformed datagram */
+              } finally {
+                buffer = null;
+              }
 
-            if (!isClosed()) {
               if (s instanceof SYNSegment) {
-                if (!_clientSockTable.containsKey(endpoint)) {
-                  sock = addClientSocket(endpoint);
+                int bufferSize = ((SYNSegment) s).getMaxSegmentSize() + 1;
+                if (bufferSize > _recvBufferPool.bufferSize()) {
+                  _recvBufferPool = new BufferPool(bufferSize, RECV_BUFFER_POOL_SIZE);
                 }
               }
-            }
 
-            sock = (ReliableClientSocket) _clientSockTable.get(endpoint);
-          }
-
-          if (sock != null) {
-            sock.segmentReceived(s);
-          }
-        } catch (IOException xcp) {
-          if (isClosed()) {
-            break;
+              dispatch(endpoint, s);
+            }
           }
+        }
+      } catch (ClosedChannelException xcp) {
+        // the server socket and its connections are closed.
+      } catch (IOException xcp) {
+        if (!isClosed()) {
           xcp.printStackTrace();
         }
+      } finally {
+        if (selector != null) {
+          try {
+            selector.close();
+          } catch (IOException xcp) {
+            xcp.printStackTrace();
+          }
+        }
       }
     }
   }
 
   private class ReliableClientSocket extends ReliableSocket {
-    private ArrayList _queue;
+    /*
+     * Segments received by the server socket thread. This is a
+     * lock-free queue read by the connection's receiver thread,
+     * which parks while the queue is empty.
+     */
+    private ConcurrentLinkedQueue _queue;
+    private volatile Thread _reader;
+    private volatile boolean _eof;
+    private volatile int _registeredId; /* Connection ID, 0 unless connection migration is used */
 
     public ReliableClientSocket(DatagramSocket sock,
+                                ReliableSocketProfile profile,
                                 SocketAddress endpoint)
         throws IOException {
-      super(sock);
+      super(sock, profile, _timerWheel);
       _endpoint = endpoint;
     }
 
     protected void init(DatagramSocket sock, ReliableSocketProfile profile) {
-      _queue = new ArrayList();
+      _queue = new ConcurrentLinkedQueue();
       super.init(sock, profile);
     }
 
     protected Segment receiveSegmentImpl() {
-      synchronized (_queue) {
-        while (_queue.isEmpty()) {
-          try {
-            _queue.wait();
-          } catch (InterruptedException xcp) {
-            xcp.printStackTrace();
+      _reader = Thread.currentThread();
+
+      while (true) {
+        Object o;
+        while ((o = _queue.poll()) == null) {
+          if (_eof) {
+            return null;
           }
+          LockSupport.park(this);
         }
 
-        return (Segment) _queue.remove(0);
+        if (!(o instanceof ForeignSegment)) {
+          return (Segment) o;
+        }
+
+        handleSegmentFrom(((ForeignSegment) o)._segment, ((ForeignSegment) o)._source);
       }
     }
 
     protected void segmentReceived(Segment s) {
-      synchronized (_queue) {
-        _queue.add(s);
-        _queue.notify();
-      }
+      _queue.offer(s);
+      LockSupport.unpark(_reader);
+    }
+
+    /**
+     * Queues a segment received from another address than the
+     * peer's, which is handed to handleSegmentFrom().
+     */
+    protected void segmentReceived(Segment s, SocketAddress source) {
+      _queue.offer(new ForeignSegment(s, source));
+      LockSupport.unpark(_reader);
+    }
+
+    protected int newConnectionId() {
+      int connectionId;
+      do {
+        connectionId = super.newConnectionId();
+      } while (_connectionIds.putIfAbsent(Integer.valueOf(connectionId), this) != null);
+      _registeredId = connectionId;
+      return connectionId;
+    }
+
+    protected void endpointChanged(SocketAddress oldEndpoint) {
+      _clientSockTable.remove(oldEndpoint, this);
+      _clientSockTable.put(_endpoint, this);
     }
 
     protected void closeSocket() {
-      synchronized (_queue) {
-        _queue.clear();
-        _queue.add(null);
-        _queue.notify();
-      }
+      _eof = true;
+      _queue.clear();
+      LockSupport.unpark(_reader);
     }
 
     protected void log(String msg) {
@@ -391,6 +783,19 @@ public class ReliableServerSocket extends ServerSocket {
     }
   }
 
+  /*
+   * A segment received from another address than the peer's.
+   */
+  private static class ForeignSegment {
+    private final Segment _segment;
+    private final SocketAddress _source;
+
+    public ForeignSegment(Segment segment, SocketAddress source) {
+      _segment = segment;
+      _source = source;
+    }
+  }
+
   private class StateListener implements ReliableSocketStateListener {
     public void connectionOpened(ReliableSocket sock) {
       if (sock instanceof ReliableClientSocket) {
@@ -406,6 +811,8 @@ public class ReliableServerSocket extends ServerSocket {
           _backlog.add(sock);
           _backlog.notify();
         }
+
+        _statistics.connectionAccepted();
       }
     }
 
@@ -416,14 +823,14 @@ public class ReliableServerSocket extends ServerSocket {
     public void connectionClosed(ReliableSocket sock) {
       // Remove client socket from the table of active connections.
       if (sock instanceof ReliableClientSocket) {
-        removeClientSocket(sock.getRemoteSocketAddress());
+        removeClientSocket(((ReliableClientSocket) sock)._endpoint);
       }
     }
 
     public void connectionFailure(ReliableSocket sock) {
       // Remove client socket from the table of active connections.
       if (sock instanceof ReliableClientSocket) {
-        removeClientSocket(sock.getRemoteSocketAddress());
+        removeClientSocket(((ReliableClientSocket) sock)._endpoint);
       }
     }
 
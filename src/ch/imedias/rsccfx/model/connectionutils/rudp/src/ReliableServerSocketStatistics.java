@@ -0,0 +1,152 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * This class keeps the statistics of a rudp server socket. The traffic
+ * of the open connections is added up when the statistics are read,
+ * the traffic of closed connections is kept in striped counters.
+ * <p>
+ * The statistics of every open server socket are registered as an MBean
+ * with the platform MBean server, under the domain of this package and
+ * the properties <code>type=ReliableServerSocket</code> and
+ * <code>port</code>.
+ *
+ * @see ReliableServerSocket#getStatistics()
+ */
+public class ReliableServerSocketStatistics implements ReliableServerSocketStatisticsMBean {
+  private final ReliableServerSocket _serverSock;
+  private final LongAdder _accepted = new LongAdder();
+  private final LongAdder _closedBytesSent = new LongAdder();
+  private final LongAdder _closedBytesReceived = new LongAdder();
+  private final LongAdder _closedRetransmitted = new LongAdder();
+  private volatile ObjectName _name;
+
+  ReliableServerSocketStatistics(ReliableServerSocket serverSock) {
+    _serverSock = serverSock;
+  }
+
+  public int getLocalPort() {
+    return _serverSock.getLocalPort();
+  }
+
+  public long getAcceptedConnections() {
+    return _accepted.sum();
+  }
+
+  public int getActiveConnections() {
+    return _serverSock.clientSockets().size();
+  }
+
+  public int getPendingConnections() {
+    return _serverSock.backlogSize();
+  }
+
+  public long getBytesSent() {
+    long bytes = _closedBytesSent.sum();
+    Iterator it = _serverSock.clientSockets().iterator();
+    while (it.hasNext()) {
+      bytes += ((ReliableSocket) it.next()).getStatistics().getBytesSent();
+    }
+
+    return bytes;
+  }
+
+  public long getBytesReceived() {
+    long bytes = _closedBytesReceived.sum();
+    Iterator it = _serverSock.clientSockets().iterator();
+    while (it.hasNext()) {
+      bytes += ((ReliableSocket) it.next()).getStatistics().getBytesReceived();
+    }
+
+    return bytes;
+  }
+
+  public long getRetransmittedSegments() {
+    long segments = _closedRetransmitted.sum();
+    Iterator it = _serverSock.clientSockets().iterator();
+    while (it.hasNext()) {
+      segments += ((ReliableSocket) it.next()).getStatistics().getRetransmittedSegments();
+    }
+
+    return segments;
+  }
+
+  public String toString() {
+    return "[" +
+        "accepted=" + getAcceptedConnections() + ", " +
+        "active=" + getActiveConnections() + ", " +
+        "bytesSent=" + getBytesSent() + ", " +
+        "bytesReceived=" + getBytesReceived() + ", " +
+        "retransmitted=" + getRetransmittedSegments() + "]";
+  }
+
+  void connectionAccepted() {
+    _accepted.increment();
+  }
+
+  /**
+   * Keeps the traffic of a connection that has been
+   * removed from the server socket.
+   *
+   * @param stats the statistics of the connection.
+   */
+  void connectionClosed(ReliableSocketStatistics stats) {
+    _closedBytesSent.add(stats.getBytesSent());
+    _closedBytesReceived.add(stats.getBytesReceived());
+    _closedRetransmitted.add(stats.getRetransmittedSegments());
+  }
+
+  /**
+   * Registers the statistics of the server socket
+   * with the platform MBean server.
+   */
+  void register() {
+    if (_name == null) {
+      _name = ReliableSocketStatistics.registerMBean(this,
+          "type=ReliableServerSocket,port=" + getLocalPort());
+    }
+  }
+
+  /**
+   * Removes the statistics of the server socket
+   * from the platform MBean server.
+   */
+  void unregister() {
+    ObjectName name = _name;
+    _name = null;
+    ReliableSocketStatistics.unregisterMBean(name);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+/**
+ * The management interface of a rudp server socket. The traffic
+ * counters add up the connections accepted by the server socket,
+ * the closed ones included.
+ *
+ * @see ReliableServerSocket
+ */
+public interface ReliableServerSocketStatisticsMBean {
+  /**
+   * Returns the local port of the server socket.
+   */
+  public int getLocalPort();
+
+  /**
+   * Returns the number of connections that have been established,
+   * whether they have been accepted yet or not.
+   */
+  public long getAcceptedConnections();
+
+  /**
+   * Returns the number of open connections, including
+   * the ones that have not been accepted yet.
+   */
+  public int getActiveConnections();
+
+  /**
+   * Returns the number of connections waiting to be accepted.
+   */
+  public int getPendingConnections();
+
+  /**
+   * Returns the number of octets sent on all connections.
+   */
+  public long getBytesSent();
+
+  /**
+   * Returns the number of octets received on all connections.
+   */
+  public long getBytesReceived();
+
+  /**
+   * Returns the number of segments retransmitted on all connections.
+   */
+  public long getRetransmittedSegments();
+}
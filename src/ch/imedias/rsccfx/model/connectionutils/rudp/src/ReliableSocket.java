@@ -31,18 +31,32 @@
 package ch.imedias.rsccfx.model.connectionutils.rudp.src;
 
 import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.ACKSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.AckPolicy;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.BufferPool;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Clock;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.ConnectionMigration;
 import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.DATSegment;
 import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.EAKSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.FECSegment;
 import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.FINSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.FecDecoder;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.FecEncoder;
 import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.NULSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Pacer;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.PathMtuDiscovery;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.PathProbe;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.PathProfiler;
 import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.RSTSegment;
 import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.SYNSegment;
 import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Segment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.SegmentRing;
 import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Timer;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.TimerWheel;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.BindException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
@@ -52,10 +66,19 @@ import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * This class implements client sockets that use
@@ -67,49 +90,158 @@ import java.util.Random;
  */
 public class ReliableSocket extends Socket {
   private static final int MAX_SEQUENCE_NUMBER = 255;
+  private static final int MAX_WIDE_SEQUENCE_NUMBER = Segment.MAX_WIDE_SEQUENCE_NUMBER;
+  private static final long TIMER_GRANULARITY = 10; /* ms */
+  private static final int DUP_ACK_THRESHOLD = 3; /* Acks above a gap before fast retransmit */
+  private static final long AUTOTUNE_INTERVAL = 100; /* ms, consumption is measured over at least this */
+  private static final long RELEASE_TIMEOUT = 1000; /* ms, for a released socket to let go of its port */
   private static final int CLOSED = 0; /* There is not an active or pending connection */
   private static final int SYN_RCVD = 1; /* Request to connect received, waiting ACK */
   private static final int SYN_SENT = 2; /* Request to connect sent */
   private static final int ESTABLISHED = 3; /* Data transfer state */
   private static final int CLOSE_WAIT = 4; /* Request to close the connection */
   private static final boolean DEBUG = Boolean.getBoolean("net.rudp.debug");
+  /*
+   * Closed sockets that give their local port up to a new socket, by
+   * local port. A socket stays here until it is released.
+   */
+  private static final ConcurrentHashMap _lingeringSockets = new ConcurrentHashMap();
   protected DatagramSocket _sock;
-  protected SocketAddress _endpoint;
+  protected volatile SocketAddress _endpoint;
   protected ReliableSocketInputStream _in;
   protected ReliableSocketOutputStream _out;
-  private byte[] _recvbuffer = new byte[65535];
-  private boolean _closed = false;
-  private boolean _connected = false;
-  private boolean _reset = false;
+  private byte[] _recvbuffer; /* Datagram packet path only, allocated on first use */
+  private volatile boolean _closed = false;
+  private volatile boolean _connected = false;
+  private volatile boolean _reset = false;
+  private boolean _connectionRequestEnded; /* Refused or failed before connecting, guarded by this */
+  private volatile boolean _finSent = false; /* Our FIN is queued until acknowledged */
+  private volatile boolean _finReceived = false; /* The peer's FIN has been received in sequence */
+  private boolean _timeWait = false; /* We closed first, and linger to acknowledge the peer's FIN again */
+  private boolean _released = false; /* The UDP socket has been released, guarded by the close timer */
   private boolean _keepAlive = true;
   private int _state = CLOSED;
   private int _timeout = 0; /* (ms) */
-  private boolean _shutIn = false;
+  private volatile boolean _shutIn = false;
   private boolean _shutOut = false;
   private Object _closeLock = new Object();
-  private Object _resetLock = new Object();
-  private ArrayList _listeners = new ArrayList();
+  private Object _resetLock = new Object(); /* Writers wait on it while the connection is reset */
+  private CopyOnWriteArrayList _listeners = new CopyOnWriteArrayList();
   private ArrayList _stateListeners = new ArrayList();
   private ShutdownHook _shutdownHook;
   /* rudp connection parameters */
   private ReliableSocketProfile _profile = new ReliableSocketProfile();
-  private ArrayList _unackedSentQueue = new ArrayList(); /* Unacknowledged segments send queue */
-  private ArrayList _outSeqRecvQueue = new ArrayList(); /* Out-of-sequence received segments queue */
-  private ArrayList _inSeqRecvQueue = new ArrayList(); /* In-sequence received segments queue */
-  private Object _recvQueueLock = new Object();  /* Lock for receiver queues */
+  /*
+   * The send queue and the out-of-sequence receive queue are indexed
+   * by sequence number. In-sequence segments are handed over from the
+   * receiver thread to the application through a lock-free queue, the
+   * reading thread parks while it is empty.
+   */
+  private SegmentRing _unackedSentQueue = new SegmentRing(32, MAX_SEQUENCE_NUMBER); /* Unacknowledged segments send queue */
+  private SegmentRing _outSeqRecvQueue = new SegmentRing(32, MAX_SEQUENCE_NUMBER); /* Out-of-sequence received segments queue */
+  private ConcurrentLinkedQueue _inSeqRecvQueue = new ConcurrentLinkedQueue(); /* In-sequence received segments queue */
+  private AtomicInteger _inSeqRecvCount = new AtomicInteger(); /* Number of segments in the in-sequence queue */
+  private Object _recvQueueLock = new Object();  /* Lock for the out-of-sequence queue */
+  private Object _readLock = new Object(); /* Serializes reading threads */
+  private volatile Thread _reader; /* Thread parked waiting for in-sequence segments */
+  private volatile ReliableDatagramChannel _channel; /* Notified when the socket gets readable or writable */
+  private volatile PathProfiler _pathProfiler; /* Null unless the path is profiled */
+  private volatile AckPolicy _ackPolicy; /* Null unless acknowledgments are adaptive */
+  private ArrayList _lostSegments = new ArrayList(); /* Segments to fast retransmit, used by the receiver thread only */
   private Counters _counters = new Counters(); /* Sequence number, ack counters, etc. */
+  private ReliableSocketStatistics _statistics = new ReliableSocketStatistics(this); /* Traffic and round-trip time statistics */
   private Thread _sockThread = new ReliableSocketThread();
-  private int _sendQueueSize = 32; /* Maximum number of received segments */
-  private int _recvQueueSize = 32; /* Maximum number of sent segments */
+  private TimerWheel _timerWheel; /* Drives the timers of the socket */
+  private Clock _clock; /* The clock of the timer wheel */
+  private CongestionController _congestionController; /* Limits the send window, may be null */
+  private int _sendQueueSize = 32; /* Maximum number of sent segments */
+  private int _recvQueueSize = 32; /* Maximum number of received segments */
+  /*
+   * Version 2 connections use 32-bit sequence and ack numbers, which
+   * allows windows much larger than half of the 8-bit sequence space.
+   * The width is negotiated with the version field of the SYN segments.
+   */
+  private boolean _wide = false;
+  private int _maxSequenceNumber = MAX_SEQUENCE_NUMBER;
   private int _sendBufferSize;
   private int _recvBufferSize;
+  private BufferPool _bufferPool; /* Wire form of data segments awaiting acknowledgment */
+  private BufferPool _recvBufferPool; /* Received datagrams, until their data is read */
+  private int _readOffset; /* Bytes already read from the first in-sequence segment */
+  /*
+   * Data segments are sized to the path MTU, which is probed with padded
+   * NUL segments once the connection is open. The probe state is guarded
+   * by the unacknowledged sent queue.
+   */
+  private volatile PathMtuDiscovery _pathMtu;
+  private NULSegment _probe; /* Outstanding path MTU probe */
+  /*
+   * Data segments are paced at a rate derived from the congestion window,
+   * the round-trip time and the delivery rate of the connection.
+   */
+  private volatile Pacer _pacer;
+  private long _ackedBytes; /* Acknowledged since the last update of the pacer */
+  /*
+   * Forward error correction, used if both peers propose it in their
+   * SYN segments. The encoder is guarded by the unacknowledged sent
+   * queue, the decoder by the receive queue lock.
+   */
+  private boolean _fec;
+  private FecEncoder _fecEncoder;
+  private FecDecoder _fecDecoder;
+  /*
+   * Stream multiplexing, used if both peers propose it in their SYN
+   * segments. Every data segment then belongs to a stream, the socket's
+   * own input and output being stream 0, see {@link StreamDemultiplexer}.
+   */
+  private boolean _multiplexed;
+  private StreamDemultiplexer _streams; /* Guarded by the receive queue lock */
+  /*
+   * Receive windows, advertised if both peers propose it in their SYN
+   * segments. The window of the peer bounds the segments in flight, the
+   * receive queue grows while the reader consumes more than half of it
+   * per round-trip time. The consumption counters are guarded by the
+   * read lock.
+   */
+  private volatile boolean _windowAdvertised;
+  private volatile int _peerWindow = Integer.MAX_VALUE; /* Segments the peer can still buffer */
+  private volatile int _lastWindowSent = -1;
+  private int _consumedSegments; /* Read since the start of the interval */
+  private long _consumedSince;
+  /*
+   * Connection migration, used if both peers propose it in their SYN
+   * segments. Every segment then carries the connection ID picked by
+   * the server, and segments that carry it are accepted from any
+   * address, see {@link ConnectionMigration}. The challenge is guarded
+   * by the unacknowledged sent queue.
+   */
+  private volatile int _connectionId; /* 0 unless negotiated */
+  private final ConnectionMigration _migration = new ConnectionMigration();
+  /*
+   * Smoothed round-trip time and round-trip time variation (ms),
+   * estimated from acknowledged segments as described by Jacobson
+   * and Karels. The retransmission timeout is derived from them,
+   * starts at the retransmission timeout of the profile and is
+   * doubled every time the retransmission timer expires, until a
+   * new sample is taken. These fields are guarded by the
+   * unacknowledged sent queue.
+   */
+  private double _srtt = -1;
+  private double _rttVar;
+  private long _rto = -1;
+  /*
+   * The last cumulative ack number received, and how many acknowledgments
+   * repeated it while data was outstanding. Guarded by the unacknowledged
+   * sent queue.
+   */
+  private int _lastAckReceived = -1;
+  private int _dupAckCounter;
   /*
    * This timer is started when the connection is opened and is reset
    * every time a data segment is sent. If the client's null segment
    * timer expires, the client sends a null segment to the server.
    */
-  private Timer _nullSegmentTimer =
-      new Timer("ReliableSocket-NullSegmentTimer", new NullSegmentTimerTask());
+  private Timer _nullSegmentTimer;
   /*
    * This timer is re-started every time a data, null, or reset
    * segment is sent and there is not a segment currently being timed.
@@ -119,8 +251,7 @@ public class ReliableSocket extends Socket {
    * re-started when the timed segment is received, if there is still
    * one or more packets that have been sent but not acknowledged.
    */
-  private Timer _retransmissionTimer =
-      new Timer("ReliableSocket-RetransmissionTimer", new RetransmissionTimerTask());
+  private Timer _retransmissionTimer;
   /*
    * When this timer expires, if there are segments on the out-of-sequence
    * queue, an extended acknowledgment is sent. Otherwise, if there are
@@ -132,13 +263,26 @@ public class ReliableSocket extends Socket {
    * on the out-of-sequence queue, the timer is not restarted, so that another
    * extended acknowledgment will be sent when it expires again.
    */
-  private Timer _cumulativeAckTimer =
-      new Timer("ReliableSocket-CumulativeAckTimer", new CumulativeAckTimerTask());
+  private Timer _cumulativeAckTimer;
   /*
    * When this timer expires, the connection is considered broken.
    */
-  private Timer _keepAliveTimer =
-      new Timer("ReliableSocket-KeepAliveTimer", new KeepAliveTimerTask());
+  private Timer _keepAliveTimer;
+  /*
+   * This timer is started when the connection is being closed. When it
+   * expires, segments still in flight have been given time to be
+   * retransmitted and acknowledged, and the socket is released.
+   */
+  private Timer _closeTimer;
+  private Runnable _releaseTask; /* Run by a new socket taking the local port over */
+  private int _lingerPort = -1; /* The local port given up to a new socket, or -1 */
+  /*
+   * This timer is started when a write ends while forward error
+   * correction is used. When it expires, the parity of the segments
+   * that do not fill a whole group yet is sent, so that the end of
+   * a burst is protected without sending parity after every write.
+   */
+  private Timer _parityTimer;
 
   /**
    * Creates an unconnected rudp socket with default rudp parameters.
@@ -159,7 +303,7 @@ public class ReliableSocket extends Socket {
    */
   public ReliableSocket(ReliableSocketProfile profile)
       throws IOException {
-    this(new DatagramSocket(), profile);
+    this(openSocket(null, true, false), profile);
   }
 
   /**
@@ -241,6 +385,29 @@ public class ReliableSocket extends Socket {
         new InetSocketAddress(localAddr, localPort));
   }
 
+  /**
+   * Creates a rudp socket that uses the given rudp parameters and connects
+   * it to the specified remote host on the specified remote port. The socket
+   * will also bind to the local address and port supplied.
+   *
+   * @param host      the name of the remote host, or <code>null</code> for the loopback address.
+   * @param port      the remote port.
+   * @param localAddr the local address the socket is bound to, or
+   *                  <code>null</code> for the wildcard address.
+   * @param localPort the local port the socket is bound to, or
+   *                  <code>zero</code> for a system selected free port.
+   * @param profile   the socket profile.
+   * @throws IOException              if an I/O error occurs when creating the socket.
+   * @throws IllegalArgumentException if the port parameter is outside the specified range
+   *                                  of valid port values, which is between 0 and 65535, inclusive.
+   */
+  public ReliableSocket(String host, int port, InetAddress localAddr, int localPort,
+                        ReliableSocketProfile profile)
+      throws IOException {
+    this(new InetSocketAddress(host, port),
+        new InetSocketAddress(localAddr, localPort), profile);
+  }
+
   /**
    * Creates a rudp socket and connects it to the specified remote address. The
    * socket will also bind to the local address supplied.
@@ -251,7 +418,23 @@ public class ReliableSocket extends Socket {
    */
   protected ReliableSocket(InetSocketAddress inetAddr, InetSocketAddress localAddr)
       throws IOException {
-    this(new DatagramSocket(localAddr), new ReliableSocketProfile());
+    this(inetAddr, localAddr, new ReliableSocketProfile());
+  }
+
+  /**
+   * Creates a rudp socket that uses the given rudp parameters and connects it
+   * to the specified remote address. The socket will also bind to the local
+   * address supplied.
+   *
+   * @param inetAddr  the remote address.
+   * @param localAddr the local address.
+   * @param profile   the socket profile.
+   * @throws IOException if an I/O error occurs when creating the socket.
+   */
+  protected ReliableSocket(InetSocketAddress inetAddr, InetSocketAddress localAddr,
+                           ReliableSocketProfile profile)
+      throws IOException {
+    this(openSocket(localAddr, localAddr != null, profile.reuseAddress()), profile);
     connect(inetAddr);
   }
 
@@ -266,26 +449,138 @@ public class ReliableSocket extends Socket {
 
   /**
    * Creates a rudp socket and attaches it to the underlying
-   * datagram socket using the given rudp parameters.
+   * datagram socket using the given rudp parameters, for instance
+   * an {@link ImpairedDatagramSocket} to test the socket over a
+   * lossy link.
+   *
+   * @param sock    the datagram socket.
+   * @param profile the socket profile.
+   */
+  public ReliableSocket(DatagramSocket sock, ReliableSocketProfile profile) {
+    this(sock, profile, TimerWheel.getDefault());
+  }
+
+  /**
+   * Creates a rudp socket and attaches it to the underlying datagram
+   * socket using the given rudp parameters. The timers of the socket
+   * are driven by the given wheel, and the time of its clock is used
+   * for round-trip times, pacing and timeouts.
    *
    * @param sock    the datagram socket.
    * @param profile the socket profile.
+   * @param wheel   the timer wheel.
    */
-  protected ReliableSocket(DatagramSocket sock, ReliableSocketProfile profile) {
+  protected ReliableSocket(DatagramSocket sock, ReliableSocketProfile profile,
+                           TimerWheel wheel) {
     if (sock == null) {
       throw new NullPointerException("sock");
     }
 
+    if (wheel == null) {
+      throw new NullPointerException("wheel");
+    }
+
+    _timerWheel = wheel;
+    _clock = wheel.getClock();
     init(sock, profile);
   }
 
+  /**
+   * Opens the UDP socket of a rudp socket. The socket is backed by a
+   * blocking {@link DatagramChannel}, so that segments can be sent
+   * straight from their pooled wire form.
+   *
+   * @param localAddr the local address, or null for any free port.
+   * @param bind      true to bind the socket.
+   * @param reuse     true to take the port over from a closed socket.
+   * @return the UDP socket.
+   * @throws IOException if the socket cannot be opened or bound.
+   */
+  private static DatagramSocket openSocket(SocketAddress localAddr, boolean bind,
+                                           boolean reuse)
+      throws IOException {
+    DatagramChannel channel = DatagramChannel.open();
+    try {
+      if (bind) {
+        bindSocket(channel.socket(), localAddr, reuse);
+      }
+    } catch (IOException xcp) {
+      channel.close();
+      throw xcp;
+    }
+
+    return channel.socket();
+  }
+
+  /**
+   * Binds a UDP socket to the specified address. If the port is still
+   * held by a closed socket which lingers with the reuse address option,
+   * that socket is released and the bind is tried again.
+   *
+   * @param sock      the UDP socket.
+   * @param localAddr the local address.
+   * @param reuse     true to take the port over from a closed socket.
+   * @throws IOException if the socket cannot be bound.
+   * @see ReliableSocketProfile#setReuseAddress(boolean)
+   */
+  static void bindSocket(DatagramSocket sock, SocketAddress localAddr, boolean reuse)
+      throws IOException {
+    try {
+      sock.bind(localAddr);
+    } catch (BindException xcp) {
+      if (!reuse || !(localAddr instanceof InetSocketAddress)) {
+        throw xcp;
+      }
+
+      Runnable release = (Runnable) _lingeringSockets.remove(
+          Integer.valueOf(((InetSocketAddress) localAddr).getPort()));
+      if (release == null) {
+        throw xcp;
+      }
+
+      release.run();
+      sock.bind(localAddr);
+    }
+  }
+
+  /**
+   * Registers a closed socket that gives its local port up to a new
+   * socket which binds to it.
+   *
+   * @param port    the local port.
+   * @param release the task releasing the port.
+   */
+  static void addLingeringSocket(int port, Runnable release) {
+    _lingeringSockets.put(Integer.valueOf(port), release);
+  }
+
+  /**
+   * Deregisters a closed socket once it has been released.
+   *
+   * @param port    the local port.
+   * @param release the task releasing the port.
+   */
+  static void removeLingeringSocket(int port, Runnable release) {
+    _lingeringSockets.remove(Integer.valueOf(port), release);
+  }
+
   /**
    * Computes the consecutive sequence number.
    *
    * @return the next number in the sequence.
    */
-  private static int nextSequenceNumber(int seqn) {
-    return (seqn + 1) % MAX_SEQUENCE_NUMBER;
+  private int nextSequenceNumber(int seqn) {
+    return (seqn + 1) % _maxSequenceNumber;
+  }
+
+  /**
+   * Computes how far a sequence number is ahead of another one.
+   *
+   * @return the number of sequence numbers from the first to the second one.
+   */
+  private int sequenceDistance(int seqn, int aseqn) {
+    int distance = aseqn - seqn;
+    return (distance < 0) ? distance + _maxSequenceNumber : distance;
   }
 
   /**
@@ -298,10 +593,38 @@ public class ReliableSocket extends Socket {
     _sock = sock;
     _profile = profile;
     _shutdownHook = new ShutdownHook();
-
+    _nullSegmentTimer = new Timer("ReliableSocket-NullSegmentTimer",
+        new NullSegmentTimerTask(), _timerWheel);
+    _retransmissionTimer = new Timer("ReliableSocket-RetransmissionTimer",
+        new RetransmissionTimerTask(), _timerWheel);
+    _cumulativeAckTimer = new Timer("ReliableSocket-CumulativeAckTimer",
+        new CumulativeAckTimerTask(), _timerWheel);
+    _keepAliveTimer = new Timer("ReliableSocket-KeepAliveTimer",
+        new KeepAliveTimerTask(), _timerWheel);
+    _closeTimer = new Timer("ReliableSocket-CloseTimer",
+        new CloseTimerTask(), _timerWheel);
+    _releaseTask = new ReleaseTask();
+    _parityTimer = new Timer("ReliableSocket-ParityTimer",
+        new ParityTimerTask(), _timerWheel);
+
+    _sendQueueSize = _profile.maxSendQueueSize();
+    _recvQueueSize = _profile.maxRecvQueueSize();
+    ensureQueueCapacity();
+    _congestionController = _profile.createCongestionController();
     _sendBufferSize = (_profile.maxSegmentSize() - Segment.RUDP_HEADER_LEN) * 32;
     _recvBufferSize = (_profile.maxSegmentSize() - Segment.RUDP_HEADER_LEN) * 32;
+    ensureSocketBufferCapacity();
+    startReceiver();
+  }
 
+  /**
+   * Registers the shutdown hook and starts the receiver thread, which
+   * reads the segments from the UDP socket and hands them over to
+   * {@link #handleReceivedSegment(Segment)}. A socket driven by a
+   * simulator has no thread, its segments are handed over by the
+   * simulator thread.
+   */
+  protected void startReceiver() {
         /* Register shutdown hook */
     try {
       Runtime.getRuntime().addShutdownHook(_shutdownHook);
@@ -314,9 +637,28 @@ public class ReliableSocket extends Socket {
     _sockThread.start();
   }
 
+  /**
+   * Lets the UDP socket buffer a full window.
+   */
+  private void ensureSocketBufferCapacity() {
+    try {
+      int windowBytes = _profile.maxSegmentSize() * Math.max(_sendQueueSize, _recvQueueSize);
+      if (_sock.getReceiveBufferSize() < windowBytes) {
+        _sock.setReceiveBufferSize(windowBytes);
+      }
+      if (_sock.getSendBufferSize() < windowBytes) {
+        _sock.setSendBufferSize(windowBytes);
+      }
+    } catch (SocketException xcp) {
+      if (DEBUG) {
+        xcp.printStackTrace();
+      }
+    }
+  }
+
   public void bind(SocketAddress bindpoint)
       throws IOException {
-    _sock.bind(bindpoint);
+    bindSocket(_sock, bindpoint, _profile.reuseAddress());
   }
 
   public void connect(SocketAddress endpoint)
@@ -346,23 +688,10 @@ public class ReliableSocket extends Socket {
       throw new IllegalArgumentException("Unsupported address type");
     }
 
-    _endpoint = (InetSocketAddress) endpoint;
-
-    // Synchronize sequence numbers
-    _state = SYN_SENT;
-    Random rand = new Random(System.currentTimeMillis());
-    Segment syn = new SYNSegment(_counters.setSequenceNumber(rand.nextInt(MAX_SEQUENCE_NUMBER)),
-        _profile.maxOutstandingSegs(),
-        _profile.maxSegmentSize(),
-        _profile.retransmissionTimeout(),
-        _profile.cumulativeAckTimeout(),
-        _profile.nullSegmentTimeout(),
-        _profile.maxRetrans(),
-        _profile.maxCumulativeAcks(),
-        _profile.maxOutOfSequence(),
-        _profile.maxAutoReset());
-
-    sendAndQueueSegment(syn);
+    synchronized (this) {
+      _connectionRequestEnded = false;
+    }
+    sendConnectionRequest(endpoint);
 
     // Wait for connection establishment (or timeout)
     boolean timedout = false;
@@ -372,11 +701,14 @@ public class ReliableSocket extends Socket {
           if (timeout == 0) {
             wait();
           } else {
-            long startTime = System.currentTimeMillis();
-            wait(timeout);
-            if (System.currentTimeMillis() - startTime >= timeout) {
-              timedout = true;
+            /* The deadline is kept on the clock of the socket, which may be virtual */
+            long deadline = _clock.currentTimeMillis() + timeout;
+            long remaining = timeout;
+            while (!isConnected() && !_connectionRequestEnded && remaining > 0) {
+              wait(remaining);
+              remaining = deadline - _clock.currentTimeMillis();
             }
+            timedout = !isConnected() && !_connectionRequestEnded;
           }
         } catch (InterruptedException xcp) {
           xcp.printStackTrace();
@@ -411,10 +743,119 @@ public class ReliableSocket extends Socket {
     }
   }
 
+  /**
+   * Wakes up the thread that waits in {@link #connect(SocketAddress, int)}
+   * for the connection request to be answered, when it is refused or
+   * the socket is closed or fails before the connection is established.
+   */
+  private synchronized void connectionRequestEnded() {
+    _connectionRequestEnded = true;
+    notify();
+  }
+
   public SocketChannel getChannel() {
     return null;
   }
 
+  /**
+   * Returns the channel of this socket, which can read and write
+   * without blocking. There is no {@link SocketChannel} for rudp
+   * sockets, see {@link #getChannel()}.
+   *
+   * @return the channel associated with this socket.
+   */
+  public synchronized ReliableDatagramChannel getReliableChannel() {
+    if (_channel == null) {
+      _channel = new ReliableDatagramChannel(this);
+    }
+    return _channel;
+  }
+
+  /**
+   * Opens a new stream over this connection. The peer accepts it
+   * once the first bytes, or the end of the stream, arrive.
+   *
+   * @return the stream.
+   * @throws IOException if the socket is closed, or if the peers
+   *                     do not multiplex streams.
+   * @see ReliableSocketProfile#setMultiplexedStreams(boolean)
+   */
+  public ReliableStream openStream()
+      throws IOException {
+    checkStreams();
+
+    synchronized (_recvQueueLock) {
+      return _streams.openStream();
+    }
+  }
+
+  /**
+   * Waits for the peer to open a stream over this connection.
+   * The timeout of the socket applies.
+   *
+   * @return the stream.
+   * @throws IOException if the socket is closed, if the peers do not
+   *                     multiplex streams, or, with an
+   *                     <code>EOFException</code>, if the peer closed the
+   *                     connection.
+   */
+  public ReliableStream acceptStream()
+      throws IOException {
+    checkStreams();
+    return _streams.acceptStream(_timeout);
+  }
+
+  private void checkStreams()
+      throws IOException {
+    if (isClosed()) {
+      throw new SocketException("Socket is closed");
+    }
+
+    if (!isConnected()) {
+      throw new SocketException("Socket is not connected");
+    }
+
+    if (!_multiplexed) {
+      throw new SocketException("Streams are not multiplexed");
+    }
+  }
+
+  /**
+   * Sends the request to connect to the given endpoint, but does
+   * not wait for the connection to be established.
+   *
+   * @param endpoint the remote address.
+   * @throws IOException if an I/O error occurs.
+   */
+  void sendConnectionRequest(SocketAddress endpoint)
+      throws IOException {
+    _endpoint = (InetSocketAddress) endpoint;
+
+    PathProfile pathProfile = null;
+    if (_profile.pathProfiling()) {
+      _pathProfiler = new PathProfiler(((InetSocketAddress) endpoint).getAddress());
+      pathProfile = _pathProfiler.getProfile();
+    }
+    if (pathProfile != null) {
+      /* Propose the parameters of the path measured by a previous connection */
+      _profile = pathProfile.createProfile(_profile);
+      _sendQueueSize = _profile.maxSendQueueSize();
+      _recvQueueSize = _profile.maxRecvQueueSize();
+      ensureQueueCapacity();
+      ensureSocketBufferCapacity();
+      _congestionController = _profile.createCongestionController();
+    }
+
+    /*
+     * Synchronize sequence numbers. Peers that only speak version 1
+     * cannot parse a version 2 SYN segment, so version 2 is offered
+     * in a version 1 SYN segment, see handleSYNSegment().
+     */
+    _state = SYN_SENT;
+    setVersion(Segment.RUDP_VERSION);
+    sendAndQueueSegment(createSYNSegment());
+  }
+
   public InetAddress getInetAddress() {
     if (!isConnected()) {
       return null;
@@ -504,22 +945,23 @@ public class ReliableSocket extends Socket {
 
       switch (_state) {
         case SYN_SENT:
-          synchronized (this) {
-            notify();
-          }
+          connectionRequestEnded();
           break;
         case CLOSE_WAIT:
         case SYN_RCVD:
         case ESTABLISHED:
-          sendSegment(new FINSegment(_counters.nextSequenceNumber()));
+                    /* The FIN is retransmitted until acknowledged, see checkCloseHandshake() */
+          _finSent = true;
+          sendAndQueueSegment(new FINSegment(_counters.nextSequenceNumber()), false);
           closeImpl();
           break;
         case CLOSED:
           _retransmissionTimer.destroy();
           _cumulativeAckTimer.destroy();
+          _parityTimer.destroy();
           _keepAliveTimer.destroy();
           _nullSegmentTimer.destroy();
-          _sock.close();
+          closeSocket();
           break;
       }
 
@@ -530,10 +972,11 @@ public class ReliableSocket extends Socket {
         _unackedSentQueue.notify();
       }
 
-      synchronized (_inSeqRecvQueue) {
-        _inSeqRecvQueue.notify();
-      }
+      LockSupport.unpark(_reader);
     }
+
+    wakeStreams();
+    signal(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
   }
 
   public boolean isBound() {
@@ -559,6 +1002,11 @@ public class ReliableSocket extends Socket {
     _timeout = timeout;
   }
 
+  public int getSoTimeout()
+      throws SocketException {
+    return _timeout;
+  }
+
   public synchronized int getSendBufferSize()
       throws SocketException {
     if (isClosed()) {
@@ -667,9 +1115,8 @@ public class ReliableSocket extends Socket {
 
     _shutIn = true;
 
-    synchronized (_recvQueueLock) {
-      _recvQueueLock.notify();
-    }
+    LockSupport.unpark(_reader);
+    signal(SelectionKey.OP_READ);
   }
 
   public void shutdownOutput()
@@ -691,6 +1138,8 @@ public class ReliableSocket extends Socket {
     synchronized (_unackedSentQueue) {
       _unackedSentQueue.notifyAll();
     }
+
+    signal(SelectionKey.OP_WRITE);
   }
 
   public boolean isInputShutdown() {
@@ -764,19 +1213,8 @@ public class ReliableSocket extends Socket {
 
     // Synchronize sequence numbers
     _state = SYN_SENT;
-    Random rand = new Random(System.currentTimeMillis());
-    Segment syn = new SYNSegment(_counters.setSequenceNumber(rand.nextInt(MAX_SEQUENCE_NUMBER)),
-        _profile.maxOutstandingSegs(),
-        _profile.maxSegmentSize(),
-        _profile.retransmissionTimeout(),
-        _profile.cumulativeAckTimeout(),
-        _profile.nullSegmentTimeout(),
-        _profile.maxRetrans(),
-        _profile.maxCumulativeAcks(),
-        _profile.maxOutOfSequence(),
-        _profile.maxAutoReset());
-
-    sendAndQueueSegment(syn);
+    setVersion(_profile.version());
+    sendAndQueueSegment(createSYNSegment());
   }
 
   /**
@@ -793,6 +1231,41 @@ public class ReliableSocket extends Socket {
    */
   protected void write(byte[] b, int off, int len)
       throws IOException {
+    write(new ByteBuffer[] {ByteBuffer.wrap(b, off, len)}, 0, 1, true);
+  }
+
+  /**
+   * Writes a sequence of bytes gathered from a subsequence of the
+   * given buffers as data segments and queues them for immediate
+   * transmission. Segments are filled across buffer boundaries.
+   * <p>
+   * In blocking mode, this method blocks until all bytes are queued.
+   * Otherwise only the bytes that the send window and the pacer let
+   * through right away are written, possibly none.
+   *
+   * @param srcs   the buffers from which bytes are retrieved.
+   * @param offset the offset of the first buffer.
+   * @param length the number of buffers.
+   * @param block  whether to wait for the send window and the pacer.
+   * @return the number of bytes written.
+   * @throws IOException if an I/O error occurs. In particular,
+   *                     an <code>IOException</code> is thrown if the socket
+   *                     is closed.
+   */
+  long write(ByteBuffer[] srcs, int offset, int length, boolean block)
+      throws IOException {
+    return write(_multiplexed ? _streams.socketStream() : null, srcs, offset, length, block);
+  }
+
+  /**
+   * Writes a sequence of bytes to a stream, or to the socket if
+   * streams are not multiplexed.
+   *
+   * @param stream the stream, or null.
+   * @see #write(ByteBuffer[], int, int, boolean)
+   */
+  long write(ReliableStream stream, ByteBuffer[] srcs, int offset, int length, boolean block)
+      throws IOException {
     if (isClosed()) {
       throw new SocketException("Socket is closed");
     }
@@ -805,110 +1278,508 @@ public class ReliableSocket extends Socket {
       throw new SocketException("Connection reset");
     }
 
-    int totalBytes = 0;
+    long len = 0;
+    for (int i = offset; i < offset + length; i++) {
+      len += srcs[i].remaining();
+    }
+
+    long totalBytes = 0;
     while (totalBytes < len) {
-      synchronized (_resetLock) {
-        while (_reset) {
-          try {
-            _resetLock.wait();
-          } catch (InterruptedException xcp) {
-            xcp.printStackTrace();
+      if (_reset) {
+        if (!block) {
+          break;
+        }
+
+        synchronized (_resetLock) {
+          while (_reset) {
+            try {
+              _resetLock.wait();
+            } catch (InterruptedException xcp) {
+              xcp.printStackTrace();
+            }
           }
         }
+      }
+
+      probePathMtu(block);
+
+      /* Take the pool first, the path MTU may shrink while pacing */
+      BufferPool pool = bufferPool();
+      int segmentSize = pool.bufferSize() - DATSegment.bufferSize(0);
+      int writeBytes = (int) Math.min(segmentSize - headerLength() -
+          (_fec ? FECSegment.PARITY_FIELDS_LEN : 0) -
+          (_multiplexed ? DATSegment.STREAM_FIELDS_LEN : 0), len - totalBytes);
+
+      if (stream != null) {
+        writeBytes = stream.takeCredit(writeBytes);
+      }
 
-        int writeBytes = Math.min(_profile.maxSegmentSize() - Segment.RUDP_HEADER_LEN,
-            len - totalBytes);
+      if (block) {
+        pace(writeBytes + headerLength());
+      } else if (!canSend(writeBytes + headerLength())) {
+        break;
+      }
+
+      DATSegment segment = new DATSegment(_counters.nextSequenceNumber(),
+          _counters.getLastInSequence(), srcs, offset, length, writeBytes, pool);
+      if (stream != null) {
+        segment.setStream(stream.getId(), stream.nextSendSequenceNumber());
+      }
+      sendAndQueueSegment(segment, block);
+      totalBytes += writeBytes;
+    }
 
-        sendAndQueueSegment(new DATSegment(_counters.nextSequenceNumber(),
-            _counters.getLastInSequence(), b, off + totalBytes, writeBytes));
-        totalBytes += writeBytes;
+    if (_fec && totalBytes > 0) {
+      synchronized (_parityTimer) {
+        if (_parityTimer.isIdle()) {
+          _parityTimer.schedule(TIMER_GRANULARITY);
+        }
       }
     }
+
+    return totalBytes;
   }
 
   /**
-   * Reads up to <code>len</code> bytes of data from the receiver
-   * buffer into an array of bytes.  An attempt is made to read
-   * as many as <code>len</code> bytes, but a smaller number may
-   * be read. The number of bytes actually read is returned as
-   * an integer.
-   * <p>
-   * This method blocks until input data is available, end of file is
-   * detected, or an exception is thrown.
+   * Sends the end of a stream, a data segment without data.
    *
-   * @param b   the buffer into which the data is read.
-   * @param off the start offset in array <code>b</code>
-   *            at which the data is written.
-   * @param len the maximum number of bytes to read.
-   * @return the total number of bytes read into the buffer,
-   * or <code>-1</code> if there is no more data because
-   * the end of the stream has been reached.
-   * @throws IOException if an I/O error occurs. In particular,
-   *                     an <code>IOException</code> is thrown if the socket
-   *                     is closed, or if the buffer is not big enough to hold
-   *                     a full data segment.
+   * @param stream the stream.
+   * @throws IOException if an I/O error occurs.
    */
-  protected int read(byte[] b, int off, int len)
+  void closeStream(ReliableStream stream)
       throws IOException {
+    checkStreams();
 
-    int totalBytes = 0;
+    DATSegment fin = new DATSegment(_counters.nextSequenceNumber(),
+        _counters.getLastInSequence(), new byte[0], 0, 0, bufferPool());
+    fin.setStream(stream.getId(), stream.nextSendSequenceNumber());
+    sendAndQueueSegment(fin);
 
     synchronized (_recvQueueLock) {
+      _streams.streamClosed(stream);
+    }
+  }
+
+  /**
+   * Tells the peer how many bytes in all it may send on a stream.
+   *
+   * @param id    the stream ID.
+   * @param limit the number of bytes.
+   * @throws IOException if an I/O error occurs.
+   */
+  void sendStreamWindow(int id, long limit)
+      throws IOException {
+    checkStreams();
+
+    byte[] update = StreamDemultiplexer.windowUpdate(id, limit);
+    DATSegment segment = new DATSegment(_counters.nextSequenceNumber(),
+        _counters.getLastInSequence(), update, 0, update.length, bufferPool());
+    segment.setStream(StreamDemultiplexer.CONTROL_STREAM, 0);
+    sendAndQueueSegment(segment);
+  }
+
+  /**
+   * Takes the tokens for a data segment of the given length if it
+   * can be sent right away, that is if the send window is not full
+   * and the pacer does not hold it back.
+   *
+   * @param bytes the length of the segment.
+   * @return true if the segment can be sent.
+   */
+  private boolean canSend(int bytes) {
+    synchronized (_unackedSentQueue) {
+      if (_unackedSentQueue.size() >= sendWindow()) {
+        return false;
+      }
+    }
+
+    long now = _clock.nanoTime();
+    if (_pacer.delay(bytes, now) > 0) {
+      return false;
+    }
+
+    _pacer.pace(bytes, now);
+    return true;
+  }
+
+  /**
+   * Returns true if data can be read without blocking, or if a read
+   * would return right away with the end of the stream or an error.
+   */
+  boolean isReadable() {
+    return !_inSeqRecvQueue.isEmpty() || isClosed() ||
+        isInputShutdown() || !isConnected();
+  }
+
+  /**
+   * Returns true if a full data segment can be written without
+   * blocking, or if a write would fail right away.
+   */
+  boolean isWritable() {
+    if (isClosed() || isOutputShutdown() || !isConnected()) {
+      return true;
+    }
+
+    if (_reset) {
+      return false;
+    }
+
+    synchronized (_unackedSentQueue) {
+      if (_unackedSentQueue.size() >= sendWindow()) {
+        return false;
+      }
+    }
+
+    return writeDelay() == 0;
+  }
+
+  /**
+   * Returns the time until the pacer lets a full data
+   * segment through (ns), or 0 if it can be sent now.
+   */
+  long writeDelay() {
+    Pacer pacer = _pacer;
+    if (pacer == null) {
+      return 0;
+    }
+
+    return pacer.delay(_pathMtu.segmentSize(), _clock.nanoTime());
+  }
+
+  /**
+   * Notifies the channel of this socket, if any,
+   * that the socket may have become ready.
+   *
+   * @param ops the operations that may be ready.
+   */
+  private void signal(int ops) {
+    ReliableDatagramChannel channel = _channel;
+    if (channel != null) {
+      channel.signal(ops);
+    }
+  }
+
+  /**
+   * Waits until a data segment of the given length may be
+   * sent at the pacing rate.
+   *
+   * @param bytes the length of the segment.
+   */
+  private void pace(int bytes) {
+    long now = _clock.nanoTime();
+    long deadline = now + _pacer.pace(bytes, now);
+    while ((now = _clock.nanoTime()) < deadline && !_closed) {
+      LockSupport.parkNanos(this, deadline - now);
+    }
+  }
+
+  /**
+   * Sends a path MTU probe if the search for the largest
+   * segment size that gets through is not done yet.
+   *
+   * @param block whether to wait for room in the send window,
+   *              otherwise the probe is put off while it would
+   *              take the last free slot.
+   * @throws IOException if an I/O error occurs in the
+   *                     underlying UDP socket.
+   */
+  private void probePathMtu(boolean block)
+      throws IOException {
+    NULSegment probe;
+    synchronized (_unackedSentQueue) {
+      if (!block && _unackedSentQueue.size() + 1 >= sendWindow()) {
+        return;
+      }
+
+      int size = _pathMtu.nextProbeSize(_clock.currentTimeMillis());
+      if (size == 0) {
+        return;
+      }
+
+      probe = new NULSegment(_counters.nextSequenceNumber(), size);
+      _probe = probe;
+    }
+
+    sendAndQueueSegment(probe, block);
+  }
+
+  /**
+   * Sends the train of NUL segments that measures the path once the
+   * connection is established, see {@link PathProbe}.
+   *
+   * @throws IOException if an I/O error occurs in the
+   *                     underlying UDP socket.
+   */
+  private void sendPathProbes()
+      throws IOException {
+    PathProbe pathProbe;
+    synchronized (_unackedSentQueue) {
+      pathProbe = _pathProfiler.startProbe();
+    }
+
+    while (pathProbe.remaining() > 0) {
+      NULSegment probe = new NULSegment(_counters.nextSequenceNumber());
+      pathProbe.probeSent(probe);
+      sendAndQueueSegment(probe, false);
+    }
+  }
+
+  /**
+   * Switches to the congestion control algorithm of the class of the
+   * path once all probes have been acknowledged. The other parameters
+   * of the class were agreed on with the peer in the SYN segments, they
+   * only apply to the next connections. Must be called with the send
+   * queue locked.
+   *
+   * @param pathProfile the class of the path.
+   */
+  private void pathProbed(PathProfile pathProfile) {
+    if (DEBUG) {
+      log("path " + pathProfile);
+    }
+
+    if (pathProfile.congestionControl() != _profile.congestionControl()) {
+      _congestionController = pathProfile.createProfile(_profile).createCongestionController();
+    }
+  }
+
+  /**
+   * Returns a new connection ID for a connection with migration.
+   *
+   * @see ConnectionMigration#newConnectionId()
+   */
+  protected int newConnectionId() {
+    return ConnectionMigration.newConnectionId();
+  }
+
+  /**
+   * Handles a segment received from another address than the peer's,
+   * which is dropped unless it carries the connection ID. The address
+   * becomes the peer's once it has acknowledged a challenge, that is,
+   * on the first segment received from it after that.
+   *
+   * @param segment the received segment.
+   * @param source  the address the segment comes from.
+   */
+  protected void handleSegmentFrom(Segment segment, SocketAddress source) {
+    if (_connectionId == 0 || segment.getConnectionId() != _connectionId) {
+      segment.release();
+      return;
+    }
+
+    handleReceivedSegment(segment);
+
+    if (_state != ESTABLISHED) {
+      return;
+    }
+
+    NULSegment challenge = null;
+    synchronized (_unackedSentQueue) {
+      if (_migration.isValidated(source)) {
+        migrate(source);
+      } else if (!_migration.isChallenging()) {
+        /*
+         * Sent even if the window is full: the segments in flight went to
+         * the old address and the window only drains once the peer moves.
+         */
+        challenge = _migration.challenge(source, _counters.nextSequenceNumber());
+      }
+    }
+
+    if (challenge != null) {
+      try {
+        sendAndQueueSegment(challenge, false);
+      } catch (IOException xcp) {
+        xcp.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Moves the connection to a validated address of the peer. A new host,
+   * rather than a new port of the same host, may be reached through
+   * another path, whose round-trip time, congestion window and MTU are
+   * measured again. Must be called with the send queue locked.
+   *
+   * @param endpoint the new address of the peer.
+   */
+  private void migrate(SocketAddress endpoint) {
+    SocketAddress oldEndpoint = _endpoint;
+    if (DEBUG) {
+      log("migrated from " + oldEndpoint + " to " + endpoint);
+    }
+
+    _endpoint = endpoint;
+    if (!((InetSocketAddress) endpoint).getAddress().equals(
+        ((InetSocketAddress) oldEndpoint).getAddress())) {
+      _srtt = -1;
+      _rttVar = 0;
+      _rto = -1;
+      _congestionController = _profile.createCongestionController();
+      if (_probe != null) {
+        _probe.removePadding();
+        _probe = null;
+      }
+      _pathMtu = new PathMtuDiscovery(_profile.maxSegmentSize());
+      _pacer = new Pacer(_profile.minPacingRate(), _profile.maxPacingRate(), _clock);
+    }
+
+    _statistics.reregister();
+    endpointChanged(oldEndpoint);
+  }
+
+  /**
+   * Called when the connection has moved to a new address of the peer.
+   *
+   * @param oldEndpoint the previous address of the peer.
+   */
+  protected void endpointChanged(SocketAddress oldEndpoint) {
+  }
+
+  /**
+   * Reads up to <code>len</code> bytes of data from the receiver
+   * buffer into an array of bytes.  An attempt is made to read
+   * as many as <code>len</code> bytes, but a smaller number may
+   * be read. The number of bytes actually read is returned as
+   * an integer.
+   * <p>
+   * This method blocks until input data is available, end of file is
+   * detected, or an exception is thrown.
+   *
+   * @param b   the buffer into which the data is read.
+   * @param off the start offset in array <code>b</code>
+   *            at which the data is written.
+   * @param len the maximum number of bytes to read.
+   * @return the total number of bytes read into the buffer,
+   * or <code>-1</code> if there is no more data because
+   * the end of the stream has been reached.
+   * @throws IOException if an I/O error occurs. In particular,
+   *                     an <code>IOException</code> is thrown if the socket
+   *                     is closed.
+   */
+  protected int read(byte[] b, int off, int len)
+      throws IOException {
+    return read(ByteBuffer.wrap(b, off, len));
+  }
+
+  /**
+   * Reads a sequence of bytes from the receiver buffer into the given
+   * buffer. Data is copied once, from the datagram it was received in
+   * to <code>dst</code>, and a data segment that does not fit in the
+   * remaining space is read partially.
+   * <p>
+   * This method blocks until input data is available, end of file is
+   * detected, or an exception is thrown.
+   *
+   * @param dst the buffer into which the data is read.
+   * @return the total number of bytes read into the buffer,
+   * or <code>-1</code> if there is no more data because
+   * the end of the stream has been reached.
+   * @throws IOException if an I/O error occurs. In particular,
+   *                     an <code>IOException</code> is thrown if the socket
+   *                     is closed.
+   */
+  public int read(ByteBuffer dst)
+      throws IOException {
+    return read(dst, true);
+  }
+
+  /**
+   * Reads a sequence of bytes from the receiver buffer into the
+   * given buffer, either like {@link #read(ByteBuffer)} or, without
+   * blocking, returning <code>0</code> if no data is available.
+   *
+   * @param dst   the buffer into which the data is read.
+   * @param block whether to wait for input data.
+   * @return the total number of bytes read into the buffer,
+   * or <code>-1</code> if there is no more data because
+   * the end of the stream has been reached.
+   * @throws IOException if an I/O error occurs.
+   */
+  int read(ByteBuffer dst, boolean block)
+      throws IOException {
+
+    int totalBytes = 0;
+
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+
+    synchronized (_readLock) {
+      long deadline = _clock.currentTimeMillis() + _timeout;
 
       while (true) {
         while (_inSeqRecvQueue.isEmpty()) {
+          /*
+           * The reader is published before checking the queue and the
+           * socket state, so it cannot miss the wake-up of a segment or
+           * close that comes after the check.
+           */
+          _reader = Thread.currentThread();
+          try {
+            if (!_inSeqRecvQueue.isEmpty()) {
+              break;
+            }
 
-          if (isClosed()) {
-            throw new SocketException("Socket is closed");
-          }
+            if (isClosed()) {
+              throw new SocketException("Socket is closed");
+            }
 
-          if (isInputShutdown()) {
-            throw new EOFException();
-          }
+            if (isInputShutdown()) {
+              throw new EOFException();
+            }
 
-          if (!isConnected()) {
-            throw new SocketException("Connection reset");
-          }
+            if (!isConnected()) {
+              throw new SocketException("Connection reset");
+            }
+
+            if (!block) {
+              return 0;
+            }
 
-          try {
             if (_timeout == 0) {
-              _recvQueueLock.wait();
+              LockSupport.park(this);
             } else {
-              long startTime = System.currentTimeMillis();
-              _recvQueueLock.wait(_timeout);
-              if ((System.currentTimeMillis() - startTime) >= _timeout) {
+              long timeout = deadline - _clock.currentTimeMillis();
+              if (timeout <= 0) {
                 throw new SocketTimeoutException();
               }
+              LockSupport.parkNanos(this, timeout * 1000000L);
             }
-          } catch (InterruptedException xcp) {
-            xcp.printStackTrace();
+          } finally {
+            _reader = null;
           }
         }
 
-        for (Iterator it = _inSeqRecvQueue.iterator(); it.hasNext(); ) {
-          Segment s = (Segment) it.next();
+        Segment s;
+        while ((s = (Segment) _inSeqRecvQueue.peek()) != null) {
 
           if (s instanceof RSTSegment) {
-            it.remove();
+            removeInSequenceSegment();
             break;
           } else if (s instanceof FINSegment) {
             if (totalBytes <= 0) {
-              it.remove();
+              removeInSequenceSegment();
               return -1; /* EOF */
             }
             break;
           } else if (s instanceof DATSegment) {
-            byte[] data = ((DATSegment) s).getData();
-            if (data.length + totalBytes > len) {
-              if (totalBytes <= 0) {
-                throw new IOException("insufficient buffer space");
-              }
-              break;
+            DATSegment data = (DATSegment) s;
+            int readBytes = data.getData(_readOffset, dst);
+            totalBytes += readBytes;
+            _readOffset += readBytes;
+
+            if (_readOffset < data.getDataLength()) {
+              break; /* dst is full */
             }
 
-            System.arraycopy(data, 0, b, off + totalBytes, data.length);
-            totalBytes += data.length;
-            it.remove();
+            _readOffset = 0;
+            removeInSequenceSegment();
+            data.release();
+
+            if (!dst.hasRemaining()) {
+              break;
+            }
           }
         }
 
@@ -919,6 +1790,73 @@ public class ReliableSocket extends Socket {
     }
   }
 
+  /**
+   * Removes the head of the in-sequence queue once it has been read.
+   */
+  private void removeInSequenceSegment() {
+    _inSeqRecvQueue.poll();
+    _inSeqRecvCount.decrementAndGet();
+
+    if (_windowAdvertised) {
+      segmentConsumed();
+    }
+  }
+
+  /**
+   * Accounts for a segment consumed by the reader. The receive queue
+   * is doubled, up to the maximum window, whenever the reader consumes
+   * more than half of it per round-trip time, and the peer is told as
+   * soon as a window that had almost closed has opened again, rather
+   * than at its next retransmission. Must be called with the read lock held.
+   */
+  private void segmentConsumed() {
+    long now = _clock.currentTimeMillis();
+    if (_consumedSince == 0) {
+      _consumedSince = now;
+    }
+
+    _consumedSegments++;
+    long elapsed = now - _consumedSince;
+    if (elapsed >= AUTOTUNE_INTERVAL) {
+      int rtt = getRoundTripTime();
+      long perRtt = _consumedSegments * ((rtt > 0) ? rtt : AUTOTUNE_INTERVAL) / elapsed;
+      if (2 * perRtt > _recvQueueSize && _recvQueueSize < maxWindowSize()) {
+        growReceiveQueue((int) Math.min(2L * _recvQueueSize, maxWindowSize()));
+      }
+
+      _consumedSegments = 0;
+      _consumedSince = now;
+    }
+
+    int last = _lastWindowSent;
+    if (last >= 0 && last < _recvQueueSize / 4 && receiveWindow() >= _recvQueueSize / 2) {
+      sendWindowUpdate();
+    }
+  }
+
+  /**
+   * Raises the number of segments the receive queue may hold.
+   *
+   * @param size the new size of the receive queue.
+   */
+  private void growReceiveQueue(int size) {
+    synchronized (_recvQueueLock) {
+      _recvQueueSize = size;
+      _outSeqRecvQueue.ensureCapacity(size);
+      _outSeqRecvQueue.setMaxSpan(size);
+    }
+
+    ensureSocketBufferCapacity();
+  }
+
+  /**
+   * Returns the number of segments past the last in-sequence one that
+   * the receive queue can still hold, which is advertised to the peer.
+   */
+  int receiveWindow() {
+    return Math.max(_recvQueueSize - _inSeqRecvCount.get(), 0);
+  }
+
   /**
    * Adds the specified listener to this socket. If the listener
    * has already been registered, this method does nothing.
@@ -930,11 +1868,7 @@ public class ReliableSocket extends Socket {
       throw new NullPointerException("listener");
     }
 
-    synchronized (_listeners) {
-      if (!_listeners.contains(listener)) {
-        _listeners.add(listener);
-      }
-    }
+    _listeners.addIfAbsent(listener);
   }
 
   /**
@@ -948,9 +1882,7 @@ public class ReliableSocket extends Socket {
       throw new NullPointerException("listener");
     }
 
-    synchronized (_listeners) {
-      _listeners.remove(listener);
-    }
+    _listeners.remove(listener);
   }
 
   /**
@@ -996,11 +1928,25 @@ public class ReliableSocket extends Socket {
    */
   private void sendSegment(Segment s)
       throws IOException {
+    s.setWide(_wide);
+    s.setSentTime(_clock.currentTimeMillis());
+
+    if (_connectionId != 0) {
+      s.setConnectionId(_connectionId);
+    }
+
         /* Piggyback any pending acknowledgments */
     if (s instanceof DATSegment || s instanceof RSTSegment || s instanceof FINSegment || s instanceof NULSegment) {
       checkAndSetAck(s);
     }
 
+        /* Advertise the current receive window, retransmissions included */
+    if (_windowAdvertised && s.getAck() >= 0 && !(s instanceof SYNSegment)) {
+      int window = receiveWindow();
+      s.setWindow(window);
+      _lastWindowSent = window;
+    }
+
         /* Reset null segment timer */
     if (s instanceof DATSegment || s instanceof RSTSegment || s instanceof FINSegment) {
       _nullSegmentTimer.reset();
@@ -1011,37 +1957,83 @@ public class ReliableSocket extends Socket {
     }
 
     sendSegmentImpl(s);
+    _statistics.segmentSent(s.length());
   }
 
   /**
-   * Receives a segment and increases the cumulative
-   * acknowledgment counter.
+   * Handles a segment received from the peer, on the calling thread,
+   * and increases the cumulative acknowledgment counter.
    *
-   * @return the received segment.
-   * @throws IOException if an I/O error occurs in the
-   *                     underlying UDP socket.
+   * @param segment the received segment.
+   * @see #startReceiver()
    */
-  private Segment receiveSegment()
-      throws IOException {
-    Segment s;
-    if ((s = receiveSegmentImpl()) != null) {
+  protected void handleReceivedSegment(Segment segment) {
+    if (DEBUG) {
+      log("recv " + segment);
+    }
 
-      if (DEBUG) {
-        log("recv " + s);
-      }
+    _statistics.segmentReceived(segment.length());
 
-      if (s instanceof DATSegment || s instanceof NULSegment ||
-          s instanceof RSTSegment || s instanceof FINSegment ||
-          s instanceof SYNSegment) {
-        _counters.incCumulativeAckCounter();
-      }
+    if (segment instanceof DATSegment || segment instanceof NULSegment ||
+        segment instanceof RSTSegment || segment instanceof FINSegment ||
+        segment instanceof SYNSegment) {
+      _counters.incCumulativeAckCounter();
+    }
 
-      if (_keepAlive) {
-        _keepAliveTimer.reset();
+    if (_keepAlive) {
+      _keepAliveTimer.reset();
+    }
+
+    if (segment instanceof SYNSegment) {
+      handleSYNSegment((SYNSegment) segment);
+    } else if (segment instanceof EAKSegment) {
+      handleEAKSegment((EAKSegment) segment);
+    } else if (segment instanceof ACKSegment) {
+      // do nothing.
+    } else if (segment instanceof FECSegment) {
+      handleFECSegment((FECSegment) segment);
+    } else {
+      handleSegment(segment);
+    }
+
+    checkAndGetAck(segment);
+    checkCloseHandshake();
+  }
+
+  /**
+   * Releases the socket as soon as the close handshake is complete, that
+   * is when both ends have sent a FIN and our FIN and all data before it
+   * have been acknowledged, instead of waiting for the close timer. The
+   * end that closed first has sent the last acknowledgment, so it lingers
+   * for two retransmission timeouts to acknowledge the FIN of its peer
+   * again in case that acknowledgment is lost.
+   */
+  private void checkCloseHandshake() {
+    if (!_finSent || !_finReceived) {
+      return;
+    }
+
+    synchronized (_unackedSentQueue) {
+      if (!_unackedSentQueue.isEmpty()) {
+        return;
       }
     }
 
-    return s;
+    synchronized (_closeTimer) {
+      if (_released) {
+        return;
+      }
+
+      if (_timeWait) {
+                /* Restarted by every segment, such as a retransmitted FIN */
+        _closeTimer.cancel();
+        _closeTimer.schedule(Math.min(2 * getRetransmissionTimeout(),
+            _profile.nullSegmentTimeout() * 2));
+        return;
+      }
+    }
+
+    releaseSocket();
   }
 
   /**
@@ -1053,9 +2045,25 @@ public class ReliableSocket extends Socket {
    */
   private void sendAndQueueSegment(Segment segment)
       throws IOException {
+    sendAndQueueSegment(segment, true);
+  }
+
+  /**
+   * Sends a segment and queues a copy of it in the queue of unacknowledged segments.
+   *
+   * @param segment a segment for which delivery must be guaranteed.
+   * @param block   whether to wait for room in the send window. A caller
+   *                that does not wait has checked that there is room, so a
+   *                concurrent writer can exceed the window by a segment at most.
+   * @throws IOException if an I/O error occurs in the
+   *                     underlying UDP socket.
+   */
+  private void sendAndQueueSegment(Segment segment, boolean block)
+      throws IOException {
+    long rto;
+    FECSegment parity = null;
     synchronized (_unackedSentQueue) {
-      while ((_unackedSentQueue.size() >= _sendQueueSize) ||
-          (_counters.getOutstandingSegsCounter() > _profile.maxOutstandingSegs())) {
+      while (block && _unackedSentQueue.size() >= sendWindow() && !_closed) {
         try {
           _unackedSentQueue.wait();
         } catch (InterruptedException xcp) {
@@ -1063,8 +2071,13 @@ public class ReliableSocket extends Socket {
         }
       }
 
-      _counters.incOutstandingSegsCounter();
       _unackedSentQueue.add(segment);
+      rto = getRetransmissionTimeout();
+
+      if (_fecEncoder != null && segment != _probe) {
+        /* A lost probe must not be rebuilt, it would seem to get through */
+        parity = _fecEncoder.add(segment);
+      }
     }
 
     if (_closed) {
@@ -1075,21 +2088,22 @@ public class ReliableSocket extends Socket {
     if (!(segment instanceof EAKSegment) && !(segment instanceof ACKSegment)) {
       synchronized (_retransmissionTimer) {
         if (_retransmissionTimer.isIdle()) {
-          _retransmissionTimer.schedule(_profile.retransmissionTimeout(),
-              _profile.retransmissionTimeout());
+          _retransmissionTimer.schedule(rto, rto);
         }
       }
     }
 
     sendSegment(segment);
 
+    if (parity != null) {
+      sendSegment(parity);
+    }
+
     if (segment instanceof DATSegment) {
-      synchronized (_listeners) {
-        Iterator it = _listeners.iterator();
-        while (it.hasNext()) {
-          ReliableSocketListener l = (ReliableSocketListener) it.next();
-          l.packetSent();
-        }
+      Iterator it = _listeners.iterator();
+      while (it.hasNext()) {
+        ReliableSocketListener l = (ReliableSocketListener) it.next();
+        l.packetSent();
       }
     }
   }
@@ -1103,9 +2117,7 @@ public class ReliableSocket extends Socket {
    */
   private void retransmitSegment(Segment segment)
       throws IOException {
-    if (_profile.maxRetrans() > 0) {
-      segment.setRetxCounter(segment.getRetxCounter() + 1);
-    }
+    segment.setRetxCounter(segment.getRetxCounter() + 1);
 
     if (_profile.maxRetrans() != 0 && segment.getRetxCounter() > _profile.maxRetrans()) {
       connectionFailure();
@@ -1113,23 +2125,77 @@ public class ReliableSocket extends Socket {
     }
 
     sendSegment(segment);
+    _counters.incRetransmissionCounter();
 
     if (segment instanceof DATSegment) {
-      synchronized (_listeners) {
-        Iterator it = _listeners.iterator();
-        while (it.hasNext()) {
-          ReliableSocketListener l = (ReliableSocketListener) it.next();
-          l.packetRetransmitted();
-        }
+      Iterator it = _listeners.iterator();
+      while (it.hasNext()) {
+        ReliableSocketListener l = (ReliableSocketListener) it.next();
+        l.packetRetransmitted();
       }
     }
   }
 
+  /**
+   * Picks a segment reported lost by the receiver for retransmission
+   * before its retransmission timer expires, unless its previous
+   * retransmission was sent less than a round-trip time ago and may
+   * still be on the way. The segment is sent by sendLostSegments(),
+   * once the unacknowledged sent queue has been unlocked.
+   *
+   * @param segment the lost segment.
+   * @param now     the current time (ms).
+   */
+  private void fastRetransmitSegment(Segment segment, long now) {
+    if (segment.getRetxCounter() > 0 && now - segment.getSentTime() < Math.max(_srtt, 1)) {
+      _counters.incAvoidedRetransmissionCounter();
+      return;
+    }
+
+    segmentLost(segment, now);
+    _lostSegments.add(segment);
+  }
+
+  /**
+   * Retransmits the segments picked by fastRetransmitSegment().
+   */
+  private void sendLostSegments() {
+    for (int i = 0; i < _lostSegments.size(); i++) {
+      try {
+        retransmitSegment((Segment) _lostSegments.get(i));
+        _counters.incFastRetransmissionCounter();
+      } catch (IOException xcp) {
+        xcp.printStackTrace();
+      }
+    }
+
+    _lostSegments.clear();
+  }
+
   /**
    * Puts the connection in an "opened" state and notifies all
    * registered state listeners that the connection is opened.
    */
   private void connectionOpened() {
+    AckPolicy ackPolicy;
+    synchronized (_unackedSentQueue) {
+      _pathMtu = new PathMtuDiscovery(_profile.maxSegmentSize());
+      _probe = null;
+      _pacer = new Pacer(_profile.minPacingRate(), _profile.maxPacingRate(), _clock);
+      _ackedBytes = 0;
+      _fecEncoder = _fec ? new FecEncoder(_maxSequenceNumber) : null;
+      ackPolicy = _profile.adaptiveAcks() ? new AckPolicy(_profile.maxCumulativeAcks(),
+          _profile.maxOutstandingSegs(), _profile.cumulativeAckTimeout(), _pathMtu.segmentSize()) : null;
+      if (ackPolicy != null && _srtt >= 0) {
+        ackPolicy.roundTripTime(Math.round(_srtt));
+      }
+    }
+
+    synchronized (_recvQueueLock) {
+      _fecDecoder = _fec ? new FecDecoder(_maxSequenceNumber, _multiplexed) : null;
+      _ackPolicy = ackPolicy;
+    }
+
     if (isConnected()) {
 
       _nullSegmentTimer.cancel();
@@ -1138,9 +2204,12 @@ public class ReliableSocket extends Socket {
         _keepAliveTimer.cancel();
       }
 
-      synchronized (_resetLock) {
-        _reset = false;
-        _resetLock.notify();
+      if (_reset) {
+        synchronized (_resetLock) {
+          _reset = false;
+          _resetLock.notifyAll();
+        }
+        signal(SelectionKey.OP_WRITE);
       }
     } else {
       synchronized (this) {
@@ -1156,6 +2225,8 @@ public class ReliableSocket extends Socket {
         notify();
       }
 
+      _statistics.register();
+
       synchronized (_stateListeners) {
         Iterator it = _stateListeners.iterator();
         while (it.hasNext()) {
@@ -1192,6 +2263,8 @@ public class ReliableSocket extends Socket {
    * that the connection has been closed.
    */
   private void connectionClosed() {
+    _statistics.unregister();
+
     synchronized (_stateListeners) {
       Iterator it = _stateListeners.iterator();
       while (it.hasNext()) {
@@ -1214,9 +2287,7 @@ public class ReliableSocket extends Socket {
 
       switch (_state) {
         case SYN_SENT:
-          synchronized (this) {
-            notify();
-          }
+          connectionRequestEnded();
           break;
         case CLOSE_WAIT:
         case SYN_RCVD:
@@ -1226,9 +2297,7 @@ public class ReliableSocket extends Socket {
             _unackedSentQueue.notifyAll();
           }
 
-          synchronized (_recvQueueLock) {
-            _recvQueueLock.notify();
-          }
+          LockSupport.unpark(_reader);
 
           closeImpl();
           break;
@@ -1238,6 +2307,10 @@ public class ReliableSocket extends Socket {
       _closed = true;
     }
 
+    wakeStreams();
+    signal(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    _statistics.unregister();
+
     synchronized (_stateListeners) {
       Iterator it = _stateListeners.iterator();
       while (it.hasNext()) {
@@ -1280,13 +2353,35 @@ public class ReliableSocket extends Socket {
         case CLOSED:
           _counters.setLastInSequence(segment.seq());
           _state = SYN_RCVD;
-
-          Random rand = new Random(System.currentTimeMillis());
+          ReliableSocketProfile profile = _profile;
+
+          /*
+           * A version 1 SYN segment may offer version 2, which is taken
+           * if our profile allows it, along with the window of the offer.
+           */
+          int version = segment.getVersion();
+          int window = segment.getMaxOutstandingSegments();
+          if (segment.getOfferedMaxOutstandingSegments() > 0 &&
+              profile.version() >= Segment.RUDP_VERSION_2) {
+            version = Segment.RUDP_VERSION_2;
+            window = Math.max(window, segment.getOfferedMaxOutstandingSegments());
+          }
+          setVersion(version);
+
+          /*
+           * The window requested by the client is used in both directions,
+           * so the queues must be able to hold at least that many segments,
+           * but no more than the sequence space of the client's version.
+           */
+          _sendQueueSize = Math.min(Math.max(_sendQueueSize, window), maxWindowSize());
+          _recvQueueSize = Math.min(Math.max(_recvQueueSize, window), maxWindowSize());
+          ensureQueueCapacity();
           _profile = new ReliableSocketProfile(
+              version,
               _sendQueueSize,
               _recvQueueSize,
               segment.getMaxSegmentSize(),
-              segment.getMaxOutstandingSegments(),
+              window,
               segment.getMaxRetransmissions(),
               segment.getMaxCumulativeAcks(),
               segment.getMaxOutOfSequence(),
@@ -1295,28 +2390,63 @@ public class ReliableSocket extends Socket {
               segment.getRetransmissionTimeout(),
               segment.getCummulativeAckTimeout());
 
-          Segment syn = new SYNSegment(_counters.setSequenceNumber(rand.nextInt(MAX_SEQUENCE_NUMBER)),
-              _profile.maxOutstandingSegs(),
-              _profile.maxSegmentSize(),
-              _profile.retransmissionTimeout(),
-              _profile.cumulativeAckTimeout(),
-              _profile.nullSegmentTimeout(),
-              _profile.maxRetrans(),
-              _profile.maxCumulativeAcks(),
-              _profile.maxOutOfSequence(),
-              _profile.maxAutoReset());
+          /*
+           * The options offered by the client are only taken if our
+           * profile enables them as well.
+           */
+          _profile.setLocalOptions(profile);
+          _fec = profile.forwardErrorCorrection() &&
+              (segment.getOptionFlags() & SYNSegment.FEC_OPTION) != 0;
+          _profile.setForwardErrorCorrection(_fec);
+          _profile.setMultiplexedStreams(profile.multiplexedStreams() &&
+              (segment.getOptionFlags() & SYNSegment.STREAMS_OPTION) != 0);
+          multiplexStreams(_profile.multiplexedStreams(), 2);
+          _windowAdvertised = profile.advertisedWindow() &&
+              (segment.getOptionFlags() & SYNSegment.WINDOW_OPTION) != 0;
+          _profile.setAdvertisedWindow(_windowAdvertised);
+          if (profile.connectionMigration() &&
+              (segment.getOptionFlags() & SYNSegment.CONNECTION_ID_OPTION) != 0 && _wide) {
+            _profile.setConnectionMigration(true);
+            _connectionId = newConnectionId();
+          } else {
+            _profile.setConnectionMigration(false);
+          }
 
+          Segment syn = createSYNSegment();
           syn.setAck(segment.seq());
           sendAndQueueSegment(syn);
           break;
         case SYN_SENT:
+          if (segment.getVersion() == Segment.RUDP_VERSION &&
+              _profile.version() >= Segment.RUDP_VERSION_2) {
+            /* The server only speaks version 1, which our SYN segment proposed as well */
+            downgradeProfile();
+          } else if (segment.getVersion() != _profile.version()) {
+            /* The server did not accept our version: refuse the connection. */
+            connectionRequestEnded();
+            break;
+          }
+
+          setVersion(segment.getVersion());
           _counters.setLastInSequence(segment.seq());
           _state = ESTABLISHED;
                     /*
                      * Here the client accepts or rejects the parameters sent by the
                      * server. For now we will accept them.
                      */
+          _fec = _profile.forwardErrorCorrection() &&
+              (segment.getOptionFlags() & SYNSegment.FEC_OPTION) != 0;
+          multiplexStreams(_profile.multiplexedStreams() &&
+              (segment.getOptionFlags() & SYNSegment.STREAMS_OPTION) != 0, 1);
+          _windowAdvertised = _profile.advertisedWindow() &&
+              (segment.getOptionFlags() & SYNSegment.WINDOW_OPTION) != 0;
+          if (_profile.connectionMigration() && segment.hasConnectionId()) {
+            _connectionId = segment.getConnectionId();
+          }
           sendAck();
+          if (_profile.pathProfiling()) {
+            sendPathProbes();
+          }
           connectionOpened();
           break;
       }
@@ -1332,54 +2462,88 @@ public class ReliableSocket extends Socket {
    * the message are removed from the unacknowledged sent queue.
    * The segments to be retransmitted are determined by examining
    * the Ack Number and the last out of sequence ack number in the
-   * EAK segment. All segments between but not including these two
-   * sequence numbers that are on the unacknowledged sent queue are
-   * retransmitted.
+   * EAK segment. A segment between but not including these two
+   * sequence numbers that is still on the unacknowledged sent queue
+   * is considered lost, and retransmitted right away, once at least
+   * DUP_ACK_THRESHOLD segments sent after it have been acknowledged.
+   * Fewer acknowledgments above a gap may just be caused by reordering.
    *
    * @param segment the EAK segment.
    */
   private void handleEAKSegment(EAKSegment segment) {
-    Iterator it;
     int[] acks = segment.getACKs();
 
     int lastInSequence = segment.getAck();
     int lastOutSequence = acks[acks.length - 1];
+    long now = _clock.currentTimeMillis();
+    long rtt = -1;
+    int acked = 0;
+    boolean lost = false;
 
     synchronized (_unackedSentQueue) {
 
             /* Removed acknowledged segments from sent queue */
-      for (it = _unackedSentQueue.iterator(); it.hasNext(); ) {
-        Segment s = (Segment) it.next();
-        if ((compareSequenceNumbers(s.seq(), lastInSequence) <= 0)) {
-          it.remove();
-          continue;
-        }
+      Segment s;
+      while ((s = _unackedSentQueue.first()) != null &&
+          compareSequenceNumbers(s.seq(), lastInSequence) <= 0) {
+        _unackedSentQueue.removeFirst();
+        acked++;
+        rtt = segmentAcked(s, now, rtt);
+      }
 
-        for (int i = 0; i < acks.length; i++) {
-          if ((compareSequenceNumbers(s.seq(), acks[i]) == 0)) {
-            it.remove();
-            break;
-          }
+      for (int i = 0; i < acks.length; i++) {
+        if ((s = _unackedSentQueue.remove(acks[i])) != null) {
+          acked++;
+          rtt = segmentAcked(s, now, rtt);
         }
       }
 
+      if (acked > 0) {
+        segmentsAcked(acked, _unackedSentQueue.size() + acked, rtt, now);
+      }
+
             /* Retransmit segments */
-      it = _unackedSentQueue.iterator();
-      while (it.hasNext()) {
-        Segment s = (Segment) it.next();
+      int above = 0; /* Index of the first ack number above the segment */
+      for (int i = 0; i < _unackedSentQueue.span(); i++) {
+        s = _unackedSentQueue.getAt(i);
+        if (s == null) {
+          continue;
+        }
+
+        if ((compareSequenceNumbers(lastOutSequence, s.seq()) <= 0)) {
+          break;
+        }
+
         if ((compareSequenceNumbers(lastInSequence, s.seq()) < 0) &&
             (compareSequenceNumbers(lastOutSequence, s.seq()) > 0)) {
 
-          try {
-            retransmitSegment(s);
-          } catch (IOException xcp) {
-            xcp.printStackTrace();
+          while (above < acks.length && compareSequenceNumbers(acks[above], s.seq()) <= 0) {
+            above++;
           }
+
+          if (acks.length - above < DUP_ACK_THRESHOLD) {
+            continue;
+          }
+
+          if (s != _probe) { /* A lost probe is no sign of congestion */
+            if (!lost && _congestionController != null) {
+              _congestionController.segmentsLost(now);
+            }
+            lost = true;
+          }
+
+          fastRetransmitSegment(s, now);
         }
       }
 
       _unackedSentQueue.notifyAll();
     }
+
+    sendLostSegments();
+
+    if (acked > 0) {
+      signal(SelectionKey.OP_WRITE);
+    }
   }
 
   /**
@@ -1394,10 +2558,7 @@ public class ReliableSocket extends Socket {
          * delivery of packets already accepted from the application.
          */
     if (segment instanceof RSTSegment) {
-      synchronized (_resetLock) {
-        _reset = true;
-      }
-
+      _reset = true;
       connectionReset();
     }
 
@@ -1408,9 +2569,7 @@ public class ReliableSocket extends Socket {
     if (segment instanceof FINSegment) {
       switch (_state) {
         case SYN_SENT:
-          synchronized (this) {
-            notify();
-          }
+          connectionRequestEnded();
           break;
         case CLOSED:
           break;
@@ -1420,83 +2579,147 @@ public class ReliableSocket extends Socket {
     }
 
     boolean inSequence = false;
+    boolean duplicate = false;
+    boolean readable = false;
     synchronized (_recvQueueLock) {
+      boolean gap = !_outSeqRecvQueue.isEmpty();
 
       if (compareSequenceNumbers(segment.seq(), _counters.getLastInSequence()) <= 0) {
                 /* Drop packet: duplicate. */
+        _statistics.duplicateReceived();
+        duplicate = true;
+        segment.release();
+      } else if (sequenceDistance(_counters.getLastInSequence(), segment.seq()) > _recvQueueSize) {
+                /* Drop packet: outside of the receive window, such as a stray segment. */
+        _statistics.segmentDropped();
+        segment.release();
       } else if (compareSequenceNumbers(segment.seq(), nextSequenceNumber(_counters.getLastInSequence())) == 0) {
         inSequence = true;
-        if (_inSeqRecvQueue.size() == 0 || (_inSeqRecvQueue.size() + _outSeqRecvQueue.size() < _recvQueueSize)) {
+        int inSeq = _inSeqRecvCount.get();
+        if (inSeq == 0 || (inSeq + _outSeqRecvQueue.size() < _recvQueueSize)) {
                     /* Insert in-sequence segment */
           _counters.setLastInSequence(segment.seq());
-          if (segment instanceof DATSegment || segment instanceof RSTSegment || segment instanceof FINSegment) {
-            _inSeqRecvQueue.add(segment);
+          if (_fecDecoder != null) {
+            _fecDecoder.delivered(segment);
           }
+          readable = true;
+          deliverInSequence(segment);
 
           if (segment instanceof DATSegment) {
-            synchronized (_listeners) {
-              Iterator it = _listeners.iterator();
-              while (it.hasNext()) {
-                ReliableSocketListener l = (ReliableSocketListener) it.next();
-                l.packetReceivedInOrder();
-              }
+            Iterator it = _listeners.iterator();
+            while (it.hasNext()) {
+              ReliableSocketListener l = (ReliableSocketListener) it.next();
+              l.packetReceivedInOrder();
             }
           }
 
           checkRecvQueues();
         } else {
                     /* Drop packet: queue is full. */
+          _statistics.segmentDropped();
+          segment.release();
         }
-      } else if (_inSeqRecvQueue.size() + _outSeqRecvQueue.size() < _recvQueueSize) {
-                /* Insert out-of-sequence segment, in order */
-        boolean added = false;
-        for (int i = 0; i < _outSeqRecvQueue.size() && !added; i++) {
-          Segment s = (Segment) _outSeqRecvQueue.get(i);
-          int cmp = compareSequenceNumbers(segment.seq(), s.seq());
-          if (cmp == 0) {
-                        /* Ignore duplicate packet */
-            added = true;
-          } else if (cmp < 0) {
-            _outSeqRecvQueue.add(i, segment);
-            added = true;
+      } else if (_inSeqRecvCount.get() + _outSeqRecvQueue.size() < _recvQueueSize) {
+                /* Insert out-of-sequence segment, duplicates are ignored */
+        if (!_outSeqRecvQueue.add(segment)) {
+          _statistics.duplicateReceived();
+          segment.release();
+        } else {
+          _statistics.outOfOrderReceived();
+          if (_multiplexed && segment instanceof DATSegment) {
+                    /* Deliver it to its stream right away, the queue keeps it for the acknowledgments */
+            ((DATSegment) segment).retain();
+            readable = deliverStreamSegment((DATSegment) segment);
           }
         }
 
-        if (!added) {
-          _outSeqRecvQueue.add(segment);
-        }
-
         _counters.incOutOfSequenceCounter();
 
         if (segment instanceof DATSegment) {
-          synchronized (_listeners) {
-            Iterator it = _listeners.iterator();
-            while (it.hasNext()) {
-              ReliableSocketListener l = (ReliableSocketListener) it.next();
-              l.packetReceivedOutOfOrder();
-            }
+          Iterator it = _listeners.iterator();
+          while (it.hasNext()) {
+            ReliableSocketListener l = (ReliableSocketListener) it.next();
+            l.packetReceivedOutOfOrder();
           }
         }
+      } else {
+                /* Drop packet: queue is full. */
+        _statistics.segmentDropped();
+        segment.release();
+      }
+
+      AckPolicy ackPolicy = _ackPolicy;
+      int maxCumulativeAcks = _profile.maxCumulativeAcks();
+      boolean quickAck = false;
+      if (ackPolicy != null && segment instanceof DATSegment) {
+        if (inSequence) {
+          quickAck = ackPolicy.segmentReceived(segment.length(), _clock.currentTimeMillis());
+        } else {
+          ackPolicy.segmentMissing();
+        }
+        maxCumulativeAcks = ackPolicy.maxCumulativeAcks();
       }
 
-      if (inSequence && (segment instanceof RSTSegment ||
+      if ((inSequence || duplicate) && (segment instanceof RSTSegment ||
           segment instanceof NULSegment ||
           segment instanceof FINSegment)) {
+            /* A duplicate means our acknowledgment was lost, such as the last one of the close handshake */
+        sendAck();
+      } else if (_wide && (gap || !_outSeqRecvQueue.isEmpty())) {
+                /* Report gaps, and their repair, right away */
         sendAck();
       } else if ((_counters.getOutOfSequenceCounter() > 0) &&
           (_profile.maxOutOfSequence() == 0 || _counters.getOutOfSequenceCounter() > _profile.maxOutOfSequence())) {
         sendExtendedAck();
+      } else if (quickAck) {
+            /* Small segments, such as interactive input, are acknowledged right away */
+        sendSingleAck();
       } else if ((_counters.getCumulativeAckCounter() > 0) &&
-          (_profile.maxCumulativeAcks() == 0 || _counters.getCumulativeAckCounter() > _profile.maxCumulativeAcks())) {
+          (maxCumulativeAcks == 0 || _counters.getCumulativeAckCounter() > maxCumulativeAcks ||
+              _counters.getCumulativeAckCounter() >= _profile.maxOutstandingSegs())) {
+            /* Also acknowledge right away once the sender's window is full */
         sendSingleAck();
       } else {
         synchronized (_cumulativeAckTimer) {
           if (_cumulativeAckTimer.isIdle()) {
-            _cumulativeAckTimer.schedule(_profile.cumulativeAckTimeout());
+            _cumulativeAckTimer.schedule((ackPolicy != null) ?
+                ackPolicy.ackDelay() : _profile.cumulativeAckTimeout());
           }
         }
       }
     }
+
+    if (readable) {
+      signal(SelectionKey.OP_READ);
+    }
+  }
+
+  /**
+   * Handles a received FEC segment.
+   * <p>
+   * If exactly one segment of the group protected by the FEC segment
+   * is missing, it is rebuilt and handled as if it had been received.
+   *
+   * @param segment the FEC segment.
+   */
+  private void handleFECSegment(FECSegment segment) {
+    Segment s;
+    synchronized (_recvQueueLock) {
+      if (_fecDecoder == null) {
+        return;
+      }
+      s = _fecDecoder.recover(segment, _counters.getLastInSequence(), _outSeqRecvQueue);
+    }
+
+    if (s != null) {
+      if (DEBUG) {
+        log("rebuilt " + s);
+      }
+
+      _counters.incCumulativeAckCounter();
+      _counters.incRecoveredCounter();
+      handleSegment(s);
+    }
   }
 
   /**
@@ -1511,209 +2734,928 @@ public class ReliableSocket extends Socket {
         return;
       }
 
-      sendSingleAck();
-    }
+      sendSingleAck();
+    }
+  }
+
+  /**
+   * Sends an EAK segment if there is at least one
+   * out-of-sequence received segment.
+   */
+  private void sendExtendedAck() {
+    synchronized (_recvQueueLock) {
+
+      if (_outSeqRecvQueue.isEmpty()) {
+        return;
+      }
+
+      _counters.getAndResetCumulativeAckCounter();
+      _counters.getAndResetOutOfSequenceCounter();
+
+      int lastInSequence = _counters.getLastInSequence();
+      int maxACKs = EAKSegment.maxACKs(_wide);
+      int lastACK = (int) (((long) lastInSequence + maxACKs) % _maxSequenceNumber);
+
+            /* Compose list of out-of-sequence sequence numbers */
+      int n = 0;
+      int[] acks = new int[Math.min(_outSeqRecvQueue.size(), maxACKs)];
+      for (int i = 0; i < _outSeqRecvQueue.span() && n < acks.length; i++) {
+        Segment s = _outSeqRecvQueue.getAt(i);
+        if (s == null) {
+          continue;
+        }
+        if (_wide && compareSequenceNumbers(s.seq(), lastACK) > 0) {
+          break; /* Beyond the range of the bitmap */
+        }
+        acks[n++] = s.seq();
+      }
+
+      if (n == 0) {
+        sendSingleAck();
+        return;
+      }
+
+      if (n < acks.length) {
+        int[] tmp = new int[n];
+        System.arraycopy(acks, 0, tmp, 0, n);
+        acks = tmp;
+      }
+
+      try {
+        sendSegment(new EAKSegment(nextSequenceNumber(lastInSequence),
+            lastInSequence, acks));
+      } catch (IOException xcp) {
+        xcp.printStackTrace();
+      }
+
+    }
+  }
+
+  /**
+   * Sends an ACK segment if there is a received segment to
+   * be acknowledged.
+   */
+  private void sendSingleAck() {
+    if (_counters.getAndResetCumulativeAckCounter() == 0) {
+      return;
+    }
+
+    try {
+      int lastInSequence = _counters.getLastInSequence();
+      sendSegment(new ACKSegment(nextSequenceNumber(lastInSequence), lastInSequence));
+    } catch (IOException xcp) {
+      xcp.printStackTrace();
+    }
+  }
+
+  /**
+   * Sends an acknowledgment, even if there is no received segment to be
+   * acknowledged, to advertise a receive window that has opened again.
+   */
+  private void sendWindowUpdate() {
+    synchronized (_recvQueueLock) {
+      if (!_outSeqRecvQueue.isEmpty()) {
+        sendExtendedAck();
+        return;
+      }
+
+      _counters.getAndResetCumulativeAckCounter();
+
+      try {
+        int lastInSequence = _counters.getLastInSequence();
+        sendSegment(new ACKSegment(nextSequenceNumber(lastInSequence), lastInSequence));
+      } catch (IOException xcp) {
+        xcp.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Sets the ACK flag and number of a segment if there is at least
+   * one received segment to be acknowledged.
+   *
+   * @param s the segment.
+   */
+  private void checkAndSetAck(Segment s) {
+    if (_counters.getAndResetCumulativeAckCounter() == 0) {
+      return;
+    }
+
+    s.setAck(_counters.getLastInSequence());
+  }
+
+  /**
+   * Checks the ACK flag and number of a segment.
+   *
+   * @param segment the segment.
+   */
+  private void checkAndGetAck(Segment segment) {
+    int ackn = segment.getAck();
+
+    if (ackn < 0) {
+      return;
+    }
+
+    if (_state == SYN_RCVD) {
+      _state = ESTABLISHED;
+      connectionOpened();
+    }
+
+    long now = _clock.currentTimeMillis();
+    long rtt = -1;
+    int acked = 0;
+    boolean windowUpdate = false;
+
+    synchronized (_unackedSentQueue) {
+            /* Take the window advertised with the latest acknowledgment */
+      if (_windowAdvertised && !(segment instanceof SYNSegment) && segment.getWindow() >= 0 &&
+          (_lastAckReceived < 0 || compareSequenceNumbers(ackn, _lastAckReceived) >= 0)) {
+        int window = segment.getWindow();
+        /* An ack that opens the window the sender was held back by is no duplicate */
+        windowUpdate = (window > _peerWindow && _peerWindow <= _unackedSentQueue.size());
+
+        /* The probe sent while the window was closed has been dropped */
+        Segment probe = _unackedSentQueue.first();
+        if (_peerWindow == 0 && window > 0 && probe != null &&
+            compareSequenceNumbers(probe.seq(), ackn) > 0) {
+          fastRetransmitSegment(probe, now);
+        }
+        _peerWindow = window;
+      }
+
+      Segment s;
+      while ((s = _unackedSentQueue.first()) != null &&
+          compareSequenceNumbers(s.seq(), ackn) <= 0) {
+        _unackedSentQueue.removeFirst();
+        acked++;
+        rtt = segmentAcked(s, now, rtt);
+      }
+
+      if (acked > 0) {
+        segmentsAcked(acked, _unackedSentQueue.size() + acked, rtt, now);
+      }
+
+            /* Count duplicate acknowledgments */
+      if (_lastAckReceived < 0 || compareSequenceNumbers(ackn, _lastAckReceived) > 0) {
+        _lastAckReceived = ackn;
+        _dupAckCounter = 0;
+      } else if (ackn == _lastAckReceived && segment instanceof ACKSegment &&
+          !windowUpdate && _peerWindow > 0 && !_unackedSentQueue.isEmpty()) {
+        if (++_dupAckCounter == DUP_ACK_THRESHOLD) {
+          if (_congestionController != null && _unackedSentQueue.first() != _probe) {
+            _congestionController.segmentsLost(now);
+          }
+          fastRetransmitSegment(_unackedSentQueue.first(), now);
+        }
+      }
+
+      _unackedSentQueue.notifyAll();
+    }
+
+    sendLostSegments();
+
+    if (acked > 0 || windowUpdate) {
+      signal(SelectionKey.OP_WRITE);
+    }
+  }
+
+  /**
+   * Updates the congestion window and re-starts the retransmission
+   * timer after segments have been acknowledged.
+   *
+   * @param acked    the number of newly acknowledged segments.
+   * @param inFlight the number of segments in flight before the acknowledgment.
+   * @param rtt      the round-trip time sample (ms), or -1 if none.
+   * @param now      the current time (ms).
+   */
+  private void segmentsAcked(int acked, int inFlight, long rtt, long now) {
+    if (rtt >= 0) {
+      updateRoundTripTime(rtt);
+    }
+
+    if (_congestionController != null) {
+      _congestionController.segmentsAcked(acked, inFlight, rtt, now);
+    }
+
+    if (_pacer != null) {
+      _pacer.segmentsAcked(_ackedBytes, now, _srtt,
+          (long) sendWindow() * _pathMtu.segmentSize());
+      _ackedBytes = 0;
+    }
+
+    if (_unackedSentQueue.isEmpty()) {
+      _retransmissionTimer.cancel();
+    } else {
+      _retransmissionTimer.setPeriod(getRetransmissionTimeout());
+      _retransmissionTimer.reset();
+    }
+  }
+
+  /**
+   * Updates the smoothed round-trip time and its variation with a
+   * new sample and recomputes the retransmission timeout
+   * (RTO = SRTT + 4 * RTTVAR), which also ends any backoff.
+   *
+   * @param rtt the round-trip time sample (ms).
+   */
+  private void updateRoundTripTime(long rtt) {
+    _statistics.roundTripTime(rtt);
+
+    if (_srtt < 0) {
+      _srtt = rtt;
+      _rttVar = rtt / 2.0;
+    } else {
+      _rttVar = 0.75 * _rttVar + 0.25 * Math.abs(_srtt - rtt);
+      _srtt = 0.875 * _srtt + 0.125 * rtt;
+    }
+
+    AckPolicy ackPolicy = _ackPolicy;
+    if (ackPolicy != null) {
+      ackPolicy.roundTripTime(Math.round(_srtt));
+    }
+
+    _rto = boundRetransmissionTimeout((long) Math.ceil(_srtt + Math.max(1, 4 * _rttVar)));
+  }
+
+  /**
+   * Doubles the retransmission timeout after the
+   * retransmission timer has expired.
+   */
+  private void backoffRetransmissionTimeout() {
+    _rto = boundRetransmissionTimeout(getRetransmissionTimeout() * 2);
+  }
+
+  private static long boundRetransmissionTimeout(long rto) {
+    return Math.max(ReliableSocketProfile.MIN_RETRANSMISSION_TIMEOUT,
+        Math.min(rto, ReliableSocketProfile.MAX_RETRANSMISSION_TIMEOUT));
+  }
+
+  /**
+   * Releases a segment that has been removed from the unacknowledged
+   * sent queue, and completes the path MTU probe or validates the
+   * address of the challenge if it was one.
+   *
+   * @param s   the acknowledged segment.
+   * @param now the current time (ms).
+   * @param rtt the round-trip time sample taken so far, or -1.
+   * @return the new round-trip time sample.
+   */
+  private long segmentAcked(Segment s, long now, long rtt) {
+    if (s == _probe) {
+      _probe = null;
+      _pathMtu.probeAcked(now);
+    }
+
+    if (_pathProfiler != null) {
+      PathProfile pathProfile = _pathProfiler.probeAcked(s, now);
+      if (pathProfile != null) {
+        pathProbed(pathProfile);
+      }
+    }
+
+    _migration.segmentAcked(s);
+
+    _ackedBytes += s.length();
+    s.release();
+    return rttSample(s, now, rtt);
+  }
+
+  /**
+   * Counts a segment that has to be retransmitted as lost. A path MTU
+   * probe counts as too big and is made a plain NUL segment, so that
+   * it gets through next time, a challenge sent too many times gives
+   * its address up, other segments raise the loss rate
+   * that forward error correction adapts to, and end the startup of
+   * the pacer.
+   *
+   * @param s   the segment about to be retransmitted.
+   * @param now the current time (ms).
+   */
+  private void segmentLost(Segment s, long now) {
+    if (_pathProfiler != null) {
+      _pathProfiler.probeLost(s);
+    }
+
+    _migration.segmentLost(s);
+
+    if (s == _probe) {
+      _probe = null;
+      _pathMtu.probeLost(now);
+      ((NULSegment) s).removePadding();
+    } else {
+      if (_fecEncoder != null) {
+        _fecEncoder.segmentLost();
+      }
+      if (_pacer != null) {
+        _pacer.segmentsLost();
+      }
+    }
+  }
+
+  /**
+   * Takes a round-trip time sample from an acknowledged segment.
+   * Following Karn's rule, retransmitted segments give no sample.
+   *
+   * @param s    the acknowledged segment.
+   * @param now  the current time (ms).
+   * @param rtt  the sample taken so far, or -1.
+   * @return the new sample, or <code>rtt</code> if the segment gives none.
+   */
+  private long rttSample(Segment s, long now, long rtt) {
+    if (s.getRetxCounter() > 0) {
+      return rtt;
+    }
+
+    return now - s.getSentTime();
+  }
+
+  /**
+   * Checks for in-sequence segments in the out-of-sequence queue
+   * that can be moved to the in-sequence queue.
+   */
+  private void checkRecvQueues() {
+    synchronized (_recvQueueLock) {
+      Segment s;
+      while ((s = _outSeqRecvQueue.first()) != null &&
+          compareSequenceNumbers(s.seq(), nextSequenceNumber(_counters.getLastInSequence())) == 0) {
+        _outSeqRecvQueue.removeFirst();
+        _counters.setLastInSequence(s.seq());
+        if (_fecDecoder != null) {
+          _fecDecoder.delivered(s);
+        }
+        if (_multiplexed && s instanceof DATSegment) {
+          s.release(); /* Delivered to its stream when it arrived */
+        } else {
+          deliverInSequence(s);
+        }
+      }
+
+      Thread reader = _reader;
+      if (reader != null) {
+        LockSupport.unpark(reader);
+      }
+    }
+  }
+
+  /**
+   * Hands a segment that has just become in-sequence over to the reader
+   * of the socket or, if streams are multiplexed, of its stream.
+   * Must be called with the receive queue lock held.
+   *
+   * @param s the segment.
+   */
+  private void deliverInSequence(Segment s) {
+    if (_multiplexed && s instanceof DATSegment) {
+      deliverStreamSegment((DATSegment) s);
+    } else if (s instanceof DATSegment || s instanceof RSTSegment || s instanceof FINSegment) {
+      _inSeqRecvQueue.offer(s);
+      _inSeqRecvCount.incrementAndGet();
+
+      if (s instanceof FINSegment && !_finReceived) {
+        _timeWait = _finSent;
+        _finReceived = true;
+      }
+
+      if (_multiplexed && s instanceof FINSegment) {
+        _streams.inputEnded();
+      }
+    }
+  }
+
+  /**
+   * Delivers a data segment to its stream, see
+   * {@link StreamDemultiplexer#segmentReceived(DATSegment)}.
+   * Must be called with the receive queue lock held.
+   *
+   * @param s the data segment.
+   * @return true if data has been delivered to the socket's own stream.
+   */
+  private boolean deliverStreamSegment(DATSegment s) {
+    int delivered = _streams.segmentReceived(s);
+    if (delivered > 0) {
+      _inSeqRecvCount.addAndGet(delivered);
+      LockSupport.unpark(_reader);
+    }
+
+    return delivered > 0;
+  }
+
+  /**
+   * Wakes up the threads waiting on streams after
+   * the socket is closed or fails.
+   */
+  private void wakeStreams() {
+    synchronized (_recvQueueLock) {
+      if (_streams != null) {
+        _streams.wake();
+      }
+    }
+  }
+
+  /**
+   * Writes out a segment to the underlying UDP socket.
+   *
+   * @param s the segment.
+   * @throws IOException if an I/O error occurs in the
+   *                     underlying UDP socket.
+   */
+  protected void sendSegmentImpl(Segment s)
+      throws IOException {
+    try {
+      SocketAddress endpoint = _migration.endpointOf(s, _endpoint);
+      DatagramChannel channel = _sock.getChannel();
+      if (channel == null) {
+        DatagramPacket packet = new DatagramPacket(
+            s.getBytes(), s.length(), endpoint);
+        _sock.send(packet);
+        return;
+      }
+
+      synchronized (s) {
+        ByteBuffer buffer = s.getByteBuffer();
+        if (buffer != null) {
+          channel.send(buffer, endpoint);
+        }
+      }
+    } catch (IOException xcp) {
+      if (!isClosed()) {
+        xcp.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Reads in a segment from the underlying UDP socket. Once connection
+   * migration has been negotiated, segments from another address than
+   * the peer's are handed to handleSegmentFrom() here.
+   *
+   * @return s    the segment.
+   * @throws IOException if an I/O error occurs in the
+   *                     underlying UDP socket.
+   */
+  protected Segment receiveSegmentImpl()
+      throws IOException {
+    try {
+      DatagramChannel channel = _sock.getChannel();
+      if (channel == null) {
+        if (_recvbuffer == null) {
+          _recvbuffer = new byte[65535];
+        }
+        while (true) {
+          DatagramPacket packet = new DatagramPacket(_recvbuffer, _recvbuffer.length);
+          _sock.receive(packet);
+          Segment segment;
+          try {
+            segment = Segment.parse(packet.getData(), 0, packet.getLength());
+          } catch (IllegalArgumentException xcp) {
+            continue; /* Drop malformed datagram */
+          }
+          if (_connectionId == 0 || packet.getSocketAddress().equals(_endpoint)) {
+            return segment;
+          }
+
+          handleSegmentFrom(segment, packet.getSocketAddress());
+        }
+      }
+
+      while (true) {
+        BufferPool pool = recvBufferPool();
+        ByteBuffer buffer = pool.acquire();
+        SocketAddress source = channel.receive(buffer);
+        buffer.flip();
+
+        if (buffer.limit() == buffer.capacity()) {
+          pool.release(buffer); /* Larger than the maximum segment size */
+          continue;
+        }
+
+        Segment segment;
+        try {
+          segment = Segment.parse(buffer, pool);
+        } catch (IllegalArgumentException xcp) {
+          continue; /* Drop malformed datagram */
+        }
+
+        if (_connectionId == 0 || source.equals(_endpoint)) {
+          return segment;
+        }
+
+        handleSegmentFrom(segment, source);
+      }
+    } catch (IOException ioXcp) {
+      if (!isClosed()) {
+        ioXcp.printStackTrace();
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Closes the underlying UDP socket.
+   */
+  protected void closeSocket() {
+    _sock.close();
+  }
+
+  /**
+   * Cleans up and closes the socket.
+   */
+  protected void closeImpl() {
+    _nullSegmentTimer.cancel();
+    _keepAliveTimer.cancel();
+    _state = CLOSE_WAIT;
+
+    _keepAliveTimer.destroy();
+    _nullSegmentTimer.destroy();
+
+    synchronized (_closeTimer) {
+      if (_closeTimer.isIdle()) {
+        _closeTimer.schedule(_profile.nullSegmentTimeout() * 2);
+      }
+
+      if (_profile.reuseAddress() && !_released && _lingerPort < 0) {
+        _lingerPort = _sock.getLocalPort();
+        addLingeringSocket(_lingerPort, _releaseTask);
+      }
+    }
+  }
+
+  /**
+   * Releases a closed socket: stops its timers, closes the underlying
+   * UDP socket and notifies the state listeners. This is done once, by
+   * the close timer, at the end of the close handshake, or by a new
+   * socket that takes the local port over.
+   */
+  void releaseSocket() {
+    synchronized (_closeTimer) {
+      if (_released) {
+        return;
+      }
+      _released = true;
+    }
+
+    _closeTimer.destroy();
+    _retransmissionTimer.destroy();
+    _cumulativeAckTimer.destroy();
+    _parityTimer.destroy();
+
+    closeSocket();
+    if (_lingerPort >= 0) {
+      removeLingeringSocket(_lingerPort, _releaseTask);
+    }
+    connectionClosed();
+  }
+
+  /**
+   * Selects the sequence number space of the given protocol version.
+   *
+   * @param version the negotiated rudp version.
+   */
+  private void setVersion(int version) {
+    _wide = (version >= Segment.RUDP_VERSION_2);
+    _maxSequenceNumber = _wide ? MAX_WIDE_SEQUENCE_NUMBER : MAX_SEQUENCE_NUMBER;
+    synchronized (_unackedSentQueue) {
+      _unackedSentQueue.setMaxSequenceNumber(_maxSequenceNumber);
+    }
+    synchronized (_recvQueueLock) {
+      _outSeqRecvQueue.setMaxSequenceNumber(_maxSequenceNumber);
+    }
+  }
+
+  /**
+   * Limits the profile to version 1, when the server did not take
+   * the version 2 offered by our SYN segment. The windows must then
+   * fit in the 8-bit sequence space, as in our SYN segment.
+   */
+  private void downgradeProfile() {
+    ReliableSocketProfile profile = _profile;
+    _profile = new ReliableSocketProfile(
+        Segment.RUDP_VERSION,
+        Math.min(profile.maxSendQueueSize(), MAX_SEQUENCE_NUMBER),
+        Math.min(profile.maxRecvQueueSize(), MAX_SEQUENCE_NUMBER),
+        profile.maxSegmentSize(),
+        Math.min(profile.maxOutstandingSegs(), MAX_SEQUENCE_NUMBER),
+        profile.maxRetrans(),
+        profile.maxCumulativeAcks(),
+        profile.maxOutOfSequence(),
+        profile.maxAutoReset(),
+        profile.nullSegmentTimeout(),
+        profile.retransmissionTimeout(),
+        profile.cumulativeAckTimeout());
+
+    _profile.setLocalOptions(profile);
+    _profile.setForwardErrorCorrection(profile.forwardErrorCorrection());
+    _profile.setMultiplexedStreams(profile.multiplexedStreams());
+    _profile.setAdvertisedWindow(profile.advertisedWindow());
+    _sendQueueSize = Math.min(_sendQueueSize, MAX_SEQUENCE_NUMBER);
+    _recvQueueSize = Math.min(_recvQueueSize, MAX_SEQUENCE_NUMBER);
+    ensureQueueCapacity();
+  }
+
+  /**
+   * Returns the largest window the sequence space of this connection allows.
+   */
+  private int maxWindowSize() {
+    return _wide ? ReliableSocketProfile.MAX_WINDOW_SIZE : MAX_SEQUENCE_NUMBER;
+  }
+
+  /**
+   * Returns the length of the segment header on this connection.
+   */
+  private int headerLength() {
+    if (!_wide) {
+      return Segment.RUDP_HEADER_LEN;
+    }
+
+    return (_connectionId != 0) ?
+        Segment.RUDP_WIDE_HEADER_LEN + Segment.CONNECTION_ID_LEN : Segment.RUDP_WIDE_HEADER_LEN;
+  }
+
+  /**
+   * Returns the clock that the timers and timeouts of this socket use.
+   */
+  Clock clock() {
+    return _clock;
+  }
+
+  /**
+   * Returns the profile of the connection, which holds the
+   * negotiated options once the connection is established.
+   */
+  ReliableSocketProfile profile() {
+    return _profile;
   }
 
   /**
-   * Sends an EAK segment if there is at least one
-   * out-of-sequence received segment.
+   * Returns the protocol version of the connection, which
+   * is only negotiated once the connection is established.
    */
-  private void sendExtendedAck() {
-    synchronized (_recvQueueLock) {
+  int version() {
+    return _profile.version();
+  }
 
-      if (_outSeqRecvQueue.isEmpty()) {
-        return;
-      }
+  /**
+   * Returns the maximum number of segments that may be sent without
+   * getting an acknowledgment, that is, the size of the sliding window.
+   */
+  int sendWindow() {
+    int window = Math.min(_sendQueueSize, _profile.maxOutstandingSegs());
+    if (_congestionController != null) {
+      window = Math.min(window, Math.max(_congestionController.getCongestionWindow(), 1));
+    }
 
-      _counters.getAndResetCumulativeAckCounter();
-      _counters.getAndResetOutOfSequenceCounter();
+    if (_windowAdvertised) {
+      /* A closed window still lets one segment through to probe it */
+      window = Math.min(window, Math.max(_peerWindow, 1));
+    }
 
-            /* Compose list of out-of-sequence sequence numbers */
-      int[] acks = new int[_outSeqRecvQueue.size()];
-      for (int i = 0; i < acks.length; i++) {
-        Segment s = (Segment) _outSeqRecvQueue.get(i);
-        acks[i] = s.seq();
-      }
+    return window;
+  }
 
-      try {
-        int lastInSequence = _counters.getLastInSequence();
-        sendSegment(new EAKSegment(nextSequenceNumber(lastInSequence),
-            lastInSequence, acks));
-      } catch (IOException xcp) {
-        xcp.printStackTrace();
-      }
+  /**
+   * Returns the receive window last advertised by the peer, or -1 if
+   * the receive windows are not advertised on this connection.
+   */
+  int peerWindow() {
+    return _windowAdvertised ? _peerWindow : -1;
+  }
 
+  /**
+   * Returns the number of sent segments that are not acknowledged yet.
+   */
+  int sendQueueDepth() {
+    synchronized (_unackedSentQueue) {
+      return _unackedSentQueue.size();
     }
   }
 
   /**
-   * Sends an ACK segment if there is a received segment to
-   * be acknowledged.
+   * Returns the sequence number of the oldest sent segment that is not
+   * acknowledged yet, or -1 if all sent segments have been acknowledged.
    */
-  private void sendSingleAck() {
-    if (_counters.getAndResetCumulativeAckCounter() == 0) {
-      return;
+  int firstUnackedSequenceNumber() {
+    synchronized (_unackedSentQueue) {
+      Segment s = _unackedSentQueue.first();
+      return (s != null) ? s.seq() : -1;
     }
+  }
 
-    try {
-      int lastInSequence = _counters.getLastInSequence();
-      sendSegment(new ACKSegment(nextSequenceNumber(lastInSequence), lastInSequence));
-    } catch (IOException xcp) {
-      xcp.printStackTrace();
+  /**
+   * Returns the statistics of this connection.
+   */
+  public ReliableSocketStatistics getStatistics() {
+    return _statistics;
+  }
+
+  /**
+   * Returns the smoothed round-trip time (ms) of the connection,
+   * or -1 if no round-trip time sample has been taken yet.
+   */
+  public int getRoundTripTime() {
+    synchronized (_unackedSentQueue) {
+      return (_srtt < 0) ? -1 : (int) Math.round(_srtt);
     }
   }
 
   /**
-   * Sets the ACK flag and number of a segment if there is at least
-   * one received segment to be acknowledged.
-   *
-   * @param s the segment.
+   * Returns the round-trip time variation (ms) of the connection,
+   * or -1 if no round-trip time sample has been taken yet.
    */
-  private void checkAndSetAck(Segment s) {
-    if (_counters.getAndResetCumulativeAckCounter() == 0) {
-      return;
+  public int getRoundTripTimeVariation() {
+    synchronized (_unackedSentQueue) {
+      return (_srtt < 0) ? -1 : (int) Math.round(_rttVar);
     }
+  }
 
-    s.setAck(_counters.getLastInSequence());
+  /**
+   * Returns the current retransmission timeout (ms). Until the first
+   * round-trip time sample is taken, this is the retransmission
+   * timeout of the socket profile, doubled for every expiry of the
+   * retransmission timer.
+   */
+  public long getRetransmissionTimeout() {
+    synchronized (_unackedSentQueue) {
+      return (_rto < 0) ? _profile.retransmissionTimeout() : _rto;
+    }
   }
 
   /**
-   * Checks the ACK flag and number of a segment.
-   *
-   * @param segment the segment.
+   * Returns the size (octets) of the data segments sent on this
+   * connection, which follows the path MTU up to the maximum
+   * segment size of the profile, or -1 if the socket is not
+   * connected yet.
    */
-  private void checkAndGetAck(Segment segment) {
-    int ackn = segment.getAck();
+  public int getSegmentSize() {
+    PathMtuDiscovery pathMtu = _pathMtu;
+    return (pathMtu == null) ? -1 : pathMtu.segmentSize();
+  }
 
-    if (ackn < 0) {
-      return;
-    }
+  /**
+   * Returns the rate data segments are currently paced at (bytes/s),
+   * or 0 if they are not paced, before a round-trip time is known.
+   */
+  public long getPacingRate() {
+    Pacer pacer = _pacer;
+    return (pacer == null) ? 0 : pacer.getRate();
+  }
 
-    _counters.getAndResetOutstandingSegsCounter();
+  /**
+   * Returns the number of segments that have been retransmitted.
+   */
+  public long getRetransmissionCount() {
+    return _counters.getRetransmissionCounter();
+  }
 
-    if (_state == SYN_RCVD) {
-      _state = ESTABLISHED;
-      connectionOpened();
-    }
+  /**
+   * Returns the number of segments that have been retransmitted because
+   * the receiver reported them missing, before their timeout expired.
+   */
+  public long getFastRetransmissionCount() {
+    return _counters.getFastRetransmissionCounter();
+  }
 
-    synchronized (_unackedSentQueue) {
-      Iterator it = _unackedSentQueue.iterator();
-      while (it.hasNext()) {
-        Segment s = (Segment) it.next();
-        if (compareSequenceNumbers(s.seq(), ackn) <= 0) {
-          it.remove();
-        }
-      }
+  /**
+   * Returns the number of retransmissions that were skipped because
+   * the segment had not timed out yet, or because its previous
+   * retransmission was sent less than a round-trip time ago.
+   */
+  public long getAvoidedRetransmissionCount() {
+    return _counters.getAvoidedRetransmissionCounter();
+  }
 
-      if (_unackedSentQueue.isEmpty()) {
-        _retransmissionTimer.cancel();
-      }
+  /**
+   * Returns the number of lost segments that have been rebuilt from
+   * forward error correction parity, without being retransmitted.
+   */
+  public long getRecoveredSegmentCount() {
+    return _counters.getRecoveredCounter();
+  }
 
-      _unackedSentQueue.notifyAll();
-    }
+  /**
+   * Returns the class of the path of the connection, as measured by
+   * the probe train sent once connected or, until the train is complete,
+   * as measured by a previous connection to the same host. Returns null
+   * if the path has not been measured, which is always the case on the
+   * accepting side of a connection.
+   *
+   * @see ReliableSocketProfile#setPathProfiling(boolean)
+   */
+  public PathProfile getPathProfile() {
+    PathProfiler pathProfiler = _pathProfiler;
+    return (pathProfiler != null) ? pathProfiler.getProfile() : null;
   }
 
   /**
-   * Checks for in-sequence segments in the out-of-sequence queue
-   * that can be moved to the in-sequence queue.
+   * Sizes the send and receive queues for the current window. The
+   * out-of-sequence queue may not span more than the receive window.
    */
-  private void checkRecvQueues() {
+  private void ensureQueueCapacity() {
+    synchronized (_unackedSentQueue) {
+      _unackedSentQueue.ensureCapacity(_sendQueueSize);
+    }
     synchronized (_recvQueueLock) {
-      Iterator it = _outSeqRecvQueue.iterator();
-      while (it.hasNext()) {
-        Segment s = (Segment) it.next();
-        if (compareSequenceNumbers(s.seq(), nextSequenceNumber(_counters.getLastInSequence())) == 0) {
-          _counters.setLastInSequence(s.seq());
-          if (s instanceof DATSegment || s instanceof RSTSegment || s instanceof FINSegment) {
-            _inSeqRecvQueue.add(s);
-          }
-          it.remove();
-        }
-      }
-
-      _recvQueueLock.notify();
+      _outSeqRecvQueue.ensureCapacity(_recvQueueSize);
+      _outSeqRecvQueue.setMaxSpan(_recvQueueSize);
     }
   }
 
   /**
-   * Writes out a segment to the underlying UDP socket.
-   *
-   * @param s the segment.
-   * @throws IOException if an I/O error occurs in the
-   *                     underlying UDP socket.
+   * Returns the pool holding the wire form of outgoing data
+   * segments, sized for the current segment size.
    */
-  protected void sendSegmentImpl(Segment s)
-      throws IOException {
-    try {
-      DatagramPacket packet = new DatagramPacket(
-          s.getBytes(), s.length(), _endpoint);
-      _sock.send(packet);
-    } catch (IOException xcp) {
-      if (!isClosed()) {
-        xcp.printStackTrace();
-      }
+  private BufferPool bufferPool() {
+    int bufferSize = DATSegment.bufferSize(_pathMtu.segmentSize());
+    if (_bufferPool == null || _bufferPool.bufferSize() != bufferSize) {
+      _bufferPool = new BufferPool(bufferSize, _sendQueueSize);
     }
+
+    return _bufferPool;
   }
 
   /**
-   * Reads in a segment from the underlying UDP socket.
-   *
-   * @return s    the segment.
-   * @throws IOException if an I/O error occurs in the
-   *                     underlying UDP socket.
+   * Returns the pool of buffers that datagrams are received in. The
+   * buffers are one byte larger than the maximum segment size, so
+   * that oversized datagrams can be told apart and dropped.
    */
-  protected Segment receiveSegmentImpl()
-      throws IOException {
-    try {
-      DatagramPacket packet = new DatagramPacket(_recvbuffer, _recvbuffer.length);
-      _sock.receive(packet);
-      return Segment.parse(packet.getData(), 0, packet.getLength());
-    } catch (IOException ioXcp) {
-      if (!isClosed()) {
-        ioXcp.printStackTrace();
-      }
+  BufferPool recvBufferPool() {
+    int bufferSize = _profile.maxSegmentSize() + 1;
+    if (_recvBufferPool == null || _recvBufferPool.bufferSize() != bufferSize) {
+      _recvBufferPool = new BufferPool(bufferSize, _recvQueueSize);
     }
 
-    return null;
+    return _recvBufferPool;
   }
 
   /**
-   * Closes the underlying UDP socket.
+   * Returns the congestion controller of this socket, or
+   * null if the congestion control is disabled.
    */
-  protected void closeSocket() {
-    _sock.close();
+  public CongestionController getCongestionController() {
+    return _congestionController;
   }
 
   /**
-   * Cleans up and closes the socket.
+   * Creates a SYN segment with a random initial sequence number
+   * that carries the parameters of the current profile.
+   *
+   * @return the SYN segment.
    */
-  protected void closeImpl() {
-    _nullSegmentTimer.cancel();
-    _keepAliveTimer.cancel();
-    _state = CLOSE_WAIT;
+  private Segment createSYNSegment() {
+    Random rand = new Random(_clock.currentTimeMillis());
+    SYNSegment syn = new SYNSegment(_wide ? Segment.RUDP_VERSION_2 : Segment.RUDP_VERSION,
+        _counters.setSequenceNumber(rand.nextInt(_maxSequenceNumber)),
+        _profile.maxOutstandingSegs(),
+        _profile.maxSegmentSize(),
+        _profile.retransmissionTimeout(),
+        _profile.cumulativeAckTimeout(),
+        _profile.nullSegmentTimeout(),
+        _profile.maxRetrans(),
+        _profile.maxCumulativeAcks(),
+        _profile.maxOutOfSequence(),
+        _profile.maxAutoReset());
+
+    if (_profile.forwardErrorCorrection()) {
+      syn.setOptionFlags(syn.getOptionFlags() | SYNSegment.FEC_OPTION);
+    }
 
-    Thread t = new Thread() {
-      public void run() {
-        _keepAliveTimer.destroy();
-        _nullSegmentTimer.destroy();
+    if (_profile.multiplexedStreams()) {
+      syn.setOptionFlags(syn.getOptionFlags() | SYNSegment.STREAMS_OPTION);
+    }
 
-        try {
-          Thread.sleep(_profile.nullSegmentTimeout() * 2);
-        } catch (InterruptedException xcp) {
-          xcp.printStackTrace();
-        }
+    if (_profile.advertisedWindow()) {
+      syn.setOptionFlags(syn.getOptionFlags() | SYNSegment.WINDOW_OPTION);
+    }
+
+    if (_profile.connectionMigration() && _profile.version() >= Segment.RUDP_VERSION_2) {
+      syn.setOptionFlags(syn.getOptionFlags() | SYNSegment.CONNECTION_ID_OPTION);
+    }
+
+    if (!_wide && _profile.version() >= Segment.RUDP_VERSION_2) {
+      syn.setOptionFlags(syn.getOptionFlags() | SYNSegment.VERSION_2_OPTION);
+    }
+
+    return syn;
+  }
 
-        _retransmissionTimer.destroy();
-        _cumulativeAckTimer.destroy();
+  /**
+   * Sets up stream multiplexing once it has been negotiated. The
+   * streams survive a reset of the connection.
+   *
+   * @param on            true if both peers multiplex streams.
+   * @param firstStreamId the ID of the first stream opened by this peer.
+   */
+  private void multiplexStreams(boolean on, int firstStreamId) {
+    synchronized (_recvQueueLock) {
+      if (_streams != null) {
+        return;
+      }
 
-        closeSocket();
-        connectionClosed();
+      _multiplexed = on;
+      if (on) {
+        _streams = new StreamDemultiplexer(this, _inSeqRecvQueue, firstStreamId);
       }
-    };
-    t.setName("ReliableSocket-Closing");
-    t.setDaemon(true);
-    t.start();
+    }
   }
 
   /**
@@ -1733,8 +3675,8 @@ public class ReliableSocket extends Socket {
   private int compareSequenceNumbers(int seqn, int aseqn) {
     if (seqn == aseqn) {
       return 0;
-    } else if (((seqn < aseqn) && ((aseqn - seqn) > MAX_SEQUENCE_NUMBER / 2)) ||
-        ((seqn > aseqn) && ((seqn - aseqn) < MAX_SEQUENCE_NUMBER / 2))) {
+    } else if (((seqn < aseqn) && ((aseqn - seqn) > _maxSequenceNumber / 2)) ||
+        ((seqn > aseqn) && ((seqn - aseqn) < _maxSequenceNumber / 2))) {
       return 1;
     } else {
       return -1;
@@ -1747,9 +3689,14 @@ public class ReliableSocket extends Socket {
      * -----------------------------------------------------------------------
      */
 
+  /*
+   * The counters are updated by the receiver thread, the writing thread
+   * and the timers without locking. The last in-sequence number is only
+   * written by the receiver thread.
+   */
   private class Counters {
-    private int _seqn;             /* Segment sequence number */
-    private int _lastInSequence;   /* Last in-sequence received segment */
+    private final AtomicInteger _seqn = new AtomicInteger(); /* Segment sequence number */
+    private volatile int _lastInSequence;   /* Last in-sequence received segment */
     /*
      * The receiver maintains a counter of unacknowledged segments received
      * without an acknowledgment being sent to the transmitter. The maximum
@@ -1759,7 +3706,7 @@ public class ReliableSocket extends Socket {
      * segments. The recommended value for the cumulative acknowledge counter
      * is 3.
      */
-    private int _cumAckCounter; /* Cumulative acknowledge counter */
+    private final AtomicInteger _cumAckCounter = new AtomicInteger(); /* Cumulative acknowledge counter */
     /*
      * The receiver maintains a counter of the number of segments that have
      * arrived out-of-sequence. Each time this counter exceeds its configurable
@@ -1768,81 +3715,103 @@ public class ReliableSocket extends Socket {
      * is sent to the transmitter. The counter is then reset to zero. The
      * recommended value for the out-of-sequence acknowledgments counter is 3.
      */
-    private int _outOfSeqCounter; /* Out-of-sequence acknowledgments counter */
+    private final AtomicInteger _outOfSeqCounter = new AtomicInteger(); /* Out-of-sequence acknowledgments counter */
     /*
-     * The transmitter maintains a counter of the number of segments that
-     * have been sent without getting an acknowledgment. This is used
-     * by the receiver as a mean of flow control.
+     * Retransmitted segments, and retransmissions that were skipped
+     * because the segment had not yet timed out on its own or because
+     * its last retransmission was sent less than a round-trip ago.
      */
-    private int _outSegsCounter; /* Outstanding segments counter */
+    private final AtomicLong _retransCounter = new AtomicLong();
+    private final AtomicLong _avoidedRetransCounter = new AtomicLong();
+    private final AtomicLong _fastRetransCounter = new AtomicLong(); /* Retransmissions before the timer expired */
+    private final AtomicLong _recoveredCounter = new AtomicLong(); /* Segments rebuilt from parity */
 
     public Counters() {
     }
 
-    public synchronized int nextSequenceNumber() {
-      return (_seqn = ReliableSocket.nextSequenceNumber(_seqn));
+    public int nextSequenceNumber() {
+      while (true) {
+        int seqn = _seqn.get();
+        int next = ReliableSocket.this.nextSequenceNumber(seqn);
+        if (_seqn.compareAndSet(seqn, next)) {
+          return next;
+        }
+      }
     }
 
-    public synchronized int setSequenceNumber(int n) {
-      _seqn = n;
-      return _seqn;
+    public int setSequenceNumber(int n) {
+      _seqn.set(n);
+      return n;
     }
 
-    public synchronized int setLastInSequence(int n) {
+    public int setLastInSequence(int n) {
       _lastInSequence = n;
-      return _lastInSequence;
+      return n;
     }
 
-    public synchronized int getLastInSequence() {
+    public int getLastInSequence() {
       return _lastInSequence;
     }
 
-    public synchronized void incCumulativeAckCounter() {
-      _cumAckCounter++;
+    public void incCumulativeAckCounter() {
+      _cumAckCounter.incrementAndGet();
+    }
+
+    public int getCumulativeAckCounter() {
+      return _cumAckCounter.get();
+    }
+
+    public int getAndResetCumulativeAckCounter() {
+      return _cumAckCounter.getAndSet(0);
+    }
+
+    public void incOutOfSequenceCounter() {
+      _outOfSeqCounter.incrementAndGet();
     }
 
-    public synchronized int getCumulativeAckCounter() {
-      return _cumAckCounter;
+    public int getOutOfSequenceCounter() {
+      return _outOfSeqCounter.get();
     }
 
-    public synchronized int getAndResetCumulativeAckCounter() {
-      int tmp = _cumAckCounter;
-      _cumAckCounter = 0;
-      return tmp;
+    public int getAndResetOutOfSequenceCounter() {
+      return _outOfSeqCounter.getAndSet(0);
     }
 
-    public synchronized void incOutOfSequenceCounter() {
-      _outOfSeqCounter++;
+    public void incRetransmissionCounter() {
+      _retransCounter.incrementAndGet();
     }
 
-    public synchronized int getOutOfSequenceCounter() {
-      return _outOfSeqCounter;
+    public long getRetransmissionCounter() {
+      return _retransCounter.get();
     }
 
-    public synchronized int getAndResetOutOfSequenceCounter() {
-      int tmp = _outOfSeqCounter;
-      _outOfSeqCounter = 0;
-      return tmp;
+    public void incFastRetransmissionCounter() {
+      _fastRetransCounter.incrementAndGet();
     }
 
-    public synchronized void incOutstandingSegsCounter() {
-      _outSegsCounter++;
+    public long getFastRetransmissionCounter() {
+      return _fastRetransCounter.get();
     }
 
-    public synchronized int getOutstandingSegsCounter() {
-      return _outSegsCounter;
+    public void incAvoidedRetransmissionCounter() {
+      _avoidedRetransCounter.incrementAndGet();
     }
 
-    public synchronized int getAndResetOutstandingSegsCounter() {
-      int tmp = _outSegsCounter;
-      _outSegsCounter = 0;
-      return tmp;
+    public long getAvoidedRetransmissionCounter() {
+      return _avoidedRetransCounter.get();
     }
 
-    public synchronized void reset() {
-      _outOfSeqCounter = 0;
-      _outSegsCounter = 0;
-      _cumAckCounter = 0;
+    public void incRecoveredCounter() {
+      _recoveredCounter.incrementAndGet();
+    }
+
+    public long getRecoveredCounter() {
+      return _recoveredCounter.get();
+    }
+
+    public void reset() {
+      _outOfSeqCounter.set(0);
+      _cumAckCounter.set(0);
     }
   }
 
@@ -1855,19 +3824,8 @@ public class ReliableSocket extends Socket {
     public void run() {
       Segment segment;
       try {
-        while ((segment = receiveSegment()) != null) {
-
-          if (segment instanceof SYNSegment) {
-            handleSYNSegment((SYNSegment) segment);
-          } else if (segment instanceof EAKSegment) {
-            handleEAKSegment((EAKSegment) segment);
-          } else if (segment instanceof ACKSegment) {
-            // do nothing.
-          } else {
-            handleSegment(segment);
-          }
-
-          checkAndGetAck(segment);
+        while ((segment = receiveSegmentImpl()) != null) {
+          handleReceivedSegment(segment);
         }
       } catch (IOException xcp) {
         xcp.printStackTrace();
@@ -1893,18 +3851,76 @@ public class ReliableSocket extends Socket {
   }
 
   private class RetransmissionTimerTask implements Runnable {
+    private ArrayList _expired = new ArrayList(); /* Segments to retransmit once the queue is unlocked */
+
     public void run() {
       synchronized (_unackedSentQueue) {
-        Iterator it = _unackedSentQueue.iterator();
-        while (it.hasNext()) {
-          Segment s = (Segment) it.next();
-          try {
-            retransmitSegment(s);
-          } catch (IOException xcp) {
-            xcp.printStackTrace();
+        if (_unackedSentQueue.isEmpty()) {
+          return;
+        }
+
+        /*
+         * Only segments whose own timeout has elapsed are retransmitted,
+         * the timer is then re-armed for the next segment to expire.
+         */
+        long now = _clock.currentTimeMillis();
+        long rto = getRetransmissionTimeout();
+        boolean expired = false;
+
+        for (int i = 0; i < _unackedSentQueue.span(); i++) {
+          Segment s = _unackedSentQueue.getAt(i);
+          if (s == null) {
+            continue;
+          }
+
+          if (now - s.getSentTime() + TIMER_GRANULARITY < rto) {
+            _counters.incAvoidedRetransmissionCounter();
+            continue;
+          }
+
+          if (!expired && s != _probe) {
+            expired = true;
+            /*
+             * A probe of a closed receive window is not lost to congestion,
+             * and keeps being sent every RTO until the window opens.
+             */
+            if (_peerWindow > 0) {
+              if (_congestionController != null) {
+                _congestionController.retransmissionTimeout(now);
+              }
+              backoffRetransmissionTimeout();
+            }
+          }
+
+          segmentLost(s, now);
+          if (s instanceof DATSegment && s.getRetxCounter() + 1 >= PathMtuDiscovery.MAX_PROBES) {
+            _pathMtu.segmentTimedOut(s.length(), now);
+          }
+
+          _expired.add(s);
+        }
+
+        rto = getRetransmissionTimeout();
+        long next = rto;
+        for (int i = 0; i < _unackedSentQueue.span(); i++) {
+          Segment s = _unackedSentQueue.getAt(i);
+          if (s == null) {
+            continue;
           }
+          next = Math.min(next, Math.max(s.getSentTime() + rto - now, TIMER_GRANULARITY));
+        }
+        _retransmissionTimer.setPeriod(next);
+      }
+
+      for (int i = 0; i < _expired.size(); i++) {
+        try {
+          retransmitSegment((Segment) _expired.get(i));
+        } catch (IOException xcp) {
+          xcp.printStackTrace();
         }
       }
+
+      _expired.clear();
     }
   }
 
@@ -1914,12 +3930,55 @@ public class ReliableSocket extends Socket {
     }
   }
 
+  private class ParityTimerTask implements Runnable {
+    public void run() {
+      _parityTimer.cancel();
+
+      FECSegment parity;
+      synchronized (_unackedSentQueue) {
+        if (_fecEncoder == null) {
+          return;
+        }
+        parity = _fecEncoder.flush();
+      }
+
+      if (parity != null) {
+        try {
+          sendSegment(parity);
+        } catch (IOException xcp) {
+          xcp.printStackTrace();
+        }
+      }
+    }
+  }
+
   private class KeepAliveTimerTask implements Runnable {
     public void run() {
       connectionFailure();
     }
   }
 
+  private class CloseTimerTask implements Runnable {
+    public void run() {
+      releaseSocket();
+    }
+  }
+
+  private class ReleaseTask implements Runnable {
+    public void run() {
+      releaseSocket();
+
+            /* The port is free once the receiver thread has let go of the socket */
+      if (Thread.currentThread() != _sockThread) {
+        try {
+          _sockThread.join(RELEASE_TIMEOUT);
+        } catch (InterruptedException xcp) {
+          xcp.printStackTrace();
+        }
+      }
+    }
+  }
+
   private class ShutdownHook extends Thread {
     public ShutdownHook() {
       super("ReliableSocket-ShutdownHook");
@@ -87,8 +87,9 @@ class ReliableSocketInputStream extends InputStream {
       throw new IndexOutOfBoundsException();
     }
 
-    if (readImpl() < 0) {
-      return -1;
+        /* Read straight into the caller's array once the buffer is drained */
+    if (available() <= 0) {
+      return _sock.read(b, off, len);
     }
 
     int readBytes = Math.min(available(), len);
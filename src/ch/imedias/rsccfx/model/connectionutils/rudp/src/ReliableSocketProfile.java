@@ -32,6 +32,11 @@ package ch.imedias.rsccfx.model.connectionutils.rudp.src;
 
 
 import ch.imedias.rsccfx.model.Rscc;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.BbrCongestionController;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.CubicCongestionController;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.NewRenoCongestionController;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.PathMtuDiscovery;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Segment;
 
 /**
  * This class specifies the rudp parameters of a socket.
@@ -40,6 +45,17 @@ import ch.imedias.rsccfx.model.Rscc;
  * @see net.rudp.ReliableSocket
  */
 public class ReliableSocketProfile {
+  public final static int PROTOCOL_VERSION = Segment.RUDP_VERSION_2;
+  public final static int MAX_WINDOW_SIZE = 4096;
+  public final static long PATH_BANDWIDTH = 12500000; /* 100 Mbit/s */
+  public final static int PATH_RTT = 50;
+
+  public final static int CONGESTION_CONTROL_NONE = 0;
+  public final static int CONGESTION_CONTROL_NEWRENO = 1;
+  public final static int CONGESTION_CONTROL_CUBIC = 2;
+  public final static int CONGESTION_CONTROL_BBR = 3;
+  public final static int CONGESTION_CONTROL = CONGESTION_CONTROL_CUBIC;
+
   public final static int MAX_SEND_QUEUE_SIZE = 32;
   public final static int MAX_RECV_QUEUE_SIZE = 32;
 
@@ -52,6 +68,11 @@ public class ReliableSocketProfile {
   public final static int NULL_SEGMENT_TIMEOUT = 2000;
   public final static int RETRANSMISSION_TIMEOUT = 600;
   public final static int CUMULATIVE_ACK_TIMEOUT = 300;
+  public final static int MIN_RETRANSMISSION_TIMEOUT = 100;
+  public final static int MAX_RETRANSMISSION_TIMEOUT = 60000;
+  public final static long MIN_PACING_RATE = 64 * 1024; /* bytes/s */
+  public final static long MAX_PACING_RATE = 0; /* bytes/s, no maximum */
+  private int _version;
   private int _maxSendQueueSize;
   private int _maxRecvQueueSize;
   private int _maxSegmentSize;
@@ -63,6 +84,16 @@ public class ReliableSocketProfile {
   private int _nullSegmentTimeout;
   private int _retransmissionTimeout;
   private int _cumulativeAckTimeout;
+  private int _congestionControl = CONGESTION_CONTROL;
+  private boolean _forwardErrorCorrection = false;
+  private boolean _multiplexedStreams = false;
+  private boolean _advertisedWindow = false;
+  private boolean _connectionMigration = false;
+  private long _minPacingRate = MIN_PACING_RATE;
+  private long _maxPacingRate = MAX_PACING_RATE;
+  private boolean _reuseAddress = false;
+  private boolean _pathProfiling = false;
+  private boolean _adaptiveAcks = false;
 
   /**
    * Creates a profile with the default rudp parameter values.
@@ -72,12 +103,45 @@ public class ReliableSocketProfile {
    * drops are too high, the connection may get stall unless
    * the sender continues to retransmit packets that have not been
    * unacknowledged. We will use 0 instead, which means unlimited.
+   * <p>
+   * The send and receive windows are sized to keep a path of
+   * {@link #PATH_BANDWIDTH} and {@link #PATH_RTT} busy.
    */
   public ReliableSocketProfile() {
-    this(MAX_SEND_QUEUE_SIZE,
-        MAX_RECV_QUEUE_SIZE,
-        MAX_SEGMENT_SIZE,
-        MAX_OUTSTANDING_SEGS,
+    this(PATH_BANDWIDTH, PATH_RTT);
+  }
+
+  /**
+   * Creates a profile with the default rudp parameter values, whose send
+   * and receive windows hold at least one bandwidth-delay product of the
+   * given path.
+   *
+   * @param bandwidth the path bandwidth (bytes/s).
+   * @param rtt       the path round-trip time (ms).
+   */
+  public ReliableSocketProfile(long bandwidth, int rtt) {
+    this(bandwidth, rtt, MAX_SEGMENT_SIZE);
+  }
+
+  /**
+   * Creates a profile with the default rudp parameter values and the given
+   * maximum segment size, whose send and receive windows hold at least one
+   * bandwidth-delay product of the given path.
+   * <p>
+   * Segments are sized to the path MTU, up to the maximum segment size,
+   * so the windows are computed for segments that fit into an Ethernet
+   * frame.
+   *
+   * @param bandwidth      the path bandwidth (bytes/s).
+   * @param rtt            the path round-trip time (ms).
+   * @param maxSegmentSize maximum segment size (octets) (must be at least 22).
+   */
+  public ReliableSocketProfile(long bandwidth, int rtt, int maxSegmentSize) {
+    this(PROTOCOL_VERSION,
+        windowSize(bandwidth, rtt, segmentSize(maxSegmentSize)),
+        windowSize(bandwidth, rtt, segmentSize(maxSegmentSize)),
+        maxSegmentSize,
+        windowSize(bandwidth, rtt, segmentSize(maxSegmentSize)),
         0/*MAX_RETRANS*/,
         MAX_CUMULATIVE_ACKS,
         MAX_OUT_OF_SEQUENCE,
@@ -113,10 +177,58 @@ public class ReliableSocketProfile {
                                int nullSegmentTimeout,
                                int retransmissionTimeout,
                                int cumulativeAckTimeout) {
-    checkValue("maxSendQueueSize", maxSendQueueSize, 1, 255);
-    checkValue("maxRecvQueueSize", maxRecvQueueSize, 1, 255);
+    this(PROTOCOL_VERSION,
+        maxSendQueueSize,
+        maxRecvQueueSize,
+        maxSegmentSize,
+        maxOutstandingSegs,
+        maxRetrans,
+        maxCumulativeAcks,
+        maxOutOfSequence,
+        maxAutoReset,
+        nullSegmentTimeout,
+        retransmissionTimeout,
+        cumulativeAckTimeout);
+  }
+
+  /**
+   * Creates an profile with the specified rudp parameter values.
+   * <p>
+   * Protocol version 1 uses 8-bit sequence numbers and limits the queue
+   * sizes and the number of outstanding segments to 255. Version 2 uses
+   * 32-bit sequence numbers and allows up to {@link #MAX_WINDOW_SIZE}.
+   *
+   * @param version               rudp protocol version (1 or 2).
+   * @param maxSendQueueSize      maximum send queue size (packets).
+   * @param maxRecvQueueSize      maximum receive queue size (packets).
+   * @param maxSegmentSize        maximum segment size (octets) (must be at least 22).
+   * @param maxOutstandingSegs    maximum number of outstanding segments.
+   * @param maxRetrans            maximum number of consecutive retransmissions (0 means unlimited).
+   * @param maxCumulativeAcks     maximum number of unacknowledged received segments.
+   * @param maxOutOfSequence      maximum number of out-of-sequence received segments.
+   * @param maxAutoReset          maximum number of consecutive auto resets (not used).
+   * @param nullSegmentTimeout    null segment timeout (ms).
+   * @param retransmissionTimeout retransmission timeout (ms).
+   * @param cumulativeAckTimeout  cumulative acknowledge timeout (ms).
+   */
+  public ReliableSocketProfile(int version,
+                               int maxSendQueueSize,
+                               int maxRecvQueueSize,
+                               int maxSegmentSize,
+                               int maxOutstandingSegs,
+                               int maxRetrans,
+                               int maxCumulativeAcks,
+                               int maxOutOfSequence,
+                               int maxAutoReset,
+                               int nullSegmentTimeout,
+                               int retransmissionTimeout,
+                               int cumulativeAckTimeout) {
+    int maxWindowSize = (version >= Segment.RUDP_VERSION_2) ? MAX_WINDOW_SIZE : 255;
+    checkValue("version", version, Segment.RUDP_VERSION, Segment.RUDP_VERSION_2);
+    checkValue("maxSendQueueSize", maxSendQueueSize, 1, maxWindowSize);
+    checkValue("maxRecvQueueSize", maxRecvQueueSize, 1, maxWindowSize);
     checkValue("maxSegmentSize", maxSegmentSize, 22, 65535);
-    checkValue("maxOutstandingSegs", maxOutstandingSegs, 1, 255);
+    checkValue("maxOutstandingSegs", maxOutstandingSegs, 1, maxWindowSize);
     checkValue("maxRetrans", maxRetrans, 0, 255);
     checkValue("maxCumulativeAcks", maxCumulativeAcks, 0, 255);
     checkValue("maxOutOfSequence", maxOutOfSequence, 0, 255);
@@ -125,6 +237,7 @@ public class ReliableSocketProfile {
     checkValue("retransmissionTimeout", retransmissionTimeout, 100, 65535);
     checkValue("cumulativeAckTimeout", cumulativeAckTimeout, 100, 65535);
 
+    _version = version;
     _maxSendQueueSize = maxSendQueueSize;
     _maxRecvQueueSize = maxRecvQueueSize;
     _maxSegmentSize = maxSegmentSize;
@@ -138,6 +251,42 @@ public class ReliableSocketProfile {
     _cumulativeAckTimeout = cumulativeAckTimeout;
   }
 
+  /**
+   * Returns the number of segments needed to keep a path with the given
+   * bandwidth and round-trip time busy, that is, the bandwidth-delay
+   * product divided by the segment payload.
+   *
+   * @param bandwidth      the path bandwidth (bytes/s).
+   * @param rtt            the path round-trip time (ms).
+   * @param maxSegmentSize the maximum segment size (octets).
+   * @return the window size (segments).
+   */
+  public static int windowSize(long bandwidth, int rtt, int maxSegmentSize) {
+    if (bandwidth <= 0 || rtt <= 0) {
+      return MAX_SEND_QUEUE_SIZE;
+    }
+
+    long bdp = bandwidth * rtt / 1000;
+    long payload = Math.max(maxSegmentSize - Segment.RUDP_WIDE_HEADER_LEN, 1);
+    long segs = (bdp + payload - 1) / payload;
+    return (int) Math.max(MAX_SEND_QUEUE_SIZE, Math.min(segs, MAX_WINDOW_SIZE));
+  }
+
+  /**
+   * Returns the size of the segments a connection is expected to
+   * send on most paths, given its maximum segment size.
+   */
+  private static int segmentSize(int maxSegmentSize) {
+    return Math.min(maxSegmentSize, PathMtuDiscovery.ETHERNET_SEGMENT_SIZE);
+  }
+
+  /**
+   * Returns the rudp protocol version.
+   */
+  public int version() {
+    return _version;
+  }
+
   /**
    * Returns the maximum send queue size (packets).
    */
@@ -202,7 +351,9 @@ public class ReliableSocketProfile {
   }
 
   /**
-   * Returns the retransmission timeout (ms).
+   * Returns the initial retransmission timeout (ms). Once
+   * round-trip times are measured, the socket adapts its timeout
+   * between MIN_RETRANSMISSION_TIMEOUT and MAX_RETRANSMISSION_TIMEOUT.
    */
   public int retransmissionTimeout() {
     return _retransmissionTimeout;
@@ -215,9 +366,261 @@ public class ReliableSocketProfile {
     return _cumulativeAckTimeout;
   }
 
+  /**
+   * Returns the congestion control algorithm.
+   * This is a local option which is not negotiated with the peer.
+   */
+  public int congestionControl() {
+    return _congestionControl;
+  }
+
+  /**
+   * Selects the congestion control algorithm used by sockets
+   * created with this profile.
+   *
+   * @param congestionControl one of the <code>CONGESTION_CONTROL_*</code> constants.
+   */
+  public void setCongestionControl(int congestionControl) {
+    checkValue("congestionControl", congestionControl,
+        CONGESTION_CONTROL_NONE, CONGESTION_CONTROL_BBR);
+    _congestionControl = congestionControl;
+  }
+
+  /**
+   * Returns the minimum rate data segments are paced at (bytes/s).
+   * This is a local option which is not negotiated with the peer.
+   */
+  public long minPacingRate() {
+    return _minPacingRate;
+  }
+
+  /**
+   * Returns the maximum rate data segments are paced at (bytes/s),
+   * or 0 if there is no maximum.
+   * This is a local option which is not negotiated with the peer.
+   */
+  public long maxPacingRate() {
+    return _maxPacingRate;
+  }
+
+  /**
+   * Bounds the rate that sockets created with this profile pace their
+   * data segments at. The rate follows the congestion window and the
+   * measured delivery rate of the connection in between.
+   *
+   * @param minRate the minimum pacing rate (bytes/s).
+   * @param maxRate the maximum pacing rate (bytes/s), or 0 for no maximum.
+   */
+  public void setPacingRate(long minRate, long maxRate) {
+    if (minRate <= 0) {
+      throw new IllegalArgumentException("minRate");
+    }
+    if (maxRate < 0 || (maxRate > 0 && maxRate < minRate)) {
+      throw new IllegalArgumentException("maxRate");
+    }
+
+    _minPacingRate = minRate;
+    _maxPacingRate = maxRate;
+  }
+
+  /**
+   * Returns true if sockets created with this profile give their local
+   * port up to a new socket while they linger after being closed.
+   * This is a local option which is not negotiated with the peer.
+   */
+  public boolean reuseAddress() {
+    return _reuseAddress;
+  }
+
+  /**
+   * Lets sockets created with this profile reuse a local port. A closed
+   * socket keeps its port until the close handshake is complete or the
+   * close timer expires. With this option, a new socket that binds to
+   * the port of such a socket, and also has this option, releases it
+   * right away instead of failing, so that a new session can start on
+   * the same port.
+   *
+   * @param on true to reuse the local port.
+   */
+  public void setReuseAddress(boolean on) {
+    _reuseAddress = on;
+  }
+
+  /**
+   * Returns true if sockets created with this profile measure their path.
+   * This is a local option which is not negotiated with the peer.
+   */
+  public boolean pathProfiling() {
+    return _pathProfiling;
+  }
+
+  /**
+   * Lets sockets created with this profile measure the round-trip time
+   * and the loss of their path with a short probe train once connected,
+   * and pick the {@link PathProfile} of the path. Connecting does not wait
+   * for the probes. Once they have been acknowledged, the congestion control
+   * algorithm of the path class replaces the one of this profile, and the
+   * next connections to the same host propose the parameters of the class
+   * in their SYN segment instead of the parameters of this profile.
+   *
+   * @param on true to measure the path.
+   * @see ReliableSocket#getPathProfile()
+   */
+  public void setPathProfiling(boolean on) {
+    _pathProfiling = on;
+  }
+
+  /**
+   * Returns true if sockets created with this profile adapt the
+   * acknowledgment of received segments to the traffic.
+   * This is a local option which is not negotiated with the peer.
+   */
+  public boolean adaptiveAcks() {
+    return _adaptiveAcks;
+  }
+
+  /**
+   * Lets sockets created with this profile acknowledge small segments,
+   * such as interactive input, right away, and let one acknowledgment
+   * cover more received segments than the maximum of cumulative
+   * acknowledgments during bulk transfers. Delayed acknowledgments
+   * then wait for one round-trip time, instead of the cumulative
+   * acknowledge timeout, at most.
+   *
+   * @param on true to adapt the acknowledgments.
+   */
+  public void setAdaptiveAcks(boolean on) {
+    _adaptiveAcks = on;
+  }
+
+  /**
+   * Returns true if forward error correction is proposed to the peer.
+   * Like the other parameters of the SYN segment, it is proposed by
+   * the client and accepted by the server.
+   */
+  public boolean forwardErrorCorrection() {
+    return _forwardErrorCorrection;
+  }
+
+  /**
+   * Proposes forward error correction to the peer. Parity segments
+   * then let the receiver repair isolated losses without waiting for
+   * a retransmission, at the cost of up to one parity segment for
+   * every two data segments on very lossy paths.
+   *
+   * @param on true to propose forward error correction.
+   */
+  public void setForwardErrorCorrection(boolean on) {
+    _forwardErrorCorrection = on;
+  }
+
+  /**
+   * Returns true if stream multiplexing is proposed to the peer.
+   * Like forward error correction, it is proposed by the client
+   * and accepted by the server.
+   */
+  public boolean multiplexedStreams() {
+    return _multiplexedStreams;
+  }
+
+  /**
+   * Proposes stream multiplexing to the peer. Further streams can
+   * then be opened over the connection, each with its own ordering
+   * and flow control, at the cost of six header bytes in every
+   * data segment.
+   *
+   * @param on true to propose stream multiplexing.
+   * @see ReliableSocket#openStream()
+   */
+  public void setMultiplexedStreams(boolean on) {
+    _multiplexedStreams = on;
+  }
+
+  /**
+   * Returns true if advertising the receive window is proposed to the
+   * peer. Like forward error correction, it is proposed by the client
+   * and accepted by the server.
+   */
+  public boolean advertisedWindow() {
+    return _advertisedWindow;
+  }
+
+  /**
+   * Proposes advertising the receive window to the peer. Each end then
+   * tells the other how many more segments it can buffer, so that a
+   * slow reader holds the sender back instead of having its segments
+   * dropped and retransmitted, and grows its receive queue up to the
+   * maximum window when the reader keeps up.
+   *
+   * @param on true to propose advertising the receive window.
+   */
+  public void setAdvertisedWindow(boolean on) {
+    _advertisedWindow = on;
+  }
+
+  /**
+   * Returns true if connection migration is proposed to the peer.
+   * Like forward error correction, it is proposed by the client
+   * and accepted by the server.
+   */
+  public boolean connectionMigration() {
+    return _connectionMigration;
+  }
+
+  /**
+   * Proposes connection migration to the peer. The server then picks
+   * a connection ID that every segment carries, at the cost of four
+   * header bytes, so that the connection survives a change of address
+   * of either end, such as a NAT rebinding or a switch from Wi-Fi to
+   * Ethernet. A new address of the peer is only used once it has
+   * acknowledged a segment sent there. It requires version 2 of the
+   * protocol.
+   *
+   * @param on true to propose connection migration.
+   */
+  public void setConnectionMigration(boolean on) {
+    _connectionMigration = on;
+  }
+
+  /**
+   * Creates a congestion controller for a new connection.
+   * Subclasses may override this method to plug in other algorithms.
+   *
+   * @return the congestion controller, or null if the window
+   *     is only limited by the profile.
+   */
+  public CongestionController createCongestionController() {
+    switch (_congestionControl) {
+      case CONGESTION_CONTROL_NEWRENO:
+        return new NewRenoCongestionController();
+      case CONGESTION_CONTROL_CUBIC:
+        return new CubicCongestionController();
+      case CONGESTION_CONTROL_BBR:
+        return new BbrCongestionController();
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Copies the local options, which are not negotiated
+   * with the peer, from the given profile.
+   *
+   * @param profile the profile to copy from.
+   */
+  void setLocalOptions(ReliableSocketProfile profile) {
+    _congestionControl = profile._congestionControl;
+    _minPacingRate = profile._minPacingRate;
+    _maxPacingRate = profile._maxPacingRate;
+    _reuseAddress = profile._reuseAddress;
+    _pathProfiling = profile._pathProfiling;
+    _adaptiveAcks = profile._adaptiveAcks;
+  }
+
   public String toString() {
     StringBuilder sb = new StringBuilder();
     sb.append("[");
+    sb.append(_version).append(", ");
     sb.append(_maxSendQueueSize).append(", ");
     sb.append(_maxRecvQueueSize).append(", ");
     sb.append(_maxSegmentSize).append(", ");
@@ -228,7 +631,17 @@ public class ReliableSocketProfile {
     sb.append(_maxAutoReset).append(", ");
     sb.append(_nullSegmentTimeout).append(", ");
     sb.append(_retransmissionTimeout).append(", ");
-    sb.append(_cumulativeAckTimeout);
+    sb.append(_cumulativeAckTimeout).append(", ");
+    sb.append(_congestionControl).append(", ");
+    sb.append(_forwardErrorCorrection).append(", ");
+    sb.append(_multiplexedStreams).append(", ");
+    sb.append(_advertisedWindow).append(", ");
+    sb.append(_connectionMigration).append(", ");
+    sb.append(_minPacingRate).append(", ");
+    sb.append(_maxPacingRate).append(", ");
+    sb.append(_reuseAddress).append(", ");
+    sb.append(_pathProfiling).append(", ");
+    sb.append(_adaptiveAcks);
     sb.append("]");
     return sb.toString();
   }
@@ -0,0 +1,375 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class keeps the statistics of a rudp connection. The counters
+ * are updated by the receiver thread, the writing threads and the
+ * timers of the socket, and are striped so that they add no contention
+ * to the data path. Round-trip time samples are kept in a histogram
+ * with four buckets per power of two, from which the percentiles are
+ * estimated.
+ * <p>
+ * The statistics of every open connection are registered as an MBean
+ * with the platform MBean server, under the domain of this package
+ * and the properties <code>type=ReliableSocket</code>,
+ * <code>local</code> and <code>remote</code>, which is updated when the
+ * connection moves to a new address of the peer.
+ *
+ * @see ReliableSocket#getStatistics()
+ */
+public class ReliableSocketStatistics implements ReliableSocketStatisticsMBean {
+  private static final boolean DEBUG = Boolean.getBoolean("net.rudp.debug");
+  private static final String DOMAIN = ReliableSocketStatistics.class.getPackage().getName();
+  /*
+   * Samples below LINEAR_BUCKETS (ms) have a bucket each, larger
+   * ones share four buckets per power of two. The last bucket
+   * collects the samples beyond the range of the histogram.
+   */
+  private static final int LINEAR_BUCKETS = 16;
+  private static final int RTT_BUCKETS = LINEAR_BUCKETS + 4 * 16;
+
+  private final ReliableSocket _sock;
+  private final LongAdder _bytesSent = new LongAdder();
+  private final LongAdder _bytesReceived = new LongAdder();
+  private final LongAdder _segmentsSent = new LongAdder();
+  private final LongAdder _segmentsReceived = new LongAdder();
+  private final LongAdder _duplicates = new LongAdder();
+  private final LongAdder _outOfOrder = new LongAdder();
+  private final LongAdder _dropped = new LongAdder();
+  private final AtomicLong _minRtt = new AtomicLong(Long.MAX_VALUE);
+  private final LongAdder _rttSum = new LongAdder();
+  private final LongAdder _rttCount = new LongAdder();
+  private final AtomicLongArray _rttHistogram = new AtomicLongArray(RTT_BUCKETS);
+  private volatile ObjectName _name;
+
+  ReliableSocketStatistics(ReliableSocket sock) {
+    _sock = sock;
+  }
+
+  public String getLocalAddress() {
+    return format(_sock.getLocalSocketAddress());
+  }
+
+  public String getRemoteAddress() {
+    return format(_sock.getRemoteSocketAddress());
+  }
+
+  public long getBytesSent() {
+    return _bytesSent.sum();
+  }
+
+  public long getBytesReceived() {
+    return _bytesReceived.sum();
+  }
+
+  public long getSegmentsSent() {
+    return _segmentsSent.sum();
+  }
+
+  public long getSegmentsReceived() {
+    return _segmentsReceived.sum();
+  }
+
+  public long getRetransmittedSegments() {
+    return _sock.getRetransmissionCount();
+  }
+
+  public long getFastRetransmittedSegments() {
+    return _sock.getFastRetransmissionCount();
+  }
+
+  public long getRecoveredSegments() {
+    return _sock.getRecoveredSegmentCount();
+  }
+
+  public long getDuplicateSegments() {
+    return _duplicates.sum();
+  }
+
+  public long getOutOfOrderSegments() {
+    return _outOfOrder.sum();
+  }
+
+  public long getDroppedSegments() {
+    return _dropped.sum();
+  }
+
+  public long getMinRoundTripTime() {
+    long min = _minRtt.get();
+    return (min == Long.MAX_VALUE) ? -1 : min;
+  }
+
+  public double getAverageRoundTripTime() {
+    long count = _rttCount.sum();
+    return (count == 0) ? -1 : (double) _rttSum.sum() / count;
+  }
+
+  public long getP99RoundTripTime() {
+    return getRoundTripTimePercentile(99);
+  }
+
+  /**
+   * Returns the specified percentile of the round-trip time samples
+   * (ms), rounded up to the upper bound of its histogram bucket, or
+   * -1 if no sample has been taken yet.
+   *
+   * @param percentile the percentile, between 0 and 100.
+   */
+  public long getRoundTripTimePercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile");
+    }
+
+    long[] counts = new long[RTT_BUCKETS];
+    long total = 0;
+    for (int i = 0; i < RTT_BUCKETS; i++) {
+      counts[i] = _rttHistogram.get(i);
+      total += counts[i];
+    }
+
+    if (total == 0) {
+      return -1;
+    }
+
+    long rank = Math.max((long) Math.ceil(total * percentile / 100), 1);
+    for (int i = 0; i < RTT_BUCKETS; i++) {
+      rank -= counts[i];
+      if (rank <= 0) {
+        return upperBound(i);
+      }
+    }
+
+    return upperBound(RTT_BUCKETS - 1);
+  }
+
+  public int getSmoothedRoundTripTime() {
+    return _sock.getRoundTripTime();
+  }
+
+  public long getRetransmissionTimeout() {
+    return _sock.getRetransmissionTimeout();
+  }
+
+  public int getSendWindow() {
+    return _sock.sendWindow();
+  }
+
+  public int getCongestionWindow() {
+    CongestionController cc = _sock.getCongestionController();
+    return (cc == null) ? -1 : cc.getCongestionWindow();
+  }
+
+  public int getPeerWindow() {
+    return _sock.peerWindow();
+  }
+
+  public int getReceiveWindow() {
+    return _sock.receiveWindow();
+  }
+
+  public int getSendQueueDepth() {
+    return _sock.sendQueueDepth();
+  }
+
+  public String getPathProfile() {
+    PathProfile profile = _sock.getPathProfile();
+    return (profile == null) ? null : profile.name();
+  }
+
+  public String toString() {
+    return "[" +
+        "bytesSent=" + getBytesSent() + ", " +
+        "bytesReceived=" + getBytesReceived() + ", " +
+        "segmentsSent=" + getSegmentsSent() + ", " +
+        "segmentsReceived=" + getSegmentsReceived() + ", " +
+        "retransmitted=" + getRetransmittedSegments() + ", " +
+        "duplicates=" + getDuplicateSegments() + ", " +
+        "outOfOrder=" + getOutOfOrderSegments() + ", " +
+        "dropped=" + getDroppedSegments() + ", " +
+        "minRtt=" + getMinRoundTripTime() + ", " +
+        "avgRtt=" + Math.round(getAverageRoundTripTime()) + ", " +
+        "p99Rtt=" + getP99RoundTripTime() + "]";
+  }
+
+  void segmentSent(int length) {
+    _segmentsSent.increment();
+    _bytesSent.add(length);
+  }
+
+  void segmentReceived(int length) {
+    _segmentsReceived.increment();
+    _bytesReceived.add(length);
+  }
+
+  void duplicateReceived() {
+    _duplicates.increment();
+  }
+
+  void outOfOrderReceived() {
+    _outOfOrder.increment();
+  }
+
+  void segmentDropped() {
+    _dropped.increment();
+  }
+
+  /**
+   * Records a round-trip time sample.
+   *
+   * @param rtt the sample (ms).
+   */
+  void roundTripTime(long rtt) {
+    long min;
+    while (rtt < (min = _minRtt.get()) && !_minRtt.compareAndSet(min, rtt)) {
+      /* Retry */
+    }
+
+    _rttSum.add(rtt);
+    _rttCount.increment();
+    _rttHistogram.incrementAndGet(bucket(rtt));
+  }
+
+  /**
+   * Registers the statistics of the connection with the platform
+   * MBean server, once it is connected.
+   */
+  synchronized void register() {
+    if (_name == null) {
+      _name = registerMBean(this, "type=ReliableSocket" +
+          ",local=" + ObjectName.quote(getLocalAddress()) +
+          ",remote=" + ObjectName.quote(getRemoteAddress()));
+    }
+  }
+
+  /**
+   * Removes the statistics of the connection from
+   * the platform MBean server.
+   */
+  synchronized void unregister() {
+    ObjectName name = _name;
+    _name = null;
+    unregisterMBean(name);
+  }
+
+  /**
+   * Registers the statistics again under the current addresses of
+   * the connection, after it has moved to a new address of the peer.
+   * Statistics that have been removed already are left alone.
+   */
+  synchronized void reregister() {
+    if (_name != null) {
+      unregister();
+      register();
+    }
+  }
+
+  /**
+   * Registers an MBean with the platform MBean server under the domain
+   * of this package. An MBean that cannot be registered, because one
+   * with the same name still is for instance, is only reported when
+   * debugging, the sockets work without it.
+   *
+   * @param mbean      the MBean.
+   * @param properties the key properties of its name.
+   * @return the name of the MBean, or null if it was not registered.
+   */
+  static ObjectName registerMBean(Object mbean, String properties) {
+    try {
+      ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+      ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+      return name;
+    } catch (JMException xcp) {
+      if (DEBUG) {
+        xcp.printStackTrace();
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Removes an MBean from the platform MBean server.
+   *
+   * @param name the name of the MBean, or null.
+   */
+  static void unregisterMBean(ObjectName name) {
+    if (name == null) {
+      return;
+    }
+
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    } catch (JMException xcp) {
+      if (DEBUG) {
+        xcp.printStackTrace();
+      }
+    }
+  }
+
+  private static String format(SocketAddress addr) {
+    if (addr instanceof InetSocketAddress) {
+      InetSocketAddress inetAddr = (InetSocketAddress) addr;
+      return inetAddr.getHostString() + ":" + inetAddr.getPort();
+    }
+
+    return String.valueOf(addr);
+  }
+
+  private static int bucket(long rtt) {
+    if (rtt < LINEAR_BUCKETS) {
+      return (int) Math.max(rtt, 0);
+    }
+
+    int exp = 63 - Long.numberOfLeadingZeros(rtt);
+    int sub = (int) (rtt >>> (exp - 2)) & 3;
+    return Math.min(LINEAR_BUCKETS + 4 * (exp - 4) + sub, RTT_BUCKETS - 1);
+  }
+
+  private static long upperBound(int bucket) {
+    if (bucket < LINEAR_BUCKETS) {
+      return bucket;
+    }
+
+    int exp = (bucket - LINEAR_BUCKETS) / 4 + 4;
+    int sub = (bucket - LINEAR_BUCKETS) % 4;
+    return ((4L + sub + 1) << (exp - 2)) - 1;
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+/**
+ * The management interface of the statistics of a rudp connection.
+ * Counters are totals since the connection was opened, round-trip
+ * times are in milliseconds and windows are counted in segments.
+ *
+ * @see ReliableSocketStatistics
+ */
+public interface ReliableSocketStatisticsMBean {
+  /**
+   * Returns the address of the local endpoint.
+   */
+  public String getLocalAddress();
+
+  /**
+   * Returns the address of the remote endpoint.
+   */
+  public String getRemoteAddress();
+
+  /**
+   * Returns the number of octets sent, headers included.
+   */
+  public long getBytesSent();
+
+  /**
+   * Returns the number of octets received, headers included.
+   */
+  public long getBytesReceived();
+
+  /**
+   * Returns the number of segments sent, retransmissions included.
+   */
+  public long getSegmentsSent();
+
+  /**
+   * Returns the number of segments received.
+   */
+  public long getSegmentsReceived();
+
+  /**
+   * Returns the number of segments that have been retransmitted.
+   */
+  public long getRetransmittedSegments();
+
+  /**
+   * Returns the number of segments that have been retransmitted
+   * because the receiver reported them missing.
+   */
+  public long getFastRetransmittedSegments();
+
+  /**
+   * Returns the number of lost segments rebuilt from forward
+   * error correction parity.
+   */
+  public long getRecoveredSegments();
+
+  /**
+   * Returns the number of received segments that had already
+   * been received.
+   */
+  public long getDuplicateSegments();
+
+  /**
+   * Returns the number of segments received out of sequence.
+   */
+  public long getOutOfOrderSegments();
+
+  /**
+   * Returns the number of received segments dropped
+   * because the receive queue was full.
+   */
+  public long getDroppedSegments();
+
+  /**
+   * Returns the smallest round-trip time sample, or -1
+   * if no sample has been taken yet.
+   */
+  public long getMinRoundTripTime();
+
+  /**
+   * Returns the average of the round-trip time samples, or -1
+   * if no sample has been taken yet.
+   */
+  public double getAverageRoundTripTime();
+
+  /**
+   * Returns the 99th percentile of the round-trip time samples,
+   * rounded up to the resolution of the histogram they are kept
+   * in, or -1 if no sample has been taken yet.
+   */
+  public long getP99RoundTripTime();
+
+  /**
+   * Returns the smoothed round-trip time, or -1 if no
+   * sample has been taken yet.
+   */
+  public int getSmoothedRoundTripTime();
+
+  /**
+   * Returns the current retransmission timeout.
+   */
+  public long getRetransmissionTimeout();
+
+  /**
+   * Returns the number of segments that may currently be in flight.
+   */
+  public int getSendWindow();
+
+  /**
+   * Returns the congestion window, or -1 if the
+   * congestion control is disabled.
+   */
+  public int getCongestionWindow();
+
+  /**
+   * Returns the receive window last advertised by the peer, or -1
+   * if the receive windows are not advertised on this connection.
+   */
+  public int getPeerWindow();
+
+  /**
+   * Returns the number of segments the receive queue can still hold.
+   */
+  public int getReceiveWindow();
+
+  /**
+   * Returns the number of sent segments that are not acknowledged yet.
+   */
+  public int getSendQueueDepth();
+
+  /**
+   * Returns the name of the class of the path of the connection,
+   * or null if the path has not been measured.
+   */
+  public String getPathProfile();
+}
@@ -0,0 +1,456 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.DATSegment;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A logical stream multiplexed with other streams over one rudp
+ * connection, so that further byte streams share the path, and the
+ * NAT binding, of the connection.
+ * <p>
+ * Each stream delivers its bytes in order, but independently of the
+ * other streams: a segment lost in one stream does not hold back the
+ * segments of the others while it is retransmitted. The bytes a peer
+ * may send on a stream are limited by the receive window of the stream,
+ * which the receiver moves forward as the bytes are read, so that a
+ * stream nobody reads does not fill the receive queue of the connection.
+ *
+ * @see ReliableSocket#openStream()
+ * @see ReliableSocket#acceptStream()
+ */
+public class ReliableStream {
+  /**
+   * The receive window of a stream (bytes).
+   */
+  public static final int WINDOW = 256 * 1024;
+
+  private final ReliableSocket _sock;
+  private final int _id;
+  /*
+   * Receive side. Segments are put in order by the receiver thread of
+   * the socket, which holds its receive queue lock, and handed over to
+   * the reading thread through a lock-free queue. A segment without data
+   * ends the stream and stays at the head of the queue.
+   */
+  private int _recvSeqn; /* Next expected stream sequence number */
+  private HashMap _outOfOrder = new HashMap(); /* Segments above a gap, by stream sequence number */
+  private ConcurrentLinkedQueue _queue;
+  private volatile boolean _finRcvd = false;
+  private volatile boolean _inputEnded = false; /* The connection is closed by the peer */
+  private Object _readLock = new Object();
+  private volatile Thread _reader;
+  private int _readOffset;
+  private long _consumed; /* Bytes read */
+  private long _advertised = WINDOW; /* Bytes the peer may send in all */
+  /* Send side */
+  private Object _writeLock = new Object(); /* Serializes writing threads */
+  private Object _sendLock = new Object(); /* Writers wait on it for the peer's window */
+  private int _sendSeqn;
+  private long _sent;
+  private long _sendLimit = WINDOW;
+  private volatile boolean _finSent = false;
+  private InputStream _in;
+  private OutputStream _out;
+
+  ReliableStream(ReliableSocket sock, int id) {
+    this(sock, id, new ConcurrentLinkedQueue());
+  }
+
+  /**
+   * Creates a stream whose segments are delivered to the given queue.
+   */
+  ReliableStream(ReliableSocket sock, int id, ConcurrentLinkedQueue queue) {
+    _sock = sock;
+    _id = id;
+    _queue = queue;
+  }
+
+  /**
+   * Returns the ID of this stream, 0 for the stream of the socket itself.
+   */
+  public int getId() {
+    return _id;
+  }
+
+  /**
+   * Returns the socket this stream is multiplexed over.
+   */
+  public ReliableSocket getSocket() {
+    return _sock;
+  }
+
+  /**
+   * Reads a sequence of bytes from this stream into the given buffer.
+   * <p>
+   * This method blocks until input data is available, the end of the
+   * stream is detected, or an exception is thrown. The timeout of the
+   * socket applies.
+   *
+   * @param dst the buffer into which the data is read.
+   * @return the total number of bytes read into the buffer,
+   * or <code>-1</code> if there is no more data because
+   * the end of the stream has been reached.
+   * @throws IOException if an I/O error occurs.
+   */
+  public int read(ByteBuffer dst)
+      throws IOException {
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+
+    int totalBytes = 0;
+    synchronized (_readLock) {
+      int timeout = _sock.getSoTimeout();
+      long deadline = _sock.clock().currentTimeMillis() + timeout;
+
+      while (_queue.isEmpty()) {
+        _reader = Thread.currentThread();
+        try {
+          if (!_queue.isEmpty()) {
+            break;
+          }
+
+          if (_inputEnded) {
+            return -1;
+          }
+
+          if (_sock.isClosed()) {
+            throw new SocketException("Socket is closed");
+          }
+
+          if (!_sock.isConnected()) {
+            throw new SocketException("Connection reset");
+          }
+
+          if (timeout == 0) {
+            LockSupport.park(this);
+          } else {
+            long wait = deadline - _sock.clock().currentTimeMillis();
+            if (wait <= 0) {
+              throw new SocketTimeoutException();
+            }
+            LockSupport.parkNanos(this, wait * 1000000L);
+          }
+        } finally {
+          _reader = null;
+        }
+      }
+
+      DATSegment s;
+      while ((s = (DATSegment) _queue.peek()) != null && s.getDataLength() > 0) {
+        int readBytes = s.getData(_readOffset, dst);
+        totalBytes += readBytes;
+        _readOffset += readBytes;
+
+        if (_readOffset < s.getDataLength()) {
+          break; /* dst is full */
+        }
+
+        _readOffset = 0;
+        _queue.poll();
+        s.release();
+
+        if (!dst.hasRemaining()) {
+          break;
+        }
+      }
+
+      if (totalBytes == 0) {
+        return -1; /* EOF */
+      }
+
+      consumed(totalBytes);
+      return totalBytes;
+    }
+  }
+
+  /**
+   * Reads up to <code>len</code> bytes from this stream into an array.
+   *
+   * @see #read(ByteBuffer)
+   */
+  public int read(byte[] b, int off, int len)
+      throws IOException {
+    return read(ByteBuffer.wrap(b, off, len));
+  }
+
+  /**
+   * Writes a sequence of bytes from the given buffer to this stream.
+   * <p>
+   * This method blocks until all bytes are queued for transmission,
+   * which may take until the peer reads from the stream.
+   *
+   * @param src the buffer from which bytes are retrieved.
+   * @throws IOException if an I/O error occurs, or if the
+   *                     stream is closed.
+   */
+  public void write(ByteBuffer src)
+      throws IOException {
+    synchronized (_writeLock) {
+      if (_finSent) {
+        throw new SocketException("Stream is closed");
+      }
+
+      _sock.write(this, new ByteBuffer[] {src}, 0, 1, true);
+    }
+  }
+
+  /**
+   * Writes <code>len</code> bytes from the specified byte array
+   * starting at offset <code>off</code> to this stream.
+   *
+   * @see #write(ByteBuffer)
+   */
+  public void write(byte[] b, int off, int len)
+      throws IOException {
+    write(ByteBuffer.wrap(b, off, len));
+  }
+
+  /**
+   * Closes this stream for writing: the peer reads the end of the
+   * stream after the bytes written so far. Bytes still to come from
+   * the peer can be read until it closes the stream as well.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  public void close()
+      throws IOException {
+    synchronized (_writeLock) {
+      if (_finSent) {
+        return;
+      }
+
+      _finSent = true;
+      _sock.closeStream(this);
+    }
+  }
+
+  /**
+   * Returns true if this stream is closed for writing.
+   */
+  public boolean isClosed() {
+    return _finSent;
+  }
+
+  /**
+   * Returns an input stream for this stream.
+   */
+  public synchronized InputStream getInputStream() {
+    if (_in == null) {
+      _in = new InputStream() {
+        public int read()
+            throws IOException {
+          byte[] b = new byte[1];
+          return (ReliableStream.this.read(b, 0, 1) > 0) ? (b[0] & 0xFF) : -1;
+        }
+
+        public int read(byte[] b, int off, int len)
+            throws IOException {
+          return (len == 0) ? 0 : ReliableStream.this.read(b, off, len);
+        }
+
+        public int available() {
+          return _queue.isEmpty() ? 0 : 1;
+        }
+      };
+    }
+    return _in;
+  }
+
+  /**
+   * Returns an output stream for this stream. Every write is sent
+   * right away, so small writes are better buffered by the caller.
+   */
+  public synchronized OutputStream getOutputStream() {
+    if (_out == null) {
+      _out = new OutputStream() {
+        public void write(int b)
+            throws IOException {
+          ReliableStream.this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len)
+            throws IOException {
+          ReliableStream.this.write(b, off, len);
+        }
+
+        public void close()
+            throws IOException {
+          ReliableStream.this.close();
+        }
+      };
+    }
+    return _out;
+  }
+
+  /**
+   * Puts a received segment of this stream in order. Must be
+   * called with the receive queue lock of the socket held.
+   *
+   * @param s the segment.
+   * @return the number of segments delivered to the reader.
+   */
+  int segmentReceived(DATSegment s) {
+    if (s.getStreamSequenceNumber() != _recvSeqn) {
+      _outOfOrder.put(Integer.valueOf(s.getStreamSequenceNumber()), s);
+      return 0;
+    }
+
+    int delivered = 0;
+    do {
+      if (s.getDataLength() == 0) {
+        _finRcvd = true;
+      }
+      _queue.offer(s);
+      delivered++;
+      _recvSeqn++;
+    } while ((s = (DATSegment) _outOfOrder.remove(Integer.valueOf(_recvSeqn))) != null);
+
+    LockSupport.unpark(_reader);
+    return delivered;
+  }
+
+  /**
+   * Moves the send window forward after the peer has read data.
+   *
+   * @param limit the number of bytes the peer may receive in all.
+   */
+  void windowUpdated(long limit) {
+    synchronized (_sendLock) {
+      if (limit > _sendLimit) {
+        _sendLimit = limit;
+        _sendLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Waits until the peer's window lets at least one byte through.
+   * The stream of the socket itself is not flow controlled.
+   *
+   * @param bytes the number of bytes to send.
+   * @return the number of bytes that may be sent.
+   * @throws IOException if the connection is closed or fails.
+   */
+  int takeCredit(int bytes)
+      throws IOException {
+    if (_id == 0) {
+      return bytes;
+    }
+
+    synchronized (_sendLock) {
+      while (_sendLimit <= _sent) {
+        if (_sock.isClosed()) {
+          throw new SocketException("Socket is closed");
+        }
+
+        if (!_sock.isConnected()) {
+          throw new SocketException("Connection reset");
+        }
+
+        try {
+          _sendLock.wait();
+        } catch (InterruptedException xcp) {
+          xcp.printStackTrace();
+        }
+      }
+
+      int n = (int) Math.min(bytes, _sendLimit - _sent);
+      _sent += n;
+      return n;
+    }
+  }
+
+  /**
+   * Returns the stream sequence number of the next segment sent.
+   */
+  synchronized int nextSendSequenceNumber() {
+    return _sendSeqn++;
+  }
+
+  /**
+   * Returns true once the stream is closed in both directions.
+   */
+  boolean isFinished() {
+    return _finSent && _finRcvd;
+  }
+
+  /**
+   * Ends the stream because the peer closed the connection.
+   */
+  void inputEnded() {
+    _inputEnded = true;
+    LockSupport.unpark(_reader);
+  }
+
+  /**
+   * Wakes up the threads waiting on this stream,
+   * after the socket is closed or fails.
+   */
+  void wake() {
+    LockSupport.unpark(_reader);
+    synchronized (_sendLock) {
+      _sendLock.notifyAll();
+    }
+  }
+
+  /**
+   * Tells the peer that it may send more once half of the
+   * receive window has been read.
+   */
+  private void consumed(int bytes) {
+    _consumed += bytes;
+    if (_id == 0 || _advertised - _consumed > WINDOW / 2) {
+      return;
+    }
+
+    _advertised = _consumed + WINDOW;
+    try {
+      _sock.sendStreamWindow(_id, _advertised);
+    } catch (IOException xcp) {
+      /* The connection is gone, the next read reports it */
+    }
+  }
+
+  public String toString() {
+    return "ReliableStream[" + _id + "," + _sock + "]";
+  }
+}
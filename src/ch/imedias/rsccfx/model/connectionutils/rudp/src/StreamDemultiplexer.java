@@ -0,0 +1,271 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.DATSegment;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ *  The streams multiplexed over a connection, by ID.
+ *
+ *  Every data segment of the connection belongs to a stream, the
+ *  socket's own input and output being stream 0. The client opens odd
+ *  streams, the server even ones, and a stream opened by the peer is
+ *  queued for acceptance when its first segment arrives. The control
+ *  stream carries the window updates of the other streams.
+ *
+ *  The streams are guarded by the receive queue lock of the socket,
+ *  the backlog by itself. acceptStream() must be called without the
+ *  receive queue lock, the other methods with it.
+ */
+class StreamDemultiplexer {
+  static final int CONTROL_STREAM = 0xFFFF; /* Carries the window updates of the streams */
+  static final int WINDOW_UPDATE = 1; /* Type, stream ID (16 bits), limit (64 bits) */
+  static final int WINDOW_UPDATE_LEN = 11;
+
+  private final ReliableSocket _sock;
+  private final ReliableStream _socketStream;
+  private HashMap _streams = new HashMap(); /* Open streams by ID */
+  private ArrayList _backlog = new ArrayList(); /* Streams opened by the peer, not accepted yet */
+  private volatile boolean _ended = false; /* The peer closed the connection */
+  private int _nextStreamId;
+
+  /**
+   * Creates the streams of a connection.
+   *
+   * @param sock          the socket.
+   * @param queue         the queue the segments of the socket's own
+   *                      stream are delivered to.
+   * @param firstStreamId the ID of the first stream opened by this peer.
+   */
+  StreamDemultiplexer(ReliableSocket sock, ConcurrentLinkedQueue queue, int firstStreamId) {
+    _sock = sock;
+    _socketStream = new ReliableStream(sock, 0, queue);
+    _streams.put(Integer.valueOf(0), _socketStream);
+    _nextStreamId = firstStreamId;
+  }
+
+  /**
+   * Returns the socket's own stream.
+   */
+  ReliableStream socketStream() {
+    return _socketStream;
+  }
+
+  /**
+   * Opens a new stream.
+   *
+   * @return the stream.
+   * @throws SocketException if all stream IDs are taken.
+   */
+  ReliableStream openStream()
+      throws SocketException {
+    if (_nextStreamId >= CONTROL_STREAM) {
+      throw new SocketException("No more streams");
+    }
+
+    ReliableStream stream = new ReliableStream(_sock, _nextStreamId);
+    _streams.put(Integer.valueOf(_nextStreamId), stream);
+    _nextStreamId += 2;
+    return stream;
+  }
+
+  /**
+   * Waits for the peer to open a stream.
+   *
+   * @param timeout the timeout (ms), or 0 to wait forever.
+   * @return the stream.
+   * @throws IOException if the socket is closed, or, with an
+   *                     <code>EOFException</code>, if the peer closed the
+   *                     connection.
+   */
+  ReliableStream acceptStream(int timeout)
+      throws IOException {
+    synchronized (_backlog) {
+      long deadline = _sock.clock().currentTimeMillis() + timeout;
+      while (_backlog.isEmpty()) {
+        if (_sock.isClosed()) {
+          throw new SocketException("Socket is closed");
+        }
+
+        if (!_sock.isConnected()) {
+          throw new SocketException("Connection reset");
+        }
+
+        if (_ended) {
+          throw new EOFException();
+        }
+
+        try {
+          if (timeout == 0) {
+            _backlog.wait();
+          } else {
+            long remaining = deadline - _sock.clock().currentTimeMillis();
+            if (remaining <= 0) {
+              throw new SocketTimeoutException();
+            }
+            _backlog.wait(remaining);
+          }
+        } catch (InterruptedException xcp) {
+          xcp.printStackTrace();
+        }
+      }
+
+      return (ReliableStream) _backlog.remove(0);
+    }
+  }
+
+  /**
+   * Forgets a stream once both of its ends are closed.
+   *
+   * @param stream the stream.
+   */
+  void streamClosed(ReliableStream stream) {
+    if (stream.isFinished()) {
+      _streams.remove(Integer.valueOf(stream.getId()));
+    }
+  }
+
+  /**
+   * Delivers a data segment to its stream, in the order of the stream,
+   * which may be before the gaps of other streams are repaired.
+   *
+   * @param s the data segment.
+   * @return the number of segments delivered to the socket's own stream.
+   */
+  int segmentReceived(DATSegment s) {
+    int id = s.getStream();
+    if (id == CONTROL_STREAM) {
+      controlReceived(s);
+      s.release();
+      return 0;
+    }
+
+    ReliableStream stream = (ReliableStream) _streams.get(Integer.valueOf(id));
+    if (stream == null) {
+      if (id < 0 || (id & 1) == (_nextStreamId & 1)) {
+        s.release(); /* Not a stream the peer may open */
+        return 0;
+      }
+
+      stream = new ReliableStream(_sock, id);
+      _streams.put(Integer.valueOf(id), stream);
+      synchronized (_backlog) {
+        _backlog.add(stream);
+        _backlog.notifyAll();
+      }
+    }
+
+    int delivered = stream.segmentReceived(s);
+    if (stream == _socketStream) {
+      return delivered;
+    }
+
+    streamClosed(stream);
+    return 0;
+  }
+
+  /**
+   * Returns the message of the control stream that tells the peer how
+   * many bytes in all it may send on a stream.
+   *
+   * @param id    the stream ID.
+   * @param limit the number of bytes.
+   */
+  static byte[] windowUpdate(int id, long limit) {
+    ByteBuffer update = ByteBuffer.allocate(WINDOW_UPDATE_LEN);
+    update.put((byte) WINDOW_UPDATE);
+    update.putShort((short) id);
+    update.putLong(limit);
+    return update.array();
+  }
+
+  /**
+   * Handles a message of the control stream.
+   *
+   * @param s the data segment of the control stream.
+   */
+  private void controlReceived(DATSegment s) {
+    ByteBuffer message = ByteBuffer.wrap(s.getData());
+    if (message.remaining() < WINDOW_UPDATE_LEN || message.get() != WINDOW_UPDATE) {
+      return;
+    }
+
+    int id = message.getShort() & 0xFFFF;
+    long limit = message.getLong();
+    ReliableStream stream = (ReliableStream) _streams.get(Integer.valueOf(id));
+    if (stream != null) {
+      stream.windowUpdated(limit);
+    }
+  }
+
+  /**
+   * Ends the input of the streams once the peer closed the connection.
+   */
+  void inputEnded() {
+    _ended = true;
+
+    Iterator it = _streams.values().iterator();
+    while (it.hasNext()) {
+      ReliableStream stream = (ReliableStream) it.next();
+      if (stream != _socketStream) {
+        stream.inputEnded();
+      }
+    }
+
+    synchronized (_backlog) {
+      _backlog.notifyAll();
+    }
+  }
+
+  /**
+   * Wakes up the threads waiting on streams after
+   * the socket is closed or fails.
+   */
+  void wake() {
+    Iterator it = _streams.values().iterator();
+    while (it.hasNext()) {
+      ((ReliableStream) it.next()).wake();
+    }
+
+    synchronized (_backlog) {
+      _backlog.notifyAll();
+    }
+  }
+}
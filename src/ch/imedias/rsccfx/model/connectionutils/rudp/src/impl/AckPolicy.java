@@ -0,0 +1,182 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+/*
+ *  Adaptive delayed acknowledgments in the spirit of TCP's quick ACK
+ *  mode and ACK decimation.
+ *
+ *  A data segment shorter than the full-sized segments seen so far
+ *  ends a write, as a keystroke or a pointer event does, and is
+ *  acknowledged right away. Full-sized segments in a row make a bulk
+ *  transfer, during which the number of segments one acknowledgment
+ *  covers is doubled after every two acknowledgments, starting from
+ *  the negotiated maximum of cumulative acknowledgments, up to
+ *  MAX_ACK_RATIO segments. The sender's window is not known, so the
+ *  segments received per round-trip time stand for it, and at least
+ *  four acknowledgments are sent per round trip, which keeps a small
+ *  congestion window growing. Loss and idle periods fall back to the
+ *  negotiated maximum. Delayed acknowledgments wait for one round-trip
+ *  time at most, instead of the negotiated timeout, so that decimation
+ *  does not hold the sender back for long.
+ *
+ *  Lengths are segment lengths, rudp header included. The methods
+ *  must be called with the receive queue locked, except
+ *  roundTripTime() and ackDelay().
+ */
+public class AckPolicy {
+  public static final int MAX_ACK_RATIO = 16;                       /* Segments covered by one acknowledgment */
+  public static final int MIN_ACK_DELAY = TimerWheel.TICK_DURATION; /* ms */
+
+  private final int _maxCumulativeAcks;   /* Negotiated maximum */
+  private final int _maxDecimatedAcks;    /* Maximum during bulk transfer */
+  private final int _maxAckDelay;         /* Negotiated cumulative ack timeout (ms) */
+  private final int _baseLength;          /* Segments shorter than this one are small */
+  private int _cumulativeAcks;            /* Current maximum */
+  private int _fullLength;                /* Length of full-sized segments */
+  private int _run;                       /* Full-sized segments in a row */
+  private long _lastTime = -1;            /* Time the last data segment was received (ms) */
+  private long _roundTime;                /* Time the current round trip started (ms) */
+  private int _roundSegments;             /* Segments received in the current round trip */
+  private int _flight;                    /* Segments received in the last round trip */
+  private volatile long _rtt = -1;        /* ms */
+
+  /**
+   * Creates the acknowledgment policy of a connection.
+   *
+   * @param maxCumulativeAcks    the negotiated maximum number of
+   *                             unacknowledged received segments.
+   * @param maxOutstandingSegs   the negotiated maximum number of
+   *                             segments the sender has in flight.
+   * @param cumulativeAckTimeout the negotiated cumulative
+   *                             acknowledge timeout (ms).
+   * @param segmentSize          the segment size the sender starts with.
+   */
+  public AckPolicy(int maxCumulativeAcks, int maxOutstandingSegs,
+                   int cumulativeAckTimeout, int segmentSize) {
+    _maxCumulativeAcks = maxCumulativeAcks;
+    _maxDecimatedAcks = (maxCumulativeAcks == 0) ? 0 :
+        Math.max(maxCumulativeAcks, Math.min(MAX_ACK_RATIO, maxOutstandingSegs / 4) - 1);
+    _maxAckDelay = cumulativeAckTimeout;
+    _baseLength = segmentSize / 2;
+    reset();
+  }
+
+  /**
+   * Takes a data segment received in sequence into account.
+   *
+   * @param length the length of the segment.
+   * @param now    the current time (ms).
+   * @return true if the segment must be acknowledged right away.
+   */
+  public boolean segmentReceived(int length, long now) {
+    if (_lastTime >= 0 && now - _lastTime > idleTimeout()) {
+      reset();
+    }
+    _lastTime = now;
+
+    if (now - _roundTime >= idleTimeout()) {
+      _flight = _roundSegments;
+      _roundSegments = 0;
+      _roundTime = now;
+    }
+    _roundSegments++;
+
+    if (length < _fullLength) {
+      _run = 0;
+      return true;
+    }
+
+    _fullLength = length;
+    if (++_run >= 2 * (_cumulativeAcks + 1) && _cumulativeAcks < _maxDecimatedAcks &&
+        4 * (2 * _cumulativeAcks + 2) <= Math.max(_flight, _roundSegments)) {
+      _cumulativeAcks = Math.min(2 * _cumulativeAcks + 1, _maxDecimatedAcks);
+      _run = 0;
+    }
+
+    return false;
+  }
+
+  /**
+   * Falls back to the negotiated maximum after a segment
+   * has been received out of sequence.
+   */
+  public void segmentMissing() {
+    reset();
+  }
+
+  /**
+   * Returns the number of received segments that may
+   * currently be left unacknowledged.
+   */
+  public int maxCumulativeAcks() {
+    return Math.min(_cumulativeAcks,
+        Math.max(_maxCumulativeAcks, Math.max(_flight, _roundSegments) / 4 - 1));
+  }
+
+  /**
+   * Takes the smoothed round-trip time of the connection.
+   *
+   * @param rtt the round-trip time (ms).
+   */
+  public void roundTripTime(long rtt) {
+    _rtt = rtt;
+  }
+
+  /**
+   * Returns the time a received segment may wait for its
+   * acknowledgment (ms).
+   */
+  public long ackDelay() {
+    long rtt = _rtt;
+    if (rtt < 0) {
+      return _maxAckDelay;
+    }
+
+    return Math.max(MIN_ACK_DELAY, Math.min(_maxAckDelay, rtt));
+  }
+
+  private long idleTimeout() {
+    long rtt = _rtt;
+    return (rtt < 0) ? _maxAckDelay : Math.max(MIN_ACK_DELAY, rtt);
+  }
+
+  private void reset() {
+    _cumulativeAcks = _maxCumulativeAcks;
+    _fullLength = _baseLength;
+    _run = 0;
+  }
+
+  public String toString() {
+    return "[acks=" + _cumulativeAcks + ", full=" + _fullLength + ", flight=" + _flight +
+        ", delay=" + ackDelay() + "]";
+  }
+}
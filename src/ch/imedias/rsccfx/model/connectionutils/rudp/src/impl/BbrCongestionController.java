@@ -0,0 +1,169 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.CongestionController;
+
+/*
+ *  Delay-based congestion control in the style of BBR.
+ *
+ *  Instead of reacting to losses, the controller builds a model of
+ *  the path: the bottleneck bandwidth is the maximum delivery rate
+ *  measured over the last rounds and the propagation delay is the
+ *  minimum round-trip time seen recently. During startup the window
+ *  grows exponentially until the delivery rate stops increasing;
+ *  afterwards it is kept at a multiple of the bandwidth-delay product,
+ *  cycling through gains to probe for more bandwidth.
+ */
+public class BbrCongestionController implements CongestionController {
+  public static final int INITIAL_WINDOW = 4;
+  public static final int MIN_WINDOW = 4;
+  private static final double CWND_GAIN = 2.0;
+  private static final double[] PROBE_GAINS = {1.25, 0.75, 1, 1, 1, 1, 1, 1};
+  private static final int BW_FILTER_LENGTH = 10; /* (rounds) */
+  private static final long MIN_RTT_WINDOW = 10000; /* (ms) */
+  private double _cwnd;           /* Congestion window (segments) */
+  private double[] _bwSamples;    /* Delivery rate of the last rounds (segments/ms) */
+  private int _round;             /* Number of completed rounds */
+  private long _roundStart;       /* Start of the current round (ms) */
+  private int _delivered;         /* Segments delivered in the current round */
+  private boolean _appLimited;    /* The window was not fully used in this round */
+  private long _minRtt;           /* Minimum round-trip time (ms) */
+  private long _minRttStamp;      /* Time the minimum was measured (ms) */
+  private boolean _filledPipe;    /* Startup has ended */
+  private double _fullBw;         /* Bandwidth at the last startup growth */
+  private int _fullBwCount;       /* Rounds without significant growth */
+
+  public BbrCongestionController() {
+    _cwnd = INITIAL_WINDOW;
+    _bwSamples = new double[BW_FILTER_LENGTH];
+    _round = 0;
+    _roundStart = -1;
+    _delivered = 0;
+    _appLimited = false;
+    _minRtt = -1;
+    _filledPipe = false;
+    _fullBw = 0;
+    _fullBwCount = 0;
+  }
+
+  public synchronized void segmentsAcked(int acked, int inFlight, long rtt, long now) {
+    if (rtt >= 0 && (_minRtt < 0 || rtt <= _minRtt || now - _minRttStamp > MIN_RTT_WINDOW)) {
+      _minRtt = Math.max(rtt, 1);
+      _minRttStamp = now;
+    }
+
+    if (_roundStart < 0) {
+      _roundStart = now;
+    }
+
+    _delivered += acked;
+    if (2 * inFlight < _cwnd) {
+      _appLimited = true;
+    }
+
+    long interval = now - _roundStart;
+    if (_minRtt > 0 && interval >= _minRtt) {
+      /* An application limited round only tells that the bandwidth is at least that high */
+      double bw = (double) _delivered / interval;
+      if (!_appLimited || bw > getBandwidth()) {
+        _bwSamples[_round % BW_FILTER_LENGTH] = bw;
+      }
+      _round++;
+      _delivered = 0;
+      _roundStart = now;
+      _appLimited = false;
+
+      if (!_filledPipe) {
+        checkFullPipe();
+      }
+    }
+
+    if (!_filledPipe) {
+      _cwnd += acked;
+    } else {
+      double gain = CWND_GAIN * PROBE_GAINS[_round % PROBE_GAINS.length];
+      _cwnd = Math.max(MIN_WINDOW, gain * getBandwidth() * _minRtt);
+    }
+  }
+
+  public synchronized void segmentsLost(long now) {
+    // The path model does not change on loss.
+  }
+
+  public synchronized void retransmissionTimeout(long now) {
+    _cwnd = MIN_WINDOW;
+  }
+
+  public synchronized int getCongestionWindow() {
+    return (int) _cwnd;
+  }
+
+  /**
+   * Returns the estimated bottleneck bandwidth (segments/ms).
+   */
+  public synchronized double getBandwidth() {
+    double max = 0;
+    for (int i = 0; i < _bwSamples.length; i++) {
+      max = Math.max(max, _bwSamples[i]);
+    }
+
+    return max;
+  }
+
+  /**
+   * Returns the estimated propagation delay (ms), or -1 if unknown.
+   */
+  public synchronized long getMinRtt() {
+    return _minRtt;
+  }
+
+  /**
+   * Ends startup once the bandwidth has not grown by at
+   * least 25% for three consecutive rounds.
+   */
+  private void checkFullPipe() {
+    double bw = getBandwidth();
+    if (bw >= _fullBw * 1.25) {
+      _fullBw = bw;
+      _fullBwCount = 0;
+      return;
+    }
+
+    if (++_fullBwCount >= 3) {
+      _filledPipe = true;
+    }
+  }
+
+  public String toString() {
+    return "BBR [ CWND = " + getCongestionWindow() + ", MIN_RTT = " + _minRtt + " ]";
+  }
+}
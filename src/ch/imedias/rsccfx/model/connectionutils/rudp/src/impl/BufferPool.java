@@ -0,0 +1,112 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A bounded pool of direct byte buffers of the same size, used to hold
+ * the wire form of outgoing segments while they await acknowledgment.
+ */
+public class BufferPool {
+  private final int _bufferSize;
+  private final ByteBuffer[] _buffers;
+  private int _count;
+  private int _inUse; /* Buffers taken and not returned yet */
+
+  /**
+   * Creates a buffer pool.
+   *
+   * @param bufferSize the capacity of the buffers.
+   * @param maxBuffers the maximum number of idle buffers kept in the pool.
+   */
+  public BufferPool(int bufferSize, int maxBuffers) {
+    _bufferSize = bufferSize;
+    _buffers = new ByteBuffer[maxBuffers];
+    _count = 0;
+  }
+
+  /**
+   * Returns the capacity of the buffers of this pool.
+   */
+  public int bufferSize() {
+    return _bufferSize;
+  }
+
+  /**
+   * Returns the number of idle buffers in the pool.
+   */
+  public synchronized int idleCount() {
+    return _count;
+  }
+
+  /**
+   * Returns the number of buffers taken from the pool that
+   * have not been returned yet.
+   */
+  public synchronized int inUseCount() {
+    return _inUse;
+  }
+
+  /**
+   * Takes an idle buffer from the pool, or allocates a new one.
+   *
+   * @return a cleared buffer.
+   */
+  public synchronized ByteBuffer acquire() {
+    _inUse++;
+    if (_count == 0) {
+      return ByteBuffer.allocateDirect(_bufferSize);
+    }
+
+    ByteBuffer buffer = _buffers[--_count];
+    _buffers[_count] = null;
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer to the pool. The buffer is dropped
+   * if the pool is full or the buffer has another size.
+   *
+   * @param buffer the buffer.
+   */
+  public synchronized void release(ByteBuffer buffer) {
+    if (buffer.capacity() != _bufferSize) {
+      return;
+    }
+
+    _inUse--;
+    if (_count < _buffers.length) {
+      _buffers[_count++] = buffer;
+    }
+  }
+}
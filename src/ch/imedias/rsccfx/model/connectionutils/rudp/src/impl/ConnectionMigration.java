@@ -0,0 +1,137 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import java.net.SocketAddress;
+import java.security.SecureRandom;
+
+/*
+ *  The challenge that validates a new address of the peer on a
+ *  connection with migration.
+ *
+ *  Segments that carry the connection ID are accepted from any address,
+ *  but the connection only moves to a new address once a NUL segment
+ *  sent there, the challenge, has been acknowledged, and a segment has
+ *  arrived from the address after that. An off-path host that puts the
+ *  ID in a segment, or replays one, does not get the acknowledgment. A
+ *  challenge sent MAX_CHALLENGES times gives the address up and is
+ *  retransmitted to the current address like any NUL segment.
+ *
+ *  The methods must be called with the send queue locked, except
+ *  newConnectionId() and endpointOf().
+ */
+public class ConnectionMigration {
+  public static final int MAX_CHALLENGES = 3; /* Transmissions before an address is given up */
+
+  private static final SecureRandom _random = new SecureRandom();
+
+  private volatile NULSegment _challenge; /* Outstanding challenge */
+  private volatile SocketAddress _endpoint; /* Address the challenge is sent to */
+  private boolean _acked;
+
+  /**
+   * Returns a new connection ID. A random ID does not tell off-path
+   * hosts which ID to put in segments that would move the connection
+   * to them.
+   */
+  public static int newConnectionId() {
+    int connectionId;
+    do {
+      connectionId = _random.nextInt();
+    } while (connectionId == 0);
+    return connectionId;
+  }
+
+  /**
+   * Returns true if a challenge is outstanding.
+   */
+  public boolean isChallenging() {
+    return _challenge != null;
+  }
+
+  /**
+   * Creates a challenge for a new address.
+   *
+   * @param endpoint the address.
+   * @param seqn     the sequence number of the challenge.
+   * @return the challenge.
+   */
+  public NULSegment challenge(SocketAddress endpoint, int seqn) {
+    _challenge = new NULSegment(seqn);
+    _endpoint = endpoint;
+    _acked = false;
+    return _challenge;
+  }
+
+  /**
+   * Returns true if the address a segment has been received from has
+   * acknowledged the challenge, in which case the connection moves there.
+   *
+   * @param source the address.
+   */
+  public boolean isValidated(SocketAddress source) {
+    if (!_acked || !source.equals(_endpoint)) {
+      return false;
+    }
+
+    _acked = false;
+    _endpoint = null;
+    return true;
+  }
+
+  /**
+   * Returns the address a segment is sent to.
+   *
+   * @param s        the segment.
+   * @param endpoint the address of the peer.
+   */
+  public SocketAddress endpointOf(Segment s, SocketAddress endpoint) {
+    return (s == _challenge) ? _endpoint : endpoint;
+  }
+
+  /**
+   * Called when a segment has been acknowledged.
+   */
+  public void segmentAcked(Segment s) {
+    if (s == _challenge) {
+      _challenge = null;
+      _acked = true;
+    }
+  }
+
+  /**
+   * Called when a segment is about to be retransmitted.
+   */
+  public void segmentLost(Segment s) {
+    if (s == _challenge && s.getRetxCounter() + 1 >= MAX_CHALLENGES) {
+      _challenge = null; /* Retransmitted to the current address from now on */
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+/*
+ *  Loss-based congestion control in the style of TCP CUBIC (RFC 8312).
+ *
+ *  Slow start and loss detection are the same as NewReno, but in
+ *  congestion avoidance the window follows a cubic function of the
+ *  time since the last reduction, so that it quickly returns to the
+ *  size at which the last loss happened and then probes carefully.
+ *  The window never grows slower than NewReno would.
+ */
+public class CubicCongestionController extends NewRenoCongestionController {
+  private static final double C = 0.4;
+  private static final double BETA = 0.7;
+  private double _wmax;       /* Window size before the last reduction */
+  private double _west;       /* NewReno-friendly window estimate */
+  private double _k;          /* Time to reach _wmax again (s) */
+  private long _epochStart;   /* Start of the current epoch (ms) */
+
+  public CubicCongestionController() {
+    _wmax = 0;
+    _epochStart = 0;
+  }
+
+  protected void congestionAvoidance(int acked, long now) {
+    if (_epochStart == 0) {
+      _epochStart = now;
+      _west = _cwnd;
+      if (_wmax > _cwnd) {
+        _k = Math.cbrt((_wmax - _cwnd) / C);
+      } else {
+        _k = 0;
+        _wmax = _cwnd;
+      }
+    }
+
+    double t = (now - _epochStart + _rtt) / 1000.0;
+    double target = C * Math.pow(t - _k, 3) + _wmax;
+
+    _west += 3 * (1 - BETA) / (1 + BETA) * acked / _cwnd;
+    target = Math.max(target, _west);
+
+    if (target > _cwnd) {
+      _cwnd += Math.min(target - _cwnd, _cwnd) * acked / _cwnd;
+    } else {
+      _cwnd += 0.01 * acked / _cwnd;
+    }
+  }
+
+  protected void reduceWindow(long now) {
+    /* Fast convergence: release bandwidth to newer flows */
+    if (_cwnd < _wmax) {
+      _wmax = _cwnd * (1 + BETA) / 2;
+    } else {
+      _wmax = _cwnd;
+    }
+
+    _epochStart = 0;
+    _ssthresh = Math.max(_cwnd * BETA, MIN_WINDOW);
+  }
+
+  public String toString() {
+    return "CUBIC [ CWND = " + getCongestionWindow() + ", SSTHRESH = " + (int) _ssthresh + " ]";
+  }
+}
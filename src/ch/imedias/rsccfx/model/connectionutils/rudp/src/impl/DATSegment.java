@@ -30,6 +30,9 @@
 
 package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 
 /*
  *  Data Segment
@@ -45,9 +48,55 @@ package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
  *  | ...                           |
  *  +-------------------------------+
  *
+ *  Data Segment with stream fields
+ *
+ *   0 1 2 3 4 5 6 7 8            15
+ *  +-+-+-+-+-+-+-+-+---------------+
+ *  |0|1|0|0|0|0|0|0|      12       |
+ *  +-+-+-+-+-+-+-+-+---------------+
+ *  | Sequence #    |   Ack Number  |
+ *  +---------------+---------------+
+ *  |           Stream ID           |
+ *  +---------------+---------------+
+ *  |        Stream Sequence #      |
+ *  +           (32 bits)           +
+ *  |                               |
+ *  +---------------+---------------+
+ *  |           Checksum            |
+ *  +---------------+---------------+
+ *  | ...                           |
+ *  +-------------------------------+
+ *
+ *  When the peers multiplex streams, data segments carry the stream
+ *  they belong to and their position in that stream, so that they
+ *  can be delivered before the gaps of other streams are repaired.
+ *  A segment without data closes its stream.
+ *
+ *  Outgoing data segments may keep their wire form in a pooled
+ *  buffer. The data is copied once, DATA_OFFSET bytes into the
+ *  buffer, and the header is written right in front of it before
+ *  each transmission, so that its current ack number is sent
+ *  without encoding the segment again.
+ *
+ *  Incoming data segments may be a view over the pooled buffer
+ *  they were received in, the data is then copied only once,
+ *  straight into the reader's buffer.
+ *
  */
 public class DATSegment extends Segment {
+  public static final int STREAM_FIELDS_LEN = 6;
+  private static final int DATA_OFFSET = RUDP_WIDE_HEADER_LEN + CONNECTION_ID_LEN +
+      STREAM_FIELDS_LEN; /* Room for the largest header */
+  private static final AtomicIntegerFieldUpdater REFS =
+      AtomicIntegerFieldUpdater.newUpdater(DATSegment.class, "_refs");
+  private volatile int _refs = 1; /* Holders of the segment, the buffer is released by the last one */
+  private int _stream = -1; /* Stream ID, or -1 without stream fields */
+  private int _streamSeqn;
   private byte[] _data;
+  private int _length;
+  private int _offset; /* Offset of the data in the buffer */
+  private ByteBuffer _buffer;
+  private BufferPool _pool;
 
   protected DATSegment() {
   }
@@ -56,30 +105,278 @@ public class DATSegment extends Segment {
     init(ACK_FLAG, seqn, RUDP_HEADER_LEN);
     setAck(ackn);
     _data = new byte[len];
+    _length = len;
     System.arraycopy(b, off, _data, 0, len);
   }
 
+  /**
+   * Creates a data segment whose wire form is kept in a buffer
+   * of the given pool until the segment is released.
+   */
+  public DATSegment(int seqn, int ackn, byte[] b, int off, int len, BufferPool pool) {
+    init(ACK_FLAG, seqn, RUDP_HEADER_LEN);
+    setAck(ackn);
+    if (DATA_OFFSET + len > pool.bufferSize()) {
+      throw new IllegalArgumentException("len");
+    }
+    _length = len;
+    _offset = DATA_OFFSET;
+    _pool = pool;
+    _buffer = pool.acquire();
+    _buffer.position(DATA_OFFSET);
+    _buffer.put(b, off, len);
+  }
+
+  /**
+   * Creates a data segment in a buffer of the given pool with
+   * <code>len</code> bytes gathered from a subsequence of buffers,
+   * whose positions are advanced past the bytes taken.
+   */
+  public DATSegment(int seqn, int ackn, ByteBuffer[] srcs, int offset, int length,
+                    int len, BufferPool pool) {
+    init(ACK_FLAG, seqn, RUDP_HEADER_LEN);
+    setAck(ackn);
+    if (DATA_OFFSET + len > pool.bufferSize()) {
+      throw new IllegalArgumentException("len");
+    }
+    _length = len;
+    _offset = DATA_OFFSET;
+    _pool = pool;
+    _buffer = pool.acquire();
+    _buffer.position(DATA_OFFSET);
+    for (int i = offset; i < offset + length && _buffer.position() < DATA_OFFSET + len; i++) {
+      ByteBuffer src = srcs[i];
+      int n = Math.min(src.remaining(), DATA_OFFSET + len - _buffer.position());
+      ByteBuffer chunk = src.duplicate();
+      chunk.limit(chunk.position() + n);
+      _buffer.put(chunk);
+      src.position(src.position() + n);
+    }
+  }
+
+  /**
+   * Returns the number of bytes of the pooled wire form
+   * of a data segment with <code>len</code> bytes of data.
+   */
+  public static int bufferSize(int len) {
+    return DATA_OFFSET + len;
+  }
+
   public int length() {
-    return _data.length + super.length();
+    return _length + super.length();
   }
 
   public String type() {
     return "DAT";
   }
 
-  public byte[] getData() {
+  public synchronized byte[] getData() {
+    if (_data == null) {
+      _data = new byte[_length];
+      if (_buffer != null) {
+        ByteBuffer data = _buffer.duplicate();
+        data.position(_offset);
+        data.get(_data);
+      }
+    }
+
     return _data;
   }
 
+  /**
+   * Returns the number of data bytes of this segment.
+   */
+  public int getDataLength() {
+    return _length;
+  }
+
+  /**
+   * Copies data of this segment into a buffer, as many
+   * bytes as are left after <code>pos</code> and fit in the buffer.
+   *
+   * @param pos the position in the data of this segment.
+   * @param dst the destination buffer.
+   * @return the number of bytes copied.
+   */
+  public synchronized int getData(int pos, ByteBuffer dst) {
+    int n = Math.min(_length - pos, dst.remaining());
+
+    if (_data != null) {
+      dst.put(_data, pos, n);
+    } else if (_buffer != null) {
+      _buffer.clear();
+      _buffer.limit(_offset + pos + n);
+      _buffer.position(_offset + pos);
+      dst.put(_buffer);
+    }
+
+    return n;
+  }
+
+  /**
+   * Tags this segment with the stream it belongs to.
+   *
+   * @param stream     the stream ID.
+   * @param streamSeqn the sequence number of the segment in the stream.
+   */
+  public void setStream(int stream, int streamSeqn) {
+    if (_stream < 0) {
+      init(flags(), seq(), super.length() + STREAM_FIELDS_LEN);
+    }
+    _stream = stream;
+    _streamSeqn = streamSeqn;
+  }
+
+  /**
+   * Returns the stream ID, or -1 if this segment has no stream fields.
+   */
+  public int getStream() {
+    return _stream;
+  }
+
+  /**
+   * Returns the sequence number of this segment in its stream.
+   */
+  public int getStreamSequenceNumber() {
+    return _streamSeqn;
+  }
+
+  /**
+   * Returns the number of bytes of the stream fields, if any,
+   * and of the data, which are protected by parity segments.
+   */
+  public int getPayloadLength() {
+    return (_stream < 0 ? 0 : STREAM_FIELDS_LEN) + _length;
+  }
+
+  /**
+   * Copies the stream fields, if any, and the data into a buffer.
+   *
+   * @param dst the destination buffer.
+   */
+  public synchronized void getPayload(ByteBuffer dst) {
+    if (_stream >= 0) {
+      dst.putShort((short) _stream);
+      dst.putInt(_streamSeqn);
+    }
+    getData(0, dst);
+  }
+
+  /**
+   * Creates a data segment from its payload, the stream
+   * fields being present only if streams are multiplexed.
+   *
+   * @param seqn    the sequence number.
+   * @param payload the stream fields and the data.
+   * @param len     the length of the payload.
+   * @param streams true if the payload starts with stream fields.
+   * @return the segment, or null if the payload is too short.
+   */
+  public static DATSegment fromPayload(int seqn, byte[] payload, int len, boolean streams) {
+    if (!streams) {
+      return new DATSegment(seqn, -1, payload, 0, len);
+    }
+
+    if (len < STREAM_FIELDS_LEN) {
+      return null;
+    }
+
+    ByteBuffer fields = ByteBuffer.wrap(payload);
+    DATSegment s = new DATSegment(seqn, -1, payload, STREAM_FIELDS_LEN, len - STREAM_FIELDS_LEN);
+    s.setStream(fields.getShort(0) & 0xFFFF, fields.getInt(2));
+    return s;
+  }
+
   public byte[] getBytes() {
     byte[] buffer = super.getBytes();
-    System.arraycopy(_data, 0, buffer, RUDP_HEADER_LEN, _data.length);
+    System.arraycopy(getData(), 0, buffer, super.length(), _length);
     return buffer;
   }
 
+  public synchronized ByteBuffer getByteBuffer() {
+    if (_buffer == null) {
+      return (_pool == null) ? super.getByteBuffer() : null;
+    }
+
+    int start = _offset - super.length();
+    _buffer.limit(_offset + _length);
+    putHeader(_buffer, start);
+    _buffer.position(start);
+    return _buffer;
+  }
+
+  /**
+   * Adds a holder of this segment, which must release it as well.
+   */
+  public void retain() {
+    REFS.incrementAndGet(this);
+  }
+
+  /**
+   * Releases the segment. The buffer is returned to
+   * its pool once every holder has released it.
+   */
+  public void release() {
+    if (REFS.decrementAndGet(this) > 0) {
+      return;
+    }
+
+    synchronized (this) {
+      if (_buffer != null) {
+        _pool.release(_buffer);
+        _buffer = null;
+      }
+    }
+  }
+
+  protected void putHeader(ByteBuffer buffer, int off) {
+    super.putHeader(buffer, off);
+    if (_stream >= 0) {
+      buffer.putShort(off + fieldOffset(), (short) _stream);
+      buffer.putInt(off + fieldOffset() + 2, _streamSeqn);
+    }
+  }
+
   public void parseBytes(byte[] buffer, int off, int len) {
     super.parseBytes(buffer, off, len);
-    _data = new byte[len - RUDP_HEADER_LEN];
-    System.arraycopy(buffer, off + RUDP_HEADER_LEN, _data, 0, _data.length);
+    if (len < super.length()) {
+      throw new IllegalArgumentException("Invalid segment");
+    }
+    parseStreamFields(ByteBuffer.wrap(buffer), off);
+    _length = len - super.length();
+    _data = new byte[_length];
+    System.arraycopy(buffer, off + super.length(), _data, 0, _data.length);
+  }
+
+  /**
+   * Reads the stream fields, if the header length says there are any.
+   */
+  private void parseStreamFields(ByteBuffer buffer, int off) {
+    int hlen = super.length();
+    if (hlen == headerLength() + STREAM_FIELDS_LEN) {
+      _stream = buffer.getShort(off + fieldOffset()) & 0xFFFF;
+      _streamSeqn = buffer.getInt(off + fieldOffset() + 2);
+    } else if (hlen != headerLength()) {
+      throw new IllegalArgumentException("Invalid segment");
+    }
+  }
+
+  /**
+   * Parses the segment between the position and the limit of a pooled
+   * buffer, keeping the data in the buffer until the segment is released.
+   *
+   * @param buffer the buffer.
+   * @param pool   the pool the buffer belongs to.
+   */
+  void parseBuffer(ByteBuffer buffer, BufferPool pool) {
+    parseHeader(buffer, buffer.position(), buffer.remaining());
+    if (buffer.remaining() < super.length()) {
+      throw new IllegalArgumentException("Invalid segment");
+    }
+    parseStreamFields(buffer, buffer.position());
+    _length = buffer.remaining() - super.length();
+    _offset = buffer.position() + super.length();
+    _buffer = buffer;
+    _pool = pool;
   }
 }
@@ -49,8 +49,36 @@ package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
  *  |            Checksum           |
  *  +---------------+---------------+
  *
+ *  In version 2 (WID flag set) the out of sequence segments are
+ *  reported with a selective acknowledgment bitmap instead:
+ *
+ *   0 1 2 3 4 5 6 7 8            15
+ *  +-+-+-+-+-+-+-+-+---------------+
+ *  |0|1|1|0|0|0|0|1|     N + 12    |
+ *  +-+-+-+-+-+-+-+-+---------------+
+ *  |        Sequence Number        |
+ *  |            (32 bits)          |
+ *  +---------------+---------------+
+ *  |           Ack Number          |
+ *  |            (32 bits)          |
+ *  +---------------+---------------+
+ *  |    Bitmap     |    Bitmap     |
+ *  |    byte 1     |    byte 2     |
+ *  +---------------+---------------+
+ *  |  . . .        |    Bitmap     |
+ *  |               |    byte N     |
+ *  +---------------+---------------+
+ *  |            Checksum           |
+ *  +---------------+---------------+
+ *
+ *  Bit i of the bitmap (most significant bit of byte 1 first) is set
+ *  if the segment with sequence number Ack Number + 1 + i has been
+ *  received, so one header covers up to 8 * 239 segments, which leaves
+ *  room for a connection ID.
+ *
  */
 public class EAKSegment extends ACKSegment {
+  private static final int MAX_BITMAP_LEN = 255 - RUDP_WIDE_HEADER_LEN - CONNECTION_ID_LEN;
   private int[] _acks;
 
   protected EAKSegment() {
@@ -70,11 +98,36 @@ public class EAKSegment extends ACKSegment {
     return _acks;
   }
 
+  /**
+   * Returns the maximum number of out of sequence ack numbers that
+   * fit in the header of an EAK segment.
+   *
+   * @param wide true if the ack numbers are encoded as a bitmap.
+   */
+  public static int maxACKs(boolean wide) {
+    return wide ? MAX_BITMAP_LEN * 8 : (255 - RUDP_HEADER_LEN);
+  }
+
+  public void setWide(boolean wide) {
+    if (wide != isWide()) {
+      super.setWide(wide);
+      if (wide) {
+        dropUnmappableACKs();
+      }
+      init(flags(), seq(), headerLength() + ackFieldLength());
+    }
+  }
+
   public byte[] getBytes() {
     byte[] buffer = super.getBytes();
 
     for (int i = 0; i < _acks.length; i++) {
-      buffer[4 + i] = (byte) (_acks[i] & 0xFF);
+      if (isWide()) {
+        int bit = bitIndex(_acks[i]);
+        buffer[fieldOffset() + bit / 8] |= (byte) (0x80 >>> (bit % 8));
+      } else {
+        buffer[fieldOffset() + i] = (byte) (_acks[i] & 0xFF);
+      }
     }
 
     return buffer;
@@ -82,9 +135,70 @@ public class EAKSegment extends ACKSegment {
 
   protected void parseBytes(byte[] buffer, int off, int len) {
     super.parseBytes(buffer, off, len);
-    _acks = new int[len - RUDP_HEADER_LEN];
+
+    if (isWide()) {
+      int n = 0;
+      int[] acks = new int[(len - headerLength()) * 8];
+      for (int bit = 0; bit < acks.length; bit++) {
+        if ((buffer[off + fieldOffset() + bit / 8] & (0x80 >>> (bit % 8))) != 0) {
+          acks[n++] = (int) ((getAck() + 1L + bit) % MAX_WIDE_SEQUENCE_NUMBER);
+        }
+      }
+
+      if (n == 0) {
+        throw new IllegalArgumentException("Invalid segment");
+      }
+
+      _acks = new int[n];
+      System.arraycopy(acks, 0, _acks, 0, n);
+      return;
+    }
+
+    _acks = new int[len - headerLength()];
     for (int i = 0; i < _acks.length; i++) {
-      _acks[i] = (buffer[off + 4 + i] & 0xFF);
+      _acks[i] = (buffer[off + fieldOffset() + i] & 0xFF);
+    }
+  }
+
+  /**
+   * Returns the bitmap position of an out of sequence ack number,
+   * that is its distance to the ack number of this segment minus one.
+   */
+  private int bitIndex(int ackn) {
+    long distance = (long) ackn - getAck();
+    if (distance <= 0) {
+      distance += MAX_WIDE_SEQUENCE_NUMBER;
     }
+
+    return (int) Math.min(distance - 1, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Removes the ack numbers that lie beyond the range of the bitmap.
+   */
+  private void dropUnmappableACKs() {
+    int n = 0;
+    int[] acks = new int[_acks.length];
+    for (int i = 0; i < _acks.length; i++) {
+      if (bitIndex(_acks[i]) < maxACKs(true)) {
+        acks[n++] = _acks[i];
+      }
+    }
+
+    _acks = new int[n];
+    System.arraycopy(acks, 0, _acks, 0, n);
+  }
+
+  private int ackFieldLength() {
+    if (!isWide()) {
+      return _acks.length;
+    }
+
+    int bits = 0;
+    for (int i = 0; i < _acks.length; i++) {
+      bits = Math.max(bits, bitIndex(_acks[i]) + 1);
+    }
+
+    return (bits + 7) / 8;
   }
 }
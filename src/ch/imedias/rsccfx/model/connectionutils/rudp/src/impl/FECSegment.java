@@ -0,0 +1,145 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+
+/*
+ *  FEC Segment
+ *
+ *   0 1 2 3 4 5 6 7 8            15
+ *  +-+-+-+-+-+-+-+-+---------------+
+ *  |0|0|1|0|1|0|0|0|      10       |
+ *  +-+-+-+-+-+-+-+-+---------------+
+ *  | 1st Sequence #|  Ack Number   |
+ *  +---------------+---------------+
+ *  |     Count     |     Spare     |
+ *  +---------------+---------------+
+ *  |          Length XOR           |
+ *  +---------------+---------------+
+ *  |            Checksum           |
+ *  +---------------+---------------+
+ *  | Parity ...                    |
+ *  +-------------------------------+
+ *
+ *  A parity segment carries the XOR of the data of Count consecutive
+ *  segments, starting at the 1st sequence number, and the XOR of
+ *  their data lengths. A receiver that got all but one of them
+ *  rebuilds the missing one without waiting for its retransmission.
+ *  NUL segments count as segments without data. The stream fields
+ *  of data segments are protected like their data.
+ *
+ *  Parity segments are only sent once both peers have set the
+ *  FEC option in their SYN segments. They have no sequence number
+ *  of their own, are neither acknowledged nor retransmitted, and
+ *  are told apart by the EAK and NUL flags, which no other segment
+ *  combines.
+ *
+ */
+public class FECSegment extends Segment {
+  public static final int PARITY_FIELDS_LEN = 4;
+  private int _count;
+  private int _lengthXor;
+  private byte[] _parity;
+
+  protected FECSegment() {
+  }
+
+  /**
+   * Creates a parity segment.
+   *
+   * @param seqn      the sequence number of the first protected segment.
+   * @param count     the number of protected segments.
+   * @param lengthXor the XOR of the data lengths of the protected segments.
+   * @param parity    the XOR of the data of the protected segments.
+   * @param len       the length of the longest protected data.
+   */
+  public FECSegment(int seqn, int count, int lengthXor, byte[] parity, int len) {
+    init(FEC_FLAGS, seqn, RUDP_HEADER_LEN + PARITY_FIELDS_LEN);
+    _count = count;
+    _lengthXor = lengthXor;
+    _parity = new byte[len];
+    System.arraycopy(parity, 0, _parity, 0, len);
+  }
+
+  public String type() {
+    return "FEC";
+  }
+
+  public int length() {
+    return super.length() + _parity.length;
+  }
+
+  /**
+   * Returns the number of protected segments.
+   */
+  public int getCount() {
+    return _count;
+  }
+
+  /**
+   * Returns the XOR of the data lengths of the protected segments.
+   */
+  public int getLengthXor() {
+    return _lengthXor;
+  }
+
+  /**
+   * Returns the XOR of the data of the protected segments.
+   */
+  public byte[] getParity() {
+    return _parity;
+  }
+
+  public byte[] getBytes() {
+    byte[] buffer = super.getBytes();
+    int off = fieldOffset();
+    buffer[off] = (byte) (_count & 0xFF);
+    buffer[off + 1] = 0; /* spare */
+    buffer[off + 2] = (byte) ((_lengthXor >>> 8) & 0xFF);
+    buffer[off + 3] = (byte) ((_lengthXor >>> 0) & 0xFF);
+    System.arraycopy(_parity, 0, buffer, super.length(), _parity.length);
+    return buffer;
+  }
+
+  protected void parseBytes(byte[] buffer, int off, int len) {
+    super.parseBytes(buffer, off, len);
+
+    int hlen = super.length();
+    if (hlen != headerLength() + PARITY_FIELDS_LEN || len < hlen) {
+      throw new IllegalArgumentException("Invalid FEC segment");
+    }
+
+    _count = (buffer[off + fieldOffset()] & 0xFF);
+    _lengthXor = ((buffer[off + fieldOffset() + 2] & 0xFF) << 8) |
+        ((buffer[off + fieldOffset() + 3] & 0xFF) << 0);
+    _parity = new byte[len - hlen];
+    System.arraycopy(buffer, off + hlen, _parity, 0, _parity.length);
+  }
+}
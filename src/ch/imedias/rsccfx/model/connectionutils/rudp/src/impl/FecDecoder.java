@@ -0,0 +1,200 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import java.nio.ByteBuffer;
+
+/*
+ *  Receiver side of the forward error correction.
+ *
+ *  When a parity segment arrives and exactly one segment of its group
+ *  is missing, the missing segment is the XOR of the parity and of
+ *  the other segments of the group. Segments above the missing one
+ *  are still in the out-of-sequence queue, but those below it may
+ *  already have been read, so the data of the last MAX_GROUP_SIZE
+ *  in-sequence segments is kept here, as long as the sender keeps
+ *  sending parity segments.
+ *
+ *  The methods must be called with the receive queues locked.
+ */
+public class FecDecoder {
+  private static final int HISTORY_SIZE = FecEncoder.MAX_GROUP_SIZE;
+
+  private final int _maxSequenceNumber;
+  private final boolean _streams;
+  private final int[] _seqs = new int[HISTORY_SIZE];
+  private final int[] _lengths = new int[HISTORY_SIZE];
+  private final byte[][] _history = new byte[HISTORY_SIZE][];
+  private int _size;  /* Number of segments in the history */
+  private int _last;  /* Index of the last in-sequence segment */
+  private int _sinceParity = 2 * HISTORY_SIZE; /* Segments delivered since the last parity */
+  private byte[] _data = new byte[0];
+
+  /**
+   * Creates a decoder for a connection.
+   *
+   * @param maxSequenceNumber the size of the sequence number space.
+   * @param streams           true if data segments carry stream fields.
+   */
+  public FecDecoder(int maxSequenceNumber, boolean streams) {
+    _maxSequenceNumber = maxSequenceNumber;
+    _streams = streams;
+  }
+
+  /**
+   * Keeps the data of a segment that has just been
+   * moved to the in-sequence queue.
+   *
+   * @param s the segment.
+   */
+  public void delivered(Segment s) {
+    _last = (_last + 1) % HISTORY_SIZE;
+    _size = Math.min(_size + 1, HISTORY_SIZE);
+    _seqs[_last] = s.seq();
+    _lengths[_last] = 0;
+
+    if (_sinceParity < 2 * HISTORY_SIZE) {
+      _sinceParity++;
+    } else if (s instanceof DATSegment) {
+      _lengths[_last] = -1; /* Not protected, the data is not kept */
+      return;
+    }
+
+    if (s instanceof DATSegment) {
+      DATSegment dat = (DATSegment) s;
+      int len = dat.getPayloadLength();
+      if (_history[_last] == null || _history[_last].length < len) {
+        _history[_last] = new byte[len];
+      }
+      dat.getPayload(ByteBuffer.wrap(_history[_last], 0, len));
+      _lengths[_last] = len;
+    }
+  }
+
+  /**
+   * Rebuilds the segment of a group that is missing, if it
+   * is the only one.
+   *
+   * @param parity         the parity segment of the group.
+   * @param lastInSequence the last in-sequence received segment.
+   * @param outSeqQueue    the out-of-sequence received segments.
+   * @return the rebuilt segment, or null.
+   */
+  public Segment recover(FECSegment parity, int lastInSequence, SegmentRing outSeqQueue) {
+    _sinceParity = 0;
+
+    int count = parity.getCount();
+    int lastSeq = (int) (((long) parity.seq() + count - 1) % _maxSequenceNumber);
+    if (count == 0 || !isAfter(lastSeq, lastInSequence)) {
+      return null; /* Nothing is missing */
+    }
+
+    byte[] data = parity.getParity();
+    if (_data.length < data.length) {
+      _data = new byte[data.length];
+    }
+
+    byte[] rebuilt = null;
+    int length = parity.getLengthXor();
+    int missing = -1;
+
+    for (int i = 0; i < count; i++) {
+      int seq = (int) (((long) parity.seq() + i) % _maxSequenceNumber);
+      int len;
+      byte[] src;
+
+      int index = indexOf(seq);
+      Segment s;
+      if (index >= 0) {
+        len = _lengths[index];
+        src = _history[index];
+        if (len < 0) {
+          return null;
+        }
+      } else if ((s = outSeqQueue.get(seq)) != null) {
+        len = (s instanceof DATSegment) ? ((DATSegment) s).getPayloadLength() : 0;
+        if (len > data.length) {
+          return null;
+        }
+        if (len > 0) {
+          ((DATSegment) s).getPayload(ByteBuffer.wrap(_data, 0, len));
+        }
+        src = _data;
+      } else if (missing < 0 && isAfter(seq, lastInSequence)) {
+        missing = seq;
+        continue;
+      } else {
+        return null; /* More than one segment is missing */
+      }
+
+      if (len > data.length) {
+        return null;
+      }
+
+      if (rebuilt == null) {
+        rebuilt = data.clone();
+      }
+      FecEncoder.xor(rebuilt, src, len);
+      length ^= len;
+    }
+
+    if (missing < 0 || length > data.length) {
+      return null;
+    }
+
+    if (length == 0) {
+      return new NULSegment(missing);
+    }
+
+    return DATSegment.fromPayload(missing, (rebuilt != null) ? rebuilt : data, length, _streams);
+  }
+
+  /**
+   * Returns the index in the history of a segment, or -1.
+   */
+  private int indexOf(int seq) {
+    for (int i = 0; i < _size; i++) {
+      int index = (_last - i + HISTORY_SIZE) % HISTORY_SIZE;
+      if (_seqs[index] == seq) {
+        return index;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Returns true if a sequence number comes after another one (see RFC 1982).
+   */
+  private boolean isAfter(int seqn, int aseqn) {
+    long d = ((long) seqn - aseqn + _maxSequenceNumber) % _maxSequenceNumber;
+    return d != 0 && d < _maxSequenceNumber / 2;
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ *  Sender side of the forward error correction.
+ *
+ *  New segments are XORed into a parity segment, which is sent right
+ *  after the last segment of its group, so that the receiver can
+ *  rebuild one lost segment per group without waiting a round-trip
+ *  time for its retransmission. A group is made of consecutive DAT
+ *  and NUL segments, other segments and gaps in the sequence numbers
+ *  end it early.
+ *
+ *  The size of the groups follows the loss rate, estimated from the
+ *  retransmissions over the last LOSS_WINDOW segments: a group is
+ *  sized for a quarter of a lost segment on average, between
+ *  MIN_GROUP_SIZE and MAX_GROUP_SIZE, and no parity is sent at all
+ *  while the loss rate stays below MIN_LOSS_RATE, which is the case
+ *  until the first segments get lost. A group that is not full when
+ *  the application stops writing is closed by flush().
+ *
+ *  The methods must be called with the send queue locked.
+ */
+public class FecEncoder {
+  public static final int MIN_GROUP_SIZE = 2;
+  public static final int MAX_GROUP_SIZE = 16;
+  public static final double MIN_LOSS_RATE = 0.002;
+  public static final int LOSS_WINDOW = 256; /* segments */
+
+  private final int _maxSequenceNumber;
+  private byte[] _parity = new byte[0];
+  private byte[] _data = new byte[0];
+  private int _first;      /* Sequence number of the first segment of the group */
+  private int _next;       /* Sequence number expected next in the group */
+  private int _count;      /* Number of segments in the group */
+  private int _groupSize;  /* Number of segments the group is closed at */
+  private int _length;     /* Length of the longest data in the group */
+  private int _lengthXor;
+  private double _lossRate;
+
+  /**
+   * Creates an encoder for a connection.
+   *
+   * @param maxSequenceNumber the size of the sequence number space.
+   */
+  public FecEncoder(int maxSequenceNumber) {
+    _maxSequenceNumber = maxSequenceNumber;
+  }
+
+  /**
+   * Adds a new segment, which is about to be sent for the first time.
+   *
+   * @param s the segment.
+   * @return the parity segment to send after it, or null.
+   */
+  public FECSegment add(Segment s) {
+    _lossRate -= _lossRate / LOSS_WINDOW;
+
+    FECSegment parity = null;
+    if (_count > 0 && s.seq() != _next) {
+      parity = flush();
+    }
+
+    if (!(s instanceof DATSegment) && !(s instanceof NULSegment)) {
+      return parity;
+    }
+
+    if (_count == 0) {
+      _groupSize = groupSize();
+      if (_groupSize == 0) {
+        return parity;
+      }
+      _first = s.seq();
+    }
+
+    if (s instanceof DATSegment) {
+      xorData((DATSegment) s);
+    }
+
+    _count++;
+    _next = (s.seq() + 1) % _maxSequenceNumber;
+
+    if (_count >= _groupSize) {
+      parity = flush();
+    }
+
+    return parity;
+  }
+
+  /**
+   * Closes the current group, when no more segments are
+   * about to be sent.
+   *
+   * @return the parity segment of the group, or null if it is empty.
+   */
+  public FECSegment flush() {
+    if (_count == 0) {
+      return null;
+    }
+
+    FECSegment parity = new FECSegment(_first, _count, _lengthXor, _parity, _length);
+    Arrays.fill(_parity, 0, _length, (byte) 0);
+    _count = 0;
+    _length = 0;
+    _lengthXor = 0;
+    return parity;
+  }
+
+  /**
+   * Counts a segment that has to be retransmitted.
+   */
+  public void segmentLost() {
+    _lossRate += (1 - _lossRate) / LOSS_WINDOW;
+  }
+
+  /**
+   * Returns the estimated loss rate.
+   */
+  public double lossRate() {
+    return _lossRate;
+  }
+
+  /**
+   * Returns the number of segments protected by one parity
+   * segment, or 0 if no parity is sent.
+   */
+  public int groupSize() {
+    if (_lossRate < MIN_LOSS_RATE) {
+      return 0;
+    }
+
+    return (int) Math.max(MIN_GROUP_SIZE, Math.min(1 / (4 * _lossRate), MAX_GROUP_SIZE));
+  }
+
+  private void xorData(DATSegment s) {
+    int len = s.getPayloadLength();
+    if (len > _parity.length) {
+      byte[] parity = new byte[len];
+      System.arraycopy(_parity, 0, parity, 0, _length);
+      _parity = parity;
+      _data = new byte[len];
+    }
+
+    s.getPayload(ByteBuffer.wrap(_data, 0, len));
+    xor(_parity, _data, len);
+    _length = Math.max(_length, len);
+    _lengthXor ^= len;
+  }
+
+  /**
+   * XORs the first <code>len</code> bytes of <code>src</code> into <code>dst</code>.
+   */
+  static void xor(byte[] dst, byte[] src, int len) {
+    for (int i = 0; i < len; i++) {
+      dst[i] ^= src[i];
+    }
+  }
+
+  public String toString() {
+    return "FEC [ LOSS = " + _lossRate + ", GROUP = " + groupSize() + " ]";
+  }
+}
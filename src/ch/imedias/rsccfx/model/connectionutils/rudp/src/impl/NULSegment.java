@@ -45,6 +45,8 @@ package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
  *
  */
 public class NULSegment extends Segment {
+  private int _paddedLength; /* Length on the wire, including zero padding */
+
   protected NULSegment() {
   }
 
@@ -52,6 +54,30 @@ public class NULSegment extends Segment {
     init(NUL_FLAG, seqn, RUDP_HEADER_LEN);
   }
 
+  /**
+   * Creates a NUL segment padded with zeros to the given length,
+   * which is used to probe the path MTU. Receivers ignore the padding.
+   *
+   * @param seqn   the sequence number.
+   * @param length the length of the segment, header included.
+   */
+  public NULSegment(int seqn, int length) {
+    this(seqn);
+    _paddedLength = length;
+  }
+
+  public int length() {
+    return Math.max(super.length(), _paddedLength);
+  }
+
+  /**
+   * Removes the padding, so that a lost probe
+   * is retransmitted as a plain NUL segment.
+   */
+  public void removePadding() {
+    _paddedLength = 0;
+  }
+
   public String type() {
     return "NUL";
   }
@@ -0,0 +1,123 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.CongestionController;
+
+/*
+ *  Loss-based congestion control in the style of TCP NewReno.
+ *
+ *  The window grows by one segment per acknowledged segment during
+ *  slow start and by one segment per window in congestion avoidance.
+ *  A loss reported by an extended acknowledgment halves the window,
+ *  at most once per round-trip time, and a retransmission timeout
+ *  collapses it to a single segment. The window does not grow while
+ *  the connection is limited by the application or the peer.
+ */
+public class NewRenoCongestionController implements CongestionController {
+  public static final int INITIAL_WINDOW = 4;
+  public static final int MIN_WINDOW = 2;
+  public static final int INITIAL_RTT = 100; /* (ms) */
+  protected double _cwnd;       /* Congestion window (segments) */
+  protected double _ssthresh;   /* Slow start threshold (segments) */
+  protected long _rtt;          /* Last round-trip time sample (ms) */
+  private long _recoveryTime;   /* No further reduction until this time */
+
+  public NewRenoCongestionController() {
+    _cwnd = INITIAL_WINDOW;
+    _ssthresh = Integer.MAX_VALUE;
+    _rtt = INITIAL_RTT;
+    _recoveryTime = 0;
+  }
+
+  public synchronized void segmentsAcked(int acked, int inFlight, long rtt, long now) {
+    if (rtt >= 0) {
+      _rtt = rtt;
+    }
+
+    /* Only grow a window that is actually used */
+    if (2 * inFlight < _cwnd) {
+      return;
+    }
+
+    if (_cwnd < _ssthresh) {
+      _cwnd += acked;
+    } else {
+      congestionAvoidance(acked, now);
+    }
+  }
+
+  public synchronized void segmentsLost(long now) {
+    if (now < _recoveryTime) {
+      return;
+    }
+
+    reduceWindow(now);
+    _cwnd = _ssthresh;
+    _recoveryTime = now + _rtt;
+  }
+
+  public synchronized void retransmissionTimeout(long now) {
+    if (now >= _recoveryTime) {
+      reduceWindow(now);
+      _recoveryTime = now + _rtt;
+    }
+
+    _cwnd = 1;
+  }
+
+  public synchronized int getCongestionWindow() {
+    return (int) _cwnd;
+  }
+
+  /**
+   * Grows the window once the slow start threshold is reached.
+   *
+   * @param acked the number of newly acknowledged segments.
+   * @param now   the current time (ms).
+   */
+  protected void congestionAvoidance(int acked, long now) {
+    _cwnd += acked / _cwnd;
+  }
+
+  /**
+   * Lowers the slow start threshold after a loss.
+   *
+   * @param now the current time (ms).
+   */
+  protected void reduceWindow(long now) {
+    _ssthresh = Math.max(_cwnd / 2, MIN_WINDOW);
+  }
+
+  public String toString() {
+    return "NewReno [ CWND = " + getCongestionWindow() + ", SSTHRESH = " + (int) _ssthresh + " ]";
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+/*
+ *  Token bucket that spaces out data segments, so that a large write
+ *  does not leave as a burst that overflows the queue of a router.
+ *
+ *  The pacing rate is the congestion window sent over one smoothed
+ *  round-trip time, times STARTUP_GAIN until the first loss and
+ *  PACING_GAIN afterwards, so the window can still grow. It is never
+ *  less than the delivery rate, the highest rate at which segments
+ *  were acknowledged over one of the last RATE_FILTER_LENGTH rounds,
+ *  and it is kept between the bounds of the profile. Segments are not
+ *  paced until a round-trip time has been measured.
+ *
+ *  The bucket holds the tokens for a burst of MIN_BURST_SEGMENTS
+ *  segments or BURST_TIME worth of data, whichever is larger, so
+ *  that the sender does not have to wait for every single segment.
+ */
+public class Pacer {
+  public static final double STARTUP_GAIN = 2.0;
+  public static final double PACING_GAIN = 1.25;
+  public static final int MIN_BURST_SEGMENTS = 2;
+  public static final long BURST_TIME = 1000000; /* ns */
+  private static final int RATE_FILTER_LENGTH = 10; /* rounds */
+
+  private final long _minRate;    /* bytes/s */
+  private final long _maxRate;    /* bytes/s, 0 means unbounded */
+  private final Clock _clock;
+  private long _rate;             /* bytes/s, 0 until a round-trip time is known */
+  private double _tokens;         /* bytes */
+  private long _stamp;            /* Time the tokens were counted (ns) */
+  private boolean _startup = true;
+  private long[] _rateSamples = new long[RATE_FILTER_LENGTH]; /* bytes/s */
+  private int _round;
+  private long _roundStart = -1;  /* ms */
+  private long _delivered;        /* Bytes acknowledged in the current round */
+
+  /**
+   * Creates a pacer.
+   *
+   * @param minRate the minimum pacing rate (bytes/s).
+   * @param maxRate the maximum pacing rate (bytes/s), or 0 for no maximum.
+   */
+  public Pacer(long minRate, long maxRate) {
+    this(minRate, maxRate, Clock.SYSTEM);
+  }
+
+  /**
+   * Creates a pacer whose token bucket starts
+   * filling at the time of the given clock.
+   *
+   * @param minRate the minimum pacing rate (bytes/s).
+   * @param maxRate the maximum pacing rate (bytes/s), or 0 for no maximum.
+   * @param clock   the clock of the socket.
+   */
+  public Pacer(long minRate, long maxRate, Clock clock) {
+    _minRate = minRate;
+    _maxRate = maxRate;
+    _clock = clock;
+  }
+
+  /**
+   * Takes the tokens for a segment that is about to be sent.
+   *
+   * @param bytes the length of the segment.
+   * @param now   the current time (ns).
+   * @return the time to wait before sending the segment (ns).
+   */
+  public synchronized long pace(int bytes, long now) {
+    if (_rate == 0) {
+      return 0;
+    }
+
+    refill(bytes, now);
+    _tokens -= bytes;
+
+    return (_tokens >= 0) ? 0 : (long) (-_tokens * 1000000000L / _rate);
+  }
+
+  /**
+   * Returns the time until a segment may be sent without waiting,
+   * but does not take its tokens.
+   *
+   * @param bytes the length of the segment.
+   * @param now   the current time (ns).
+   * @return the time to wait before the tokens are there (ns).
+   */
+  public synchronized long delay(int bytes, long now) {
+    if (_rate == 0) {
+      return 0;
+    }
+
+    refill(bytes, now);
+
+    return (_tokens >= bytes) ? 0 : (long) ((bytes - _tokens) * 1000000000L / _rate);
+  }
+
+  private void refill(int bytes, long now) {
+    double burst = Math.max(MIN_BURST_SEGMENTS * bytes, (double) _rate * BURST_TIME / 1000000000L);
+    _tokens = Math.min(burst, _tokens + (double) (now - _stamp) * _rate / 1000000000L);
+    _stamp = now;
+  }
+
+  /**
+   * Updates the delivery rate and the pacing rate after
+   * segments have been acknowledged.
+   *
+   * @param bytes  the length of the acknowledged segments.
+   * @param now    the current time (ms).
+   * @param srtt   the smoothed round-trip time (ms), or a negative value if unknown.
+   * @param window the send window (bytes).
+   */
+  public synchronized void segmentsAcked(long bytes, long now, double srtt, long window) {
+    if (srtt < 0) {
+      return;
+    }
+
+    if (_roundStart < 0) {
+      _roundStart = now;
+    }
+
+    _delivered += bytes;
+    long interval = now - _roundStart;
+    if (interval >= Math.max(srtt, 1)) {
+      _rateSamples[_round++ % RATE_FILTER_LENGTH] = _delivered * 1000 / interval;
+      _delivered = 0;
+      _roundStart = now;
+    }
+
+    double gain = _startup ? STARTUP_GAIN : PACING_GAIN;
+    long rate = Math.max((long) (gain * window * 1000 / Math.max(srtt, 1)), getDeliveryRate());
+    rate = Math.max(rate, _minRate);
+    if (_maxRate > 0) {
+      rate = Math.min(rate, _maxRate);
+    }
+
+    if (_rate == 0) {
+      _stamp = _clock.nanoTime();
+    }
+    _rate = rate;
+  }
+
+  /**
+   * Ends the startup, once segments have been lost.
+   */
+  public synchronized void segmentsLost() {
+    _startup = false;
+  }
+
+  /**
+   * Returns the pacing rate (bytes/s), or 0 if segments are not paced yet.
+   */
+  public synchronized long getRate() {
+    return _rate;
+  }
+
+  /**
+   * Returns the delivery rate (bytes/s).
+   */
+  public synchronized long getDeliveryRate() {
+    long max = 0;
+    for (int i = 0; i < _rateSamples.length; i++) {
+      max = Math.max(max, _rateSamples[i]);
+    }
+
+    return max;
+  }
+
+  public String toString() {
+    return "PACER [ RATE = " + getRate() + ", DELIVERY_RATE = " + getDeliveryRate() + " ]";
+  }
+}
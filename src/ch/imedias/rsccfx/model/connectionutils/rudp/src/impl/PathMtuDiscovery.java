@@ -0,0 +1,167 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+/*
+ *  Packetization layer path MTU discovery in the style of RFC 8899.
+ *
+ *  A connection starts with segments small enough for any path and
+ *  probes for larger ones with padded NUL segments. A probe that is
+ *  acknowledged raises the segment size to the size of the probe, a
+ *  probe that has to be retransmitted counts as too big, and a size
+ *  is given up after MAX_PROBES lost probes. The search tries the
+ *  Ethernet payload first, then halves the range between the largest
+ *  working and the smallest failing size, and is started again every
+ *  RAISE_TIMEOUT in case the path has changed. When full-sized data
+ *  segments keep timing out, the path is taken to have shrunk and
+ *  the segment size falls back to BASE_SEGMENT_SIZE.
+ *
+ *  Sizes are UDP payload sizes, rudp header included. The methods
+ *  must be called with the send queue locked, except segmentSize().
+ */
+public class PathMtuDiscovery {
+  public static final int BASE_SEGMENT_SIZE = 1200;     /* Fits into the minimum IPv6 MTU */
+  public static final int ETHERNET_SEGMENT_SIZE = 1472; /* 1500 byte MTU minus IPv4 and UDP headers */
+  public static final int SEARCH_GRANULARITY = 32;
+  public static final int MAX_PROBES = 3;
+  public static final long RAISE_TIMEOUT = 600000; /* ms */
+
+  private final int _maxSegmentSize;
+  private volatile int _segmentSize; /* Largest size known to get through */
+  private int _limit;                /* Largest size that may get through */
+  private int _probeSize;            /* Size of the outstanding probe, or 0 */
+  private int _failures;             /* Lost probes of the current size */
+  private long _raiseTime;           /* Time to search again once done (ms) */
+
+  /**
+   * Creates the path MTU discovery of a connection.
+   *
+   * @param maxSegmentSize the negotiated maximum segment size.
+   */
+  public PathMtuDiscovery(int maxSegmentSize) {
+    _maxSegmentSize = maxSegmentSize;
+    _segmentSize = Math.min(BASE_SEGMENT_SIZE, maxSegmentSize);
+    _limit = maxSegmentSize;
+  }
+
+  /**
+   * Returns the size of the segments to send.
+   */
+  public int segmentSize() {
+    return _segmentSize;
+  }
+
+  /**
+   * Returns the size of the next probe to send, or 0 if a probe is
+   * outstanding or the search is done.
+   *
+   * @param now the current time (ms).
+   */
+  public int nextProbeSize(long now) {
+    if (_probeSize != 0) {
+      return 0;
+    }
+
+    if (isSearchDone()) {
+      if (now < _raiseTime || _segmentSize == _maxSegmentSize) {
+        return 0;
+      }
+      _limit = _maxSegmentSize;
+    }
+
+    if (_segmentSize < ETHERNET_SEGMENT_SIZE && ETHERNET_SEGMENT_SIZE <= _limit) {
+      _probeSize = ETHERNET_SEGMENT_SIZE;
+    } else {
+      _probeSize = (_segmentSize + _limit + 1) / 2;
+    }
+
+    return _probeSize;
+  }
+
+  /**
+   * Raises the segment size after the outstanding probe got through.
+   *
+   * @param now the current time (ms).
+   */
+  public void probeAcked(long now) {
+    _segmentSize = Math.max(_segmentSize, _probeSize);
+    _probeSize = 0;
+    _failures = 0;
+    checkSearchDone(now);
+  }
+
+  /**
+   * Counts the outstanding probe as lost.
+   *
+   * @param now the current time (ms).
+   */
+  public void probeLost(long now) {
+    if (++_failures >= MAX_PROBES) {
+      _limit = _probeSize - 1;
+      _failures = 0;
+    }
+
+    _probeSize = 0;
+    checkSearchDone(now);
+  }
+
+  /**
+   * Falls back to the base segment size after a data segment of the
+   * given size has timed out MAX_PROBES times in a row.
+   *
+   * @param length the length of the segment.
+   * @param now    the current time (ms).
+   */
+  public void segmentTimedOut(int length, long now) {
+    if (length <= BASE_SEGMENT_SIZE || length > _segmentSize) {
+      return;
+    }
+
+    _segmentSize = Math.min(BASE_SEGMENT_SIZE, _maxSegmentSize);
+    _limit = length - 1;
+    _failures = 0;
+    _raiseTime = 0;
+  }
+
+  private boolean isSearchDone() {
+    return _limit - _segmentSize < SEARCH_GRANULARITY;
+  }
+
+  private void checkSearchDone(long now) {
+    if (isSearchDone()) {
+      _raiseTime = now + RAISE_TIMEOUT;
+    }
+  }
+
+  public String toString() {
+    return "PMTU [ SEGMENT SIZE = " + _segmentSize + ", LIMIT = " + _limit + " ]";
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+/*
+ *  The probe train a connection sends right after its handshake to
+ *  measure the path it runs over.
+ *
+ *  A short train of NUL segments is sent back to back, each of them
+ *  acknowledged right away by the peer. The train gives the smallest
+ *  and largest round-trip times, whose difference tells the jitter
+ *  of the path, and the rate of probes that had to be retransmitted.
+ *  Following Karn's rule, retransmitted probes give no round-trip
+ *  time sample.
+ *
+ *  The train is complete when all probes have been acknowledged. It
+ *  runs alongside the first data of the connection, which does not
+ *  wait for it. probeAcked() and probeLost() must be called with the send queue
+ *  locked, the other methods may be called by any thread.
+ */
+public class PathProbe {
+  public static final int PROBE_COUNT = 8;
+
+  private final Segment[] _probes;
+  private final boolean[] _lost;
+  private int _sent;
+  private int _acked;
+  private int _lostCount;
+  private long _minRtt = -1;
+  private long _maxRtt = -1;
+
+  /**
+   * Creates the probe train of a connection.
+   */
+  public PathProbe() {
+    _probes = new Segment[PROBE_COUNT];
+    _lost = new boolean[PROBE_COUNT];
+  }
+
+  /**
+   * Adds a probe that is about to be sent to the train.
+   *
+   * @param probe the NUL segment.
+   */
+  public synchronized void probeSent(Segment probe) {
+    _probes[_sent++] = probe;
+  }
+
+  /**
+   * Returns the number of probes still to be sent.
+   */
+  public synchronized int remaining() {
+    return _probes.length - _sent;
+  }
+
+  /**
+   * Takes the round-trip time of a probe that has been acknowledged.
+   *
+   * @param s   the acknowledged segment, which may not be a probe.
+   * @param now the current time (ms).
+   * @return true if this completes the train.
+   */
+  public synchronized boolean probeAcked(Segment s, long now) {
+    int i = indexOf(s);
+    if (i < 0) {
+      return false;
+    }
+
+    _probes[i] = null;
+    if (s.getRetxCounter() == 0) {
+      long rtt = now - s.getSentTime();
+      _minRtt = (_minRtt < 0) ? rtt : Math.min(_minRtt, rtt);
+      _maxRtt = Math.max(_maxRtt, rtt);
+    }
+
+    return ++_acked == _probes.length;
+  }
+
+  /**
+   * Counts a probe that has to be retransmitted as lost, once.
+   *
+   * @param s the segment about to be retransmitted, which may not be a probe.
+   */
+  public synchronized void probeLost(Segment s) {
+    int i = indexOf(s);
+    if (i >= 0 && !_lost[i]) {
+      _lost[i] = true;
+      _lostCount++;
+    }
+  }
+
+  /**
+   * Returns the smallest round-trip time (ms), or -1 if no
+   * probe has been acknowledged without retransmission.
+   */
+  public synchronized long minRoundTripTime() {
+    return _minRtt;
+  }
+
+  /**
+   * Returns the largest round-trip time (ms), or -1 if no
+   * probe has been acknowledged without retransmission.
+   */
+  public synchronized long maxRoundTripTime() {
+    return _maxRtt;
+  }
+
+  /**
+   * Returns the rate of probes that had to be retransmitted.
+   */
+  public synchronized double lossRate() {
+    return (double) _lostCount / _probes.length;
+  }
+
+  private int indexOf(Segment s) {
+    for (int i = 0; i < _sent; i++) {
+      if (_probes[i] == s) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  public synchronized String toString() {
+    return "PROBE [ MIN RTT = " + _minRtt + ", MAX RTT = " + _maxRtt +
+        ", LOST = " + _lostCount + "/" + _probes.length + " ]";
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.PathProfile;
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ *  The class of the path a connection with path profiling runs over.
+ *
+ *  The class measured by the probe train of a connection is remembered
+ *  for the host, and the next connections to the host start with it
+ *  until their own train is complete. The host used least recently is
+ *  forgotten first.
+ *
+ *  startProbe(), probeAcked() and probeLost() must be called with the
+ *  send queue locked, getProfile() may be called by any thread.
+ */
+public class PathProfiler {
+  public static final int MAX_PROFILES = 256; /* Hosts whose path class is remembered */
+
+  private static final LinkedHashMap _profiles = new LinkedHashMap(16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry eldest) {
+      return size() > MAX_PROFILES;
+    }
+  };
+
+  private final InetAddress _host;
+  private PathProbe _probe; /* Outstanding probe train */
+  private volatile PathProfile _profile; /* Class of the path, or null if not measured */
+
+  /**
+   * Creates the profiler of a connection to the given host, which
+   * starts with the class measured by a previous connection, if any.
+   *
+   * @param host the address of the peer.
+   */
+  public PathProfiler(InetAddress host) {
+    _host = host;
+    synchronized (_profiles) {
+      _profile = (PathProfile) _profiles.get(host);
+    }
+  }
+
+  /**
+   * Returns the class of the path, or null if it has not been measured.
+   */
+  public PathProfile getProfile() {
+    return _profile;
+  }
+
+  /**
+   * Starts a probe train.
+   *
+   * @return the train, to which the probes are added as they are sent.
+   */
+  public PathProbe startProbe() {
+    _probe = new PathProbe();
+    return _probe;
+  }
+
+  /**
+   * Called when a segment has been acknowledged. Picks the class of the
+   * path and remembers it for the host once all probes are acknowledged.
+   *
+   * @param s   the acknowledged segment, which may not be a probe.
+   * @param now the current time (ms).
+   * @return the class of the path if this completes the train, else null.
+   */
+  public PathProfile probeAcked(Segment s, long now) {
+    if (_probe == null || !_probe.probeAcked(s, now)) {
+      return null;
+    }
+
+    PathProfile profile = PathProfile.classify(_probe.minRoundTripTime(),
+        _probe.maxRoundTripTime(), _probe.lossRate());
+    _profile = profile;
+    _probe = null;
+
+    synchronized (_profiles) {
+      _profiles.put(_host, profile);
+    }
+    return profile;
+  }
+
+  /**
+   * Called when a segment is about to be retransmitted.
+   *
+   * @param s the segment, which may not be a probe.
+   */
+  public void probeLost(Segment s) {
+    if (_probe != null) {
+      _probe.probeLost(s);
+    }
+  }
+}
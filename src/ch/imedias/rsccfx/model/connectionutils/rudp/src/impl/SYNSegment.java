@@ -62,11 +62,56 @@ package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
  *  |           Checksum            |
  *  +---------------+---------------+
  *
+ *  SYN Segment (version 2, WID flag set)
+ *
+ *   0             7 8             15
+ *  +-+-+-+-+-+-+-+-+---------------+
+ *  | |A| | | | | |W|               |
+ *  |1|C|0|0|0|0|0|I|       28      |
+ *  | |K| | | | | |D|               |
+ *  +-+-+-+-+-+-+-+-+---------------+
+ *  |     Sequence # (32 bits)      |
+ *  +---------------+---------------+
+ *  |    Ack Number (32 bits)       |
+ *  +---------------+---------------+
+ *  | Vers  | Spare | Option Flags  |
+ *  +---------------+---------------+
+ *  |  Max # of Outstanding Segs    |
+ *  +---------------+---------------+
+ *  |     Maximum Segment Size      |
+ *  +---------------+---------------+
+ *  | Retransmission Timeout Value  |
+ *  +---------------+---------------+
+ *  | Cumulative Ack Timeout Value  |
+ *  +---------------+---------------+
+ *  |   Null Segment Timeout Value  |
+ *  +---------------+---------------+
+ *  |  Max Retrans  | Max Cum Ack   |
+ *  +---------------+---------------+
+ *  | Max Out of Seq| Max Auto Reset|
+ *  +---------------+---------------+
+ *  |           Checksum            |
+ *  +---------------+---------------+
+ *
+ *  A client that speaks version 2 sends a version 1 SYN segment with
+ *  the VERSION_2_OPTION flag, since version 1 peers cannot parse the
+ *  version 2 SYN segment. Its window, which may not fit in 8 bits, is
+ *  then carried in the 12 spare bits, the 4 bits next to the version
+ *  being the most significant ones. A server that speaks version 2
+ *  answers with a version 2 SYN segment, any other with version 1.
+ *
  */
 public class SYNSegment extends Segment {
+  public static final int FEC_OPTION = 0x02; /* Sender accepts and sends FEC segments */
+  public static final int STREAMS_OPTION = 0x04; /* Sender multiplexes streams in data segments */
+  public static final int WINDOW_OPTION = 0x08; /* Sender advertises its receive window in the checksum field */
+  public static final int CONNECTION_ID_OPTION = 0x10; /* Sender keeps the connection across address changes */
+  public static final int VERSION_2_OPTION = 0x20; /* Sender of a version 1 SYN segment speaks version 2 */
+  public static final int MAX_OFFERED_WINDOW = 0xFFF; /* Largest window in the spare bits */
   private static final int SYN_HEADER_LEN = RUDP_HEADER_LEN + 16;
   private int _version;
   private int _maxseg;
+  private int _offeredMaxseg; /* Window offered for version 2 in a version 1 segment */
   private int _optflags;
   private int _maxsegsize;
   private int _rettoval;
@@ -83,10 +128,19 @@ public class SYNSegment extends Segment {
   public SYNSegment(int seqn, int maxseg, int maxsegsize, int rettoval,
                     int cumacktoval, int niltoval, int maxret,
                     int maxcumack, int maxoutseq, int maxautorst) {
+    this(RUDP_VERSION, seqn, maxseg, maxsegsize, rettoval, cumacktoval,
+        niltoval, maxret, maxcumack, maxoutseq, maxautorst);
+  }
+
+  public SYNSegment(int version, int seqn, int maxseg, int maxsegsize, int rettoval,
+                    int cumacktoval, int niltoval, int maxret,
+                    int maxcumack, int maxoutseq, int maxautorst) {
     init(SYN_FLAG, seqn, SYN_HEADER_LEN);
+    setWide(version >= RUDP_VERSION_2);
 
-    _version = RUDP_VERSION;
+    _version = version;
     _maxseg = maxseg;
+    _offeredMaxseg = Math.min(maxseg, MAX_OFFERED_WINDOW);
     _optflags = 0x01; /* no options */
     _maxsegsize = maxsegsize;
     _rettoval = rettoval;
@@ -110,10 +164,31 @@ public class SYNSegment extends Segment {
     return _maxseg;
   }
 
+  /**
+   * Returns the maximum number of outstanding segments that a version 1
+   * SYN segment offers for version 2, or 0 if it does not offer version 2.
+   */
+  public int getOfferedMaxOutstandingSegments() {
+    if (_version != RUDP_VERSION || (_optflags & VERSION_2_OPTION) == 0) {
+      return 0;
+    }
+
+    return _offeredMaxseg;
+  }
+
   public int getOptionFlags() {
     return _optflags;
   }
 
+  /**
+   * Sets the option flags, <code>FEC_OPTION</code> for instance.
+   *
+   * @param optflags the option flags.
+   */
+  public void setOptionFlags(int optflags) {
+    _optflags = optflags;
+  }
+
   public int getMaxSegmentSize() {
     return _maxsegsize;
   }
@@ -148,22 +223,33 @@ public class SYNSegment extends Segment {
 
   public byte[] getBytes() {
     byte[] buffer = super.getBytes();
-    buffer[4] = (byte) ((_version << 4) & 0xFF);
-    buffer[5] = (byte) (_maxseg & 0xFF);
-    buffer[6] = (byte) (_optflags & 0xFF);
-    buffer[7] = 0; /* spare */
-    buffer[8] = (byte) ((_maxsegsize >>> 8) & 0xFF);
-    buffer[9] = (byte) ((_maxsegsize >>> 0) & 0xFF);
-    buffer[10] = (byte) ((_rettoval >>> 8) & 0xFF);
-    buffer[11] = (byte) ((_rettoval >>> 0) & 0xFF);
-    buffer[12] = (byte) ((_cumacktoval >>> 8) & 0xFF);
-    buffer[13] = (byte) ((_cumacktoval >>> 0) & 0xFF);
-    buffer[14] = (byte) ((_niltoval >>> 8) & 0xFF);
-    buffer[15] = (byte) ((_niltoval >>> 0) & 0xFF);
-    buffer[16] = (byte) (_maxret & 0xFF);
-    buffer[17] = (byte) (_maxcumack & 0xFF);
-    buffer[18] = (byte) (_maxoutseq & 0xFF);
-    buffer[19] = (byte) (_maxautorst & 0xFF);
+    int off = fieldOffset();
+    buffer[off] = (byte) ((_version << 4) & 0xFF);
+    if (_version >= RUDP_VERSION_2) {
+      buffer[off + 1] = (byte) (_optflags & 0xFF);
+      buffer[off + 2] = (byte) ((_maxseg >>> 8) & 0xFF);
+      buffer[off + 3] = (byte) ((_maxseg >>> 0) & 0xFF);
+    } else {
+      buffer[off + 1] = (byte) (Math.min(_maxseg, 255) & 0xFF);
+      buffer[off + 2] = (byte) (_optflags & 0xFF);
+      buffer[off + 3] = 0; /* spare */
+      if ((_optflags & VERSION_2_OPTION) != 0) {
+        buffer[off] |= (byte) ((_offeredMaxseg >>> 8) & 0x0F);
+        buffer[off + 3] = (byte) ((_offeredMaxseg >>> 0) & 0xFF);
+      }
+    }
+    buffer[off + 4] = (byte) ((_maxsegsize >>> 8) & 0xFF);
+    buffer[off + 5] = (byte) ((_maxsegsize >>> 0) & 0xFF);
+    buffer[off + 6] = (byte) ((_rettoval >>> 8) & 0xFF);
+    buffer[off + 7] = (byte) ((_rettoval >>> 0) & 0xFF);
+    buffer[off + 8] = (byte) ((_cumacktoval >>> 8) & 0xFF);
+    buffer[off + 9] = (byte) ((_cumacktoval >>> 0) & 0xFF);
+    buffer[off + 10] = (byte) ((_niltoval >>> 8) & 0xFF);
+    buffer[off + 11] = (byte) ((_niltoval >>> 0) & 0xFF);
+    buffer[off + 12] = (byte) (_maxret & 0xFF);
+    buffer[off + 13] = (byte) (_maxcumack & 0xFF);
+    buffer[off + 14] = (byte) (_maxoutseq & 0xFF);
+    buffer[off + 15] = (byte) (_maxautorst & 0xFF);
 
     return buffer;
   }
@@ -171,26 +257,32 @@ public class SYNSegment extends Segment {
   protected void parseBytes(byte[] buffer, int off, int len) {
     super.parseBytes(buffer, off, len);
 
-    if (len < (SYN_HEADER_LEN)) {
+    if (len < headerLength() + SYN_HEADER_LEN - RUDP_HEADER_LEN) {
       throw new IllegalArgumentException("Invalid SYN segment");
     }
 
-    _version = ((buffer[off + 4] & 0xFF) >>> 4);
-    if (_version != RUDP_VERSION) {
+    off += fieldOffset();
+    _version = ((buffer[off] & 0xFF) >>> 4);
+    if (_version != (isWide() ? RUDP_VERSION_2 : RUDP_VERSION)) {
       throw new IllegalArgumentException("Invalid rudp version");
     }
 
-    _maxseg = (buffer[off + 5] & 0xFF);
-    _optflags = (buffer[off + 6] & 0xFF);
-    // spare     =  (buffer[off+ 7] & 0xFF);
-    _maxsegsize = ((buffer[off + 8] & 0xFF) << 8) | ((buffer[off + 9] & 0xFF) << 0);
-    _rettoval = ((buffer[off + 10] & 0xFF) << 8) | ((buffer[off + 11] & 0xFF) << 0);
-    _cumacktoval = ((buffer[off + 12] & 0xFF) << 8) | ((buffer[off + 13] & 0xFF) << 0);
-    _niltoval = ((buffer[off + 14] & 0xFF) << 8) | ((buffer[off + 15] & 0xFF) << 0);
-    _maxret = (buffer[off + 16] & 0xFF);
-    _maxcumack = (buffer[off + 17] & 0xFF);
-    _maxoutseq = (buffer[off + 18] & 0xFF);
-    _maxautorst = (buffer[off + 19] & 0xFF);
+    if (_version >= RUDP_VERSION_2) {
+      _optflags = (buffer[off + 1] & 0xFF);
+      _maxseg = ((buffer[off + 2] & 0xFF) << 8) | ((buffer[off + 3] & 0xFF) << 0);
+    } else {
+      _maxseg = (buffer[off + 1] & 0xFF);
+      _optflags = (buffer[off + 2] & 0xFF);
+      _offeredMaxseg = ((buffer[off] & 0x0F) << 8) | ((buffer[off + 3] & 0xFF) << 0);
+    }
+    _maxsegsize = ((buffer[off + 4] & 0xFF) << 8) | ((buffer[off + 5] & 0xFF) << 0);
+    _rettoval = ((buffer[off + 6] & 0xFF) << 8) | ((buffer[off + 7] & 0xFF) << 0);
+    _cumacktoval = ((buffer[off + 8] & 0xFF) << 8) | ((buffer[off + 9] & 0xFF) << 0);
+    _niltoval = ((buffer[off + 10] & 0xFF) << 8) | ((buffer[off + 11] & 0xFF) << 0);
+    _maxret = (buffer[off + 12] & 0xFF);
+    _maxcumack = (buffer[off + 13] & 0xFF);
+    _maxoutseq = (buffer[off + 14] & 0xFF);
+    _maxautorst = (buffer[off + 15] & 0xFF);
   }
 }
 
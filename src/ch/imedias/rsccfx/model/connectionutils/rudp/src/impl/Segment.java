@@ -30,9 +30,15 @@
 
 package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
 
+import java.nio.ByteBuffer;
+
 public abstract class Segment {
   public static final int RUDP_VERSION = 1;
+  public static final int RUDP_VERSION_2 = 2; /* 32-bit sequence and ack numbers */
   public static final int RUDP_HEADER_LEN = 6;
+  public static final int RUDP_WIDE_HEADER_LEN = 12;
+  public static final int MAX_WIDE_SEQUENCE_NUMBER = Integer.MAX_VALUE;
+  public static final int CONNECTION_ID_LEN = 4;
 
   public static final byte SYN_FLAG = (byte) 0x80;
   public static final byte ACK_FLAG = (byte) 0x40;
@@ -41,15 +47,22 @@ public abstract class Segment {
   public static final byte NUL_FLAG = (byte) 0x08;
   public static final byte CHK_FLAG = (byte) 0x04;
   public static final byte FIN_FLAG = (byte) 0x02;
+  public static final byte WID_FLAG = (byte) 0x01;
+  public static final byte CID_FLAG = CHK_FLAG; /* Connection ID, in wide headers, as no checksum is computed */
+  public static final byte FEC_FLAGS = EAK_FLAG | NUL_FLAG; /* Parity segment */
   private int _flags; /* Control flags field */
   private int _hlen;   /* Header length field */
   private int _seqn;  /* Sequence number field */
   private int _ackn;  /* Acknowledgment number field */
   private int _nretx; /* Retransmission counter */
+  private long _sentTime; /* Time of the last transmission (ms) */
+  private int _window; /* Advertised receive window, in the checksum field */
+  private int _connectionId; /* Connection ID field */
 
   protected Segment() {
     _nretx = 0;
     _ackn = -1;
+    _window = -1;
   }
 
   public static Segment parse(byte[] bytes) {
@@ -64,7 +77,9 @@ public abstract class Segment {
     }
 
     int flags = bytes[off];
-    if ((flags & SYN_FLAG) != 0) {
+    if ((flags & FEC_FLAGS) == FEC_FLAGS) {
+      segment = new FECSegment();
+    } else if ((flags & SYN_FLAG) != 0) {
       segment = new SYNSegment();
     } else if ((flags & NUL_FLAG) != 0) {
       segment = new NULSegment();
@@ -75,10 +90,10 @@ public abstract class Segment {
     } else if ((flags & FIN_FLAG) != 0) {
       segment = new FINSegment();
     } else if ((flags & ACK_FLAG) != 0) { /* always process ACKs or Data segments last */
-      if (len == RUDP_HEADER_LEN) {
-        segment = new ACKSegment();
-      } else {
+      if (isData(flags, len)) {
         segment = new DATSegment();
+      } else {
+        segment = new ACKSegment();
       }
     }
 
@@ -90,6 +105,54 @@ public abstract class Segment {
     return segment;
   }
 
+  /**
+   * Parses the segment between the position and the limit of a
+   * pooled buffer. A data segment becomes a view over the buffer
+   * and returns it to the pool when it is released, any other
+   * segment is copied out and the buffer is returned right away.
+   *
+   * @param buffer the received datagram.
+   * @param pool   the pool the buffer belongs to.
+   * @return the segment.
+   */
+  public static Segment parse(ByteBuffer buffer, BufferPool pool) {
+    int off = buffer.position();
+    int len = buffer.remaining();
+
+    try {
+      if (len >= RUDP_HEADER_LEN && isData(buffer.get(off), len)) {
+        DATSegment segment = new DATSegment();
+        segment.parseBuffer(buffer, pool);
+        return segment;
+      }
+
+      byte[] bytes = new byte[len];
+      buffer.get(bytes);
+      pool.release(buffer);
+      return parse(bytes, 0, len);
+    } catch (IllegalArgumentException xcp) {
+      pool.release(buffer);
+      throw xcp;
+    }
+  }
+
+  /**
+   * Returns true if the flags and length of a
+   * segment make it a data segment.
+   */
+  private static boolean isData(int flags, int len) {
+    if ((flags & (SYN_FLAG | NUL_FLAG | EAK_FLAG | RST_FLAG | FIN_FLAG)) != 0 ||
+        (flags & ACK_FLAG) == 0) {
+      return false;
+    }
+
+    int hlen = RUDP_HEADER_LEN;
+    if ((flags & WID_FLAG) != 0) {
+      hlen = ((flags & CID_FLAG) != 0) ? RUDP_WIDE_HEADER_LEN + CONNECTION_ID_LEN : RUDP_WIDE_HEADER_LEN;
+    }
+    return len != hlen;
+  }
+
   public abstract String type();
 
   public int flags() {
@@ -104,6 +167,78 @@ public abstract class Segment {
     return _hlen;
   }
 
+  /**
+   * Returns true if the sequence and ack numbers of this segment
+   * are encoded as 32-bit fields (rudp version 2).
+   */
+  public boolean isWide() {
+    return (_flags & WID_FLAG) == WID_FLAG;
+  }
+
+  /**
+   * Selects the width of the sequence and ack number fields
+   * used when this segment is encoded.
+   *
+   * @param wide true for 32-bit fields, false for 8-bit fields.
+   */
+  public void setWide(boolean wide) {
+    if (wide == isWide()) {
+      return;
+    }
+
+    if (wide) {
+      _flags = _flags | WID_FLAG;
+      _hlen += RUDP_WIDE_HEADER_LEN - RUDP_HEADER_LEN;
+    } else {
+      _flags = _flags & ~WID_FLAG;
+      _hlen -= RUDP_WIDE_HEADER_LEN - RUDP_HEADER_LEN;
+    }
+  }
+
+  /**
+   * Returns true if this segment carries a connection ID.
+   */
+  public boolean hasConnectionId() {
+    return (_flags & (WID_FLAG | CID_FLAG)) == (WID_FLAG | CID_FLAG);
+  }
+
+  /**
+   * Returns the connection ID, or 0 if this segment carries none.
+   */
+  public int getConnectionId() {
+    return hasConnectionId() ? _connectionId : 0;
+  }
+
+  /**
+   * Adds the connection ID field to the header of this segment,
+   * which must be encoded with 32-bit fields.
+   *
+   * @param connectionId the connection ID.
+   */
+  public void setConnectionId(int connectionId) {
+    if (!isWide()) {
+      throw new IllegalStateException("connection ID requires wide header");
+    }
+
+    if (!hasConnectionId()) {
+      _flags = _flags | CID_FLAG;
+      _hlen += CONNECTION_ID_LEN;
+    }
+    _connectionId = connectionId;
+  }
+
+  /**
+   * Returns the length of the common header, including the
+   * connection ID, if any, and the checksum.
+   */
+  public int headerLength() {
+    if (!isWide()) {
+      return RUDP_HEADER_LEN;
+    }
+
+    return hasConnectionId() ? RUDP_WIDE_HEADER_LEN + CONNECTION_ID_LEN : RUDP_WIDE_HEADER_LEN;
+  }
+
   public int getAck() {
     if ((_flags & ACK_FLAG) == ACK_FLAG) {
       return _ackn;
@@ -117,6 +252,27 @@ public abstract class Segment {
     _ackn = ackn;
   }
 
+  /**
+   * Returns the receive window advertised with the acknowledgment, that
+   * is the number of segments past the ack number that the sender of
+   * this segment can still buffer. It is only meaningful if advertising
+   * the window has been negotiated, otherwise the field is zero.
+   */
+  public int getWindow() {
+    return _window;
+  }
+
+  /**
+   * Sets the receive window advertised with the acknowledgment. The
+   * window is carried in the checksum field, which rudp does not
+   * compute, so it is limited to 65535 segments.
+   *
+   * @param window the number of segments, or -1 to leave the field empty.
+   */
+  public void setWindow(int window) {
+    _window = Math.min(window, 0xFFFF);
+  }
+
   public int getRetxCounter() {
     return _nretx;
   }
@@ -125,15 +281,62 @@ public abstract class Segment {
     _nretx = n;
   }
 
+  public long getSentTime() {
+    return _sentTime;
+  }
+
+  public void setSentTime(long time) {
+    _sentTime = time;
+  }
+
   public byte[] getBytes() {
     byte[] buffer = new byte[length()];
+    putHeader(ByteBuffer.wrap(buffer), 0);
+    return buffer;
+  }
 
-    buffer[0] = (byte) (_flags & 0xFF);
-    buffer[1] = (byte) (_hlen & 0xFF);
-    buffer[2] = (byte) (_seqn & 0xFF);
-    buffer[3] = (byte) (_ackn & 0xFF);
+  /**
+   * Returns the wire form of this segment, between the position
+   * and the limit of the returned buffer. This implementation
+   * encodes the segment into a new buffer every time.
+   *
+   * @return the encoded segment, or null if the segment
+   * has been released and can no longer be sent.
+   */
+  public ByteBuffer getByteBuffer() {
+    return ByteBuffer.wrap(getBytes(), 0, length());
+  }
 
-    return buffer;
+  /**
+   * Releases the resources held by the wire form of this segment,
+   * once it has been acknowledged and will not be sent again.
+   */
+  public void release() {
+  }
+
+  /**
+   * Writes the flags, header length, sequence and ack
+   * numbers into a buffer, without moving its position.
+   *
+   * @param buffer the buffer.
+   * @param off    the offset of the segment in the buffer.
+   */
+  protected void putHeader(ByteBuffer buffer, int off) {
+    buffer.put(off, (byte) (_flags & 0xFF));
+    buffer.put(off + 1, (byte) (_hlen & 0xFF));
+    if (isWide()) {
+      buffer.putInt(off + 2, _seqn);
+      buffer.putInt(off + 6, _ackn);
+      if (hasConnectionId()) {
+        buffer.putInt(off + 10, _connectionId);
+      }
+    } else {
+      buffer.put(off + 2, (byte) (_seqn & 0xFF));
+      buffer.put(off + 3, (byte) (_ackn & 0xFF));
+    }
+    if (_window >= 0) {
+      buffer.putShort(off + _hlen - 2, (short) _window);
+    }
   }
 
   public String toString() {
@@ -159,6 +362,57 @@ public abstract class Segment {
    *  |            Checksum           |
    *  +---------------+---------------+
    *
+   *  rudp Header (version 2, WID flag set)
+   *
+   *   0 1 2 3 4 5 6 7 8            15
+   *  +-+-+-+-+-+-+-+-+---------------+
+   *  |S|A|E|R|N|C| |W|    Header     |
+   *  |Y|C|A|S|U|H|0|I|    Length     |
+   *  |N|K|K|T|L|K| |D|               |
+   *  +-+-+-+-+-+-+-+-+---------------+
+   *  |          Sequence #           |
+   *  +               +               +
+   *  |                               |
+   *  +---------------+---------------+
+   *  |          Ack Number           |
+   *  +               +               +
+   *  |                               |
+   *  +---------------+---------------+
+   *  |            Checksum           |
+   *  +---------------+---------------+
+   *
+   *  rudp Header (version 2, WID and CID flags set)
+   *
+   *   0 1 2 3 4 5 6 7 8            15
+   *  +-+-+-+-+-+-+-+-+---------------+
+   *  |S|A|E|R|N|C| |W|    Header     |
+   *  |Y|C|A|S|U|I|0|I|    Length     |
+   *  |N|K|K|T|L|D| |D|               |
+   *  +-+-+-+-+-+-+-+-+---------------+
+   *  |          Sequence #           |
+   *  +               +               +
+   *  |                               |
+   *  +---------------+---------------+
+   *  |          Ack Number           |
+   *  +               +               +
+   *  |                               |
+   *  +---------------+---------------+
+   *  |         Connection ID         |
+   *  +               +               +
+   *  |                               |
+   *  +---------------+---------------+
+   *  |            Checksum           |
+   *  +---------------+---------------+
+   *
+   *  The checksum is not computed. If both ends negotiate it, the
+   *  field instead carries the receive window of the sender of the
+   *  segment, as a number of segments past the ack number.
+   *
+   *  The CHK flag, which would tell what the checksum covers, is
+   *  therefore never set, and in wide headers it tells that the
+   *  connection ID negotiated for connection migration follows the
+   *  ack number. The segment specific fields come after it.
+   *
    */
   protected void init(int flags, int seqn, int len) {
     _flags = flags;
@@ -167,9 +421,62 @@ public abstract class Segment {
   }
 
   protected void parseBytes(byte[] buffer, int off, int len) {
-    _flags = (buffer[off] & 0xFF);
-    _hlen = (buffer[off + 1] & 0xFF);
-    _seqn = (buffer[off + 2] & 0xFF);
-    _ackn = (buffer[off + 3] & 0xFF);
+    parseHeader(ByteBuffer.wrap(buffer), off, len);
+  }
+
+  /**
+   * Reads the flags, header length, sequence and ack numbers
+   * from a buffer, without moving its position.
+   *
+   * @param buffer the buffer.
+   * @param off    the offset of the segment in the buffer.
+   * @param len    the length of the segment.
+   */
+  protected void parseHeader(ByteBuffer buffer, int off, int len) {
+    _flags = (buffer.get(off) & 0xFF);
+    _hlen = (buffer.get(off + 1) & 0xFF);
+
+    if (len < headerLength()) {
+      throw new IllegalArgumentException("Invalid segment");
+    }
+
+    if (isWide()) {
+      _seqn = buffer.getInt(off + 2);
+      _ackn = buffer.getInt(off + 6);
+      if (hasConnectionId()) {
+        _connectionId = buffer.getInt(off + 10);
+      }
+    } else {
+      _seqn = (buffer.get(off + 2) & 0xFF);
+      _ackn = (buffer.get(off + 3) & 0xFF);
+    }
+    if (_hlen >= headerLength() && _hlen <= len) {
+      _window = buffer.getShort(off + _hlen - 2) & 0xFFFF;
+    }
+  }
+
+  /**
+   * Returns the offset of the first segment specific field, that is,
+   * the position right after the sequence and ack numbers and the
+   * connection ID, if any.
+   */
+  protected int fieldOffset() {
+    if (!isWide()) {
+      return 4;
+    }
+
+    return hasConnectionId() ? 10 + CONNECTION_ID_LEN : 10;
+  }
+
+  protected static void putInt(byte[] buffer, int off, int n) {
+    buffer[off] = (byte) ((n >>> 24) & 0xFF);
+    buffer[off + 1] = (byte) ((n >>> 16) & 0xFF);
+    buffer[off + 2] = (byte) ((n >>> 8) & 0xFF);
+    buffer[off + 3] = (byte) ((n >>> 0) & 0xFF);
+  }
+
+  protected static int getInt(byte[] buffer, int off) {
+    return ((buffer[off] & 0xFF) << 24) | ((buffer[off + 1] & 0xFF) << 16) |
+        ((buffer[off + 2] & 0xFF) << 8) | ((buffer[off + 3] & 0xFF) << 0);
   }
 }
@@ -0,0 +1,283 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+/**
+ * A ring buffer of segments indexed by sequence number.
+ * <p>
+ * A segment is kept in the slot at its distance from the first sequence
+ * number of the ring, so looking up, inserting and removing a segment by
+ * sequence number are O(1), and the segments are always in sequence
+ * order. Slots of sequence numbers that are missing stay empty. The
+ * capacity is normally the size of the window, the ring only grows if a
+ * segment falls outside of it, and never beyond its maximum span.
+ * <p>
+ * This class is not synchronized.
+ */
+public class SegmentRing {
+  private Segment[] _slots;
+  private int _head;  /* Slot of the first sequence number */
+  private int _first; /* First sequence number of the ring */
+  private int _span;  /* Slots from the head through the last segment */
+  private int _size;  /* Number of segments */
+  private int _maxSpan = Integer.MAX_VALUE;
+  private int _maxSequenceNumber;
+
+  /**
+   * Creates a ring.
+   *
+   * @param capacity          the initial number of slots.
+   * @param maxSequenceNumber the size of the sequence number space.
+   */
+  public SegmentRing(int capacity, int maxSequenceNumber) {
+    _slots = new Segment[Math.max(capacity, 1)];
+    _maxSequenceNumber = maxSequenceNumber;
+  }
+
+  /**
+   * Sets the size of the sequence number space.
+   *
+   * @param maxSequenceNumber the size of the sequence number space.
+   */
+  public void setMaxSequenceNumber(int maxSequenceNumber) {
+    _maxSequenceNumber = maxSequenceNumber;
+  }
+
+  /**
+   * Limits the number of consecutive sequence numbers the ring may
+   * span, from its first through its last segment. A segment that
+   * would make it span more is refused, instead of growing the ring
+   * to hold it.
+   *
+   * @param maxSpan the maximum number of slots.
+   */
+  public void setMaxSpan(int maxSpan) {
+    _maxSpan = maxSpan;
+  }
+
+  /**
+   * Makes room for at least the given number of consecutive sequence numbers.
+   *
+   * @param capacity the number of slots.
+   */
+  public void ensureCapacity(int capacity) {
+    if (capacity > _slots.length) {
+      resize(capacity);
+    }
+  }
+
+  public int size() {
+    return _size;
+  }
+
+  public boolean isEmpty() {
+    return _size == 0;
+  }
+
+  /**
+   * Returns the number of slots from the first through the last
+   * segment of the ring, including the empty ones.
+   */
+  public int span() {
+    return _span;
+  }
+
+  /**
+   * Returns the segment with the lowest sequence number, or
+   * <code>null</code> if the ring is empty.
+   */
+  public Segment first() {
+    return (_size == 0) ? null : _slots[_head];
+  }
+
+  /**
+   * Returns the segment at the given position, counted from the
+   * first segment of the ring.
+   *
+   * @param index the position, less than {@link #span()}.
+   * @return the segment, or <code>null</code> if the slot is empty.
+   */
+  public Segment getAt(int index) {
+    return (index < _span) ? _slots[slot(index)] : null;
+  }
+
+  /**
+   * Returns the segment with the given sequence number.
+   *
+   * @param seqn the sequence number.
+   * @return the segment, or <code>null</code> if it is not in the ring.
+   */
+  public Segment get(int seqn) {
+    if (_size == 0) {
+      return null;
+    }
+
+    int off = offset(seqn);
+    return (off < _span) ? _slots[slot(off)] : null;
+  }
+
+  /**
+   * Puts a segment in the slot of its sequence number. A sequence number
+   * more than half of the sequence space ahead of the first segment is
+   * taken to be behind it.
+   *
+   * @param s the segment.
+   * @return <code>false</code> if a segment with the same sequence
+   * number is already in the ring, or if the ring would span more
+   * than its maximum span with the segment.
+   */
+  public boolean add(Segment s) {
+    int seqn = s.seq();
+    if (_size == 0) {
+      _first = seqn;
+      _span = 0;
+    }
+
+    int off = offset(seqn);
+    if (off > _maxSequenceNumber / 2) {
+      int shift = _maxSequenceNumber - off;
+      if (_span + shift > _maxSpan) {
+        return false;
+      }
+      if (_span + shift > _slots.length) {
+        resize(Math.min(Math.max(_slots.length * 2, _span + shift), _maxSpan));
+      }
+      _head = (_head - shift + _slots.length) % _slots.length;
+      _first = seqn;
+      _span += shift;
+      off = 0;
+    } else if (off >= _maxSpan) {
+      return false;
+    } else if (off >= _slots.length) {
+      resize(Math.min(Math.max(_slots.length * 2, off + 1), _maxSpan));
+    }
+
+    int i = slot(off);
+    if (_slots[i] != null) {
+      return false;
+    }
+
+    _slots[i] = s;
+    _size++;
+    _span = Math.max(_span, off + 1);
+    return true;
+  }
+
+  /**
+   * Removes the segment with the given sequence number.
+   *
+   * @param seqn the sequence number.
+   * @return the segment, or <code>null</code> if it is not in the ring.
+   */
+  public Segment remove(int seqn) {
+    if (_size == 0) {
+      return null;
+    }
+
+    int off = offset(seqn);
+    if (off >= _span) {
+      return null;
+    }
+
+    int i = slot(off);
+    Segment s = _slots[i];
+    if (s != null) {
+      _slots[i] = null;
+      _size--;
+      trim();
+    }
+
+    return s;
+  }
+
+  /**
+   * Removes the segment with the lowest sequence number.
+   *
+   * @return the segment, or <code>null</code> if the ring is empty.
+   */
+  public Segment removeFirst() {
+    if (_size == 0) {
+      return null;
+    }
+
+    Segment s = _slots[_head];
+    _slots[_head] = null;
+    _size--;
+    trim();
+    return s;
+  }
+
+  /**
+   * Removes all segments.
+   */
+  public void clear() {
+    for (int i = 0; i < _span; i++) {
+      _slots[slot(i)] = null;
+    }
+
+    _span = 0;
+    _size = 0;
+  }
+
+  /**
+   * Drops the empty slots at both ends of the ring.
+   */
+  private void trim() {
+    while (_span > 0 && _slots[_head] == null) {
+      _head = (_head + 1) % _slots.length;
+      _first = (_first + 1) % _maxSequenceNumber;
+      _span--;
+    }
+
+    while (_span > 0 && _slots[slot(_span - 1)] == null) {
+      _span--;
+    }
+  }
+
+  private int offset(int seqn) {
+    int off = seqn - _first;
+    return (off < 0) ? off + _maxSequenceNumber : off;
+  }
+
+  private int slot(int off) {
+    return (_head + off) % _slots.length;
+  }
+
+  private void resize(int capacity) {
+    Segment[] slots = new Segment[capacity];
+    for (int i = 0; i < _span; i++) {
+      slots[i] = _slots[slot(i)];
+    }
+
+    _slots = slots;
+    _head = 0;
+  }
+}
@@ -30,94 +30,42 @@
 
 package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
 
-public class Timer extends Thread {
+/**
+ * A restartable timer that runs its task after a delay, and then
+ * periodically, or every <code>delay</code> ms if no period is given,
+ * until it is cancelled. Timers do not own a thread, they are driven
+ * by a shared {@link TimerWheel}.
+ */
+public class Timer {
+  private String _name;
   private Runnable _task;
+  private TimerWheel _wheel;
   private long _delay;
   private long _period;
-  private boolean _canceled;
   private boolean _scheduled;
-  private boolean _reset;
   private boolean _stopped;
-  private Object _lock = new Object();
+
+  /* Wheel bookkeeping, guarded by the wheel */
+  Timer _next;
+  Timer _prev;
+  int _bucket;
+  long _rounds;
+  boolean _pending;
 
   public Timer(String name, Runnable task) {
-    super(name);
-    setDaemon(true);
+    this(name, task, TimerWheel.getDefault());
+  }
 
+  public Timer(String name, Runnable task, TimerWheel wheel) {
+    _name = name;
     _task = task;
+    _wheel = wheel;
     _delay = 0;
     _period = 0;
-    start();
   }
 
-  public void run() {
-    while (!_stopped) {
-
-      synchronized (this) {
-
-        while (!_scheduled && !_stopped) {
-          try {
-            wait();
-          } catch (InterruptedException xcp) {
-            xcp.printStackTrace();
-          }
-        }
-
-        if (_stopped) {
-          break;
-        }
-      }
-
-      synchronized (_lock) {
-
-        _reset = false;
-        _canceled = false;
-
-        if (_delay > 0) {
-          try {
-            _lock.wait(_delay);
-          } catch (InterruptedException xcp) {
-            xcp.printStackTrace();
-          }
-        }
-
-        if (_canceled) {
-          continue;
-        }
-      }
-
-      if (!_reset) {
-        _task.run();
-      }
-
-      if (_period > 0) {
-
-        while (true) {
-
-          synchronized (_lock) {
-
-            _reset = false;
-
-            try {
-              _lock.wait(_period);
-            } catch (InterruptedException xcp) {
-              xcp.printStackTrace();
-            }
-
-            if (_canceled) {
-              break;
-            }
-
-            if (_reset) {
-              continue;
-            }
-          }
-
-          _task.run();
-
-        }
-      }
-    }
+  public String getName() {
+    return _name;
   }
 
   public synchronized void schedule(long delay) {
@@ -128,17 +76,20 @@ public class Timer extends Thread {
     _delay = delay;
     _period = period;
 
-
     if (_scheduled) {
       throw new IllegalStateException("already scheduled");
     }
 
+    if (_stopped) {
+      return;
+    }
+
     _scheduled = true;
-    notify();
+    _wheel.schedule(this, _delay);
+  }
 
-    synchronized (_lock) {
-      _lock.notify();
-    }
+  public synchronized void setPeriod(long period) {
+    _period = period;
   }
 
   public synchronized boolean isScheduled() {
@@ -149,24 +100,50 @@ public class Timer extends Thread {
     return !isScheduled();
   }
 
+  /**
+   * Restarts the current wait, the task runs
+   * again after one full period from now.
+   */
   public synchronized void reset() {
-    synchronized (_lock) {
-      _reset = true;
-      _lock.notify();
+    if (_scheduled) {
+      _wheel.schedule(this, interval());
     }
   }
 
   public synchronized void cancel() {
     _scheduled = false;
-    synchronized (_lock) {
-      _canceled = true;
-      _lock.notify();
-    }
+    _wheel.remove(this);
   }
 
   public synchronized void destroy() {
     cancel();
     _stopped = true;
-    notify();
+  }
+
+  public String toString() {
+    return _name;
+  }
+
+  /**
+   * Called by the wheel when the timer expires.
+   */
+  void expire() {
+    synchronized (this) {
+      if (!_scheduled || _wheel.isPending(this)) {
+        return; /* Cancelled or reset meanwhile */
+      }
+    }
+
+    _task.run();
+
+    synchronized (this) {
+      if (_scheduled && !_wheel.isPending(this)) {
+        _wheel.schedule(this, interval());
+      }
+    }
+  }
+
+  private long interval() {
+    return (_period > 0) ? _period : _delay;
   }
 }
@@ -0,0 +1,292 @@
+/*
+ * Simple Reliable UDP (rudp)
+ * Copyright (c) 2026, the RSCC contributors
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the copyright holder nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDERS AND CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import java.util.ArrayList;
+
+/**
+ * A hashed timer wheel that drives the timers of all rudp sockets
+ * from a single thread.
+ * <p>
+ * Time is divided into ticks, and a timer is kept in the bucket of
+ * the tick at which it expires, together with the number of whole
+ * wheel revolutions left before that. Scheduling and cancelling a
+ * timer are O(1), and the thread only wakes up once per tick while
+ * timers are pending.
+ * <p>
+ * Timer tasks are run by the wheel thread, so they must not block.
+ * <p>
+ * A wheel created with its own {@link Clock} has no thread. Its
+ * timers expire when {@link #expireTimers()} is called, which lets a
+ * simulator run timers in virtual time, on its own thread.
+ *
+ * @see Timer
+ */
+public class TimerWheel implements Runnable {
+  public static final int TICK_DURATION = 10; /* ms */
+  public static final int WHEEL_SIZE = 512;   /* buckets, a power of two */
+
+  private static TimerWheel _default;
+
+  private final Timer[] _buckets = new Timer[WHEEL_SIZE];
+  private final Clock _clock;
+  private final long _startTime;
+  private long _currentTick; /* Next tick to be processed */
+  private int _pending;      /* Number of timers in the wheel */
+  private Thread _thread;
+
+  /**
+   * Creates a timer wheel and starts its thread.
+   *
+   * @param name the name of the wheel thread.
+   */
+  public TimerWheel(String name) {
+    _clock = Clock.SYSTEM;
+    _startTime = _clock.currentTimeMillis();
+    _thread = new Thread(this, name);
+    _thread.setDaemon(true);
+    _thread.start();
+  }
+
+  /**
+   * Creates a timer wheel without a thread, whose timers
+   * are expired by calling {@link #expireTimers()}.
+   *
+   * @param clock the clock of the wheel.
+   */
+  public TimerWheel(Clock clock) {
+    if (clock == null) {
+      throw new NullPointerException("clock");
+    }
+
+    _clock = clock;
+    _startTime = _clock.currentTimeMillis();
+  }
+
+  /**
+   * Returns the timer wheel shared by all sockets of this process.
+   */
+  public static synchronized TimerWheel getDefault() {
+    if (_default == null) {
+      _default = new TimerWheel("ReliableSocket-TimerWheel");
+    }
+
+    return _default;
+  }
+
+  /**
+   * Returns the clock of this wheel.
+   */
+  public Clock getClock() {
+    return _clock;
+  }
+
+  /**
+   * Runs the tasks of the timers that are due by the time of the
+   * clock, on the calling thread. This is for wheels without a
+   * thread, see {@link #TimerWheel(Clock)}.
+   */
+  public void expireTimers() {
+    if (_thread != null) {
+      throw new IllegalStateException("driven by " + _thread.getName());
+    }
+
+    ArrayList expired = new ArrayList();
+    while (true) {
+      synchronized (this) {
+        if (_pending == 0 ||
+            _startTime + _currentTick * TICK_DURATION > _clock.currentTimeMillis()) {
+          return;
+        }
+
+        expireTick(expired);
+      }
+
+      runTimers(expired);
+    }
+  }
+
+  /**
+   * Returns the time (ms) at which the next timer is due, or
+   * <code>-1</code> if no timer is pending.
+   */
+  public synchronized long nextExpirationTime() {
+    long next = -1;
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      long tick = _currentTick + i;
+      for (Timer timer = _buckets[(int) (tick & (WHEEL_SIZE - 1))];
+           timer != null; timer = timer._next) {
+        long time = _startTime + (tick + timer._rounds * WHEEL_SIZE) * TICK_DURATION;
+        if (timer._rounds == 0) {
+          return (next < 0) ? time : Math.min(next, time);
+        }
+        next = (next < 0) ? time : Math.min(next, time);
+      }
+    }
+
+    return next;
+  }
+
+  /**
+   * (Re-)inserts a timer in the wheel so that
+   * it expires after the given delay.
+   *
+   * @param timer the timer.
+   * @param delay the delay (ms).
+   */
+  synchronized void schedule(Timer timer, long delay) {
+    remove(timer);
+
+    long now = _clock.currentTimeMillis();
+    if (_pending == 0 && _currentTick < tickOf(now)) {
+      _currentTick = tickOf(now); /* The buckets are empty, skip idle ticks */
+    }
+
+        /* Never expire early, at most one tick late */
+    long deadline = Math.max(tickOf(now + Math.max(delay, 0)) + 1, _currentTick);
+    timer._rounds = (deadline - _currentTick) / WHEEL_SIZE;
+    timer._bucket = (int) (deadline & (WHEEL_SIZE - 1));
+
+    timer._next = _buckets[timer._bucket];
+    timer._prev = null;
+    if (timer._next != null) {
+      timer._next._prev = timer;
+    }
+    _buckets[timer._bucket] = timer;
+    timer._pending = true;
+
+    if (_pending++ == 0) {
+      notify();
+    }
+  }
+
+  /**
+   * Removes a timer from the wheel, if present.
+   *
+   * @param timer the timer.
+   */
+  synchronized void remove(Timer timer) {
+    if (!timer._pending) {
+      return;
+    }
+
+    if (timer._prev != null) {
+      timer._prev._next = timer._next;
+    } else {
+      _buckets[timer._bucket] = timer._next;
+    }
+
+    if (timer._next != null) {
+      timer._next._prev = timer._prev;
+    }
+
+    timer._next = null;
+    timer._prev = null;
+    timer._pending = false;
+    _pending--;
+  }
+
+  /**
+   * Returns true if the timer is waiting in the wheel.
+   *
+   * @param timer the timer.
+   */
+  synchronized boolean isPending(Timer timer) {
+    return timer._pending;
+  }
+
+  public void run() {
+    ArrayList expired = new ArrayList();
+
+    while (true) {
+
+      synchronized (this) {
+        try {
+          while (_pending == 0) {
+            wait();
+          }
+
+          long now = _clock.currentTimeMillis();
+          long wait = _startTime + _currentTick * TICK_DURATION - now;
+          if (wait > 0) {
+            wait(wait);
+            continue;
+          }
+        } catch (InterruptedException xcp) {
+          xcp.printStackTrace();
+          continue;
+        }
+
+        expireTick(expired);
+      }
+
+      runTimers(expired);
+    }
+  }
+
+  /**
+   * Unlinks the timers of the current tick that are due,
+   * and moves on to the next tick.
+   *
+   * @param expired the list the timers are added to.
+   */
+  private void expireTick(ArrayList expired) {
+    int bucket = (int) (_currentTick & (WHEEL_SIZE - 1));
+    Timer timer = _buckets[bucket];
+    while (timer != null) {
+      Timer next = timer._next;
+      if (timer._rounds > 0) {
+        timer._rounds--;
+      } else {
+        remove(timer);
+        expired.add(timer);
+      }
+      timer = next;
+    }
+
+    _currentTick++;
+  }
+
+  private static void runTimers(ArrayList expired) {
+    for (int i = 0; i < expired.size(); i++) {
+      try {
+        ((Timer) expired.get(i)).expire();
+      } catch (RuntimeException xcp) {
+        xcp.printStackTrace();
+      }
+    }
+    expired.clear();
+  }
+
+  private long tickOf(long time) {
+    return (time - _startTime) / TICK_DURATION;
+  }
+}
@@ -0,0 +1,113 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the release of closed sockets at the end of the FIN handshake.
+ */
+public class CloseHandshakeTest {
+  private static final int DELAY = 20;
+
+  private NetworkSimulator sim;
+  private NetworkImpairment forward;
+  private ReliableSocket client;
+  private ReliableSocket server;
+  private long[] released;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() throws Exception {
+    sim = new NetworkSimulator();
+    forward = new NetworkImpairment();
+    forward.setDelay(DELAY, 0);
+    NetworkImpairment reverse = new NetworkImpairment();
+    reverse.setDelay(DELAY, 0);
+    ReliableSocket[] sockets = sim.openConnection(new ReliableSocketProfile(),
+        new ReliableSocketProfile(), forward, reverse);
+    client = sockets[0];
+    server = sockets[1];
+    sim.run(1000);
+    assertTrue(server.isConnected());
+
+    released = new long[] {-1, -1};
+    for (int i = 0; i < sockets.length; i++) {
+      final int index = i;
+      sockets[i].addStateListener(new ReliableSocketStateListener() {
+        public void connectionOpened(ReliableSocket sock) {
+        }
+
+        public void connectionRefused(ReliableSocket sock) {
+        }
+
+        public void connectionClosed(ReliableSocket sock) {
+          released[index] = sim.currentTimeMillis();
+        }
+
+        public void connectionFailure(ReliableSocket sock) {
+        }
+
+        public void connectionReset(ReliableSocket sock) {
+        }
+      });
+    }
+  }
+
+  /**
+   * Test for both ends closing, which are released once the FINs have been
+   * acknowledged, the end that closed first after lingering for a while.
+   */
+  @Test
+  public void bothEndsClose() throws Exception {
+    final long start = sim.currentTimeMillis();
+    client.close();
+    sim.run(100);
+    server.close();
+    sim.run(ReliableSocketProfile.NULL_SEGMENT_TIMEOUT);
+
+    assertTrue(released[1] > 0);
+    assertTrue(released[1] <= start + 100 + 2 * DELAY + 10);
+    assertTrue(released[0] >= released[1]);
+    assertTrue(released[0] <= start + 100 + 2 * client.getRetransmissionTimeout() + 100);
+  }
+
+  /**
+   * Test for a lost acknowledgment of the last FIN, which the end that closed first
+   * sends again when the FIN is retransmitted.
+   */
+  @Test
+  public void lastAckLost() throws Exception {
+    final long start = sim.currentTimeMillis();
+    client.close();
+    sim.run(100);
+    forward.setLoss(1.0);
+    server.close();
+    sim.run(2 * DELAY + 10);
+    forward.setLoss(0);
+    sim.run(ReliableSocketProfile.NULL_SEGMENT_TIMEOUT);
+
+    assertTrue(released[1] > start + 100 + 2 * DELAY + 10);
+    assertTrue(released[1] < start + ReliableSocketProfile.NULL_SEGMENT_TIMEOUT);
+    assertTrue(released[0] >= released[1]);
+    assertTrue(server.getRetransmissionCount() > 0);
+  }
+
+  /**
+   * Test for a peer that never closes, whose closed peer is released by the close timer.
+   */
+  @Test
+  public void peerNeverCloses() throws Exception {
+    final long start = sim.currentTimeMillis();
+    client.close();
+    sim.run(4 * ReliableSocketProfile.NULL_SEGMENT_TIMEOUT);
+
+    assertEquals(-1, released[1]);
+    assertTrue(released[0] >= start + 2 * ReliableSocketProfile.NULL_SEGMENT_TIMEOUT);
+    assertTrue(released[0] <= start + 2 * ReliableSocketProfile.NULL_SEGMENT_TIMEOUT + 100);
+  }
+}
@@ -0,0 +1,250 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Segment;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests connections with migration behind a NAT that maps the client to a new port.
+ */
+public class ConnectionMigrationTest {
+  private static final int TIMEOUT = 10000;
+  private static final int DATA_SIZE = 100000;
+
+  private InetAddress loopback;
+  private ReliableServerSocket serverSocket;
+  private NatRelay nat;
+  private ReliableSocket client;
+  private ReliableSocket server;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() throws Exception {
+    loopback = InetAddress.getByName("127.0.0.1");
+    serverSocket = new ReliableServerSocket(0, 0, loopback, migrationProfile());
+    nat = new NatRelay(new InetSocketAddress(loopback, serverSocket.getLocalPort()));
+
+    client = new ReliableSocket(migrationProfile());
+    client.setSoTimeout(TIMEOUT);
+    client.connect(new InetSocketAddress(loopback, nat.getLocalPort()), TIMEOUT);
+    serverSocket.setSoTimeout(TIMEOUT);
+    server = (ReliableSocket) serverSocket.accept();
+    server.setSoTimeout(TIMEOUT);
+  }
+
+  /**
+   * Closes the sockets after each test.
+   */
+  @After
+  public void tearDown() throws Exception {
+    if (client != null) {
+      client.close();
+    }
+    serverSocket.close();
+    nat.close();
+  }
+
+  /**
+   * Returns a profile that negotiates connection migration.
+   */
+  private static ReliableSocketProfile migrationProfile() {
+    ReliableSocketProfile profile = new ReliableSocketProfile();
+    profile.setConnectionMigration(true);
+    return profile;
+  }
+
+  /**
+   * Sends data from the client to the server and back.
+   */
+  private void exchange(int seed) throws IOException {
+    byte[] data = new byte[DATA_SIZE];
+    Arrays.fill(data, (byte) seed);
+    byte[] received = new byte[DATA_SIZE];
+
+    client.getOutputStream().write(data);
+    client.getOutputStream().flush();
+    new DataInputStream(server.getInputStream()).readFully(received);
+    assertArrayEquals(data, received);
+
+    server.getOutputStream().write(data);
+    server.getOutputStream().flush();
+    new DataInputStream(client.getInputStream()).readFully(received);
+    assertArrayEquals(data, received);
+  }
+
+  /**
+   * Test for a client whose NAT mapping changes, which the server moves the connection
+   * to once the new address has acknowledged the challenge, and under whose new
+   * address the server socket dispatches the segments from then on.
+   */
+  @Test
+  public void migratedAfterRebinding() throws Exception {
+    exchange(1);
+    assertEquals(nat.getMappedAddress(), server.getRemoteSocketAddress());
+
+    nat.rebind();
+    exchange(2);
+    exchange(3);
+    assertEquals(nat.getMappedAddress(), server.getRemoteSocketAddress());
+    assertEquals(1, serverSocket.clientSockets().size());
+    assertTrue(serverSocket.clientSockets().contains(server));
+  }
+
+  /**
+   * Test for segments of the connection replayed from another address, which does
+   * not acknowledge the challenge and does not get the connection.
+   */
+  @Test
+  public void replayedSegmentsDoNotMigrate() throws Exception {
+    exchange(1);
+    byte[] replayed = nat.getLastDatagram();
+    assertNotNull(replayed);
+
+    DatagramSocket attacker = new DatagramSocket(0, loopback);
+    try {
+      for (int i = 0; i < 5; i++) {
+        attacker.send(new DatagramPacket(replayed, replayed.length,
+            loopback, serverSocket.getLocalPort()));
+        exchange(i + 2);
+      }
+    } finally {
+      attacker.close();
+    }
+    assertEquals(nat.getMappedAddress(), server.getRemoteSocketAddress());
+  }
+
+  /**
+   * Test for segments from another address with a wrong connection ID, which are dropped.
+   */
+  @Test
+  public void wrongConnectionIdDropped() throws Exception {
+    exchange(1);
+    byte[] forged = nat.getLastDatagram();
+    assertTrue(Segment.parse(forged, 0, forged.length).hasConnectionId());
+    forged[10] ^= 0x5A; /* The connection ID follows the sequence and ack numbers */
+
+    DatagramSocket attacker = new DatagramSocket(0, loopback);
+    try {
+      for (int i = 0; i < 5; i++) {
+        attacker.send(new DatagramPacket(forged, forged.length,
+            loopback, serverSocket.getLocalPort()));
+      }
+    } finally {
+      attacker.close();
+    }
+    exchange(2);
+    assertEquals(nat.getMappedAddress(), server.getRemoteSocketAddress());
+    assertEquals(1, serverSocket.clientSockets().size());
+  }
+
+  /**
+   * A NAT between the client and the server, which forwards the client's datagrams from
+   * a mapped port that can be changed, and drops the datagrams to an old mapping.
+   */
+  private static class NatRelay {
+    private final SocketAddress serverAddress;
+    private final DatagramSocket inside;
+    private volatile DatagramSocket outside;
+    private volatile SocketAddress clientAddress;
+    private volatile byte[] lastDatagram;
+
+    public NatRelay(SocketAddress serverAddress) throws IOException {
+      this.serverAddress = serverAddress;
+      inside = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+      outside = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+      startOutside(outside);
+
+      Thread thread = new Thread("NatRelay") {
+        public void run() {
+          byte[] buffer = new byte[65535];
+          while (true) {
+            try {
+              DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+              inside.receive(packet);
+              clientAddress = packet.getSocketAddress();
+              lastDatagram = Arrays.copyOf(packet.getData(), packet.getLength());
+              outside.send(new DatagramPacket(packet.getData(), packet.getLength(), serverAddress));
+            } catch (IOException xcp) {
+              if (inside.isClosed()) {
+                return;
+              }
+            }
+          }
+        }
+      };
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    private void startOutside(final DatagramSocket sock) {
+      Thread thread = new Thread("NatRelay") {
+        public void run() {
+          byte[] buffer = new byte[65535];
+          while (!sock.isClosed()) {
+            try {
+              DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+              sock.receive(packet);
+              if (sock == outside) {
+                inside.send(new DatagramPacket(packet.getData(), packet.getLength(),
+                    clientAddress));
+              }
+            } catch (IOException xcp) {
+              /* Closed by rebind() or close() */
+            }
+          }
+        }
+      };
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    public int getLocalPort() {
+      return inside.getLocalPort();
+    }
+
+    /**
+     * Returns the address the server sees the client's datagrams come from.
+     */
+    public SocketAddress getMappedAddress() {
+      return outside.getLocalSocketAddress();
+    }
+
+    /**
+     * Returns the last datagram forwarded to the server.
+     */
+    public byte[] getLastDatagram() {
+      return lastDatagram;
+    }
+
+    /**
+     * Maps the client to a new port.
+     */
+    public void rebind() throws IOException {
+      DatagramSocket old = outside;
+      outside = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+      startOutside(outside);
+      old.close();
+    }
+
+    public void close() {
+      inside.close();
+      outside.close();
+    }
+  }
+}
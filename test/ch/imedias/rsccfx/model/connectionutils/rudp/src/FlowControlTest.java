@@ -0,0 +1,127 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the flow control by the receive window advertised to the sender.
+ */
+public class FlowControlTest {
+  private static final int DATA_SIZE = 8000000;
+
+  private NetworkSimulator sim;
+  private NetworkImpairment reverse;
+  private ReliableSocket client;
+  private ReliableSocket server;
+  private ReliableDatagramChannel clientChannel;
+  private ReliableDatagramChannel serverChannel;
+  private byte[] data;
+  private ByteBuffer src;
+  private ByteBuffer dst;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() throws Exception {
+    sim = new NetworkSimulator();
+    NetworkImpairment forward = new NetworkImpairment();
+    forward.setDelay(10, 0);
+    reverse = new NetworkImpairment();
+    reverse.setDelay(10, 0);
+    ReliableSocket[] sockets = sim.openConnection(windowProfile(), windowProfile(),
+        forward, reverse);
+    client = sockets[0];
+    server = sockets[1];
+    clientChannel = client.getReliableChannel().configureBlocking(false);
+    serverChannel = server.getReliableChannel().configureBlocking(false);
+    sim.run(1000);
+    assertTrue(server.isConnected());
+
+    data = new byte[DATA_SIZE];
+    new Random(17).nextBytes(data);
+    src = ByteBuffer.wrap(data);
+    dst = ByteBuffer.allocate(DATA_SIZE);
+  }
+
+  /**
+   * Returns a profile that advertises the receive window.
+   */
+  private static ReliableSocketProfile windowProfile() {
+    ReliableSocketProfile profile = new ReliableSocketProfile();
+    profile.setAdvertisedWindow(true);
+    return profile;
+  }
+
+  /**
+   * Writes data for the given time while the server does not read any.
+   */
+  private void writeWithoutReading(int millis) throws Exception {
+    for (int t = 0; t < millis; t += 10) {
+      clientChannel.write(src);
+      sim.run(10);
+    }
+  }
+
+  /**
+   * Reads the rest of the data at the server, while the client writes it.
+   */
+  private void readAll() throws Exception {
+    for (int t = 0; t < 60000 && dst.hasRemaining(); t += 10) {
+      clientChannel.write(src);
+      sim.run(10);
+      while (dst.hasRemaining() && serverChannel.read(dst) > 0) {
+        continue;
+      }
+    }
+    assertArrayEquals(data, dst.array());
+  }
+
+  /**
+   * Test for a receiver that does not read, whose window closes and holds the sender back.
+   */
+  @Test
+  public void closedWindowHoldsSenderBack() throws Exception {
+    assertTrue(client.peerWindow() > 0);
+    writeWithoutReading(3000);
+    assertTrue(src.hasRemaining());
+    assertEquals(0, server.receiveWindow());
+    assertEquals(0, client.peerWindow());
+    assertTrue(client.sendQueueDepth() <= 1);
+
+    /* The window stays closed without the connection failing */
+    writeWithoutReading(10000);
+    assertTrue(client.isConnected());
+    assertEquals(0, client.peerWindow());
+    readAll();
+  }
+
+  /**
+   * Test for a window update that gets lost, which the probe of the closed window
+   * recovers from.
+   */
+  @Test
+  public void lostWindowUpdateIsProbed() throws Exception {
+    writeWithoutReading(3000);
+    assertEquals(0, client.peerWindow());
+
+    reverse.setLoss(1.0);
+    while (dst.hasRemaining() && serverChannel.read(dst) > 0) {
+      continue;
+    }
+    assertTrue(server.receiveWindow() > 0);
+    sim.run(200);
+    assertEquals(0, client.peerWindow());
+
+    reverse.setLoss(0);
+    sim.run(5000);
+    assertTrue(client.peerWindow() > 0);
+    readAll();
+  }
+}
@@ -0,0 +1,160 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests connections over the NetworkSimulator.
+ */
+public class NetworkSimulatorTest {
+  private static final int DATA_SIZE = 200000;
+
+  private NetworkSimulator sim;
+  private NetworkImpairment forward;
+  private NetworkImpairment reverse;
+  private ReliableSocket client;
+  private ReliableSocket server;
+  private ReliableDatagramChannel clientChannel;
+  private ReliableDatagramChannel serverChannel;
+  private final int[] opened = new int[2];
+  private final int[] closed = new int[2];
+  private final int[] failed = new int[2];
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() {
+    sim = new NetworkSimulator();
+    forward = new NetworkImpairment();
+    reverse = new NetworkImpairment();
+    forward.setSeed(1);
+    reverse.setSeed(2);
+    forward.setDelay(20, 5);
+    reverse.setDelay(20, 5);
+  }
+
+  /**
+   * Opens a connection between two sockets with the default profile.
+   */
+  private void openConnection() throws Exception {
+    ReliableSocket[] sockets = sim.openConnection(new ReliableSocketProfile(),
+        new ReliableSocketProfile(), forward, reverse);
+    client = sockets[0];
+    server = sockets[1];
+    clientChannel = client.getReliableChannel().configureBlocking(false);
+    serverChannel = server.getReliableChannel().configureBlocking(false);
+    client.addStateListener(new StateCounter(0));
+    server.addStateListener(new StateCounter(1));
+    sim.run(1000);
+    assertTrue(client.isConnected());
+    assertTrue(server.isConnected());
+  }
+
+  /**
+   * Sends data from the client to the server and returns what the server has received.
+   */
+  private byte[] transfer(byte[] data, long timeout) throws Exception {
+    ByteBuffer src = ByteBuffer.wrap(data);
+    ByteBuffer dst = ByteBuffer.allocate(data.length);
+    for (long t = 0; t < timeout && dst.hasRemaining(); t += 10) {
+      clientChannel.write(src);
+      sim.run(10);
+      while (dst.hasRemaining() && serverChannel.read(dst) > 0) {
+        continue;
+      }
+    }
+    return dst.array();
+  }
+
+  /**
+   * Test for a transfer over a lossy path, where lost segments are retransmitted.
+   */
+  @Test
+  public void lossRecovery() throws Exception {
+    forward.setLoss(0.05);
+    reverse.setLoss(0.05);
+    openConnection();
+
+    byte[] data = new byte[DATA_SIZE];
+    new Random(3).nextBytes(data);
+    assertArrayEquals(data, transfer(data, 60000));
+    assertTrue(client.getRetransmissionCount() > 0);
+    assertEquals(0, failed[0] + failed[1]);
+  }
+
+  /**
+   * Test for the close handshake, after which both ends are released.
+   */
+  @Test
+  public void closeHandshake() throws Exception {
+    openConnection();
+    byte[] data = new byte[1000];
+    assertArrayEquals(data, transfer(data, 5000));
+
+    client.close();
+    sim.run(1000);
+    assertEquals(-1, serverChannel.read(ByteBuffer.allocate(16)));
+    server.close();
+    sim.run(5000);
+
+    assertTrue(client.isClosed());
+    assertTrue(server.isClosed());
+    assertEquals(1, closed[0]);
+    assertEquals(1, closed[1]);
+    assertEquals(0, failed[0] + failed[1]);
+    assertEquals(0, sim.getPendingEventCount());
+  }
+
+  /**
+   * Test for a path that goes down, which both ends detect with their keep-alive segments.
+   */
+  @Test
+  public void keepAliveFailure() throws Exception {
+    openConnection();
+    forward.setLoss(1.0);
+    reverse.setLoss(1.0);
+    sim.run(120000);
+
+    assertEquals(1, failed[0]);
+    assertEquals(1, failed[1]);
+    assertFalse(client.isConnected());
+    assertFalse(server.isConnected());
+  }
+
+  /**
+   * Counts the state changes of a socket.
+   */
+  private class StateCounter implements ReliableSocketStateListener {
+    private final int index;
+
+    StateCounter(int index) {
+      this.index = index;
+    }
+
+    public void connectionOpened(ReliableSocket sock) {
+      opened[index]++;
+    }
+
+    public void connectionRefused(ReliableSocket sock) {
+    }
+
+    public void connectionClosed(ReliableSocket sock) {
+      closed[index]++;
+    }
+
+    public void connectionFailure(ReliableSocket sock) {
+      failed[index]++;
+    }
+
+    public void connectionReset(ReliableSocket sock) {
+    }
+  }
+}
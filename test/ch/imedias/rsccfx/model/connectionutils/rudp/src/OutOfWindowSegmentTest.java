@@ -0,0 +1,72 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.DATSegment;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Segment;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the receive queue against segments outside of the receive window.
+ */
+public class OutOfWindowSegmentTest {
+  private static final int STRAY_SEGMENTS = 1000;
+
+  private NetworkSimulator sim;
+  private ReliableSocket server;
+  private ReliableDatagramChannel clientChannel;
+  private ReliableDatagramChannel serverChannel;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() throws Exception {
+    sim = new NetworkSimulator();
+    ReliableSocket[] sockets = sim.openConnection(new ReliableSocketProfile(),
+        new ReliableSocketProfile(), new NetworkImpairment(), new NetworkImpairment());
+    server = sockets[1];
+    clientChannel = sockets[0].getReliableChannel().configureBlocking(false);
+    serverChannel = server.getReliableChannel().configureBlocking(false);
+    sim.run(1000);
+    assertTrue(server.isConnected());
+  }
+
+  /**
+   * Test for stray segments with wide sequence numbers, which are dropped without
+   * growing the receive queue.
+   */
+  @Test
+  public void straySegmentsAreDropped() throws Exception {
+    assertEquals(Segment.RUDP_VERSION_2, server.version());
+    ReliableSocketStatistics stats = server.getStatistics();
+    long dropped = stats.getDroppedSegments() + stats.getDuplicateSegments();
+
+    Random random = new Random(4);
+    byte[] b = new byte[100];
+    for (int i = 0; i < STRAY_SEGMENTS; i++) {
+      server.handleReceivedSegment(new DATSegment(random.nextInt(Integer.MAX_VALUE), -1,
+          b, 0, b.length));
+    }
+    assertEquals(dropped + STRAY_SEGMENTS, stats.getDroppedSegments()
+        + stats.getDuplicateSegments());
+
+    byte[] data = new byte[20000];
+    random.nextBytes(data);
+    ByteBuffer src = ByteBuffer.wrap(data);
+    ByteBuffer dst = ByteBuffer.allocate(data.length);
+    for (int t = 0; t < 5000 && dst.hasRemaining(); t += 10) {
+      clientChannel.write(src);
+      sim.run(10);
+      while (dst.hasRemaining() && serverChannel.read(dst) > 0) {
+        continue;
+      }
+    }
+    assertArrayEquals(data, dst.array());
+  }
+}
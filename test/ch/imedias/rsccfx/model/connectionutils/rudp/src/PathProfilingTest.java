@@ -0,0 +1,43 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.BbrCongestionController;
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.CubicCongestionController;
+import org.junit.Test;
+
+/**
+ * Tests the probe train that measures the path of a new connection.
+ */
+public class PathProfilingTest {
+  private static final int DELAY = 250;
+
+  /**
+   * Test for a satellite path, whose class is picked once the probes have been
+   * acknowledged, after the connection has been established.
+   */
+  @Test
+  public void satellitePath() throws Exception {
+    final NetworkSimulator sim = new NetworkSimulator();
+    NetworkImpairment forward = new NetworkImpairment();
+    forward.setDelay(DELAY, 0);
+    NetworkImpairment reverse = new NetworkImpairment();
+    reverse.setDelay(DELAY, 0);
+    ReliableSocketProfile profile = new ReliableSocketProfile();
+    profile.setPathProfiling(true);
+    profile.setCongestionControl(ReliableSocketProfile.CONGESTION_CONTROL_CUBIC);
+    ReliableSocket client = sim.openConnection(profile, new ReliableSocketProfile(),
+        forward, reverse)[0];
+
+    sim.run(2 * DELAY + 50);
+    assertTrue(client.isConnected());
+    assertNull(client.getPathProfile());
+    assertTrue(client.getCongestionController() instanceof CubicCongestionController);
+
+    sim.run(10 * DELAY);
+    assertEquals(PathProfile.SATELLITE, client.getPathProfile());
+    assertTrue(client.getCongestionController() instanceof BbrCongestionController);
+  }
+}
@@ -0,0 +1,112 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.BindException;
+import java.net.InetAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests a new socket taking the local port over from a closed socket that lingers.
+ */
+public class PortReuseTest {
+  private InetAddress loopback;
+  private ReliableServerSocket[] serverSockets;
+  private ReliableSocket closed;
+  private ReliableSocket reused;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() throws Exception {
+    loopback = InetAddress.getByName("127.0.0.1");
+    serverSockets = new ReliableServerSocket[] {
+        new ReliableServerSocket(0, 0, loopback),
+        new ReliableServerSocket(0, 0, loopback)};
+  }
+
+  /**
+   * Closes the sockets after each test.
+   */
+  @After
+  public void tearDown() throws Exception {
+    if (reused != null) {
+      reused.close();
+    }
+    for (int i = 0; i < serverSockets.length; i++) {
+      serverSockets[i].close();
+    }
+  }
+
+  /**
+   * Connects a socket to the given server from the given local port. The new
+   * socket connects to another server than the closed one, whose end of the
+   * closed connection still holds the endpoint.
+   */
+  private ReliableSocket connect(int server, int localPort, ReliableSocketProfile profile)
+      throws Exception {
+    return new ReliableSocket(loopback.getHostAddress(), serverSockets[server].getLocalPort(),
+        loopback, localPort, profile);
+  }
+
+  /**
+   * Returns a profile that reuses the local port.
+   */
+  private static ReliableSocketProfile reuseProfile() {
+    ReliableSocketProfile profile = new ReliableSocketProfile();
+    profile.setReuseAddress(true);
+    return profile;
+  }
+
+  /**
+   * Test for a socket with the reuse address option, which takes the port over from a
+   * closed socket whose peer has not closed yet.
+   */
+  @Test
+  public void portTakenOver() throws Exception {
+    closed = connect(0, 0, reuseProfile());
+    final int port = closed.getLocalPort();
+    final boolean[] released = new boolean[1];
+    closed.addStateListener(new ReliableSocketStateListener() {
+      public void connectionOpened(ReliableSocket sock) {
+      }
+
+      public void connectionRefused(ReliableSocket sock) {
+      }
+
+      public void connectionClosed(ReliableSocket sock) {
+        released[0] = true;
+      }
+
+      public void connectionFailure(ReliableSocket sock) {
+      }
+
+      public void connectionReset(ReliableSocket sock) {
+      }
+    });
+    closed.close();
+    assertFalse(released[0]);
+
+    reused = connect(1, port, reuseProfile());
+    assertTrue(released[0]);
+    assertTrue(reused.isConnected());
+    assertEquals(port, reused.getLocalPort());
+  }
+
+  /**
+   * Test for a socket without the reuse address option, which cannot bind to the port
+   * of a closed socket that lingers.
+   */
+  @Test(expected = BindException.class)
+  public void portHeldWithoutReuse() throws Exception {
+    closed = connect(0, 0, reuseProfile());
+    final int port = closed.getLocalPort();
+    closed.close();
+    reused = connect(1, port, new ReliableSocketProfile());
+  }
+}
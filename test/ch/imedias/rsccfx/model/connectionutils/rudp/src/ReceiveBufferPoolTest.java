@@ -0,0 +1,79 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.BufferPool;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that received segments return their buffers to the receive buffer pool.
+ */
+public class ReceiveBufferPoolTest {
+  private NetworkSimulator sim;
+  private NetworkImpairment forward;
+  private ReliableSocket client;
+  private ReliableSocket server;
+  private ReliableDatagramChannel clientChannel;
+  private ReliableDatagramChannel serverChannel;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() throws Exception {
+    sim = new NetworkSimulator();
+    forward = new NetworkImpairment();
+    forward.setSeed(1);
+    forward.setDelay(20, 0);
+    ReliableSocket[] sockets = sim.openConnection(new ReliableSocketProfile(),
+        new ReliableSocketProfile(), forward, new NetworkImpairment());
+    client = sockets[0];
+    server = sockets[1];
+    clientChannel = client.getReliableChannel().configureBlocking(false);
+    serverChannel = server.getReliableChannel().configureBlocking(false);
+    sim.run(1000);
+    assertTrue(server.isConnected());
+  }
+
+  /**
+   * Sends data from the client to the server and checks that the server receives it.
+   */
+  private void transfer(int size, long seed) throws Exception {
+    byte[] data = new byte[size];
+    new Random(seed).nextBytes(data);
+    ByteBuffer src = ByteBuffer.wrap(data);
+    ByteBuffer dst = ByteBuffer.allocate(size);
+    for (int t = 0; t < 10000 && dst.hasRemaining(); t += 10) {
+      clientChannel.write(src);
+      sim.run(10);
+      while (dst.hasRemaining() && serverChannel.read(dst) > 0) {
+        continue;
+      }
+    }
+    assertArrayEquals(data, dst.array());
+    sim.run(1000);
+  }
+
+  /**
+   * Test for duplicate segments, whose buffers go back to the pool.
+   */
+  @Test
+  public void duplicatesAreReleased() throws Exception {
+    transfer(50000, 2);
+    BufferPool pool = server.recvBufferPool();
+    int idle = pool.idleCount();
+    assertTrue(idle > 0);
+    assertEquals(0, pool.inUseCount());
+
+    forward.setDuplication(1.0);
+    transfer(50000, 3);
+    assertTrue(server.getStatistics().getDuplicateSegments() > 0);
+    assertEquals(0, pool.inUseCount());
+    assertTrue(pool.idleCount() >= idle);
+  }
+}
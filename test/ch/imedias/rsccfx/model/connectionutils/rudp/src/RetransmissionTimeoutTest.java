@@ -0,0 +1,113 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the estimation of the round-trip time and the retransmission timeout
+ * that is derived from it.
+ */
+public class RetransmissionTimeoutTest {
+  private static final int DELAY = 50;
+
+  private NetworkSimulator sim;
+  private NetworkImpairment forward;
+  private ReliableSocket client;
+  private ReliableDatagramChannel clientChannel;
+  private ReliableDatagramChannel serverChannel;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() throws Exception {
+    sim = new NetworkSimulator();
+    forward = new NetworkImpairment();
+    forward.setDelay(DELAY, 0);
+    NetworkImpairment reverse = new NetworkImpairment();
+    reverse.setDelay(DELAY, 0);
+    ReliableSocket[] sockets = sim.openConnection(new ReliableSocketProfile(),
+        new ReliableSocketProfile(), forward, reverse);
+    client = sockets[0];
+    clientChannel = client.getReliableChannel().configureBlocking(false);
+    serverChannel = sockets[1].getReliableChannel().configureBlocking(false);
+  }
+
+  /**
+   * Sends data from the client to the server and checks that the server receives it.
+   */
+  private void transfer(int size, long seed) throws Exception {
+    byte[] data = new byte[size];
+    new Random(seed).nextBytes(data);
+    ByteBuffer src = ByteBuffer.wrap(data);
+    ByteBuffer dst = ByteBuffer.allocate(size);
+    for (int t = 0; t < 60000 && dst.hasRemaining(); t += 10) {
+      clientChannel.write(src);
+      sim.run(10);
+      while (dst.hasRemaining() && serverChannel.read(dst) > 0) {
+        continue;
+      }
+    }
+    assertArrayEquals(data, dst.array());
+  }
+
+  /**
+   * Test for the round-trip time, which is measured from the acknowledgments.
+   */
+  @Test
+  public void roundTripTime() throws Exception {
+    assertEquals(-1, client.getRoundTripTime());
+    assertEquals(ReliableSocketProfile.RETRANSMISSION_TIMEOUT,
+        client.getRetransmissionTimeout());
+
+    sim.run(1000);
+    transfer(100000, 1);
+    int rtt = client.getRoundTripTime();
+    assertTrue(Math.abs(rtt - 2 * DELAY) <= 5);
+    long rto = client.getRetransmissionTimeout();
+    assertTrue(rto >= rtt + client.getRoundTripTimeVariation());
+    assertTrue(rto <= rtt + 4 * client.getRoundTripTimeVariation() + 1);
+  }
+
+  /**
+   * Test for the retransmission timeout, which doubles every time the retransmission
+   * timer expires, until a new round-trip time sample is taken.
+   */
+  @Test
+  public void backoff() throws Exception {
+    sim.run(1000);
+    transfer(100000, 2);
+    sim.run(1000);
+    long rto = client.getRetransmissionTimeout();
+    assertTrue(rto < ReliableSocketProfile.RETRANSMISSION_TIMEOUT);
+
+    forward.setLoss(1.0);
+    byte[] data = new byte[1000];
+    clientChannel.write(ByteBuffer.wrap(data));
+    int backoffs = 0;
+    for (int t = 0; t < 10000 && backoffs < 5; t += 10) {
+      sim.run(10);
+      long next = client.getRetransmissionTimeout();
+      if (next != rto) {
+        assertEquals(2 * rto, next);
+        rto = next;
+        backoffs++;
+      }
+    }
+    assertEquals(5, backoffs);
+
+    forward.setLoss(0);
+    sim.run(2 * (int) rto);
+    ByteBuffer dst = ByteBuffer.allocate(data.length);
+    serverChannel.read(dst);
+    assertArrayEquals(data, dst.array());
+    transfer(10000, 3);
+    assertTrue(client.getRetransmissionTimeout() < 2 * client.getRoundTripTime());
+  }
+}
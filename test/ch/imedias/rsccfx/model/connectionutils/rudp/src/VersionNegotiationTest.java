@@ -0,0 +1,141 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.impl.Segment;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the negotiation of the protocol version and of the options between
+ * version 1 and version 2 peers.
+ */
+public class VersionNegotiationTest {
+  private static final int DATA_SIZE = 20000;
+
+  private NetworkSimulator sim;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() {
+    sim = new NetworkSimulator();
+  }
+
+  /**
+   * Returns a profile that only speaks version 1, like a peer that has not been upgraded.
+   */
+  private static ReliableSocketProfile versionOneProfile() {
+    return new ReliableSocketProfile(Segment.RUDP_VERSION, 32, 32, 128, 3, 3, 3, 3, 3,
+        2000, 600, 300);
+  }
+
+  /**
+   * Opens a connection, transfers data from the client to the server and checks the
+   * negotiated version on both ends.
+   */
+  private ReliableSocket[] assertConnection(ReliableSocketProfile clientProfile,
+                                ReliableSocketProfile serverProfile,
+                                int expectedVersion) throws Exception {
+    ReliableSocket[] sockets = sim.openConnection(clientProfile, serverProfile,
+        new NetworkImpairment(), new NetworkImpairment());
+    ReliableDatagramChannel client = sockets[0].getReliableChannel().configureBlocking(false);
+    ReliableDatagramChannel server = sockets[1].getReliableChannel().configureBlocking(false);
+    sim.run(1000);
+    assertTrue(sockets[0].isConnected());
+    assertTrue(sockets[1].isConnected());
+    assertEquals(expectedVersion, sockets[0].version());
+    assertEquals(expectedVersion, sockets[1].version());
+
+    byte[] data = new byte[DATA_SIZE];
+    Arrays.fill(data, (byte) 0x5A);
+    ByteBuffer src = ByteBuffer.wrap(data);
+    ByteBuffer dst = ByteBuffer.allocate(DATA_SIZE);
+    for (int i = 0; i < 100 && dst.hasRemaining(); i++) {
+      client.write(src);
+      sim.run(100);
+      while (dst.hasRemaining() && server.read(dst) > 0) {
+        continue;
+      }
+    }
+    assertArrayEquals(data, dst.array());
+    return sockets;
+  }
+
+  /**
+   * Returns a version 2 profile with all of the negotiated options.
+   */
+  private static ReliableSocketProfile optionsProfile() {
+    ReliableSocketProfile profile = new ReliableSocketProfile();
+    profile.setForwardErrorCorrection(true);
+    profile.setMultiplexedStreams(true);
+    profile.setAdvertisedWindow(true);
+    profile.setConnectionMigration(true);
+    return profile;
+  }
+
+  /**
+   * Test for an upgraded client connecting to a version 1 server.
+   */
+  @Test
+  public void upgradedClientToVersionOneServer() throws Exception {
+    assertConnection(new ReliableSocketProfile(), versionOneProfile(), Segment.RUDP_VERSION);
+  }
+
+  /**
+   * Test for a version 1 client connecting to an upgraded server.
+   */
+  @Test
+  public void versionOneClientToUpgradedServer() throws Exception {
+    assertConnection(versionOneProfile(), new ReliableSocketProfile(), Segment.RUDP_VERSION);
+  }
+
+  /**
+   * Test for two upgraded peers.
+   */
+  @Test
+  public void upgradedPeers() throws Exception {
+    assertConnection(new ReliableSocketProfile(), new ReliableSocketProfile(),
+        Segment.RUDP_VERSION_2);
+  }
+
+  /**
+   * Test for a server whose profile does not enable the options offered by the client.
+   */
+  @Test
+  public void optionsNotEnabledByServer() throws Exception {
+    ReliableSocket[] sockets = assertConnection(optionsProfile(), new ReliableSocketProfile(),
+        Segment.RUDP_VERSION_2);
+    ReliableSocketProfile profile = sockets[1].profile();
+    assertFalse(profile.forwardErrorCorrection());
+    assertFalse(profile.multiplexedStreams());
+    assertFalse(profile.advertisedWindow());
+    assertFalse(profile.connectionMigration());
+    for (ReliableSocket sock : sockets) {
+      assertEquals(-1, sock.peerWindow());
+    }
+  }
+
+  /**
+   * Test for a server whose profile enables the options offered by the client.
+   */
+  @Test
+  public void optionsEnabledByServer() throws Exception {
+    ReliableSocket[] sockets = assertConnection(optionsProfile(), optionsProfile(),
+        Segment.RUDP_VERSION_2);
+    ReliableSocketProfile profile = sockets[1].profile();
+    assertTrue(profile.forwardErrorCorrection());
+    assertTrue(profile.multiplexedStreams());
+    assertTrue(profile.advertisedWindow());
+    assertTrue(profile.connectionMigration());
+    for (ReliableSocket sock : sockets) {
+      assertTrue(sock.peerWindow() >= 0);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the AckPolicy class.
+ */
+public class AckPolicyTest {
+  private static final int MAX_CUMULATIVE_ACKS = 3;
+  private static final int ACK_TIMEOUT = 100;
+  private static final int SEGMENT_SIZE = 1400;
+  private static final int RTT = 50;
+
+  private AckPolicy policy;
+  private long now;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() {
+    policy = new AckPolicy(MAX_CUMULATIVE_ACKS, 256, ACK_TIMEOUT, SEGMENT_SIZE);
+    policy.roundTripTime(RTT);
+    now = 1000;
+  }
+
+  /**
+   * Receives full-sized segments at a rate of four per millisecond.
+   */
+  private void bulk(int segments) {
+    for (int i = 0; i < segments; i++) {
+      assertFalse(policy.segmentReceived(SEGMENT_SIZE, now + i / 4));
+    }
+    now += segments / 4;
+  }
+
+  /**
+   * Test for a small segment, which ends a write and is acknowledged right away.
+   */
+  @Test
+  public void smallSegmentIsAcknowledged() {
+    assertTrue(policy.segmentReceived(100, now));
+    bulk(10);
+    assertTrue(policy.segmentReceived(SEGMENT_SIZE - 1, now));
+  }
+
+  /**
+   * Test for a bulk transfer, during which one acknowledgment covers more segments.
+   */
+  @Test
+  public void bulkTransferDecimatesAcks() {
+    assertEquals(MAX_CUMULATIVE_ACKS, policy.maxCumulativeAcks());
+    bulk(1000);
+    assertEquals(AckPolicy.MAX_ACK_RATIO - 1, policy.maxCumulativeAcks());
+  }
+
+  /**
+   * Test for a small window, for which decimation would stall the sender.
+   */
+  @Test
+  public void smallWindowKeepsNegotiatedMaximum() {
+    policy = new AckPolicy(MAX_CUMULATIVE_ACKS, 16, ACK_TIMEOUT, SEGMENT_SIZE);
+    policy.roundTripTime(RTT);
+    bulk(1000);
+    assertEquals(MAX_CUMULATIVE_ACKS, policy.maxCumulativeAcks());
+  }
+
+  /**
+   * Test for a segment received out of sequence, after which decimation starts over.
+   */
+  @Test
+  public void lossFallsBack() {
+    bulk(1000);
+    policy.segmentMissing();
+    assertEquals(MAX_CUMULATIVE_ACKS, policy.maxCumulativeAcks());
+  }
+
+  /**
+   * Test for an idle period, after which decimation starts over.
+   */
+  @Test
+  public void idleFallsBack() {
+    bulk(1000);
+    now += 2 * RTT;
+    assertFalse(policy.segmentReceived(SEGMENT_SIZE, now));
+    assertEquals(MAX_CUMULATIVE_ACKS, policy.maxCumulativeAcks());
+  }
+
+  /**
+   * Test for a negotiated maximum of zero, which acknowledges every segment.
+   */
+  @Test
+  public void noCumulativeAcks() {
+    policy = new AckPolicy(0, 256, ACK_TIMEOUT, SEGMENT_SIZE);
+    policy.roundTripTime(RTT);
+    bulk(1000);
+    assertEquals(0, policy.maxCumulativeAcks());
+  }
+
+  /**
+   * Test for {@link AckPolicy#ackDelay()}, which follows the round-trip time within the
+   * negotiated timeout.
+   */
+  @Test
+  public void ackDelay() {
+    assertEquals(RTT, policy.ackDelay());
+    policy.roundTripTime(10 * ACK_TIMEOUT);
+    assertEquals(ACK_TIMEOUT, policy.ackDelay());
+    policy.roundTripTime(0);
+    assertEquals(AckPolicy.MIN_ACK_DELAY, policy.ackDelay());
+
+    policy = new AckPolicy(MAX_CUMULATIVE_ACKS, 256, ACK_TIMEOUT, SEGMENT_SIZE);
+    assertEquals(ACK_TIMEOUT, policy.ackDelay());
+  }
+}
@@ -0,0 +1,149 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import ch.imedias.rsccfx.model.connectionutils.rudp.src.CongestionController;
+import org.junit.Test;
+
+/**
+ * Tests the evolution of the congestion window of the NewReno, CUBIC and BBR controllers.
+ */
+public class CongestionControllerTest {
+  private static final int RTT = 100;
+
+  /**
+   * Acknowledges a full window once per round-trip time, with the given number of
+   * segments the path can deliver per round, and returns the time after the last round.
+   */
+  private static long runRounds(CongestionController cc, long now, int rounds, int capacity) {
+    for (int i = 0; i < rounds; i++) {
+      now += RTT;
+      int window = cc.getCongestionWindow();
+      cc.segmentsAcked(Math.min(window, capacity), window, RTT, now);
+    }
+    return now;
+  }
+
+  /**
+   * Test for the slow start of NewReno, which doubles the window every round.
+   */
+  @Test
+  public void newRenoSlowStart() {
+    NewRenoCongestionController cc = new NewRenoCongestionController();
+    assertEquals(NewRenoCongestionController.INITIAL_WINDOW, cc.getCongestionWindow());
+    runRounds(cc, 0, 3, Integer.MAX_VALUE);
+    assertEquals(8 * NewRenoCongestionController.INITIAL_WINDOW, cc.getCongestionWindow());
+  }
+
+  /**
+   * Test for a NewReno window that is not used, which does not grow.
+   */
+  @Test
+  public void newRenoApplicationLimited() {
+    NewRenoCongestionController cc = new NewRenoCongestionController();
+    cc.segmentsAcked(1, 1, RTT, RTT);
+    assertEquals(NewRenoCongestionController.INITIAL_WINDOW, cc.getCongestionWindow());
+  }
+
+  /**
+   * Test for losses, which halve the NewReno window at most once per round-trip time.
+   */
+  @Test
+  public void newRenoLoss() {
+    NewRenoCongestionController cc = new NewRenoCongestionController();
+    long now = runRounds(cc, 0, 3, Integer.MAX_VALUE);
+    assertEquals(32, cc.getCongestionWindow());
+
+    cc.segmentsLost(now);
+    assertEquals(16, cc.getCongestionWindow());
+    cc.segmentsLost(now + RTT / 2);
+    assertEquals(16, cc.getCongestionWindow());
+    cc.segmentsLost(now + RTT);
+    assertEquals(8, cc.getCongestionWindow());
+  }
+
+  /**
+   * Test for the congestion avoidance of NewReno, which grows the window by one
+   * segment per round.
+   */
+  @Test
+  public void newRenoCongestionAvoidance() {
+    NewRenoCongestionController cc = new NewRenoCongestionController();
+    long now = runRounds(cc, 0, 3, Integer.MAX_VALUE);
+    cc.segmentsLost(now);
+    assertEquals(16, cc.getCongestionWindow());
+
+    /* A little more than a window */
+    for (int i = 0; i < 17; i++) {
+      cc.segmentsAcked(1, 16, RTT, now + RTT);
+    }
+    assertEquals(17, cc.getCongestionWindow());
+  }
+
+  /**
+   * Test for a retransmission timeout, which collapses the NewReno window, after which
+   * slow start stops at half of the former window.
+   */
+  @Test
+  public void newRenoRetransmissionTimeout() {
+    NewRenoCongestionController cc = new NewRenoCongestionController();
+    long now = runRounds(cc, 0, 3, Integer.MAX_VALUE);
+    cc.retransmissionTimeout(now);
+    assertEquals(1, cc.getCongestionWindow());
+
+    now = runRounds(cc, now, 4, Integer.MAX_VALUE);
+    assertEquals(16, cc.getCongestionWindow());
+    runRounds(cc, now, 1, Integer.MAX_VALUE);
+    assertEquals(17, cc.getCongestionWindow());
+  }
+
+  /**
+   * Test for CUBIC, which reduces the window less than NewReno and grows it back to
+   * the size of the loss along a cubic curve.
+   */
+  @Test
+  public void cubicRecovery() {
+    CubicCongestionController cc = new CubicCongestionController();
+    long now = runRounds(cc, 0, 5, Integer.MAX_VALUE);
+    assertEquals(128, cc.getCongestionWindow());
+
+    cc.segmentsLost(now);
+    int reduced = cc.getCongestionWindow();
+    assertEquals((int) (128 * 0.7), reduced);
+
+    /* The window reaches the size of the loss again after about cbrt(38.4 / 0.4) s */
+    now = runRounds(cc, now, 10, Integer.MAX_VALUE);
+    int concave = cc.getCongestionWindow();
+    assertTrue(concave > reduced + 15);
+    assertTrue(concave < 128);
+    now = runRounds(cc, now, 35, Integer.MAX_VALUE);
+    int plateau = cc.getCongestionWindow();
+    assertTrue(plateau >= 125 && plateau <= 131);
+    runRounds(cc, now, 35, Integer.MAX_VALUE);
+    assertTrue(cc.getCongestionWindow() > plateau + 10);
+  }
+
+  /**
+   * Test for BBR, whose window settles around twice the bandwidth-delay product
+   * once startup has filled the path, and which ignores losses.
+   */
+  @Test
+  public void bbrBandwidthDelayProduct() {
+    BbrCongestionController cc = new BbrCongestionController();
+    long now = runRounds(cc, 0, 50, 100);
+    assertEquals(RTT, cc.getMinRtt());
+    assertEquals(1.0, cc.getBandwidth(), 0.001);
+    for (int i = 0; i < 8; i++) {
+      now = runRounds(cc, now, 1, 100);
+      int window = cc.getCongestionWindow();
+      assertTrue(window >= 150 && window <= 250);
+    }
+
+    int window = cc.getCongestionWindow();
+    cc.segmentsLost(now);
+    assertEquals(window, cc.getCongestionWindow());
+    cc.retransmissionTimeout(now);
+    assertEquals(BbrCongestionController.MIN_WINDOW, cc.getCongestionWindow());
+  }
+}
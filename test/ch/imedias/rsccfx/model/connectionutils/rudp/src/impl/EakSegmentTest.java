@@ -0,0 +1,79 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Tests the encoding and decoding of EAK segments, whose version 2 form
+ * reports the out of sequence segments with a bitmap.
+ */
+public class EakSegmentTest {
+  /**
+   * Encodes a segment and parses it back from a byte array.
+   */
+  private static Segment roundTrip(Segment segment) {
+    byte[] bytes = segment.getBytes();
+    assertEquals(segment.length(), bytes.length);
+    return Segment.parse(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Test for a version 1 EAK segment, which lists the out of sequence ack numbers.
+   */
+  @Test
+  public void eakSegmentVersionOne() {
+    int[] acks = new int[] {5, 7, 9};
+    Segment segment = roundTrip(new EAKSegment(42, 3, acks));
+    assertTrue(segment instanceof EAKSegment);
+    assertEquals(3, segment.getAck());
+    assertArrayEquals(acks, ((EAKSegment) segment).getACKs());
+  }
+
+  /**
+   * Test for a version 2 EAK segment, which reports the out of sequence
+   * segments with a bitmap.
+   */
+  @Test
+  public void eakSegmentBitmap() {
+    int[] acks = new int[] {1001, 1005, 1040};
+    EAKSegment eak = new EAKSegment(42, 1000, acks);
+    eak.setWide(true);
+    assertEquals(Segment.RUDP_WIDE_HEADER_LEN + 5, eak.length());
+    Segment segment = roundTrip(eak);
+    assertTrue(segment instanceof EAKSegment);
+    assertTrue(segment.isWide());
+    assertEquals(1000, segment.getAck());
+    int[] parsed = ((EAKSegment) segment).getACKs();
+    Arrays.sort(parsed);
+    assertArrayEquals(acks, parsed);
+  }
+
+  /**
+   * Test for a version 2 EAK segment whose ack numbers wrap around.
+   */
+  @Test
+  public void eakSegmentBitmapWraparound() {
+    int ack = Segment.MAX_WIDE_SEQUENCE_NUMBER - 2;
+    int[] acks = new int[] {Segment.MAX_WIDE_SEQUENCE_NUMBER - 1, 1, 4};
+    EAKSegment eak = new EAKSegment(7, ack, acks);
+    eak.setWide(true);
+    int[] parsed = ((EAKSegment) roundTrip(eak)).getACKs();
+    Arrays.sort(parsed);
+    assertArrayEquals(new int[] {1, 4, Segment.MAX_WIDE_SEQUENCE_NUMBER - 1}, parsed);
+  }
+
+  /**
+   * Test for the ack numbers that lie beyond the range of the bitmap, which are dropped.
+   */
+  @Test
+  public void eakSegmentBitmapDropsUnmappableAcks() {
+    int[] acks = new int[] {101, 100 + EAKSegment.maxACKs(true) + 1};
+    EAKSegment eak = new EAKSegment(7, 100, acks);
+    eak.setWide(true);
+    assertArrayEquals(new int[] {101}, ((EAKSegment) roundTrip(eak)).getACKs());
+  }
+}
@@ -0,0 +1,124 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the recovery of lost segments by the FecDecoder class.
+ */
+public class FecDecoderTest {
+  private static final int MAX_SEQUENCE_NUMBER = 256;
+
+  private FecEncoder encoder;
+  private FecDecoder decoder;
+  private SegmentRing outSeqQueue;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() {
+    encoder = new FecEncoder(MAX_SEQUENCE_NUMBER);
+    encoder.segmentLost(); /* Enough loss for the encoder to send parity segments */
+    decoder = new FecDecoder(MAX_SEQUENCE_NUMBER, false);
+    outSeqQueue = new SegmentRing(16, MAX_SEQUENCE_NUMBER);
+  }
+
+  private static DATSegment data(int seqn, int len) {
+    byte[] b = new byte[len];
+    for (int i = 0; i < len; i++) {
+      b[i] = (byte) (seqn * 31 + i);
+    }
+    return new DATSegment(seqn, 0, b, 0, len);
+  }
+
+  /**
+   * Returns the parity segment of a group.
+   */
+  private FECSegment parity(Segment... group) {
+    for (Segment s : group) {
+      assertNull(encoder.add(s));
+    }
+    return encoder.flush();
+  }
+
+  /**
+   * Test for a missing segment whose group follows it in the out-of-sequence queue.
+   */
+  @Test
+  public void recoverFromOutOfSequenceQueue() {
+    DATSegment[] group = new DATSegment[] {data(10, 100), data(11, 60), data(12, 80)};
+    FECSegment parity = parity(group);
+    assertEquals(3, parity.getCount());
+    outSeqQueue.add(group[1]);
+    outSeqQueue.add(group[2]);
+
+    Segment rebuilt = decoder.recover(parity, 9, outSeqQueue);
+    assertTrue(rebuilt instanceof DATSegment);
+    assertEquals(10, rebuilt.seq());
+    assertArrayEquals(group[0].getData(), ((DATSegment) rebuilt).getData());
+  }
+
+  /**
+   * Test for a missing segment whose group has partly been delivered already.
+   */
+  @Test
+  public void recoverFromHistory() {
+    /* The decoder only keeps the delivered data while parity segments arrive */
+    assertNull(decoder.recover(parity(data(1, 10)), 1, outSeqQueue));
+
+    DATSegment[] group = new DATSegment[] {data(2, 30), data(3, 50), data(4, 20)};
+    FECSegment parity = parity(group);
+    decoder.delivered(group[0]);
+    outSeqQueue.add(group[2]);
+
+    Segment rebuilt = decoder.recover(parity, 2, outSeqQueue);
+    assertNotNull(rebuilt);
+    assertEquals(3, rebuilt.seq());
+    assertArrayEquals(group[1].getData(), ((DATSegment) rebuilt).getData());
+  }
+
+  /**
+   * Test for a group whose sequence numbers wrap around and whose missing segment is
+   * a NUL segment.
+   */
+  @Test
+  public void recoverNulSegmentAcrossWraparound() {
+    Segment[] group = new Segment[] {data(254, 40), data(255, 40), new NULSegment(0),
+        data(1, 40)};
+    FECSegment parity = parity(group);
+    outSeqQueue.add(group[0]);
+    outSeqQueue.add(group[1]);
+    outSeqQueue.add(group[3]);
+
+    Segment rebuilt = decoder.recover(parity, 253, outSeqQueue);
+    assertTrue(rebuilt instanceof NULSegment);
+    assertEquals(0, rebuilt.seq());
+  }
+
+  /**
+   * Test for a group with more than one missing segment, which cannot be rebuilt.
+   */
+  @Test
+  public void twoMissingSegments() {
+    DATSegment[] group = new DATSegment[] {data(20, 10), data(21, 10), data(22, 10)};
+    FECSegment parity = parity(group);
+    outSeqQueue.add(group[2]);
+    assertNull(decoder.recover(parity, 19, outSeqQueue));
+  }
+
+  /**
+   * Test for a group that has been received completely.
+   */
+  @Test
+  public void nothingMissing() {
+    FECSegment parity = parity(data(30, 10), data(31, 10));
+    assertNull(decoder.recover(parity, 31, outSeqQueue));
+  }
+}
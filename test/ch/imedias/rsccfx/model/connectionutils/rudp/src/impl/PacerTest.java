@@ -0,0 +1,112 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the pacing rate and the token bucket of the pacer.
+ */
+public class PacerTest {
+  private static final long MS = 1000000; /* ns */
+  private static final int SEGMENT = 1000;
+
+  private long nanos;
+  private Clock clock;
+  private Pacer pacer;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() {
+    nanos = 5000 * MS;
+    clock = new Clock() {
+      public long currentTimeMillis() {
+        return nanos / MS;
+      }
+
+      public long nanoTime() {
+        return nanos;
+      }
+    };
+    pacer = new Pacer(0, 0, clock);
+  }
+
+  /**
+   * Test for a pacer without a round-trip time, which does not pace.
+   */
+  @Test
+  public void notPacedWithoutRoundTripTime() {
+    assertEquals(0, pacer.pace(SEGMENT, nanos));
+    pacer.segmentsAcked(SEGMENT, 0, -1, 100000);
+    assertEquals(0, pacer.getRate());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(0, pacer.pace(SEGMENT, nanos));
+    }
+  }
+
+  /**
+   * Test for the pacing rate, which is the window per round-trip time times the
+   * startup gain, then the pacing gain once segments have been lost.
+   */
+  @Test
+  public void rateFromWindow() {
+    pacer.segmentsAcked(SEGMENT, 0, 100, 100000);
+    assertEquals((long) (Pacer.STARTUP_GAIN * 1000000), pacer.getRate());
+
+    pacer.segmentsLost();
+    pacer.segmentsAcked(SEGMENT, 10, 100, 100000);
+    assertEquals((long) (Pacer.PACING_GAIN * 1000000), pacer.getRate());
+  }
+
+  /**
+   * Test for the bounds of the profile, which the pacing rate is kept between.
+   */
+  @Test
+  public void rateBounds() {
+    pacer = new Pacer(500000, 800000, clock);
+    pacer.segmentsAcked(SEGMENT, 0, 100, 1000);
+    assertEquals(500000, pacer.getRate());
+    pacer.segmentsAcked(SEGMENT, 10, 100, 1000000);
+    assertEquals(800000, pacer.getRate());
+  }
+
+  /**
+   * Test for the delivery rate, below which the pacing rate does not drop.
+   */
+  @Test
+  public void rateNotBelowDeliveryRate() {
+    for (int t = 0; t <= 100; t += 10) {
+      pacer.segmentsAcked(10 * SEGMENT, t, 100, 1000);
+    }
+    assertEquals(110 * SEGMENT * 1000 / 100, pacer.getDeliveryRate());
+    assertEquals(pacer.getDeliveryRate(), pacer.getRate());
+  }
+
+  /**
+   * Test for the token bucket, which spaces out segments at the pacing rate and
+   * lets a burst through after an idle period.
+   */
+  @Test
+  public void tokenBucket() {
+    /* 1 MB/s: a segment every ms, a burst of MIN_BURST_SEGMENTS segments */
+    pacer.segmentsLost();
+    pacer.segmentsAcked(SEGMENT, 0, 100, (long) (100000 / Pacer.PACING_GAIN));
+    assertEquals(1000000, pacer.getRate());
+
+    assertEquals(MS, pacer.pace(SEGMENT, nanos));
+    assertEquals(2 * MS, pacer.pace(SEGMENT, nanos));
+    assertEquals(2 * MS, pacer.delay(SEGMENT, nanos + MS));
+    assertEquals(0, pacer.delay(SEGMENT, nanos + 3 * MS));
+    assertEquals(0, pacer.pace(SEGMENT, nanos + 3 * MS));
+    assertEquals(MS / 2, pacer.pace(SEGMENT, nanos + 7 * MS / 2));
+
+    nanos += 1000 * MS;
+    for (int i = 0; i < Pacer.MIN_BURST_SEGMENTS; i++) {
+      assertEquals(0, pacer.pace(SEGMENT, nanos));
+    }
+    assertEquals(MS, pacer.pace(SEGMENT, nanos));
+  }
+}
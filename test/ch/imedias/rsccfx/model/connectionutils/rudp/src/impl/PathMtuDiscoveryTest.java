@@ -0,0 +1,132 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the search for the largest segment size that gets through a path.
+ */
+public class PathMtuDiscoveryTest {
+  private static final int MAX_SEGMENT_SIZE = 9000;
+
+  private PathMtuDiscovery pmtu;
+  private long now;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() {
+    pmtu = new PathMtuDiscovery(MAX_SEGMENT_SIZE);
+    now = 0;
+  }
+
+  /**
+   * Sends probes over a path that lets segments up to the given size through,
+   * until the search is done, and returns the number of probes sent.
+   */
+  private int search(int pathSize) {
+    int probes = 0;
+    int size;
+    while ((size = pmtu.nextProbeSize(now)) > 0) {
+      assertTrue(probes++ < 100);
+      now += 100;
+      if (size <= pathSize) {
+        pmtu.probeAcked(now);
+      } else {
+        pmtu.probeLost(now);
+      }
+    }
+    return probes;
+  }
+
+  /**
+   * Test for a new connection, which starts with segments that fit any path and
+   * first probes for the Ethernet payload.
+   */
+  @Test
+  public void startsWithBaseSize() {
+    assertEquals(PathMtuDiscovery.BASE_SEGMENT_SIZE, pmtu.segmentSize());
+    assertEquals(PathMtuDiscovery.ETHERNET_SEGMENT_SIZE, pmtu.nextProbeSize(now));
+    assertEquals(0, pmtu.nextProbeSize(now));
+
+    pmtu = new PathMtuDiscovery(1000);
+    assertEquals(1000, pmtu.segmentSize());
+    assertEquals(0, pmtu.nextProbeSize(now));
+  }
+
+  /**
+   * Test for the search, which finds the size of the path within the granularity.
+   */
+  @Test
+  public void searchConverges() {
+    search(1400);
+    assertTrue(pmtu.segmentSize() <= 1400);
+    assertTrue(pmtu.segmentSize() > 1400 - PathMtuDiscovery.SEARCH_GRANULARITY);
+
+    pmtu = new PathMtuDiscovery(MAX_SEGMENT_SIZE);
+    search(4000);
+    assertTrue(pmtu.segmentSize() <= 4000);
+    assertTrue(pmtu.segmentSize() > 4000 - PathMtuDiscovery.SEARCH_GRANULARITY);
+
+    pmtu = new PathMtuDiscovery(MAX_SEGMENT_SIZE);
+    search(MAX_SEGMENT_SIZE);
+    assertTrue(pmtu.segmentSize() > MAX_SEGMENT_SIZE - PathMtuDiscovery.SEARCH_GRANULARITY);
+  }
+
+  /**
+   * Test for a lost probe, whose size is only given up after MAX_PROBES losses.
+   */
+  @Test
+  public void lostProbeIsRetried() {
+    int size = pmtu.nextProbeSize(now);
+    for (int i = 1; i < PathMtuDiscovery.MAX_PROBES; i++) {
+      pmtu.probeLost(now);
+      assertEquals(size, pmtu.nextProbeSize(now));
+    }
+
+    pmtu.probeLost(now);
+    int next = pmtu.nextProbeSize(now);
+    assertTrue(next < size);
+    assertTrue(next > pmtu.segmentSize());
+    assertEquals(PathMtuDiscovery.BASE_SEGMENT_SIZE, pmtu.segmentSize());
+  }
+
+  /**
+   * Test for a finished search, which starts again after RAISE_TIMEOUT in case the
+   * path has grown.
+   */
+  @Test
+  public void searchIsRaisedAgain() {
+    search(1400);
+    final int size = pmtu.segmentSize();
+    now += PathMtuDiscovery.RAISE_TIMEOUT / 2;
+    assertEquals(0, pmtu.nextProbeSize(now));
+
+    now += PathMtuDiscovery.RAISE_TIMEOUT / 2;
+    assertTrue(search(3000) > 0);
+    assertTrue(pmtu.segmentSize() > size);
+    assertTrue(pmtu.segmentSize() > 3000 - PathMtuDiscovery.SEARCH_GRANULARITY);
+  }
+
+  /**
+   * Test for full-sized data segments that time out, after which the segment size
+   * falls back to the base size and the search stays below the size that failed.
+   */
+  @Test
+  public void shrunkPathFallsBack() {
+    search(4000);
+    int size = pmtu.segmentSize();
+    pmtu.segmentTimedOut(PathMtuDiscovery.BASE_SEGMENT_SIZE, now);
+    assertEquals(size, pmtu.segmentSize());
+
+    pmtu.segmentTimedOut(size, now);
+    assertEquals(PathMtuDiscovery.BASE_SEGMENT_SIZE, pmtu.segmentSize());
+    search(1400);
+    assertTrue(pmtu.segmentSize() <= 1400);
+    assertTrue(pmtu.segmentSize() > 1400 - PathMtuDiscovery.SEARCH_GRANULARITY);
+  }
+}
@@ -0,0 +1,143 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the encoding and decoding of version 1 and version 2 segments.
+ */
+public class SegmentCodecTest {
+  private static final byte[] DATA = new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+  private static final int CONNECTION_ID = 0xCAFEBABE;
+
+  /**
+   * Encodes a segment and parses it back from a byte array.
+   */
+  private static Segment roundTrip(Segment segment) {
+    byte[] bytes = segment.getBytes();
+    assertEquals(segment.length(), bytes.length);
+    return Segment.parse(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Test for a version 1 data segment.
+   */
+  @Test
+  public void dataSegmentVersionOne() {
+    Segment segment = roundTrip(new DATSegment(200, 17, DATA, 0, DATA.length));
+    assertTrue(segment instanceof DATSegment);
+    assertFalse(segment.isWide());
+    assertEquals(200, segment.seq());
+    assertEquals(17, segment.getAck());
+    assertEquals(Segment.RUDP_HEADER_LEN + DATA.length, segment.length());
+    assertArrayEquals(DATA, ((DATSegment) segment).getData());
+  }
+
+  /**
+   * Test for a version 2 data segment, whose sequence numbers do not fit in 8 bits.
+   */
+  @Test
+  public void dataSegmentVersionTwo() {
+    DATSegment data = new DATSegment(70000, 65536, DATA, 0, DATA.length);
+    data.setWide(true);
+    Segment segment = roundTrip(data);
+    assertTrue(segment instanceof DATSegment);
+    assertTrue(segment.isWide());
+    assertEquals(70000, segment.seq());
+    assertEquals(65536, segment.getAck());
+    assertArrayEquals(DATA, ((DATSegment) segment).getData());
+  }
+
+  /**
+   * Test for the connection ID, which follows the ack number of wide headers.
+   */
+  @Test
+  public void connectionId() {
+    NULSegment nul = new NULSegment(500);
+    nul.setWide(true);
+    nul.setConnectionId(CONNECTION_ID);
+    Segment segment = roundTrip(nul);
+    assertTrue(segment instanceof NULSegment);
+    assertTrue(segment.hasConnectionId());
+    assertEquals(CONNECTION_ID, segment.getConnectionId());
+    assertEquals(500, segment.seq());
+
+    EAKSegment eak = new EAKSegment(8, 2000, new int[] {2002});
+    eak.setWide(true);
+    eak.setConnectionId(CONNECTION_ID);
+    segment = roundTrip(eak);
+    assertEquals(CONNECTION_ID, segment.getConnectionId());
+    assertArrayEquals(new int[] {2002}, ((EAKSegment) segment).getACKs());
+
+    ACKSegment ack = new ACKSegment(100000, 99999);
+    ack.setWide(true);
+    ack.setConnectionId(CONNECTION_ID);
+    ack.setWindow(4000);
+    segment = roundTrip(ack);
+    assertEquals(CONNECTION_ID, segment.getConnectionId());
+    assertEquals(4000, segment.getWindow());
+    assertEquals(99999, segment.getAck());
+  }
+
+  /**
+   * Test for the receive window, which is carried in the checksum field.
+   */
+  @Test
+  public void windowInChecksumField() {
+    ACKSegment ack = new ACKSegment(10, 9);
+    ack.setWindow(200);
+    assertEquals(200, roundTrip(ack).getWindow());
+
+    ack = new ACKSegment(100000, 99999);
+    ack.setWide(true);
+    ack.setWindow(4000);
+    Segment segment = roundTrip(ack);
+    assertEquals(4000, segment.getWindow());
+    assertEquals(99999, segment.getAck());
+
+    DATSegment data = new DATSegment(11, 10, DATA, 0, DATA.length);
+    data.setWindow(0xFFFF + 1);
+    segment = roundTrip(data);
+    assertEquals(0xFFFF, segment.getWindow());
+    assertArrayEquals(DATA, ((DATSegment) segment).getData());
+  }
+
+  /**
+   * Test for a version 2 SYN segment.
+   */
+  @Test
+  public void synSegmentVersionTwo() {
+    SYNSegment syn = new SYNSegment(Segment.RUDP_VERSION_2, 123456, 1024, 1400, 600, 300,
+        2000, 3, 3, 3, 3);
+    Segment segment = roundTrip(syn);
+    assertTrue(segment instanceof SYNSegment);
+    SYNSegment parsed = (SYNSegment) segment;
+    assertEquals(Segment.RUDP_VERSION_2, parsed.getVersion());
+    assertEquals(123456, parsed.seq());
+    assertEquals(1024, parsed.getMaxOutstandingSegments());
+    assertEquals(1400, parsed.getMaxSegmentSize());
+    assertEquals(600, parsed.getRetransmissionTimeout());
+  }
+
+  /**
+   * Test for a version 1 SYN segment that offers version 2 in its spare bits.
+   */
+  @Test
+  public void synSegmentOffersVersionTwo() {
+    SYNSegment syn = new SYNSegment(Segment.RUDP_VERSION, 12, 4000, 1400, 600, 300,
+        2000, 3, 3, 3, 3);
+    assertEquals(0, ((SYNSegment) roundTrip(syn)).getOfferedMaxOutstandingSegments());
+
+    syn.setOptionFlags(syn.getOptionFlags() | SYNSegment.VERSION_2_OPTION);
+    SYNSegment parsed = (SYNSegment) roundTrip(syn);
+    assertEquals(Segment.RUDP_VERSION, parsed.getVersion());
+    assertFalse(parsed.isWide());
+    assertEquals(255, parsed.getMaxOutstandingSegments());
+    assertEquals(4000, parsed.getOfferedMaxOutstandingSegments());
+    assertEquals(1400, parsed.getMaxSegmentSize());
+  }
+}
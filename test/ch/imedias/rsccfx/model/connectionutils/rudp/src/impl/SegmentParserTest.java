@@ -0,0 +1,113 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the parsing of segments, with stream fields or with invalid header lengths.
+ */
+public class SegmentParserTest {
+  private static final byte[][] MALFORMED_SEGMENTS = new byte[][] {
+      /* Header length past the end of the datagram */
+      bytes(0x44, 0x0c, 0xd4, 0x3d, 0x58, 0x08, 0x31, 0xbd, 0x11, 0x17, 0xfe),
+      bytes(0x40, 0x0c, 0x31, 0x6c, 0xfa, 0x10, 0xde, 0xce, 0xfe),
+      bytes(0x40, 0xff, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00),
+      /* Header length shorter than the header */
+      bytes(0x40, 0x04, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00),
+      bytes(0x40, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00)};
+
+  private BufferPool pool;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() {
+    pool = new BufferPool(256, 4);
+  }
+
+  private static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+
+  /**
+   * Test for {@link Segment#parse(byte[], int, int)} with malformed segments.
+   */
+  @Test
+  public void parseBytesRejectsInvalidHeaderLength() {
+    for (byte[] bytes : MALFORMED_SEGMENTS) {
+      try {
+        Segment.parse(bytes, 0, bytes.length);
+        fail("Parsed a segment with header length " + (bytes[1] & 0xFF));
+      } catch (IllegalArgumentException xcp) {
+        assertTrue(xcp.getMessage().startsWith("Invalid"));
+      }
+    }
+  }
+
+  /**
+   * Test for {@link Segment#parse(ByteBuffer, BufferPool)} with malformed segments.
+   */
+  @Test
+  public void parseBufferRejectsInvalidHeaderLength() {
+    for (byte[] bytes : MALFORMED_SEGMENTS) {
+      ByteBuffer buffer = pool.acquire();
+      buffer.clear();
+      buffer.put(bytes);
+      buffer.flip();
+      try {
+        Segment.parse(buffer, pool);
+        fail("Parsed a segment with header length " + (bytes[1] & 0xFF));
+      } catch (IllegalArgumentException xcp) {
+        assertTrue(xcp.getMessage().startsWith("Invalid"));
+      }
+    }
+  }
+
+  /**
+   * Test for {@link Segment#parse(byte[], int, int)} with a well formed segment.
+   */
+  @Test
+  public void parseBytes() {
+    byte[] data = new byte[] {1, 2, 3};
+    byte[] bytes = new DATSegment(7, 3, data, 0, data.length).getBytes();
+    Segment segment = Segment.parse(bytes, 0, bytes.length);
+    assertTrue(segment instanceof DATSegment);
+    assertEquals(7, segment.seq());
+    assertEquals(3, segment.getAck());
+    assertArrayEquals(data, ((DATSegment) segment).getData());
+  }
+
+  /**
+   * Test for a version 2 data segment with stream fields, parsed from a pooled buffer.
+   */
+  @Test
+  public void dataSegmentWithStreamFromBuffer() {
+    byte[] payload = new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+    DATSegment data = new DATSegment(1000, 999, payload, 0, payload.length);
+    data.setWide(true);
+    data.setStream(3, 12345);
+    ByteBuffer buffer = pool.acquire();
+    buffer.clear();
+    buffer.put(data.getBytes());
+    buffer.flip();
+    Segment segment = Segment.parse(buffer, pool);
+    assertTrue(segment instanceof DATSegment);
+    assertEquals(1000, segment.seq());
+    assertEquals(3, ((DATSegment) segment).getStream());
+    assertEquals(12345, ((DATSegment) segment).getStreamSequenceNumber());
+    assertArrayEquals(payload, ((DATSegment) segment).getData());
+    segment.release();
+    assertEquals(0, pool.inUseCount());
+  }
+}
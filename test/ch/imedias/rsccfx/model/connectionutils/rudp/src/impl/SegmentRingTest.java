@@ -0,0 +1,179 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the SegmentRing class.
+ */
+public class SegmentRingTest {
+  private static final int MAX_SEQUENCE_NUMBER = 256;
+
+  private SegmentRing ring;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() {
+    ring = new SegmentRing(8, MAX_SEQUENCE_NUMBER);
+  }
+
+  /**
+   * Test for segments whose sequence numbers wrap around.
+   */
+  @Test
+  public void wraparound() {
+    for (int i = 0; i < 8; i++) {
+      assertTrue(ring.add(new NULSegment((252 + i) % MAX_SEQUENCE_NUMBER)));
+    }
+    assertEquals(8, ring.size());
+    assertEquals(8, ring.span());
+    assertEquals(255, ring.get(255).seq());
+    assertEquals(2, ring.get(2).seq());
+    assertNull(ring.get(4));
+
+    for (int i = 0; i < 8; i++) {
+      assertEquals((252 + i) % MAX_SEQUENCE_NUMBER, ring.removeFirst().seq());
+    }
+    assertTrue(ring.isEmpty());
+    assertNull(ring.removeFirst());
+  }
+
+  /**
+   * Test for a ring whose head moves around its slots many times.
+   */
+  @Test
+  public void slidingWindow() {
+    int next = 0;
+    for (int i = 0; i < 4; i++) {
+      ring.add(new NULSegment(next++));
+    }
+    for (int i = 0; i < 3 * MAX_SEQUENCE_NUMBER; i++) {
+      int first = ring.first().seq();
+      assertEquals(first, ring.removeFirst().seq());
+      ring.add(new NULSegment(next));
+      next = (next + 1) % MAX_SEQUENCE_NUMBER;
+      assertEquals(4, ring.size());
+      assertEquals(4, ring.span());
+      assertEquals((first + 1) % MAX_SEQUENCE_NUMBER, ring.first().seq());
+    }
+  }
+
+  /**
+   * Test for the slots of missing sequence numbers, which stay empty.
+   */
+  @Test
+  public void gaps() {
+    ring.add(new NULSegment(254));
+    ring.add(new NULSegment(1));
+    assertEquals(2, ring.size());
+    assertEquals(4, ring.span());
+    assertNull(ring.getAt(1));
+    assertEquals(1, ring.getAt(3).seq());
+
+    assertEquals(1, ring.remove(1).seq());
+    assertEquals(1, ring.span());
+    assertNull(ring.remove(1));
+    assertEquals(254, ring.removeFirst().seq());
+    assertEquals(0, ring.span());
+  }
+
+  /**
+   * Test for the removal of the first segment, which drops the empty slots behind it.
+   */
+  @Test
+  public void removeFirstSkipsGaps() {
+    ring.add(new NULSegment(255));
+    ring.add(new NULSegment(2));
+    ring.remove(255);
+    assertEquals(1, ring.span());
+    assertEquals(2, ring.first().seq());
+  }
+
+  /**
+   * Test for a segment with a sequence number that is already in the ring.
+   */
+  @Test
+  public void duplicate() {
+    Segment s = new NULSegment(255);
+    assertTrue(ring.add(s));
+    assertFalse(ring.add(new NULSegment(255)));
+    assertSame(s, ring.get(255));
+    assertEquals(1, ring.size());
+  }
+
+  /**
+   * Test for a segment behind the first one, which becomes the first segment.
+   */
+  @Test
+  public void addBehindFirst() {
+    ring.add(new NULSegment(1));
+    ring.add(new NULSegment(254));
+    assertEquals(254, ring.first().seq());
+    assertEquals(4, ring.span());
+    assertEquals(1, ring.getAt(3).seq());
+  }
+
+  /**
+   * Test for a segment outside of the capacity, which grows the ring.
+   */
+  @Test
+  public void grow() {
+    ring.add(new NULSegment(250));
+    ring.add(new NULSegment(20));
+    assertEquals(27, ring.span());
+    assertEquals(20, ring.get(20).seq());
+    assertEquals(250, ring.removeFirst().seq());
+    assertEquals(20, ring.removeFirst().seq());
+  }
+
+  /**
+   * Test for a segment beyond the maximum span, which is refused instead of growing the ring.
+   */
+  @Test
+  public void maxSpan() {
+    ring = new SegmentRing(8, Integer.MAX_VALUE);
+    ring.setMaxSpan(32);
+    assertTrue(ring.add(new NULSegment(5)));
+    assertFalse(ring.add(new NULSegment(5 + (1 << 28))));
+    assertFalse(ring.add(new NULSegment(5 + 32)));
+    assertTrue(ring.add(new NULSegment(5 + 31)));
+    assertEquals(2, ring.size());
+    assertEquals(32, ring.span());
+  }
+
+  /**
+   * Test for a segment behind the first one, which is refused beyond the maximum span.
+   */
+  @Test
+  public void maxSpanBehindFirst() {
+    ring.setMaxSpan(16);
+    ring.add(new NULSegment(10));
+    assertFalse(ring.add(new NULSegment(250)));
+    assertEquals(10, ring.first().seq());
+    assertTrue(ring.add(new NULSegment(251)));
+    assertEquals(251, ring.first().seq());
+    assertEquals(16, ring.span());
+  }
+
+  /**
+   * Test for {@link SegmentRing#clear()}.
+   */
+  @Test
+  public void clear() {
+    ring.add(new NULSegment(255));
+    ring.add(new NULSegment(0));
+    ring.clear();
+    assertTrue(ring.isEmpty());
+    assertNull(ring.get(0));
+    assertTrue(ring.add(new NULSegment(100)));
+    assertEquals(100, ring.first().seq());
+  }
+}
@@ -0,0 +1,221 @@
+package ch.imedias.rsccfx.model.connectionutils.rudp.src.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the timers driven by a timer wheel in virtual time.
+ */
+public class TimerWheelTest {
+  private static final long REVOLUTION = TimerWheel.WHEEL_SIZE * TimerWheel.TICK_DURATION;
+
+  private long time;
+  private TimerWheel wheel;
+
+  /**
+   * Initializes test fixture before each test.
+   */
+  @Before
+  public void setUp() {
+    time = 1000;
+    wheel = new TimerWheel(new Clock() {
+      public long currentTimeMillis() {
+        return time;
+      }
+
+      public long nanoTime() {
+        return time * 1000000;
+      }
+    });
+  }
+
+  /**
+   * Advances the clock tick by tick and expires the timers that are due.
+   */
+  private void advance(long millis) {
+    for (long end = time + millis; time < end; ) {
+      time = Math.min(time + TimerWheel.TICK_DURATION, end);
+      wheel.expireTimers();
+    }
+  }
+
+  /**
+   * Returns a timer that records the times at which it runs.
+   */
+  private Timer recordingTimer(final List<Long> runs) {
+    return new Timer("recording", new Runnable() {
+      public void run() {
+        runs.add(time);
+      }
+    }, wheel);
+  }
+
+  /**
+   * Test for a timer, which never expires early and at most one tick late.
+   */
+  @Test
+  public void expiresOnTime() {
+    List<Long> runs = new ArrayList<Long>();
+    Timer timer = recordingTimer(runs);
+    long start = time;
+    timer.schedule(25);
+    assertEquals(start + 30, wheel.nextExpirationTime());
+
+    advance(20);
+    assertTrue(runs.isEmpty());
+    advance(20);
+    assertEquals(1, runs.size());
+    assertTrue(runs.get(0) >= start + 25);
+    assertTrue(runs.get(0) <= start + 25 + 2 * TimerWheel.TICK_DURATION);
+    timer.cancel();
+  }
+
+  /**
+   * Test for a timer whose delay spans several revolutions of the wheel.
+   */
+  @Test
+  public void delayLongerThanWheel() {
+    List<Long> runs = new ArrayList<Long>();
+    Timer timer = recordingTimer(runs);
+    final long start = time;
+    long delay = 2 * REVOLUTION + 55;
+    timer.schedule(delay);
+
+    advance(REVOLUTION);
+    advance(REVOLUTION);
+    assertTrue(runs.isEmpty());
+    advance(REVOLUTION);
+    assertEquals(1, runs.size());
+    assertTrue(runs.get(0) >= start + delay);
+    assertTrue(runs.get(0) <= start + delay + 2 * TimerWheel.TICK_DURATION);
+    timer.cancel();
+  }
+
+  /**
+   * Test for a periodic timer, whose buckets wrap around the wheel many times.
+   */
+  @Test
+  public void periodicTimerWrapsAround() {
+    List<Long> runs = new ArrayList<Long>();
+    Timer timer = recordingTimer(runs);
+    long period = REVOLUTION + 1230;
+    timer.schedule(period, period);
+
+    advance(10 * period + period / 2);
+    assertEquals(10, runs.size());
+    for (int i = 1; i < runs.size(); i++) {
+      long interval = runs.get(i) - runs.get(i - 1);
+      assertTrue(interval >= period);
+      assertTrue(interval <= period + 2 * TimerWheel.TICK_DURATION);
+    }
+
+    timer.cancel();
+    advance(2 * period);
+    assertEquals(10, runs.size());
+    assertEquals(-1, wheel.nextExpirationTime());
+  }
+
+  /**
+   * Test for a timer that is reset, which restarts its wait.
+   */
+  @Test
+  public void reset() {
+    List<Long> runs = new ArrayList<Long>();
+    Timer timer = recordingTimer(runs);
+    timer.schedule(100);
+    advance(80);
+    timer.reset();
+    advance(80);
+    assertTrue(runs.isEmpty());
+    advance(40);
+    assertEquals(1, runs.size());
+  }
+
+  /**
+   * Test for two timers of the same tick that cancel each other, of which only
+   * the first one to expire runs.
+   */
+  @Test
+  public void cancelDuringExpire() {
+    final List<String> runs = new ArrayList<String>();
+    final Timer[] timers = new Timer[2];
+    for (int i = 0; i < timers.length; i++) {
+      final String name = "timer" + i;
+      final int other = 1 - i;
+      timers[i] = new Timer(name, new Runnable() {
+        public void run() {
+          runs.add(name);
+          timers[other].cancel();
+        }
+      }, wheel);
+    }
+
+    timers[0].schedule(50, 50);
+    timers[1].schedule(50, 50);
+    advance(60);
+    assertEquals(1, runs.size());
+    advance(1000);
+    assertTrue(runs.size() > 10);
+    for (String run : runs) {
+      assertEquals(runs.get(0), run);
+    }
+  }
+
+  /**
+   * Test for two timers of the same tick where the first one to expire resets
+   * the other, which then only runs after its full delay.
+   */
+  @Test
+  public void resetDuringExpire() {
+    final List<Long> runs = new ArrayList<Long>();
+    final Timer[] timers = new Timer[2];
+    for (int i = 0; i < timers.length; i++) {
+      final int self = i;
+      timers[i] = new Timer("timer" + i, new Runnable() {
+        public void run() {
+          runs.add(time);
+          timers[self].cancel();
+          if (runs.size() == 1) {
+            timers[1 - self].reset();
+          }
+        }
+      }, wheel);
+    }
+
+    final long start = time;
+    timers[0].schedule(50);
+    timers[1].schedule(50);
+    advance(60);
+    assertEquals(1, runs.size());
+    advance(100);
+    assertEquals(2, runs.size());
+    assertTrue(runs.get(1) >= start + 100);
+  }
+
+  /**
+   * Test for a periodic timer that cancels itself, which is not scheduled again.
+   */
+  @Test
+  public void cancelItself() {
+    final List<Long> runs = new ArrayList<Long>();
+    final Timer[] timer = new Timer[1];
+    timer[0] = new Timer("self", new Runnable() {
+      public void run() {
+        runs.add(time);
+        timer[0].cancel();
+      }
+    }, wheel);
+
+    timer[0].schedule(30, 30);
+    advance(500);
+    assertEquals(1, runs.size());
+    assertFalse(timer[0].isScheduled());
+    assertEquals(-1, wheel.nextExpirationTime());
+  }
+}